@@ -52,6 +52,7 @@ import org.openxls.formats.XLS.Xf;
 import org.openxls.formats.XLS.charts.Ai;
 import org.openxls.formats.XLS.formulas.Ptg;
 import org.openxls.formats.XLS.formulas.PtgRef;
+import org.openxls.formats.cellformat.CellFormat;
 import org.openxls.formats.cellformat.CellFormatFactory;
 import org.openxls.toolkit.StringTool;
 import org.json.JSONException;
@@ -487,8 +488,22 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 	@Override
 	public String getFormattedStringVal()
 	{
-		FormatHandle myfmt = getFormatHandle();
-		return CellFormatFactory.fromPatternString( myfmt.getFormatPattern() ).format( this );
+		return getCellFormat().format( this );
+	}
+
+	/**
+	 * Returns the compiled number format of this Cell, shared through the
+	 * WorkBook so the pattern isn't parsed again for every cell.
+	 */
+	private CellFormat getCellFormat()
+	{
+		setMulblank();
+		Xf xf = mycell.getXfRec();
+		if( (xf == null) || (mycell.getWorkBook() == null) )
+		{
+			return CellFormatFactory.fromPatternString( getFormatHandle().getFormatPattern() );
+		}
+		return mycell.getWorkBook().getCellFormat( xf.getFormatPattern() );
 	}
 
 	/**
@@ -1575,13 +1590,12 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 	 */
 	public String getFormattedStringVal( boolean formatForXML )
 	{
-		FormatHandle myfmt = getFormatHandle();
 		String val = getVal().toString();
 		if( formatForXML )
 		{
 			val = OOXMLAdapter.stripNonAscii( val ).toString();
 		}
-		return CellFormatFactory.fromPatternString( myfmt.getFormatPattern() ).format( val );
+		return getCellFormat().format( val );
 	}
 
 	/**
@@ -1754,6 +1768,7 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 	 */
 	public void remove( boolean nullme )
 	{
+		clearAffectedCells();    // dependents now read an empty cell
 		mycell.getSheet().removeCell( mycell );
 		if( nullme )
 		{
@@ -286,11 +286,20 @@ public class CellRange implements Serializable
 	/**
 	 * Set the format ID of all cells in this CellRange
 	 * <br>FormatID can be obtained through any CellHandle with the getFormatID() call
+	 * <br>The format is applied in one pass over the sheet, without a CellHandle per cell;
+	 * ranges of whole rows or columns set the default format of the rows or columns.
 	 *
 	 * @param int fmtID - the format ID to set the cells within the range to
+	 * @see WorkSheetHandle#setFormatId(int, int, int, int, int, boolean)
 	 */
 	public void setFormatID( int fmtID ) throws Exception
 	{
+		if( (sheet != null) && !FormulaParser.isComplexRange( range ) )
+		{
+			int[] coords = getCoords();
+			sheet.setFormatId( coords[0], coords[1], coords[2], coords[3], fmtID, createBlanks );
+			return;
+		}
 		BiffRec[] mycells = getCellRecs();
 		for( BiffRec mycell : mycells )
 		{
@@ -1451,7 +1460,7 @@ public class CellRange implements Serializable
 			}
 		}
 		String firstcellrowstr = startcell.substring( charct );
-		firstcellrow = Integer.parseInt( firstcellrowstr );
+		firstcellrow = firstcellrowstr.isEmpty() ? 0 : Integer.parseInt( firstcellrowstr );    // whole columns have no row
 		String firstcellcolstr = startcell.substring( 0, charct );
 		firstcellcol = ExcelTools.getIntVal( firstcellcolstr );
 		// get the last cell's coordinates
@@ -1465,7 +1474,7 @@ public class CellRange implements Serializable
 			}
 		}
 		String lastcellrowstr = endcell.substring( charct );
-		lastcellrow = Integer.parseInt( lastcellrowstr );
+		lastcellrow = lastcellrowstr.isEmpty() ? 0 : Integer.parseInt( lastcellrowstr );
 		String lastcellcolstr = endcell.substring( 0, charct );
 		lastcellcol = ExcelTools.getIntVal( lastcellcolstr );
 		numrows = (lastcellrow - firstcellrow) + 1;
@@ -1482,7 +1491,7 @@ public class CellRange implements Serializable
 		coords[2] = lastcellrow - 1;
 		coords[3] = lastcellcol;
 		coords[4] = numcells;
-		if( ((firstcellrow < 0) && (lastcellrow < 0)) || (firstcellcol < 0) || (lastcellcol < 0) )
+		if( ((firstcellrow < 1) && (lastcellrow < 1)) || (firstcellcol < 0) || (lastcellcol < 0) )
 		{
 			// not an error if it is a whole column or whole row range
 			if( (firstcellcol == -1) && (lastcellcol == -1) )
@@ -1490,7 +1499,7 @@ public class CellRange implements Serializable
 				// what should numcells be for wholerow?
 				wholeRow = true;
 			}
-			else if( (firstcellrow == -1) && (lastcellrow == -1) )
+			else if( (firstcellrow == 0) && (lastcellrow == 0) )
 			{
 				// what should numcells be for wholecol?
 				wholeCol = true;
@@ -0,0 +1,116 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.ExtenXLS;
+
+import org.openxls.formats.XLS.RowBlockSpill;
+
+/**
+ * The SheetRowWriter appends rows of values to a WorkSheet without keeping
+ * them in memory.
+ * <br>
+ * Use the SheetRowWriter to write large reports in XLS format.  Each row is
+ * encoded as it is added and spilled to a temp file a block of 32 rows at a
+ * time; when the WorkBook is written the spilled rows are copied into the
+ * output after the sheet's other rows.
+ * <br>
+ * <br><blockquote>
+ * WorkBookHandle book = new WorkBookHandle();<br>
+ * SheetRowWriter rows = new SheetRowWriter( book.getWorkSheet( 0 ) );<br>
+ * rows.addRow( new Object[]{ "Region", "Units", "Total" } );<br>
+ * while( ... ) rows.addRow( new Object[]{ region, units, total } );<br>
+ * book.write( out, WorkBookHandle.FORMAT_XLS );<br>
+ * book.close();<br>
+ * </blockquote>
+ * <br>
+ * Appended rows are write-only: they can not be read back through the
+ * WorkSheetHandle, are not seen by formulas, and are only included in XLS
+ * output.  Rows are added after the last row already on the sheet, and no
+ * cells should be added to the sheet at or after the appended rows.
+ * The temp file is removed when the WorkBookHandle is closed.
+ *
+ * @see WorkSheetHandle
+ * @see FormatHandle#getFormatId()
+ */
+public class SheetRowWriter
+{
+	private RowBlockSpill spill;
+
+	/**
+	 * Create a writer which appends rows to the given sheet.
+	 *
+	 * @param sheet the WorkSheet to add rows to
+	 */
+	public SheetRowWriter( WorkSheetHandle sheet )
+	{
+		spill = sheet.getMysheet().createRowSpill();
+	}
+
+	/**
+	 * Append a row of values using the default format.
+	 * <p/>
+	 * Numbers and Booleans are written as such, nulls are left empty,
+	 * and any other value is written as its String.
+	 *
+	 * @param values the cell values, starting at column A
+	 */
+	public void addRow( Object[] values )
+	{
+		spill.addRow( spill.getNextRow(), values, null );
+	}
+
+	/**
+	 * Append a row of values, each formatted with the format id at the
+	 * same position in formatIds.
+	 * <p/>
+	 * A null value with a format id is written as a formatted blank cell.
+	 * A format id of -1 uses the default format.
+	 *
+	 * @param values    the cell values, starting at column A
+	 * @param formatIds the format id for each column, from FormatHandle.getFormatId()
+	 */
+	public void addRow( Object[] values, int[] formatIds )
+	{
+		spill.addRow( spill.getNextRow(), values, formatIds );
+	}
+
+	/**
+	 * Append a row of values at the given row, leaving any rows between the
+	 * last row added and this one empty.
+	 *
+	 * @param row       the zero-based row number, after the last row added
+	 * @param values    the cell values, starting at column A
+	 * @param formatIds the format id for each column, or null for the default format
+	 */
+	public void addRow( int row, Object[] values, int[] formatIds )
+	{
+		spill.addRow( row, values, formatIds );
+	}
+
+	/**
+	 * Returns the zero-based number of the row the next call to addRow will write.
+	 */
+	public int getNextRow()
+	{
+		return spill.getNextRow();
+	}
+}
@@ -47,6 +47,9 @@ public interface WorkBook extends Handle, Document
 	public static String CALC_MODE_PROP = XLSConstants.CALC_MODE_PROP;
 	public static String REFTRACK_PROP = XLSConstants.REFTRACK_PROP;
 	public static String USETEMPFILE_PROP = XLSConstants.USETEMPFILE_PROP;
+	public static String LAZYSHEETS_PROP = XLSConstants.LAZYSHEETS_PROP;
+	public static String READTHREADS_PROP = XLSConstants.READTHREADS_PROP;
+	public static String MEMORYPASSTHROUGHS_PROP = XLSConstants.MEMORYPASSTHROUGHS_PROP;
 	public static String DEFAULTENCODING = XLSConstants.DEFAULTENCODING;
 	public static String UNICODEENCODING = XLSConstants.UNICODEENCODING;
 	public static String VALIDATEWORKBOOK = XLSConstants.VALIDATEWORKBOOK;
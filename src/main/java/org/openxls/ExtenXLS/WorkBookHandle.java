@@ -23,6 +23,7 @@
 package org.openxls.ExtenXLS;
 
 import org.openxls.formats.LEO.BlockByteReader;
+import org.openxls.formats.LEO.ByteBufferPool;
 import org.openxls.formats.LEO.InvalidFileException;
 import org.openxls.formats.LEO.LEOFile;
 import org.openxls.formats.XLS.BiffRec;
@@ -52,7 +53,7 @@ import org.openxls.formats.XLS.XLSConstants;
 import org.openxls.formats.XLS.Xf;
 import org.openxls.formats.XLS.charts.Chart;
 import org.openxls.formats.XLS.charts.OOXMLChart;
-import org.openxls.toolkit.JFileWriter;
+import org.openxls.formats.XLS.formulas.DependencyGraph;
 import org.openxls.toolkit.ProgressListener;
 import org.openxls.toolkit.ResourceLoader;
 import org.openxls.toolkit.StringTool;
@@ -80,6 +81,7 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The WorkBookHandle provides a handle to the XLS file and includes
@@ -100,6 +102,32 @@ import java.util.Vector;
  * If you enable this mode you will need to periodically clean up the generated
  * temporary files in your working directory. All ExtenXLS temporary file names
  * begin with "ExtenXLS_".
+ * <p/>
+ * To open large XLS files quickly when only some of their WorkSheets are
+ * needed, use the following setting:
+ * <br><code>
+ * System.getProperties().put(WorkBookHandle.LAZYSHEETS_PROP, "true");
+ * </code><br>
+ * Each plain WorkSheet is then read the first time it is accessed, and
+ * WorkSheets which are never accessed are copied unchanged when the WorkBook
+ * is written.  Formulas on a WorkSheet read this way are not recalculated
+ * when it is read.
+ * <p/>
+ * To read the WorkSheets of XLSX files on several threads, use the following
+ * setting:
+ * <br><code>
+ * System.getProperties().put(WorkBookHandle.READTHREADS_PROP, "4");
+ * </code><br>
+ * The worksheet parts are then decompressed and tokenized concurrently, and
+ * their cells are added to the WorkSheets in order.
+ * <p/>
+ * Parts of XLSX files which are not read into the WorkBook, such as VBA
+ * projects and embedded objects, are unpacked into java.io.tmpdir until the
+ * WorkBook is written.  To keep them in memory instead, use the following
+ * setting:
+ * <br><code>
+ * System.getProperties().put(WorkBookHandle.MEMORYPASSTHROUGHS_PROP, "true");
+ * </code><br>
  */
 public class WorkBookHandle extends DocumentHandle implements WorkBook
 {
@@ -116,7 +144,13 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 	protected LEOFile myLEOFile;
 	protected WorkBookFactory myfactory = null;
 
+	// the pooled buffer myLEOFile was read into, returned to its pool on close
+	private transient ByteBuffer streamBuffer;
+	private transient ByteBufferPool streamBufferPool;
+
 	protected ProgressListener plist;
+	private transient ForkJoinPool calcPool;
+	private int writeThreads = 1;
 
 	/**
 	 * Format constant for BIFF8 (Excel '97-2007).
@@ -153,6 +187,10 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 	 * How many recursion levels to allow formulas to be calculated before throwing a circular reference error
 	 */
 	public static int RECURSION_LEVELS_ALLOWED = 107;
+	/**
+	 * How many passes a recalc makes over formulas whose INDIRECT or OFFSET references move as they are calculated
+	 */
+	private static final int RELOCATION_PASSES_ALLOWED = 8;
 
 	protected static byte[] getPrototypeBook()
 	{
@@ -445,6 +483,67 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 		mybook.setCalcMode( CalcMode );
 	}
 
+	/**
+	 * Sets the number of threads {@link #recalc()} evaluates formulas on.
+	 * <p/>
+	 * With more than one thread the formulas are evaluated level by level:
+	 * formulas which do not depend on each other are evaluated concurrently
+	 * on a ForkJoinPool owned by this WorkBookHandle.  The default of 1
+	 * evaluates all formulas on the calling thread.
+	 * <p/>
+	 * Cells must not be modified while a recalc is running.
+	 *
+	 * @param threads the number of threads, ie:
+	 *                Runtime.getRuntime().availableProcessors()
+	 */
+	public void setCalculationThreads( int threads )
+	{
+		if( calcPool != null )
+		{
+			calcPool.shutdown();
+			calcPool = null;
+		}
+		if( threads > 1 )
+		{
+			calcPool = new ForkJoinPool( threads );
+		}
+	}
+
+	/**
+	 * Returns the number of threads {@link #recalc()} evaluates formulas on.
+	 */
+	public int getCalculationThreads()
+	{
+		return (calcPool == null) ? 1 : calcPool.getParallelism();
+	}
+
+	/**
+	 * Sets the number of threads used to write XLSX formats.
+	 * <p/>
+	 * With more than one thread the rows of each worksheet and the shared
+	 * string table are rendered and compressed concurrently, then copied into
+	 * the output in order.  The compressed parts are held in memory until they
+	 * are written.  The default of 1 writes everything on the calling thread.
+	 * XLSX output written with more than one thread is limited to 4GB.
+	 * <p/>
+	 * Cells must not be modified while the WorkBook is being written.
+	 *
+	 * @param threads the number of threads, ie:
+	 *                Runtime.getRuntime().availableProcessors()
+	 */
+	public void setWriteThreads( int threads )
+	{
+		writeThreads = Math.max( 1, threads );
+	}
+
+	/**
+	 * Returns the number of threads used to write XLSX formats.
+	 */
+	public int getWriteThreads()
+	{
+		return writeThreads;
+	}
+
 	/**
 	 * Get the calculation mode for the workbook.
 	 * <p/>
@@ -1054,6 +1153,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 
 					OOXMLWriter adapter = new OOXMLWriter();
 					adapter.setFormat( format );
+					adapter.setWriteThreads( writeThreads );
 					adapter.getOOXML( this, dest );
 				}
 				catch( IOException e )
@@ -1233,6 +1333,25 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 		initFromStream( inx );
 	}
 
+	/**
+	 * constructor which takes an InputStream containing the bytes of a valid XLS file,
+	 * read into a buffer taken from the given pool.
+	 * <p/>
+	 * The buffer backs the workbook until it is closed, and is returned to the
+	 * pool by {@link #close()}.
+	 *
+	 * @param InputStream contains the valid BIFF8 bytes for reading
+	 * @param pool        the pool to take the buffer from
+	 */
+	public WorkBookHandle( InputStream inx, ByteBufferPool pool )
+	{
+		if( inx == null )
+		{
+			throw new IllegalArgumentException( "InputStream cannot be null!" );
+		}
+		initFromStream( inx, pool );
+	}
+
 	/**
 	 * Initialization of this workbook handle from a leoFile;
 	 */
@@ -1259,23 +1378,75 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 	}
 
 	/**
-	 * Initialize this workbook from a stream, unfortunately our byte backer
-	 * requires a file, so create a tempfile and init from that
+	 * Initialize this workbook from a stream, read into a heap buffer
 	 */
 	protected void initFromStream( InputStream input )
 	{
+		initFromStream( input, null );
+	}
+
+	/**
+	 * Initialize this workbook from a stream.  XLS files are read into a
+	 * buffer from the pool, or into a heap buffer if pool is null, and the
+	 * LEOFile is created on it directly; XLSX and CSV files are written to a
+	 * tempfile and init from that
+	 */
+	protected void initFromStream( InputStream input, ByteBufferPool pool )
+	{
+		ByteBufferPool source = (pool != null) ? pool : new ByteBufferPool( 0, false );
+		ByteBuffer buf;
 		try
 		{
-			File target = TempFileManager.createTempFile( "WBP", ".tmp" );
+			buf = source.read( input );
+			input.close();
+		}
+		catch( IOException ex )
+		{
+			log.error( "Initializing WorkBookHandle failed.", ex );
+			return;
+		}
 
-			JFileWriter.writeToFile( input, target );
-			initFromFile( target.getAbsoluteFile() );
-			if( myLEOFile != null )// it would be if XLSX or XLSM ... 20090323 KSC
+		if( LEOFile.checkIsLEO( buf ) )
+		{
+			ByteBuffer bbf = buf.slice();    // capacity of the data alone, as for a mapped file
+			bbf.order( ByteOrder.LITTLE_ENDIAN );
+			try
+			{
+				myLEOFile = new LEOFile( bbf );
+				if( !myLEOFile.hasWorkBook() )
+				{
+					log.error( "Initializing WorkBookHandle failed: stream does not contain a supported Excel WorkBook." );
+					throw new InvalidFileException( "stream does not contain a supported Excel WorkBook." );
+				}
+				initFromLeoFile( myLEOFile );
+			}
+			catch( RuntimeException e )
 			{
-				myLEOFile.closefb();
+				source.release( buf );
+				throw e;
 			}
-			//this.myLEOFile.close();	// close now flushes buffers + storages ...
-			input.close();
+			streamBuffer = buf;
+			streamBufferPool = pool;
+			return;
+		}
+
+		try
+		{
+			File target = TempFileManager.createTempFile( "WBP", ".tmp" );
+			FileOutputStream out = new FileOutputStream( target );
+			try
+			{
+				while( buf.hasRemaining() )
+				{
+					out.getChannel().write( buf );
+				}
+			}
+			finally
+			{
+				out.close();
+				source.release( buf );
+			}
+			initFromFile( target.getAbsoluteFile() );
 
 			File fdel = new File( target.toString() );
 			if( !fdel.delete() )
@@ -1648,6 +1819,39 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 		}
 	}
 
+	/**
+	 * sets up the merged cells and hyperlinks of sheets which were parsed
+	 * after the WorkBook was loaded
+	 *
+	 * @see WorkBook#LAZYSHEETS_PROP
+	 */
+	void initLoadedSheets()
+	{
+		List<Boundsheet> loaded = mybook.takeLoadedSheets();
+		if( loaded.isEmpty() )
+		{
+			return;
+		}
+		List hlinklookup = mybook.getHlinklookup();
+		for( int t = 0; t < hlinklookup.size(); t++ )
+		{
+			Hlink hl = (Hlink) hlinklookup.get( t );
+			if( loaded.contains( hl.getSheet() ) )
+			{
+				hl.initCells( this );
+			}
+		}
+		List mergelookup = mybook.getMergecelllookup();
+		for( int t = 0; t < mergelookup.size(); t++ )
+		{
+			Mergedcells mc = (Mergedcells) mergelookup.get( t );
+			if( loaded.contains( mc.getSheet() ) )
+			{
+				mc.initCells( this );
+			}
+		}
+	}
+
 	/**
 	 * reads in the pivot cache storage and parses the pivot cache records
 	 * <br>pivot cache(s) are used by pivot tables as data source storage
@@ -1675,6 +1879,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 	@Override
 	public void close()
 	{
+		setCalculationThreads( 1 );
 		try
 		{
 			if( myLEOFile != null )
@@ -1695,6 +1900,12 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 		myfactory = null;
 		name = null;
 		sheethandles = null;
+		if( streamBufferPool != null )
+		{
+			streamBufferPool.release( streamBuffer );
+		}
+		streamBuffer = null;
+		streamBufferPool = null;
 //	   Runtime.getRuntime().gc();
 	}
 
@@ -1735,6 +1946,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 					bs.setWorkBook( mybook );
 					sheets[i] = new WorkSheetHandle( bs, this );
 				}
+				initLoadedSheets();
 				return sheets;
 			}
 			return null;
@@ -1760,6 +1972,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 	public WorkSheetHandle getWorkSheet( int sheetnum ) throws WorkSheetNotFoundException
 	{
 		Boundsheet st = mybook.getWorkSheetByNumber( sheetnum );
+		initLoadedSheets();
 		if( sheethandles.get( st.getSheetName() ) != null )
 		{
 			return (WorkSheetHandle) sheethandles.get( st.getSheetName() );
@@ -1793,6 +2006,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 		if( myfactory != null )
 		{
 			Boundsheet bs = mybook.getWorkSheetByName( handstr );
+			initLoadedSheets();
 			if( bs != null )
 			{
 				bs.setWorkBook( mybook );
@@ -1990,7 +2204,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 	public void calculateFormulas()
 	{
 		markFormulasDirty();
-		recalc();
+		recalc( true );
 	}
 
 	/**
@@ -2015,33 +2229,51 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 	 * is only useful for forcing calculation to occur at a certain time. In
 	 * the case of functions such as NOW() whose value is volatile the formula
 	 * will still be recalculated every time it is queried.
+	 * <p/>
+	 * Formulas are calculated in dependency order.  The first recalc after
+	 * the workbook is loaded or its formulas are changed calculates every
+	 * formula; later calls only calculate the formulas affected by the cells
+	 * changed or removed since, plus volatile formulas.  If reference
+	 * tracking is disabled through {@link #REFTRACK_PROP}, or the calculation
+	 * mode is CALCULATE_EXPLICIT, every recalc calculates every formula.  Formulas on a circular
+	 * reference are set to a circular reference error.
+	 * <p/>
+	 * Formulas are evaluated on several threads if set through
+	 * {@link #setCalculationThreads(int)}.
 	 *
 	 * @throws FunctionNotSupportedException if an unsupported function is
 	 *                                       used by any formula in the workbook
 	 * @see #markFormulasDirty()
 	 */
 	public void recalc()
+	{
+		recalc( false );
+	}
+
+	private void recalc( boolean all )
 	{
 		int calcmode = mybook.getCalcMode();
+		// changed cells only clear their dependents through the reference tracker,
+		// which neither happens when it is disabled nor in explicit mode
+		all |= "false".equals( System.getProperty( REFTRACK_PROP ) ) || (calcmode == CALCULATE_EXPLICIT);
 		mybook.setCalcMode( CALCULATE_AUTO );    // ensure referenced functions are calculated as necessary!
-		Formula[] formulas = mybook.getFormulas();
-		for( Formula formula : formulas )
+		try
 		{
-			String cellAddress = formula.getCellAddressWithSheet();
-			log.debug( "Recalculating formula ({}) : {}", cellAddress, formula.getFormulaString() );
-			try
+			DependencyGraph graph = mybook.getDependencyGraph();
+			graph.recalc( all, calcPool );
+			// evaluate formulas whose INDIRECT or OFFSET references moved again, after their new precedents
+			for( int pass = 1; graph.hasRelocatedReferences() && (pass < RELOCATION_PASSES_ALLOWED); pass++ )
 			{
-				formula.clearCachedValue();
-				formula.calculate();
-			}
-			catch( FunctionNotSupportedException fe )
-			{
-				log.error( "WorkBookHandle.recalc:  Error calculating Formula " + fe.toString(), fe );
+				graph = mybook.getDependencyGraph();
+				graph.recalc( false, calcPool );
 			}
 		}
-		// KSC: Clear out lookup caches!
-		getWorkBook().getRefTracker().clearLookupCaches();
-		mybook.setCalcMode( calcmode );    // reset
+		finally
+		{
+			// KSC: Clear out lookup caches!
+			getWorkBook().getRefTracker().clearLookupCaches();
+			mybook.setCalcMode( calcmode );    // reset
+		}
 	}
 
 	/**
@@ -2553,6 +2785,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook
 //	    int cfxe = this.getWorkBook().getNumXfs() + 50000; // there would have to be 50k styles on the sheet to conflict here....
 
 		List retl = new Vector();
+		mybook.loadAllSheets();
 		List v = mybook.getSheetVect();
 
 		Iterator its = v.iterator();
@@ -672,6 +672,7 @@ public class WorkSheetHandle implements Handle
 	 */
 	public void removeCell( CellHandle celldel )
 	{
+		mybook.getRefTracker().clearAffectedFormulaCells( celldel.getCell() );
 		mysheet.removeCell( celldel.getCell() );
 	}
 
@@ -696,7 +697,12 @@ public class WorkSheetHandle implements Handle
 	 */
 	public void removeCell( String celladdr )
 	{
-		mysheet.removeCell( celladdr.toUpperCase() );
+		BiffRec cell = mysheet.getCell( celladdr.toUpperCase() );
+		if( cell != null )
+		{
+			mybook.getRefTracker().clearAffectedFormulaCells( cell );
+			mysheet.removeCell( cell );
+		}
 	}
 
 	/** Remove a Row and all associated Cells from
@@ -2098,6 +2104,46 @@ public class WorkSheetHandle implements Handle
 		}
 	}
 
+	/**
+	 * Applies a format to a block of cells in one pass over the sheet.
+	 * <p/>
+	 * All existing cells in the block are set to the format without creating
+	 * a CellHandle or FormatHandle for each.  If the block spans whole columns
+	 * the format becomes the default format of the columns, and if it spans
+	 * whole rows it becomes the default format of the rows.  Empty cells in
+	 * other blocks are only formatted when createBlanks is true.  Passing -1
+	 * as both first and last row, or both first and last column, spans all of them.
+	 * <p/>
+	 * To apply a FormatHandle, pass its format id:
+	 * <pre>
+	 * sheet.setFormatId( 0, 0, 999, 9, fmt.getFormatId(), false );
+	 * </pre>
+	 *
+	 * @param firstRow     first row of the block, zero based
+	 * @param firstCol     first column of the block, zero based
+	 * @param lastRow      last row of the block, zero based
+	 * @param lastCol      last column of the block, zero based
+	 * @param formatId     the format id to apply
+	 * @param createBlanks whether to create blank cells in the block to hold the format
+	 */
+	public void setFormatId( int firstRow, int firstCol, int lastRow, int lastCol, int formatId, boolean createBlanks )
+	{
+		mysheet.applyIxfe( firstRow, firstCol, lastRow, lastCol, formatId, createBlanks );
+	}
+
+	/**
+	 * Applies a format to the existing cells of a range in one pass over the sheet.
+	 *
+	 * @param range    the range to format, ie: "A1:J1000", "A:C" or "1:5"
+	 * @param formatId the format id to apply
+	 * @see #setFormatId(int, int, int, int, int, boolean)
+	 */
+	public void setFormatId( String range, int formatId )
+	{
+		int[] rc = ExcelTools.getRangeRowCol( ExcelTools.stripSheetNameFromRange( range )[1] );
+		setFormatId( rc[0], rc[1], rc[2], rc[3], formatId, false );
+	}
+
 	/**
 	 * Toggle fast cell add mode.
 	 * <p/>
@@ -72,6 +72,8 @@ public class BlockByteReader implements Serializable
 	private boolean ro = false;
 	private int length = -1;
 	transient ByteBuffer backingByteBuffer = ByteBuffer.allocate( 0 );
+	// the whole stream as one buffer, position 0 being the start of the stream; null to read through the blocks
+	private transient ByteBuffer stream = null;
 
 	public BlockByteReader( List blokz, int len )
 	{
@@ -84,6 +86,80 @@ public class BlockByteReader implements Serializable
 		return ro;
 	}
 
+	/**
+	 * Sets up a contiguous view of the stream so reads no longer have to
+	 * map every position through the blocks.
+	 * <p/>
+	 * When the blocks of the stream follow each other in the same buffer,
+	 * which is the case for most files, the view is a slice of that buffer,
+	 * ie: of the memory-mapped file.  Otherwise the blocks are copied once
+	 * into a direct buffer.
+	 * <p/>
+	 * Small block streams are left to read through the blocks.
+	 */
+	public void initStreamView()
+	{
+		if( (stream != null) || (length < StorageTable.BIGSTORAGE_SIZE) || blockmap.isEmpty() )
+		{
+			return;
+		}
+		int SIZE = BIGBLOCK.SIZE;
+		int nblocks = (length + SIZE - 1) / SIZE;
+		if( blockmap.size() < nblocks )
+		{
+			return;
+		}
+		// the view covers whole blocks, as reads through the blocks do
+		int extent = nblocks * SIZE;
+		Block first = (Block) blockmap.get( 0 );
+		ByteBuffer src = first.getByteBuffer();
+		int start = first.getOriginalPos();
+		boolean contiguous = (start + length) <= src.limit();
+		for( int i = 1; contiguous && (i < nblocks); i++ )
+		{
+			Block bx = (Block) blockmap.get( i );
+			contiguous = (bx.getByteBuffer() == src) && (bx.getOriginalPos() == (start + (i * SIZE)));
+		}
+		if( contiguous )
+		{
+			ByteBuffer view = src.duplicate();
+			view.limit( Math.min( start + extent, src.limit() ) );
+			view.position( start );
+			stream = view.slice();
+			return;
+		}
+		// reassemble the stream once
+		ByteBuffer copy = ByteBuffer.allocateDirect( extent );
+		for( int i = 0; i < nblocks; i++ )
+		{
+			Block bx = (Block) blockmap.get( i );
+			ByteBuffer data = bx.getByteBuffer().duplicate();
+			int abs = bx.getOriginalPos();
+			int n = SIZE;
+			// CAN HAPPEN ON OUT-OF-SPEC FILES whom have last block size < 512
+			if( (abs + n) > data.limit() )
+			{
+				n = Math.max( data.limit() - abs, 0 );
+			}
+			data.limit( abs + n );
+			data.position( abs );
+			copy.position( i * SIZE );
+			copy.put( data );
+		}
+		copy.clear();
+		stream = copy;
+	}
+
+	/**
+	 * Returns whether reads go through a contiguous view of the stream.
+	 *
+	 * @see #initStreamView()
+	 */
+	public boolean hasStreamView()
+	{
+		return stream != null;
+	}
+
 	/**
 	 * Allows for getting of header bytes without setting blocks on a rec
 	 *
@@ -92,6 +168,12 @@ public class BlockByteReader implements Serializable
 	 */
 	public byte[] getHeaderBytes( int startpos )
 	{
+		if( stream != null )
+		{
+			byte[] ret = new byte[4];
+			readBytes( startpos, ret, 0, 4 );
+			return ret;
+		}
 		try
 		{
 			int SIZE = BIGBLOCK.SIZE; // normal case
@@ -132,8 +214,150 @@ public class BlockByteReader implements Serializable
 		}
 	}
 
+	/**
+	 * Reads the record header at a stream position without allocating.
+	 * <p/>
+	 * This returns the same opcode and length as {@link #getHeaderBytes(int)}
+	 * but reads them straight from the block buffers, which is what the
+	 * WorkBookFactory parse loop needs for every record.
+	 *
+	 * @param startpos the position of the header in the stream
+	 * @return the opcode in the low 16 bits and the record length in the
+	 *         high 16 bits
+	 */
+	public int getHeader( int startpos )
+	{
+		if( stream != null )
+		{
+			if( (startpos + 4) > stream.limit() )
+			{
+				return 0;    // junkrec
+			}
+			int b0 = stream.get( startpos ) & 0xff;
+			int b1 = stream.get( startpos + 1 ) & 0xff;
+			int b2 = stream.get( startpos + 2 ) & 0xff;
+			int b3 = stream.get( startpos + 3 ) & 0xff;
+			return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+		}
+		try
+		{
+			int SIZE = BIGBLOCK.SIZE; // normal case
+			if( length < StorageTable.BIGSTORAGE_SIZE )
+			{
+				SIZE = SMALLBLOCK.SIZE;
+			}
+			int block = startpos / SIZE;
+			int check = startpos % SIZE;
+			if( (check + 4) > SIZE )
+			{
+				// handle EOF that falls right on boundary
+				if( (blockmap.size() - 1) == block )
+				{
+					return 0;    // junkrec
+				}
+				// SPANNER!
+				int b0 = getByte( startpos, SIZE ) & 0xff;
+				int b1 = getByte( startpos + 1, SIZE ) & 0xff;
+				int b2 = getByte( startpos + 2, SIZE ) & 0xff;
+				int b3 = getByte( startpos + 3, SIZE ) & 0xff;
+				return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+			}
+			Block bx = (Block) blockmap.get( block );
+			ByteBuffer data = bx.getByteBuffer();
+			int abs = bx.getOriginalPos() + check;
+			int b0 = data.get( abs ) & 0xff;
+			int b1 = data.get( abs + 1 ) & 0xff;
+			int b2 = data.get( abs + 2 ) & 0xff;
+			int b3 = data.get( abs + 3 ) & 0xff;
+			return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+		}
+		catch( IndexOutOfBoundsException e )
+		{
+			// CAN HAPPEN ON OUT-OF-SPEC FILES whom have last block size < 512
+			byte[] b = getHeaderBytes( startpos );
+			return (b[0] & 0xff) | ((b[1] & 0xff) << 8) | ((b[2] & 0xff) << 16) | ((b[3] & 0xff) << 24);
+		}
+		catch( RuntimeException e )
+		{
+			throw new WorkBookException(
+					"Smallblock based workbooks are unsupported in ExtenXLS: see http://extentech.com/uimodules/docs/docs_detail.jsp?showall=true&meme_id=195",
+					WorkBookException.SMALLBLOCK_FILE );
+		}
+	}
+
+	/**
+	 * Returns the byte at a stream position.
+	 */
+	private byte getByte( int pos, int SIZE )
+	{
+		Block bx = (Block) blockmap.get( pos / SIZE );
+		return bx.getByteBuffer().get( bx.getOriginalPos() + (pos % SIZE) );
+	}
+
+	/**
+	 * Copies bytes at an absolute stream position into the given array
+	 * without going through a record.
+	 * <p/>
+	 * This is used by the streaming readers which only need to look at
+	 * record bytes once and reuse the same destination array for every
+	 * record.
+	 *
+	 * @param startpos the position in the stream
+	 * @param dest     the array to copy into
+	 * @param destoff  the offset in dest at which to start copying
+	 * @param len      the number of bytes to copy
+	 * @return the number of bytes actually copied
+	 */
+	public int readBytes( int startpos, byte[] dest, int destoff, int len )
+	{
+		if( stream != null )
+		{
+			int n = Math.max( Math.min( len, stream.limit() - startpos ), 0 );
+			if( n > 0 )
+			{
+				ByteBuffer d = stream.duplicate();
+				d.position( startpos );
+				d.get( dest, destoff, n );
+			}
+			return n;
+		}
+		int SIZE = BIGBLOCK.SIZE; // normal case
+		if( length < StorageTable.BIGSTORAGE_SIZE )
+		{
+			SIZE = SMALLBLOCK.SIZE;
+		}
+		int read = 0;
+		while( read < len )
+		{
+			int pos = startpos + read;
+			int block = pos / SIZE;
+			if( block >= blockmap.size() )
+			{
+				break;
+			}
+			int check = pos % SIZE;
+			int n = Math.min( SIZE - check, len - read );
+			Block bx = (Block) blockmap.get( block );
+			ByteBuffer data = bx.getByteBuffer();
+			int abs = bx.getOriginalPos() + check;
+			// CAN HAPPEN ON OUT-OF-SPEC FILES whom have last block size < 512
+			if( (abs + n) > data.limit() )
+			{
+				n = data.limit() - abs;
+			}
+			if( n <= 0 )
+			{
+				break;
+			}
+			data.position( abs );
+			data.get( dest, destoff + read, n );
+			read += n;
+		}
+		return read;
+	}
+
 	/* Return the byte from the blocks at the proper locations...
-	 * 
+	 *
 	 * @see java.nio.ByteBuffer#get()
 	 */
 	public byte get( BlockByteConsumer rec, int startpos )
@@ -176,6 +400,12 @@ public class BlockByteReader implements Serializable
 			throw new RuntimeException( "ERROR: BBR.getRecBytes(" + rec.getClass()
 			                                                           .getName() + "," + startpos + "," + (startpos + len) + ") failed - OUT OF BOUNDS." );
 		}
+		if( stream != null )
+		{
+			byte[] ret = new byte[Math.max( Math.min( len, stream.limit() - startpos ), 0 )];
+			readBytes( startpos, ret, 0, ret.length );
+			return ret;
+		}
 		// get the block byte boundaries
 		int[] pos = getReadPositions( startpos, len );
 		int numblocks = pos.length / 3;
@@ -0,0 +1,182 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.LEO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+
+/**
+ * Reads workbook streams into ByteBuffers, keeping released buffers for
+ * reuse by later reads.
+ * <p/>
+ * A LEOFile reads its blocks directly from the buffer it is created on, so a
+ * buffer taken from the pool must not be released until the workbook read
+ * from it has been closed.  A server opening many workbooks from streams can
+ * share one pool across requests to avoid allocating a large buffer, and
+ * writing a temp file, for each of them:
+ * <pre>
+ * ByteBufferPool pool = new ByteBufferPool( 4, true );
+ * WorkBookHandle book = new WorkBookHandle( in, pool );
+ * ...
+ * book.close();    // returns the buffer to the pool
+ * </pre>
+ */
+public final class ByteBufferPool
+{
+	private static final int MINCAPACITY = 64 * 1024;
+
+	private final ArrayList<ByteBuffer> free = new ArrayList<>();
+	private final int maxBuffers;
+	private final boolean direct;
+
+	/**
+	 * @param maxBuffers the number of released buffers kept for reuse; 0 keeps none
+	 * @param direct     whether to allocate direct rather than heap buffers
+	 */
+	public ByteBufferPool( int maxBuffers, boolean direct )
+	{
+		this.maxBuffers = maxBuffers;
+		this.direct = direct;
+	}
+
+	/**
+	 * Reads the stream to its end into a buffer of at most its exact
+	 * length, ordered little-endian for a LEOFile.  The stream is not closed.
+	 */
+	public static ByteBuffer readStream( InputStream in ) throws IOException
+	{
+		ByteBuffer buf = new ByteBufferPool( 0, false ).read( in ).slice();
+		buf.order( ByteOrder.LITTLE_ENDIAN );
+		return buf;
+	}
+
+	/**
+	 * Reads the stream to its end into a buffer from the pool, which is
+	 * returned with its position at 0 and its limit at the end of the data.
+	 * The stream is not closed.
+	 * <p/>
+	 * The buffer may be larger than the data; create the LEOFile on a
+	 * {@link ByteBuffer#slice() slice} of it and release the buffer itself.
+	 */
+	public ByteBuffer read( InputStream in ) throws IOException
+	{
+		ReadableByteChannel channel = Channels.newChannel( in );
+		ByteBuffer buf = take( in.available() + 1 );    // one more byte to see the end without growing
+		try
+		{
+			while( true )
+			{
+				if( !buf.hasRemaining() )
+				{
+					ByteBuffer bigger = take( buf.capacity() * 2 );
+					buf.flip();
+					bigger.put( buf );
+					release( buf );
+					buf = bigger;
+				}
+				if( channel.read( buf ) == -1 )
+				{
+					break;
+				}
+			}
+		}
+		catch( IOException e )
+		{
+			release( buf );
+			throw e;
+		}
+		buf.flip();
+		buf.order( ByteOrder.LITTLE_ENDIAN );
+		return buf;
+	}
+
+	/**
+	 * Returns a buffer with at least the given capacity, the smallest kept
+	 * one which is large enough or a new one.
+	 */
+	public synchronized ByteBuffer take( int capacity )
+	{
+		int best = -1;
+		for( int i = 0; i < free.size(); i++ )
+		{
+			int cap = free.get( i ).capacity();
+			if( (cap >= capacity) && ((best < 0) || (cap < free.get( best ).capacity())) )
+			{
+				best = i;
+			}
+		}
+		if( best >= 0 )
+		{
+			ByteBuffer b = free.remove( best );    // by index: ByteBuffer.equals compares contents
+			b.clear();
+			return b;
+		}
+		capacity = Math.max( capacity, MINCAPACITY );
+		return direct ? ByteBuffer.allocateDirect( capacity ) : ByteBuffer.allocate( capacity );
+	}
+
+	/**
+	 * Returns a buffer to the pool.  When the pool is full the smallest
+	 * buffer is dropped.
+	 */
+	public synchronized void release( ByteBuffer buf )
+	{
+		if( (buf == null) || (maxBuffers <= 0) || (buf.isDirect() != direct) )
+		{
+			return;
+		}
+		for( ByteBuffer b : free )
+		{
+			if( b == buf )
+			{
+				return;
+			}
+		}
+		free.add( buf );
+		if( free.size() > maxBuffers )
+		{
+			int smallest = 0;
+			for( int i = 1; i < free.size(); i++ )
+			{
+				if( free.get( i ).capacity() < free.get( smallest ).capacity() )
+				{
+					smallest = i;
+				}
+			}
+			free.remove( smallest );
+		}
+	}
+
+	/**
+	 * Returns the number of buffers kept for reuse.
+	 */
+	public synchronized int size()
+	{
+		return free.size();
+	}
+}
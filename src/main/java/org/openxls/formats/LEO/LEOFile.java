@@ -23,11 +23,10 @@
 package org.openxls.formats.LEO;
 
 import org.openxls.formats.XLS.WorkBookException;
+import org.openxls.formats.XLS.XLSConstants;
 import org.openxls.toolkit.ByteTools;
 import org.openxls.toolkit.CompatibleVector;
-import org.openxls.toolkit.JFileWriter;
 import org.openxls.toolkit.ResourceLoader;
-import org.openxls.toolkit.TempFileManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -146,21 +145,13 @@ public class LEOFile implements Serializable
 	}
 
 	/**
-	 * Create a LEOFile from an input stream.  Unfortunately because of our byte backer
-	 * we need to write to a temporary file in order to do this
+	 * Create a LEOFile from an input stream, which is read into a heap buffer
 	 *
 	 * @param stream
 	 */
 	public LEOFile( InputStream stream ) throws IOException
 	{
-		File target = TempFileManager.createTempFile( "ExtenXLS_temp", ".leo" );
-		JFileWriter.writeToFile( stream, target );
-
-		fileName = target.getAbsolutePath();
-		fb = LEOFile.readFile( target );
-		initWrapper( fb.getBuffer() );
-		target.deleteOnExit();
-		target.delete();
+		initWrapper( ByteBufferPool.readStream( stream ) );
 	}
 
 	/**
@@ -182,6 +173,25 @@ public class LEOFile implements Serializable
 		return true;
 	}
 
+	/**
+	 * Checks whether the given buffer starts with the LEO magic number.
+	 */
+	public static boolean checkIsLEO( ByteBuffer data )
+	{
+		if( data.limit() < LEOHeader.majick.length )
+		{
+			return false;
+		}
+		for( int idx = 0; idx < LEOHeader.majick.length; idx++ )
+		{
+			if( data.get( idx ) != LEOHeader.majick[idx] )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * create a FileBuffer from a file, use system property to determine
 	 * whether to use a temp file.
@@ -930,6 +940,11 @@ public class LEOFile implements Serializable
 
 	/**
 	 * get the bytes of the XLS file.
+	 * <p/>
+	 * Reads go through a contiguous view of the Workbook stream unless the
+	 * org.openxls.formats.LEO.contiguousstream property is "false".
+	 *
+	 * @see BlockByteReader#initStreamView()
 	 */
 	public BlockByteReader getXLSBlockBytes()
 	{
@@ -951,7 +966,12 @@ public class LEOFile implements Serializable
 				throw new InvalidFileException( "InvalidFileException: Not Excel '97 (BIFF8) or later version.  Unsupported file format." );
 			}
 		}
-		return book.getBlockReader();
+		BlockByteReader reader = book.getBlockReader();
+		if( !"false".equals( System.getProperty( XLSConstants.CONTIGUOUSSTREAM_PROP ) ) )
+		{
+			reader.initStreamView();
+		}
+		return reader;
 	}
 
 	/**
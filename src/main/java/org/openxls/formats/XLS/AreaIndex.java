@@ -0,0 +1,282 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import org.openxls.formats.XLS.formulas.PtgArea;
+import org.openxls.formats.XLS.formulas.PtgRef;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A spatial index of the area references tracked for a sheet, which finds
+ * the areas containing a cell without testing every area.
+ * <p/>
+ * The areas are packed into a static R-tree, ordered by Sort-Tile-Recursive:
+ * the areas are cut into vertical slices by column, each slice is sorted by
+ * row and every {@link #NODE_SIZE} areas form a leaf.  Each level above
+ * groups {@link #NODE_SIZE} nodes of the level below, so a lookup only
+ * descends into the nodes whose bounds contain the cell.
+ * <p/>
+ * Areas added after the tree was built are kept in a list which is scanned
+ * on every lookup, and removed areas are only marked as such in the tree;
+ * the tree is built again once either outgrows a share of its size.
+ */
+final class AreaIndex
+{
+	private static final int NODE_SIZE = 16;
+	// added or removed areas allowed before the tree is rebuilt
+	private static final int MIN_CHANGES = 64;
+
+	private Entry[] entries = new Entry[0];
+	// per level from the leaves up: first row, first col, last row, last col of each node
+	private int[][] levels = new int[0][];
+	private final List<Entry> added = new ArrayList<>();
+	private int removed = 0;
+	// the entry of each indexed area
+	private final IdentityHashMap<PtgArea, Entry> live = new IdentityHashMap<>();
+
+	/**
+	 * Adds an area, or indexes it again at its current location.  Areas
+	 * without a location aren't indexed.
+	 */
+	void add( PtgArea area )
+	{
+		remove( area );
+		Entry e = Entry.of( area );
+		if( e != null )
+		{
+			added.add( e );
+			live.put( area, e );
+		}
+	}
+
+	/**
+	 * Removes an area.  It stays in the tree, marked as removed, until the
+	 * tree is rebuilt.
+	 */
+	void remove( PtgArea area )
+	{
+		Entry e = live.remove( area );
+		if( e != null )
+		{
+			e.removed = true;
+			removed++;
+		}
+	}
+
+	/**
+	 * Returns whether the tree should be rebuilt from the current areas
+	 * before the next lookup.
+	 */
+	boolean needsRebuild()
+	{
+		int allowed = Math.max( MIN_CHANGES, entries.length / 8 );
+		return (added.size() > allowed) || (removed > allowed);
+	}
+
+	/**
+	 * Builds the tree from the given areas, which replace the indexed ones.
+	 */
+	void rebuild( List<PtgArea> areas )
+	{
+		live.clear();
+		for( PtgArea area : areas )
+		{
+			Entry e = Entry.of( area );
+			if( e != null )
+			{
+				live.put( area, e );
+			}
+		}
+		ArrayList<Entry> all = new ArrayList<>( live.values() );
+		added.clear();
+		removed = 0;
+		entries = sortTiles( all.toArray( new Entry[all.size()] ) );
+
+		ArrayList<int[]> boxes = new ArrayList<>();
+		int[] level = new int[((entries.length + NODE_SIZE) - 1) / NODE_SIZE * 4];
+		for( int i = 0; i < entries.length; i++ )
+		{
+			Entry e = entries[i];
+			extend( level, i / NODE_SIZE, e.firstRow, e.firstCol, e.lastRow, e.lastCol, (i % NODE_SIZE) == 0 );
+		}
+		boxes.add( level );
+		while( level.length > 4 )
+		{
+			int nodes = level.length / 4;
+			int[] up = new int[((nodes + NODE_SIZE) - 1) / NODE_SIZE * 4];
+			for( int i = 0; i < nodes; i++ )
+			{
+				extend( up, i / NODE_SIZE, level[i * 4], level[(i * 4) + 1], level[(i * 4) + 2], level[(i * 4) + 3], (i % NODE_SIZE) == 0 );
+			}
+			boxes.add( up );
+			level = up;
+		}
+		levels = boxes.toArray( new int[boxes.size()][] );
+	}
+
+	/**
+	 * Adds the indexed areas containing the given cell to the list.
+	 */
+	void find( int row, int col, List<Entry> found )
+	{
+		if( (levels.length > 0) && (entries.length > 0) )
+		{
+			find( levels.length - 1, 0, row, col, found );
+		}
+		for( Entry e : added )
+		{
+			if( !e.removed && e.contains( row, col ) )
+			{
+				found.add( e );
+			}
+		}
+	}
+
+	private void find( int l, int node, int row, int col, List<Entry> found )
+	{
+		int[] level = levels[l];
+		if( !contains( level, node, row, col ) )
+		{
+			return;
+		}
+		int first = node * NODE_SIZE;
+		if( l == 0 )
+		{
+			int last = Math.min( first + NODE_SIZE, entries.length );
+			for( int i = first; i < last; i++ )
+			{
+				if( !entries[i].removed && entries[i].contains( row, col ) )
+				{
+					found.add( entries[i] );
+				}
+			}
+			return;
+		}
+		int last = Math.min( first + NODE_SIZE, levels[l - 1].length / 4 );
+		for( int i = first; i < last; i++ )
+		{
+			find( l - 1, i, row, col, found );
+		}
+	}
+
+	/**
+	 * Orders the entries into tiles: vertical slices by column, each sorted by row.
+	 */
+	private static Entry[] sortTiles( Entry[] all )
+	{
+		int leaves = ((all.length + NODE_SIZE) - 1) / NODE_SIZE;
+		int sliceSize = (int) Math.ceil( Math.sqrt( leaves ) ) * NODE_SIZE;
+		long[] keys = new long[all.length];
+		for( int i = 0; i < all.length; i++ )
+		{
+			keys[i] = ((long) (all[i].firstCol + all[i].lastCol) << 32) | i;
+		}
+		Arrays.sort( keys );
+		for( int start = 0; start < all.length; start += sliceSize )
+		{
+			int end = Math.min( start + sliceSize, all.length );
+			for( int i = start; i < end; i++ )
+			{
+				int idx = (int) keys[i];
+				keys[i] = ((long) (all[idx].firstRow + all[idx].lastRow) << 32) | idx;
+			}
+			Arrays.sort( keys, start, end );
+		}
+		Entry[] sorted = new Entry[all.length];
+		for( int i = 0; i < all.length; i++ )
+		{
+			sorted[i] = all[(int) keys[i]];
+		}
+		return sorted;
+	}
+
+	private static void extend( int[] boxes, int node, int firstRow, int firstCol, int lastRow, int lastCol, boolean first )
+	{
+		int b = node * 4;
+		if( first )
+		{
+			boxes[b] = firstRow;
+			boxes[b + 1] = firstCol;
+			boxes[b + 2] = lastRow;
+			boxes[b + 3] = lastCol;
+			return;
+		}
+		boxes[b] = Math.min( boxes[b], firstRow );
+		boxes[b + 1] = Math.min( boxes[b + 1], firstCol );
+		boxes[b + 2] = Math.max( boxes[b + 2], lastRow );
+		boxes[b + 3] = Math.max( boxes[b + 3], lastCol );
+	}
+
+	private static boolean contains( int[] boxes, int node, int row, int col )
+	{
+		int b = node * 4;
+		return (row >= boxes[b]) && (row <= boxes[b + 2]) && (col >= boxes[b + 1]) && (col <= boxes[b + 3]);
+	}
+
+	/**
+	 * An indexed area with its bounds, in the row and column notation of the
+	 * tracker's location keys, see {@link PtgRef#getHashCode(int, int)}.
+	 */
+	static final class Entry
+	{
+		final PtgArea area;
+		final int firstRow;
+		final int firstCol;
+		final int lastRow;
+		final int lastCol;
+		boolean removed = false;
+
+		private Entry( PtgArea area, long first, long last )
+		{
+			this.area = area;
+			int r0 = (int) (first / XLSConstants.MAXCOLS) - 1;
+			int c0 = (int) (first % XLSConstants.MAXCOLS);
+			int r1 = (int) (last / XLSConstants.MAXCOLS) - 1;
+			int c1 = (int) (last % XLSConstants.MAXCOLS);
+			firstRow = Math.min( r0, r1 );
+			firstCol = Math.min( c0, c1 );
+			lastRow = Math.max( r0, r1 );
+			lastCol = Math.max( c0, c1 );
+		}
+
+		static Entry of( PtgArea area )
+		{
+			PtgRef first = area.getFirstPtg();
+			PtgRef last = area.getLastPtg();
+			if( (area.hashcode == -1) || (first == null) || (last == null) || (first.hashcode < 0) || (last.hashcode < 0) )
+			{
+				return null;
+			}
+			return new Entry( area, first.hashcode, last.hashcode );
+		}
+
+		boolean contains( int row, int col )
+		{
+			return (row >= firstRow) && (row <= lastRow) && (col >= firstCol) && (col <= lastCol);
+		}
+	}
+}
@@ -44,7 +44,6 @@ import org.openxls.formats.XLS.charts.GenericChartObject;
 import org.openxls.formats.XLS.formulas.FormulaParser;
 import org.openxls.formats.XLS.formulas.Ptg;
 import org.openxls.formats.XLS.formulas.PtgRef;
-import org.openxls.formats.cellformat.CellFormatFactory;
 import org.openxls.toolkit.ByteTools;
 import org.openxls.toolkit.CompatibleVector;
 import org.openxls.toolkit.FastAddVector;
@@ -172,6 +171,9 @@ public final class Boundsheet extends XLSRecord implements Sheet
 	private SortedMap<CellAddressible, BiffRec> cellsByRow = new TreeMap<>( new CellAddressible.RowMajorComparator() );
 	//	private SortedMap<CellAddressible, BiffRec> cellsByCol = new TreeMap<>( new CellAddressible.ColumnMajorComparator() );
 	private CellsByCol cellsByCol = new CellsByColImpl();
+	private transient CompactCellStore compactCells = null;    // simple value cells held outside of the maps above, see WorkBook.isCompactCells()
+	private transient RowBlockSpill rowSpill = null;    // rows appended straight to disk, written after the rows above
+	private transient DeferredSheetStream deferred = null;    // the unparsed substream, see WorkBook.isLazySheets()
 	private Map<String, String> arrFormulaLocs = new HashMap<String, String>();    // use for trapping array formula refs to original cell reference   [OOXML Array Formulas]
 	private SortedMap<ColumnRange, Colinfo> colinfos = new TreeMap<>( new ColumnRange.Comparator() );
 	private AbstractList SheetRecs = new ArrayList();
@@ -955,7 +957,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 						}
 						try
 						{
-							String output = CellFormatFactory.fromPatternString( c.getFormatPattern() ).format( o.toString() );
+							String output = getWorkBook().getCellFormat( c.getFormatPattern() ).format( o.toString() );
 							if( output.indexOf( "," ) != -1 )
 							{
 								output = "\"" + output + "\"";
@@ -1371,6 +1373,13 @@ public final class Boundsheet extends XLSRecord implements Sheet
 	 */
 	public ArrayList<BiffRec> getCellsByCol( int colNum ) throws CellNotFoundException
 	{
+		if( compactCells != null )
+		{
+			for( CellRec cell : compactCells.takeColumn( colNum, this ) )
+			{
+				indexCell( cell );
+			}
+		}
 		List<? extends BiffRec> theCells = cellsByCol.get( colNum );
 		if( theCells.size() == 0 )
 		{
@@ -1397,6 +1406,13 @@ public final class Boundsheet extends XLSRecord implements Sheet
 	 */
 	public ArrayList<BiffRec> getCellsByRow( int rowNum ) throws CellNotFoundException
 	{
+		if( compactCells != null )
+		{
+			for( CellRec cell : compactCells.getRow( rowNum, this, true ) )
+			{
+				indexCell( cell );
+			}
+		}
 		SortedMap<CellAddressible, BiffRec> theCells = cellsByRow.subMap( new CellAddressible.Reference( rowNum, 0 ),
 		                                                                  new CellAddressible.Reference( rowNum + 1, 0 ) );
 		if( theCells.size() == 0 )
@@ -1416,6 +1432,62 @@ public final class Boundsheet extends XLSRecord implements Sheet
 		return myidx;
 	}
 
+	/**
+	 * get the spill holding rows appended to this sheet without being
+	 * kept in memory, or null if none have been
+	 */
+	public RowBlockSpill getRowSpill()
+	{
+		return rowSpill;
+	}
+
+	/**
+	 * get the spill for appending rows to this sheet, creating it if needed.
+	 * <p/>
+	 * Spilled rows are written after all of the sheet's in-memory rows, so the
+	 * first row that may be appended is the one after the last existing row.
+	 */
+	public RowBlockSpill createRowSpill()
+	{
+		if( rowSpill == null )
+		{
+			rowSpill = new RowBlockSpill( this );
+			int last = -1;
+			for( Integer r : rows.keySet() )
+			{
+				last = Math.max( last, r );
+			}
+			rowSpill.setNextRow( last + 1 );
+		}
+		return rowSpill;
+	}
+
+	/**
+	 * returns true if this sheet's records have not been parsed yet
+	 *
+	 * @see WorkBook#isLazySheets()
+	 */
+	public boolean isDeferred()
+	{
+		return deferred != null;
+	}
+
+	/**
+	 * get the unparsed substream of this sheet, or null if the sheet has been parsed
+	 */
+	DeferredSheetStream getDeferredStream()
+	{
+		return deferred;
+	}
+
+	/**
+	 * set the unparsed substream of this sheet, null once the sheet is parsed
+	 */
+	void setDeferredStream( DeferredSheetStream stream )
+	{
+		deferred = stream;
+	}
+
 	/**
 	 * remove rec from the vector, includes firing
 	 * a changeevent.
@@ -1846,6 +1918,27 @@ public final class Boundsheet extends XLSRecord implements Sheet
 		{
 			throw new IllegalArgumentException( "CellRec cannot be null." );
 		}
+		// while the sheet is being read, simple value cells go to the compact store
+		if( (myeof == null) && (wkbook != null) && wkbook.isCompactCells() && CompactCellStore.accepts( cell ) )
+		{
+			if( compactCells == null )
+			{
+				compactCells = new CompactCellStore();
+			}
+			if( compactCells.put( cell ) )
+			{
+				if( rows.get( cell.getRowNumber() ) == null )
+				{
+					addNewRow( cell );
+				}
+				updateDimensions( cell.getRowNumber(), cell.getColNumber() );
+				return;
+			}
+		}
+		if( compactCells != null )
+		{
+			compactCells.remove( cell.getRowNumber(), cell.getColNumber() );
+		}
 		cellsByRow.put( cell, cell );
 		cellsByCol.add( cell );
 
@@ -1860,6 +1953,251 @@ public final class Boundsheet extends XLSRecord implements Sheet
 		updateDimensions( cell.getRowNumber(), cell.getColNumber() );
 	}
 
+	/**
+	 * Puts a cell materialized from the compact store into the cell maps.
+	 */
+	private void indexCell( CellRec cell )
+	{
+		cellsByRow.put( cell, cell );
+		cellsByCol.add( cell );
+		Row row = rows.get( cell.getRowNumber() );
+		if( null == row )
+		{
+			row = addNewRow( cell );
+		}
+		row.addCell( cell );
+	}
+
+	/**
+	 * Returns the cells of a row in column order for output.
+	 * <p/>
+	 * Cells held in the compact store are returned as transient records
+	 * which are not retained by the sheet.
+	 */
+	List<BiffRec> getCellsForOutput( int rowNum )
+	{
+		List<BiffRec> cells = new ArrayList<BiffRec>( cellsByRow.subMap( new CellAddressible.Reference( rowNum, 0 ),
+		                                                                 new CellAddressible.Reference( rowNum + 1, 0 ) ).values() );
+		if( (compactCells == null) || compactCells.isEmpty() )
+		{
+			return cells;
+		}
+		List<CellRec> compact = compactCells.getRow( rowNum, this, false );
+		if( compact.isEmpty() )
+		{
+			return cells;
+		}
+		List<BiffRec> merged = new ArrayList<BiffRec>( cells.size() + compact.size() );
+		int i = 0;
+		for( CellRec cell : compact )
+		{
+			while( (i < cells.size()) && (cells.get( i ).getColNumber() < cell.getColNumber()) )
+			{
+				merged.add( cells.get( i++ ) );
+			}
+			merged.add( cell );
+		}
+		while( i < cells.size() )
+		{
+			merged.add( cells.get( i++ ) );
+		}
+		return merged;
+	}
+
+	/**
+	 * Walks the cells within the given bounds straight from the cell storage
+	 * of this sheet.
+	 * <p/>
+	 * Unlike getCell this does not create records for cells held in compact
+	 * form, so it is suited to reading large ranges, ie: for aggregate functions.
+	 */
+	public void visitCells( int firstRow, int firstCol, int lastRow, int lastCol, CellRangeVisitor visitor )
+	{
+		if( (lastRow < firstRow) || (lastCol < firstCol) )
+		{
+			return;
+		}
+		SortedMap<CellAddressible, BiffRec> band = cellsByRow.subMap( new CellAddressible.Reference( firstRow, 0 ),
+		                                                              new CellAddressible.Reference( lastRow + 1, 0 ) );
+		for( BiffRec cell : band.values() )
+		{
+			if( cell.getOpcode() == MULBLANK )
+			{
+				Mulblank mulblank = (Mulblank) cell;
+				int first = Math.max( firstCol, mulblank.getColFirst() );
+				int last = Math.min( lastCol, mulblank.getColLast() );
+				for( int c = first; c <= last; c++ )
+				{
+					mulblank.setCurrentCell( (short) c );
+					visitor.visitCell( cell.getRowNumber(), c, cell );
+				}
+			}
+			else
+			{
+				int c = cell.getColNumber();
+				if( (c >= firstCol) && (c <= lastCol) )
+				{
+					visitor.visitCell( cell.getRowNumber(), c, cell );
+				}
+			}
+		}
+		if( (compactCells != null) && !compactCells.isEmpty() )
+		{
+			compactCells.visit( firstRow, firstCol, lastRow, lastCol, visitor, this );
+		}
+	}
+
+	/**
+	 * Applies an XF to a block of this sheet in one pass over its cell storage.
+	 * <p/>
+	 * Existing cells within the bounds, including those held in compact form
+	 * and the blanks of a MULBLANK, are set to the XF.  If the bounds span
+	 * whole columns, the columns are given the XF as their default format; if
+	 * they span whole rows, the rows are.  Otherwise empty cells within the
+	 * bounds are only formatted if createBlanks is set, by adding a BLANK
+	 * record for each.
+	 * <p/>
+	 * Rows or columns given as -1, as ExcelTools.getRangeRowCol returns for
+	 * ranges such as "A:A" or "1:2", stand for all rows or columns.
+	 *
+	 * @param ixfe         the index of the XF record to apply
+	 * @param createBlanks whether to add blank cells to hold the format
+	 */
+	public void applyIxfe( int firstRow, int firstCol, int lastRow, int lastCol, int ixfe, boolean createBlanks )
+	{
+		boolean isExcel2007 = getWorkBook().getIsExcel2007();
+		int maxRow = (isExcel2007 ? MAXROWS : MAXROWS_BIFF8) - 1;
+		int maxCol = (isExcel2007 ? MAXCOLS : MAXCOLS_BIFF8) - 1;
+		if( (firstRow < 0) && (lastRow < 0) )
+		{
+			firstRow = 0;
+			lastRow = maxRow;
+		}
+		if( (firstCol < 0) && (lastCol < 0) )
+		{
+			firstCol = 0;
+			lastCol = maxCol;
+		}
+		lastRow = Math.min( lastRow, maxRow );
+		lastCol = Math.min( lastCol, maxCol );
+		if( (firstRow < 0) || (firstCol < 0) || (lastRow < firstRow) || (lastCol < firstCol) )
+		{
+			return;
+		}
+
+		SortedMap<CellAddressible, BiffRec> band = cellsByRow.subMap( new CellAddressible.Reference( firstRow, 0 ),
+		                                                              new CellAddressible.Reference( lastRow + 1, 0 ) );
+		for( BiffRec cell : band.values() )
+		{
+			if( cell.getOpcode() == MULBLANK )
+			{
+				Mulblank mulblank = (Mulblank) cell;
+				int first = Math.max( firstCol, mulblank.getColFirst() );
+				int last = Math.min( lastCol, mulblank.getColLast() );
+				for( int c = first; c <= last; c++ )
+				{
+					mulblank.setCurrentCell( (short) c );
+					mulblank.setIxfe( ixfe );
+				}
+			}
+			else
+			{
+				int c = cell.getColNumber();
+				if( (c >= firstCol) && (c <= lastCol) )
+				{
+					cell.setXFRecord( ixfe );
+				}
+			}
+		}
+		if( (compactCells != null) && !compactCells.isEmpty() )
+		{
+			compactCells.setIxfe( firstRow, firstCol, lastRow, lastCol, ixfe );
+		}
+
+		if( (firstRow == 0) && (lastRow == maxRow) )
+		{
+			applyColinfoIxfe( firstCol, lastCol, ixfe );
+		}
+		else if( (firstCol == 0) && (lastCol == maxCol) )
+		{
+			for( int r = firstRow; r <= lastRow; r++ )
+			{
+				addNewRow( r ).setIxfe( ixfe );
+			}
+		}
+		else if( createBlanks )
+		{
+			for( int r = firstRow; r <= lastRow; r++ )
+			{
+				for( int c = firstCol; c <= lastCol; c++ )
+				{
+					if( (cellsByRow.get( new CellAddressible.Reference( r, c ) ) == null) &&
+							((compactCells == null) || !compactCells.contains( r, c )) )
+					{
+						addValue( null, new int[]{ r, c }, ixfe );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the default format of a span of columns, splitting the Colinfos
+	 * which extend past either end of the span.
+	 */
+	private void applyColinfoIxfe( int firstCol, int lastCol, int ixfe )
+	{
+		int c = firstCol;
+		for( Colinfo ci : new ArrayList<>( colinfos.values() ) )
+		{
+			int first = ci.getColFirst();
+			int last = ci.getColLast();
+			if( last < firstCol )
+			{
+				continue;
+			}
+			if( first > lastCol )
+			{
+				break;
+			}
+			if( first > c )
+			{
+				createColinfo( c, first - 1, Colinfo.DEFAULT_COLWIDTH, ixfe, 0 );
+			}
+			if( (first >= firstCol) && (last <= lastCol) )
+			{
+				ci.setIxfe( ixfe );
+			}
+			else
+			{
+				removeColInfo( ci );
+				if( first < firstCol )
+				{
+					createColinfo( first, firstCol - 1, ci );
+				}
+				createColinfo( Math.max( first, firstCol ), Math.min( last, lastCol ), ci.getColWidth(), ixfe, ci.getGrbit() );
+				if( last > lastCol )
+				{
+					createColinfo( lastCol + 1, last, ci );
+				}
+			}
+			c = last + 1;
+		}
+		if( c <= lastCol )
+		{
+			createColinfo( c, lastCol, Colinfo.DEFAULT_COLWIDTH, ixfe, 0 );
+		}
+	}
+
+	/**
+	 * Returns the number of cells of this sheet which are held in the compact
+	 * store rather than as individual records.
+	 */
+	public int getCompactCellCount()
+	{
+		return (compactCells == null) ? 0 : compactCells.size();
+	}
+
 	/**
 	 * set the Bof record for this Boundsheet
 	 */
@@ -1953,6 +2291,15 @@ public final class Boundsheet extends XLSRecord implements Sheet
 	{
 		// get the nearest entry from the cell map
 		BiffRec theCell = cellsByRow.get( new CellAddressible.Reference( row, col ) );
+		if( (null == theCell) && (compactCells != null) )
+		{
+			CellRec cell = compactCells.take( row, col, this );
+			if( cell != null )
+			{
+				indexCell( cell );
+				theCell = cell;
+			}
+		}
 		if( null == theCell )
 		{
 			throw new CellNotFoundException( sheetname, row, col );
@@ -1971,6 +2318,13 @@ public final class Boundsheet extends XLSRecord implements Sheet
 	@Override
 	public BiffRec[] getCells()
 	{
+		if( (compactCells != null) && !compactCells.isEmpty() )
+		{
+			for( CellRec cell : compactCells.takeAll( this ) )
+			{
+				indexCell( cell );
+			}
+		}
 		Collection<BiffRec> cells = cellsByRow.values();
 		return cells.toArray( new BiffRec[cells.size()] );
 	}
@@ -3190,6 +3544,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 		cellsByRow = new TreeMap<>( new CellAddressible.RowMajorComparator() );
 
 		cellsByCol = new CellsByColImpl();
+		compactCells = null;
 		// TODO: clear recs
 		arrayformulas.clear();
 		// TODO: clear recs
@@ -3315,12 +3670,25 @@ public final class Boundsheet extends XLSRecord implements Sheet
 			myidx.close();
 			myidx = null;
 		}
-		for( Object printRec : printRecs )
+		if( rowSpill != null )
 		{
-			XLSRecord r = (XLSRecord) printRec;
-			r.close();
+			rowSpill.close();
+			rowSpill = null;
+		}
+		if( deferred != null )
+		{
+			deferred.close();
+			deferred = null;
+		}
+		if( printRecs != null )
+		{
+			for( Object printRec : printRecs )
+			{
+				XLSRecord r = (XLSRecord) printRec;
+				r.close();
+			}
+			printRecs.clear();
 		}
-		printRecs.clear();
 
 		// clear out refs by sheet recs
 		for( int j = 0; j < SheetRecs.size(); j++ )
@@ -4545,7 +4913,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 							+ f.substring( f.lastIndexOf( "/" ) + 1 ) + ".rels" );
 					if( target != null )
 					{
-						String[] embeds = OOXMLReader.storeEmbeds( zip, target, p, externalDir );   // passes thru embedded objects
+						String[] embeds = OOXMLReader.storeEmbeds( bk, zip, target, p, externalDir );   // passes thru embedded objects
 						addOOXMLShape( new Object[]{ vml, embeds } );
 					}
 					else
@@ -4692,10 +5060,11 @@ public final class Boundsheet extends XLSRecord implements Sheet
 	void parseOOXML( WorkBookHandle bk,
 	                 WorkSheetHandle sheet,
 	                 InputStream ii,
-	                 ArrayList sst,
+	                 List sst,
 	                 ArrayList formulas,
 	                 ArrayList hyperlinks,
-	                 HashMap inlineStrs ) throws XmlPullParserException, IOException
+	                 HashMap inlineStrs,
+	                 SheetDataBuffer sheetData ) throws XmlPullParserException, IOException
 	{
 		int sfindex = formulas.size();
 
@@ -4855,78 +5224,26 @@ public final class Boundsheet extends XLSRecord implements Sheet
 						col.setHidden( true );
 					}
 				}
-				else if( tnm.equals( "row" ) )
+				else if( tnm.equals( "sheetData" ) )
 				{
-					int ht = -1, ixfe = 0;
-					boolean customHeight = false;
-					for( int i = 0; i < xpp.getAttributeCount(); i++ )
-					{ // r, v= row #+1, ht, ...
-						String nm = xpp.getAttributeName( i );
-						String v = xpp.getAttributeValue( i );
-						if( nm.equals( "r" ) )
-						{
-							int rownum = Integer.valueOf( v ) - 1;
-							r = insertRow( rownum,
-							               false ); // now insertRow with no shift rows does NOT add a blank cell so no need to delete extra cell anymore
-							r.setIxfe( getWorkBook().getDefaultIxfe() );
-						}
-						else if( nm.equals( "ht" ) )
-						{
-							ht = (int) (new Double( v ) * OOXMLReader.rowHtFactor);
-						}
-						else if( nm.equals( "s" ) )
-						{   // customFormat?
-							ixfe = Integer.valueOf( v );
-						}
-						else if( nm.equals( "customFormat" ) )
+					if( sheetData != null )
+					{ // read ahead of the rest of the part; the element itself is empty
+						if( inlineStrs == null )
 						{
-							r.setIxfe( ixfe );
-						}
-						else if( nm.equals( "hidden" ) )
-						{
-							r.setHidden( true );
-						}
-						else if( nm.equals( "collapsed" ) )
-						{       // 20090513 KSC: Added collapsed, outlineLevel [BUGTRACKER 2371]
-							boolean h = r.isHidden(); // setCollapsed unconditionally sets hidden
-							r.setCollapsed( true );
-							if( !h )
-							{
-								r.setHidden( false );
-							}
-						}
-						else if( nm.equals( "outlineLevel" ) )
-						{
-							r.setOutlineLevel( Integer.valueOf( v ) );
-						}
-						else if( nm.equals( "customHeight" ) )
-						{
-							customHeight = true;
-						}
-						else if( nm.equals( "thickBot" ) )
-						{
-							r.setHasAnyThickBottomBorder( true );
-						}
-						else if( nm.equals( "thickTop" ) )
-						{
-							r.setHasAnyThickTopBorder( true );
-						}
-						if( (ht != -1) && customHeight )    // if customHeight is NOT set do not set row height (encountered in Baxter XLSM templates)
-						{
-							r.setRowHeight( ht );
+							inlineStrs = new HashMap();
 						}
+						bindOOXMLSheetData( bk, sheet, sheetData, formulas, inlineStrs, sfindex );
 					}
-					// if customheight is NOT specified do not set row height
+				}
+				else if( tnm.equals( "row" ) )
+				{
+					r = addOOXMLRow( r, SheetDataBuffer.getAttributes( xpp ) );
 				}
 				else if( tnm.equals( "c" ) )
 				{// element c child v= value
 					if( cellAddr != null )
 					{
-						if( r.getExplicitFormatSet() || (((formatId != getWorkBook().getDefaultIxfe()) && (formatId != 0))) )
-						{ //default or not specified NOTE: default for OOXML is 0 not 15
-							int[] rc = ExcelTools.getRowColFromString( cellAddr );
-							OOXMLReader.sheetAdd( sheet, null, rc[0], rc[1], formatId );
-						}
+						addOOXMLBlank( sheet, r, ExcelTools.getRowColFromString( cellAddr ), formatId );
 						cellAddr = null;
 					}
 					formatId = 0;
@@ -4959,9 +5276,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 						inlineStrs = new HashMap();
 					}
 					String s = OOXMLReader.getInlineString( xpp );
-					inlineStrs.put( getSheetName() + "!" + cellAddr, s );
-					int[] rc = ExcelTools.getRowColFromString( cellAddr );
-					OOXMLReader.sheetAdd( sheet, "", rc[0], rc[1], formatId );   // add placeholder here
+					addOOXMLInlineString( sheet, cellAddr, ExcelTools.getRowColFromString( cellAddr ), s, formatId, inlineStrs );
 					cellAddr = null;
 				}
 				else if( tnm.equals( "f" ) )
@@ -4969,32 +5284,9 @@ public final class Boundsheet extends XLSRecord implements Sheet
 					if( cellAddr != null )
 					{
 						// do not process now since formulas may be dependent upon other sheet data; save and process after all sheets have been added
-						String ftype = type, ref = "", si = "", ca = null;
-						for( int i = 0; i < xpp.getAttributeCount(); i++ )
-						{
-							String nm = xpp.getAttributeName( i );
-							String v = xpp.getAttributeValue( i );
-							if( nm.equals( "t" ) )
-							{
-								ftype += "/" + v;      // add to data type the formula type:  shared, array, datatable, normal
-							}
-							else if( nm.equals( "ref" ) ) // only valid for master shared formula or array record
-							{
-								ref = v;
-							}
-							else if( nm.equals( "si" ) )  // shared index only valid for shared formulas
-							{
-								si = String.valueOf( Integer.parseInt( v ) + sfindex );
-							}
-							else if( nm.equals( "ca" ) )  // calculate cell, always set for volatile functions
-							{
-								ca = "1";
-							}
-						}
+						String[] attrs = SheetDataBuffer.getAttributes( xpp );
 						String v = OOXMLReader.getNextText( xpp );
-						formulas.add( new String[]{
-								getSheetName(), cellAddr, "=" + v, si, ref, ftype, ca, Integer.valueOf( formatId ).toString(), ""
-						} );
+						formulas.add( newOOXMLFormula( cellAddr, type, attrs, v, formatId, sfindex ) );
 						type = "f"; // cell will not be added below; rather, formula cells are processed en mass in parse
 					}
 				}
@@ -5007,57 +5299,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 					if( cellAddr != null )
 					{  // shouldn't be
 						String v = OOXMLAdapter.getNextText( xpp );
-						// use fast add method - uses int[] location
-						int[] rc = ExcelTools.getRowColFromString( cellAddr );
-						if( type.equals( "s" ) )
-						{ // shared string
-							// the SST has already been populated, now we just need to add
-							// Labelsst recs and hook up with the isst.
-							Labelsst labl = Labelsst.getPrototype( null, bk.getWorkBook() );
-							labl.setIsst( Integer.valueOf( v ) );
-							labl.setIxfe( formatId );
-							addRecord( labl, rc );
-						}
-						else if( type.equals( "n" ) )
-						{
-							try
-							{
-								if( !v.equals( "null" ) )
-								{
-									OOXMLReader.sheetAdd( sheet, Integer.valueOf( v ), rc[0], rc[1], formatId );
-								}
-								else    // Should nepver get here
-								{
-									log.warn( "OOXMLAdapter.parse: Unexpected null encountered at: " + cellAddr );
-								}
-							}
-							catch( NumberFormatException n )
-							{ // could be a double or float instead of an int
-								try
-								{
-									OOXMLReader.sheetAdd( sheet, new Double( v ), rc[0], rc[1], formatId );
-								}
-								catch( NumberFormatException nn )
-								{
-									OOXMLReader.sheetAdd( sheet, new Float( v ), rc[0], rc[1], formatId );
-								}
-							}
-						}
-						else if( type.equals( "b" ) )
-						{
-							boolean trx = (v.equals( "1" ) || v.equalsIgnoreCase( "true" ));
-							OOXMLReader.sheetAdd( sheet, trx, rc[0], rc[1], formatId );
-						}
-						else if( type.equals( "f" ) )
-						{ // grab cached value
-							String[] s = (String[]) formulas.get( formulas.size() - 1 );
-							s[8] = v;
-							formulas.set( formulas.size() - 1, s );
-						}
-						else if( !type.equals( "e" ) )
-						{ // added handling for 'e' type which is a formula as well (containing an ERR cachedval)
-							OOXMLReader.sheetAdd( sheet, v, rc[0], rc[1], formatId );
-						}
+						addOOXMLValue( bk, sheet, cellAddr, ExcelTools.getRowColFromString( cellAddr ), type, v, formatId, formulas );
 						cellAddr = null;   // denote we processed this cell
 					}
 				}
@@ -5156,16 +5398,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 				String endTag = xpp.getName();
 				if( endTag.equals( "row" ) && (cellAddr != null) )
 				{
-
-					int[] rc = ExcelTools.getRowColFromString( cellAddr );
-					// if masking an explicit row format or if it's a unique format, set to new blank cell
-					if( r.getExplicitFormatSet() || (((formatId != getWorkBook().getDefaultIxfe()) && (formatId != 0))) )
-					{ //default or not specified NOTE: default for OOXML is 0 not 15 (unless converted from XLS ((:
-//                         if (r.myRow.getExplicitFormatSet() || (/*formatId!=15 && */formatId!=0 && uniqueFormat)) { //default or not specified NOTE: default for OOXML==0 NOT 15
-						OOXMLReader.sheetAdd( sheet, null, rc[0], rc[1], formatId );
-//                         } else{
-//                             sheetAdd(sheet,null,rc[0],rc[1],formatId);
-					}
+					addOOXMLBlank( sheet, r, ExcelTools.getRowColFromString( cellAddr ), formatId );
 					cellAddr = null;
 				}
 				else /**/if( endTag.equals( "worksheet" ) )  // we're done!
@@ -5177,6 +5410,247 @@ public final class Boundsheet extends XLSRecord implements Sheet
 		}
 	}
 
+	/**
+	 * Binds the rows and cells of a worksheet part which were read ahead by a
+	 * {@link SheetDataBuffer}, as they would be bound parsing the part.
+	 */
+	private void bindOOXMLSheetData( WorkBookHandle bk,
+	                                 WorkSheetHandle sheet,
+	                                 SheetDataBuffer sheetData,
+	                                 ArrayList formulas,
+	                                 HashMap inlineStrs,
+	                                 int sfindex )
+	{
+		Row r = null;
+		for( SheetDataBuffer.RowData row : sheetData.getRows() )
+		{
+			if( row.attrs != null )
+			{
+				r = addOOXMLRow( r, row.attrs );
+			}
+			for( SheetDataBuffer.CellData c : row.cells )
+			{
+				if( c.addr == null )
+				{
+					continue;
+				}
+				String type = c.type;
+				if( c.formula != null )
+				{
+					formulas.add( newOOXMLFormula( c.addr, type, c.formulaAttrs, c.formula, c.formatId, sfindex ) );
+					type = "f";
+				}
+				if( c.inlineString != null )
+				{
+					addOOXMLInlineString( sheet, c.addr, c.rc, c.inlineString, c.formatId, inlineStrs );
+				}
+				else if( c.value != null )
+				{
+					addOOXMLValue( bk, sheet, c.addr, c.rc, type, c.value, c.formatId, formulas );
+				}
+				else
+				{
+					addOOXMLBlank( sheet, r, c.rc, c.formatId );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Handles the attributes of an OOXML row element, inserting the row if
+	 * it is numbered.
+	 *
+	 * @param r     the current row
+	 * @param attrs alternating attribute names and values
+	 * @return the row the attributes apply to
+	 */
+	private Row addOOXMLRow( Row r, String[] attrs )
+	{
+		int ht = -1, ixfe = 0;
+		boolean customHeight = false;
+		for( int i = 0; i < attrs.length; i += 2 )
+		{ // r, v= row #+1, ht, ...
+			String nm = attrs[i];
+			String v = attrs[i + 1];
+			if( nm.equals( "r" ) )
+			{
+				int rownum = Integer.valueOf( v ) - 1;
+				r = insertRow( rownum,
+				               false ); // now insertRow with no shift rows does NOT add a blank cell so no need to delete extra cell anymore
+				r.setIxfe( getWorkBook().getDefaultIxfe() );
+			}
+			else if( nm.equals( "ht" ) )
+			{
+				ht = (int) (new Double( v ) * OOXMLReader.rowHtFactor);
+			}
+			else if( nm.equals( "s" ) )
+			{   // customFormat?
+				ixfe = Integer.valueOf( v );
+			}
+			else if( nm.equals( "customFormat" ) )
+			{
+				r.setIxfe( ixfe );
+			}
+			else if( nm.equals( "hidden" ) )
+			{
+				r.setHidden( true );
+			}
+			else if( nm.equals( "collapsed" ) )
+			{       // 20090513 KSC: Added collapsed, outlineLevel [BUGTRACKER 2371]
+				boolean h = r.isHidden(); // setCollapsed unconditionally sets hidden
+				r.setCollapsed( true );
+				if( !h )
+				{
+					r.setHidden( false );
+				}
+			}
+			else if( nm.equals( "outlineLevel" ) )
+			{
+				r.setOutlineLevel( Integer.valueOf( v ) );
+			}
+			else if( nm.equals( "customHeight" ) )
+			{
+				customHeight = true;
+			}
+			else if( nm.equals( "thickBot" ) )
+			{
+				r.setHasAnyThickBottomBorder( true );
+			}
+			else if( nm.equals( "thickTop" ) )
+			{
+				r.setHasAnyThickTopBorder( true );
+			}
+			if( (ht != -1) && customHeight )    // if customHeight is NOT set do not set row height (encountered in Baxter XLSM templates)
+			{
+				r.setRowHeight( ht );
+			}
+		}
+		// if customheight is NOT specified do not set row height
+		return r;
+	}
+
+	/**
+	 * Adds a blank cell for an OOXML cell without a value, if its format
+	 * differs from the default
+	 */
+	private void addOOXMLBlank( WorkSheetHandle sheet, Row r, int[] rc, int formatId )
+	{
+		// if masking an explicit row format or if it's a unique format, set to new blank cell
+		if( r.getExplicitFormatSet() || (((formatId != getWorkBook().getDefaultIxfe()) && (formatId != 0))) )
+		{ //default or not specified NOTE: default for OOXML is 0 not 15 (unless converted from XLS ((:
+			OOXMLReader.sheetAdd( sheet, null, rc[0], rc[1], formatId );
+		}
+	}
+
+	/**
+	 * Adds a placeholder for an inline string cell; the string is set after
+	 * all sheets have been added
+	 */
+	private void addOOXMLInlineString( WorkSheetHandle sheet, String cellAddr, int[] rc, String s, int formatId, HashMap inlineStrs )
+	{
+		inlineStrs.put( getSheetName() + "!" + cellAddr, s );
+		OOXMLReader.sheetAdd( sheet, "", rc[0], rc[1], formatId );   // add placeholder here
+	}
+
+	/**
+	 * Returns the formula of an OOXML cell in the form saved for adding after
+	 * all sheets have been added
+	 *
+	 * @param attrs alternating attribute names and values of the f element
+	 */
+	private String[] newOOXMLFormula( String cellAddr, String type, String[] attrs, String formula, int formatId, int sfindex )
+	{
+		String ftype = type, ref = "", si = "", ca = null;
+		for( int i = 0; i < attrs.length; i += 2 )
+		{
+			String nm = attrs[i];
+			String v = attrs[i + 1];
+			if( nm.equals( "t" ) )
+			{
+				ftype += "/" + v;      // add to data type the formula type:  shared, array, datatable, normal
+			}
+			else if( nm.equals( "ref" ) ) // only valid for master shared formula or array record
+			{
+				ref = v;
+			}
+			else if( nm.equals( "si" ) )  // shared index only valid for shared formulas
+			{
+				si = String.valueOf( Integer.parseInt( v ) + sfindex );
+			}
+			else if( nm.equals( "ca" ) )  // calculate cell, always set for volatile functions
+			{
+				ca = "1";
+			}
+		}
+		return new String[]{
+				getSheetName(), cellAddr, "=" + formula, si, ref, ftype, ca, Integer.valueOf( formatId ).toString(), ""
+		};
+	}
+
+	/**
+	 * Adds the value of an OOXML cell based upon the cell data type
+	 */
+	private void addOOXMLValue( WorkBookHandle bk,
+	                            WorkSheetHandle sheet,
+	                            String cellAddr,
+	                            int[] rc,
+	                            String type,
+	                            String v,
+	                            int formatId,
+	                            ArrayList formulas )
+	{
+		// use fast add method - uses int[] location
+		if( type.equals( "s" ) )
+		{ // shared string
+			// the SST has already been populated, now we just need to add
+			// Labelsst recs and hook up with the isst.
+			Labelsst labl = Labelsst.getPrototype( null, bk.getWorkBook() );
+			labl.setIsst( Integer.valueOf( v ) );
+			labl.setIxfe( formatId );
+			addRecord( labl, rc );
+		}
+		else if( type.equals( "n" ) )
+		{
+			try
+			{
+				if( !v.equals( "null" ) )
+				{
+					OOXMLReader.sheetAdd( sheet, Integer.valueOf( v ), rc[0], rc[1], formatId );
+				}
+				else    // Should nepver get here
+				{
+					log.warn( "OOXMLAdapter.parse: Unexpected null encountered at: " + cellAddr );
+				}
+			}
+			catch( NumberFormatException n )
+			{ // could be a double or float instead of an int
+				try
+				{
+					OOXMLReader.sheetAdd( sheet, new Double( v ), rc[0], rc[1], formatId );
+				}
+				catch( NumberFormatException nn )
+				{
+					OOXMLReader.sheetAdd( sheet, new Float( v ), rc[0], rc[1], formatId );
+				}
+			}
+		}
+		else if( type.equals( "b" ) )
+		{
+			boolean trx = (v.equals( "1" ) || v.equalsIgnoreCase( "true" ));
+			OOXMLReader.sheetAdd( sheet, trx, rc[0], rc[1], formatId );
+		}
+		else if( type.equals( "f" ) )
+		{ // grab cached value
+			String[] s = (String[]) formulas.get( formulas.size() - 1 );
+			s[8] = v;
+			formulas.set( formulas.size() - 1, s );
+		}
+		else if( !type.equals( "e" ) )
+		{ // added handling for 'e' type which is a formula as well (containing an ERR cachedval)
+			OOXMLReader.sheetAdd( sheet, v, rc[0], rc[1], formatId );
+		}
+	}
+
 	/**
 	 * NOTE: commentsX.xml also needs legacy drawing info (vmlDrawingX.vml)
 	 * to define the text box itself including position and size, plus the vml elements
@@ -5495,7 +5969,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 										{ // should!
 											dr[1] = dr[1].substring( dr[1].lastIndexOf( "/" ) + 1 );
 											ch.addChartEmbed( new String[]{ dr[0], externalDir + dr[1] } );
-											OOXMLReader.passThrough( zip,
+											OOXMLReader.passThrough( bk, zip,
 											                         parentDir + dr[1],
 											                         externalDir + dr[1] );   // Store Embedded Object on disk for later retrieval
 										}
@@ -5505,7 +5979,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 											parentp = parentp.substring( 0, parentp.lastIndexOf( "/" ) + 1 );
 											dr[1] = dr[1].substring( dr[1].lastIndexOf( "/" ) + 1 );
 											ch.addChartEmbed( new String[]{ dr[0], externalDir + dr[1] } );
-											OOXMLReader.passThrough( zip,
+											OOXMLReader.passThrough( bk, zip,
 											                         parentp + dr[1],
 											                         externalDir + dr[1] ); // save the original target file for later re-packaging
 										}
@@ -5537,7 +6011,7 @@ public final class Boundsheet extends XLSRecord implements Sheet
 								String imgFile = OOXMLReader.parsePathForZip( OOXMLReader.getFilename( drawingFiles, t.getEmbed() ),
 								                                              parentDir );    // look up embedded rid in content list to get filename
 								t.setEmbedFilename( imgFile );        // save embedded filename for later retrieval
-								OOXMLReader.passThrough( zip,
+								OOXMLReader.passThrough( bk, zip,
 								                         imgFile,
 								                         externalDir + imgFile );   // Store Embedded Object on disk for later retrieval
 							}
@@ -5712,7 +6186,14 @@ public final class Boundsheet extends XLSRecord implements Sheet
 	 */
 	private Row addNewRow( BiffRec cell )
 	{
-		int rn = cell.getRowNumber();
+		return addNewRow( cell.getRowNumber() );
+	}
+
+	/**
+	 * Adds an empty Row record, or returns the Row if it already exists
+	 */
+	private Row addNewRow( int rn )
+	{
 		if( getRowByNumber( rn ) != null )
 		{
 			return getRowByNumber( rn ); // already exists!
@@ -427,6 +427,12 @@ public class ByteStreamer implements Serializable, XLSConstants
 				rec.setData( ((Continue) rec).maskedMso.getData() );    // ensure any mso changes are propogated up
 			}
 			int rln = rec.getLength();  //length of total rec data including continue
+			if( rec instanceof PreencodedRecord )
+			{ // already complete records, no continues to account for
+				dlen += rln;
+				recpos += rln;
+				continue;
+			}
 			int numcx = rln / MAXRECLEN;    // num continues?
 			if( ((rln % MAXRECLEN) <= 4) && (numcx > 0) )    // hits boundary; since rlen==datalen+4, numcx is 1 more than actual continues
 			{
@@ -479,7 +485,11 @@ public class ByteStreamer implements Serializable, XLSConstants
 			try
 			{ // output the rec bytes
 				// deal with CONTINUE record changes before streaming
-				if( ContinueHandler.createContinues( rec, out, this ) )
+				if( rec instanceof PreencodedRecord )
+				{
+					((PreencodedRecord) rec).writeTo( out );
+				}
+				else if( ContinueHandler.createContinues( rec, out, this ) )
 				{
 					// Logger.logInfo("Created continues for: " + rec.toString());
 				}
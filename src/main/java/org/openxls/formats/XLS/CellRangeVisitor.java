@@ -0,0 +1,44 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+/**
+ * Receives the cells of a rectangular range of a sheet, as walked by
+ * {@link Boundsheet#visitCells(int, int, int, int, CellRangeVisitor)}.
+ * <p/>
+ * Only existing cells are visited and the order is unspecified; use the row
+ * and column arguments to place them.
+ */
+public interface CellRangeVisitor
+{
+	/**
+	 * Called for a NUMBER or RK cell which is held in compact form and has no record.
+	 */
+	public void visitNumber( int row, int col, double value );
+
+	/**
+	 * Called for every other cell.  A MULBLANK is visited once per column
+	 * within the range, with its current cell set to that column.
+	 */
+	public void visitCell( int row, int col, BiffRec cell );
+}
@@ -0,0 +1,513 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import org.openxls.toolkit.ByteTools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented storage for the simple value cells of a Boundsheet.
+ * <p/>
+ * Instead of keeping a NUMBER, RK, LABELSST, BOOLERR or BLANK record object
+ * per cell, each column keeps primitive arrays of row numbers, values, SST
+ * indexes, XF ids and cell types.  Records are only created again when they
+ * are requested, either to be handed over to the regular cell maps of the
+ * sheet or as transient records for output.
+ * <p/>
+ * Cells must be added in ascending row order per column, which is the order
+ * they appear in a BIFF8 stream.  Removed cells are left behind as empty
+ * slots so that the remaining arrays never need to be shifted.
+ *
+ * @see Boundsheet#addCell(CellRec)
+ */
+final class CompactCellStore
+{
+	static final byte EMPTY = 0;
+	static final byte NUMBER_CELL = 1;
+	static final byte RK_CELL = 2;
+	static final byte STRING_CELL = 3;
+	static final byte BOOLERR_CELL = 4;
+	static final byte BLANK_CELL = 5;
+
+	private Column[] columns = new Column[16];
+	private int size = 0;
+
+	/**
+	 * Returns whether the given cell may be held in compact form.
+	 * Cells carrying a hyperlink or belonging to a MULBLANK are kept as records.
+	 */
+	static boolean accepts( CellRec cell )
+	{
+		switch( cell.getOpcode() )
+		{
+			case XLSConstants.NUMBER:
+			case XLSConstants.RK:
+			case XLSConstants.LABELSST:
+			case XLSConstants.BOOLERR:
+			case XLSConstants.BLANK:
+				return cell.getHyperlink() == null;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Stores the value of a cell record.
+	 *
+	 * @return false if the cell could not be stored (ie: it arrived out of
+	 * row order) and must be kept as a record
+	 */
+	boolean put( CellRec cell )
+	{
+		byte[] data = cell.getData();
+		int row = cell.getRowNumber();
+		int col = cell.getColNumber();
+		if( (row < 0) || (col < 0) || (data == null) || (data.length < 6) )
+		{
+			return false;
+		}
+
+		byte type;
+		double value = 0;
+		int payload = 0;
+		switch( cell.getOpcode() )
+		{
+			case XLSConstants.NUMBER:
+				if( data.length < 14 )
+				{
+					return false;
+				}
+				type = NUMBER_CELL;
+				long bits = 0;
+				for( int i = 13; i >= 6; i-- )
+				{
+					bits = (bits << 8) | (data[i] & 0xFF);
+				}
+				value = Double.longBitsToDouble( bits );
+				break;
+			case XLSConstants.RK:
+			case XLSConstants.LABELSST:
+				if( data.length < 10 )
+				{
+					return false;
+				}
+				type = (cell.getOpcode() == XLSConstants.RK) ? RK_CELL : STRING_CELL;
+				payload = ByteTools.readInt( data[6], data[7], data[8], data[9] );
+				if( type == RK_CELL )
+				{
+					value = cell.getDblVal();
+				}
+				break;
+			case XLSConstants.BOOLERR:
+				if( data.length < 8 )
+				{
+					return false;
+				}
+				type = BOOLERR_CELL;
+				payload = (data[6] & 0xFF) | ((data[7] & 0xFF) << 8);
+				break;
+			case XLSConstants.BLANK:
+				type = BLANK_CELL;
+				break;
+			default:
+				return false;
+		}
+
+		Column column = getColumn( col, true );
+		int last = column.count - 1;
+		if( (last >= 0) && (column.rows[last] >= row) )
+		{
+			if( column.rows[last] != row )
+			{
+				return false;
+			}
+			// a duplicate address replaces the earlier value
+			if( column.types[last] != EMPTY )
+			{
+				size--;
+			}
+			column.count--;
+		}
+		column.append( row, type, (short) cell.getIxfe(), value, payload );
+		size++;
+		return true;
+	}
+
+	/**
+	 * Returns whether a cell is stored at the given address.
+	 */
+	boolean contains( int row, int col )
+	{
+		Column column = getColumn( col, false );
+		return (column != null) && (column.find( row ) >= 0);
+	}
+
+	/**
+	 * Removes the cell at the given address, if any.
+	 */
+	boolean remove( int row, int col )
+	{
+		Column column = getColumn( col, false );
+		if( column == null )
+		{
+			return false;
+		}
+		int i = column.find( row );
+		if( i < 0 )
+		{
+			return false;
+		}
+		column.types[i] = EMPTY;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Creates a record for the cell at the given address without removing it.
+	 *
+	 * @return the record or null if no cell is stored at the address
+	 */
+	CellRec get( int row, int col, Boundsheet sheet )
+	{
+		Column column = getColumn( col, false );
+		if( column == null )
+		{
+			return null;
+		}
+		int i = column.find( row );
+		if( i < 0 )
+		{
+			return null;
+		}
+		return column.createRecord( i, col, sheet );
+	}
+
+	/**
+	 * Creates a record for the cell at the given address and removes it from the store.
+	 *
+	 * @return the record or null if no cell is stored at the address
+	 */
+	CellRec take( int row, int col, Boundsheet sheet )
+	{
+		CellRec cell = get( row, col, sheet );
+		if( cell != null )
+		{
+			remove( row, col );
+		}
+		return cell;
+	}
+
+	/**
+	 * Creates records for the cells of a row, in column order.
+	 *
+	 * @param remove whether the cells are removed from the store
+	 */
+	List<CellRec> getRow( int row, Boundsheet sheet, boolean remove )
+	{
+		List<CellRec> ret = new ArrayList<>();
+		if( size == 0 )
+		{
+			return ret;
+		}
+		for( int col = 0; col < columns.length; col++ )
+		{
+			Column column = columns[col];
+			if( column == null )
+			{
+				continue;
+			}
+			int i = column.find( row );
+			if( i >= 0 )
+			{
+				ret.add( column.createRecord( i, col, sheet ) );
+				if( remove )
+				{
+					column.types[i] = EMPTY;
+					size--;
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Creates records for the cells of a column, in row order, and removes them from the store.
+	 */
+	List<CellRec> takeColumn( int col, Boundsheet sheet )
+	{
+		List<CellRec> ret = new ArrayList<>();
+		Column column = getColumn( col, false );
+		if( column == null )
+		{
+			return ret;
+		}
+		for( int i = 0; i < column.count; i++ )
+		{
+			if( column.types[i] != EMPTY )
+			{
+				ret.add( column.createRecord( i, col, sheet ) );
+				column.types[i] = EMPTY;
+				size--;
+			}
+		}
+		columns[col] = null;
+		return ret;
+	}
+
+	/**
+	 * Creates records for all cells of the store and empties it.
+	 */
+	List<CellRec> takeAll( Boundsheet sheet )
+	{
+		List<CellRec> ret = new ArrayList<>( size );
+		for( int col = 0; col < columns.length; col++ )
+		{
+			if( columns[col] != null )
+			{
+				ret.addAll( takeColumn( col, sheet ) );
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Visits the cells within the given bounds.  Numeric cells are passed as
+	 * primitives, other cells as transient records.
+	 */
+	void visit( int firstRow, int firstCol, int lastRow, int lastCol, CellRangeVisitor visitor, Boundsheet sheet )
+	{
+		int end = Math.min( lastCol, columns.length - 1 );
+		for( int col = Math.max( firstCol, 0 ); col <= end; col++ )
+		{
+			Column column = columns[col];
+			if( column == null )
+			{
+				continue;
+			}
+			int i = Arrays.binarySearch( column.rows, 0, column.count, firstRow );
+			if( i < 0 )
+			{
+				i = -i - 1;
+			}
+			for(; (i < column.count) && (column.rows[i] <= lastRow); i++ )
+			{
+				byte type = column.types[i];
+				if( type == EMPTY )
+				{
+					continue;
+				}
+				if( (type == NUMBER_CELL) || (type == RK_CELL) )
+				{
+					visitor.visitNumber( column.rows[i], col, column.values[i] );
+				}
+				else
+				{
+					visitor.visitCell( column.rows[i], col, column.createRecord( i, col, sheet ) );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the XF of the cells within the given bounds.
+	 */
+	void setIxfe( int firstRow, int firstCol, int lastRow, int lastCol, int ixfe )
+	{
+		int end = Math.min( lastCol, columns.length - 1 );
+		for( int col = Math.max( firstCol, 0 ); col <= end; col++ )
+		{
+			Column column = columns[col];
+			if( column == null )
+			{
+				continue;
+			}
+			int i = Arrays.binarySearch( column.rows, 0, column.count, firstRow );
+			if( i < 0 )
+			{
+				i = -i - 1;
+			}
+			for(; (i < column.count) && (column.rows[i] <= lastRow); i++ )
+			{
+				column.xfs[i] = (short) ixfe;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of cells in the store.
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	private Column getColumn( int col, boolean create )
+	{
+		if( col >= columns.length )
+		{
+			if( !create )
+			{
+				return null;
+			}
+			columns = Arrays.copyOf( columns, Math.max( col + 1, columns.length * 2 ) );
+		}
+		Column column = columns[col];
+		if( (column == null) && create )
+		{
+			column = new Column();
+			columns[col] = column;
+		}
+		return column;
+	}
+
+	/**
+	 * Parallel primitive arrays holding the cells of one column.  The value
+	 * and payload arrays are only allocated once a cell needs them.
+	 */
+	private static final class Column
+	{
+		int count = 0;
+		int[] rows = new int[8];
+		byte[] types = new byte[8];
+		short[] xfs = new short[8];
+		double[] values;
+		int[] payloads;
+
+		void append( int row, byte type, short ixfe, double value, int payload )
+		{
+			if( count == rows.length )
+			{
+				int len = count * 2;
+				rows = Arrays.copyOf( rows, len );
+				types = Arrays.copyOf( types, len );
+				xfs = Arrays.copyOf( xfs, len );
+				if( values != null )
+				{
+					values = Arrays.copyOf( values, len );
+				}
+				if( payloads != null )
+				{
+					payloads = Arrays.copyOf( payloads, len );
+				}
+			}
+			if( (type == NUMBER_CELL) || (type == RK_CELL) )
+			{
+				if( values == null )
+				{
+					values = new double[rows.length];
+				}
+				values[count] = value;
+			}
+			if( (type == RK_CELL) || (type == STRING_CELL) || (type == BOOLERR_CELL) )
+			{
+				if( payloads == null )
+				{
+					payloads = new int[rows.length];
+				}
+				payloads[count] = payload;
+			}
+			rows[count] = row;
+			types[count] = type;
+			xfs[count] = ixfe;
+			count++;
+		}
+
+		/**
+		 * @return the slot of the given row or -1 if it holds no cell
+		 */
+		int find( int row )
+		{
+			int i = Arrays.binarySearch( rows, 0, count, row );
+			if( (i < 0) || (types[i] == EMPTY) )
+			{
+				return -1;
+			}
+			return i;
+		}
+
+		/**
+		 * Rebuilds the BIFF8 record for a slot and initializes it as the
+		 * WorkBookFactory would have done while parsing.
+		 */
+		CellRec createRecord( int i, int col, Boundsheet sheet )
+		{
+			short opcode;
+			byte[] data;
+			switch( types[i] )
+			{
+				case NUMBER_CELL:
+					opcode = XLSConstants.NUMBER;
+					data = new byte[14];
+					// raw bits so that the value is written back exactly as it was read
+					long bits = Double.doubleToRawLongBits( values[i] );
+					for( int b = 6; b < 14; b++ )
+					{
+						data[b] = (byte) bits;
+						bits >>>= 8;
+					}
+					break;
+				case RK_CELL:
+					opcode = XLSConstants.RK;
+					data = new byte[10];
+					System.arraycopy( ByteTools.cLongToLEBytes( payloads[i] ), 0, data, 6, 4 );
+					break;
+				case STRING_CELL:
+					opcode = XLSConstants.LABELSST;
+					data = new byte[10];
+					System.arraycopy( ByteTools.cLongToLEBytes( payloads[i] ), 0, data, 6, 4 );
+					break;
+				case BOOLERR_CELL:
+					opcode = XLSConstants.BOOLERR;
+					data = new byte[8];
+					data[6] = (byte) payloads[i];
+					data[7] = (byte) (payloads[i] >> 8);
+					break;
+				default:
+					opcode = XLSConstants.BLANK;
+					data = new byte[6];
+					break;
+			}
+			System.arraycopy( ByteTools.shortToLEBytes( (short) rows[i] ), 0, data, 0, 2 );
+			System.arraycopy( ByteTools.shortToLEBytes( (short) col ), 0, data, 2, 2 );
+			System.arraycopy( ByteTools.shortToLEBytes( xfs[i] ), 0, data, 4, 2 );
+
+			XLSCellRecord rec = (XLSCellRecord) XLSRecordFactory.getBiffRecord( opcode );
+			rec.setOpcode( opcode );
+			rec.setData( data );
+			rec.setLength( (short) data.length );
+			rec.setWorkBook( sheet.getWorkBook() );
+			rec.setStreamer( sheet.getStreamer() );
+			rec.setSheet( sheet );
+			rec.init();
+			return rec;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import org.openxls.formats.LEO.BlockByteReader;
+import org.openxls.formats.LEO.LEOFile;
+import org.openxls.toolkit.ByteTools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * DeferredSheetStream holds the place of a worksheet substream which was not
+ * parsed when the WorkBook was read.
+ * <p/>
+ * It records where the substream lies in the original Workbook stream, from
+ * its BOF to the end of its EOF, so that the sheet can be parsed the first time
+ * it is accessed.  Until then the WorkBookAssembler writes it in place of the
+ * sheet's records and the ByteStreamer copies the original bytes to the output.
+ * <p/>
+ * The only stream positions held inside a worksheet substream are those in its
+ * INDEX records, which are moved by the distance the substream has moved as
+ * they are copied.
+ *
+ * @see WorkBookFactory
+ * @see WorkBookAssembler
+ * @see ByteStreamer
+ * @see Index
+ */
+public final class DeferredSheetStream extends XLSRecord implements PreencodedRecord
+{
+	private static final long serialVersionUID = -2903317840561936122L;
+
+	private transient BlockByteReader reader;
+	private int start;
+	private int end;
+	private int[] indexes;
+
+	/**
+	 * @param sheet   the sheet whose substream was skipped
+	 * @param reader  the Workbook stream
+	 * @param start   the position of the sheet's BOF
+	 * @param end     the position after the sheet's EOF
+	 * @param indexes the positions of the INDEX records in the substream
+	 */
+	DeferredSheetStream( Boundsheet sheet, BlockByteReader reader, int start, int end, int[] indexes )
+	{
+		setOpcode( BOF );    // stands in for the whole substream, which starts with the BOF
+		setData( new byte[0] );
+		setSheet( sheet );
+		setWorkBook( sheet.getWorkBook() );
+		this.reader = reader;
+		this.start = start;
+		this.end = end;
+		this.indexes = indexes;
+		super.setOffset( start );
+	}
+
+	/**
+	 * the Workbook stream the substream is read from
+	 */
+	BlockByteReader getReader()
+	{
+		return reader;
+	}
+
+	/**
+	 * the original position of the sheet's BOF
+	 */
+	int getStart()
+	{
+		return start;
+	}
+
+	/**
+	 * the original position after the sheet's EOF
+	 */
+	int getEnd()
+	{
+		return end;
+	}
+
+	/**
+	 * the substream starts with the sheet's BOF, so the Boundsheet follows
+	 * the substream wherever it is written
+	 */
+	@Override
+	public void setOffset( int pos )
+	{
+		super.setOffset( pos );
+		getSheet().setLbPlyPos( pos );
+	}
+
+	/**
+	 * the number of bytes the substream contributes to the Workbook stream
+	 */
+	@Override
+	public int getLength()
+	{
+		return end - start;
+	}
+
+	/**
+	 * nothing to prepare, the records are copied as they were read
+	 */
+	@Override
+	public void preStream()
+	{
+	}
+
+	/**
+	 * copy the substream to the output, moving the stream positions in its
+	 * INDEX records to the new offset
+	 */
+	@Override
+	public void writeTo( OutputStream out ) throws IOException
+	{
+		int delta = getOffset() - start;
+		byte[] buf = new byte[0x10000];
+		int pos = start;
+		for( int idx : indexes )
+		{
+			copy( out, buf, pos, idx );
+			int len = reader.getHeader( idx ) >>> 16;
+			byte[] rec = new byte[len + 4];
+			reader.readBytes( idx, rec, 0, rec.length );
+			// ibXF is the position of the DEFCOLWIDTH record, then come the DBCELL positions
+			for( int off = 16; (off + 4) <= rec.length; off += 4 )
+			{
+				int p = ByteTools.readInt( rec[off], rec[off + 1], rec[off + 2], rec[off + 3] );
+				if( (p != 0) || (off > 16) )
+				{
+					System.arraycopy( ByteTools.cLongToLEBytes( p + delta ), 0, rec, off, 4 );
+				}
+			}
+			out.write( rec );
+			pos = idx + rec.length;
+		}
+		copy( out, buf, pos, end );
+		LEOFile.actualOutput += end - start; // debugging
+	}
+
+	private void copy( OutputStream out, byte[] buf, int from, int to ) throws IOException
+	{
+		while( from < to )
+		{
+			int n = reader.readBytes( from, buf, 0, Math.min( buf.length, to - from ) );
+			if( n <= 0 )
+			{
+				throw new IOException( "Sheet substream ends before position " + to );
+			}
+			out.write( buf, 0, n );
+			from += n;
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		reader = null;
+		super.close();
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses part of a zip entry in memory, so that it can be produced on a
+ * worker thread and later spliced into the entry by
+ * {@link SplicingZipOutputStream#writeDeflated(DeflatedPart)}.
+ * <p/>
+ * The data is raw DEFLATE ending on a sync flush, so it is byte aligned and
+ * can be followed by more compressed data of the same entry.  The CRC-32 and
+ * length of the uncompressed data are kept for the entry's data descriptor.
+ */
+final class DeflatedPart extends OutputStream
+{
+	private final Deflater def;
+	private final CRC32 crc = new CRC32();
+	private long size = 0;
+	private byte[] data = new byte[64 * 1024];
+	private int len = 0;
+	private boolean finished = false;
+
+	DeflatedPart()
+	{
+		def = new Deflater( Deflater.DEFAULT_COMPRESSION, true );
+	}
+
+	@Override
+	public void write( int b ) throws IOException
+	{
+		write( new byte[]{ (byte) b }, 0, 1 );
+	}
+
+	@Override
+	public void write( byte[] b, int off, int n ) throws IOException
+	{
+		if( finished )
+		{
+			throw new IOException( "DeflatedPart is finished" );
+		}
+		crc.update( b, off, n );
+		size += n;
+		def.setInput( b, off, n );
+		while( !def.needsInput() )
+		{
+			deflate( Deflater.NO_FLUSH );
+		}
+	}
+
+	/**
+	 * Flushes the remaining input to the compressed data.  No more data can
+	 * be written afterwards.
+	 */
+	void finishPart()
+	{
+		if( !finished )
+		{
+			while( deflate( Deflater.SYNC_FLUSH ) )
+			{
+				;
+			}
+			def.end();
+			finished = true;
+		}
+	}
+
+	/**
+	 * Runs the deflater once, growing the buffer as needed, and returns
+	 * whether the output buffer was filled, ie: whether more output may be
+	 * pending.
+	 */
+	private boolean deflate( int flush )
+	{
+		if( len == data.length )
+		{
+			byte[] grown = new byte[data.length * 2];
+			System.arraycopy( data, 0, grown, 0, len );
+			data = grown;
+		}
+		int space = data.length - len;
+		int n = def.deflate( data, len, space, flush );
+		len += n;
+		return n == space;
+	}
+
+	byte[] getData()
+	{
+		return data;
+	}
+
+	/**
+	 * Returns the number of compressed bytes.
+	 */
+	int getLength()
+	{
+		return len;
+	}
+
+	/**
+	 * Returns the CRC-32 of the uncompressed data.
+	 */
+	long getCrc()
+	{
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the number of uncompressed bytes.
+	 */
+	long getSize()
+	{
+		return size;
+	}
+}
@@ -137,8 +137,7 @@ public final class Extsst extends XLSRecord
 	 */
 	public void updateIsstinfs()
 	{
-		List strs = mysst.getStringVector();
-		int totstrs = strs.size();
+		int totstrs = mysst.getNumStrings();
 
 		// if the total of unique UStrings is < 1024,
 		// then Dsst = 8, total Isstinfs is cstun/8
@@ -187,21 +186,21 @@ public final class Extsst extends XLSRecord
 		int sstOffset = mysst.getOffset();
 		for( int t = 0; t < totissts; t++ )
 		{
-			Unicodestring str;
+			int str;
 			if( t == totissts )
 			{
-				str = mysst.getUStringAt( totstrs - 1 );
+				str = totstrs - 1;
 			}
 			else
 			{
 				// get the data
-				str = mysst.getUStringAt( ctr );
+				str = ctr;
 			}
 			ctr += newdsst;
 
 			lastsstpos = sstpos;
 			lastContinueStrPos = continueStrPos;
-			sstpos = str.getSSTPos() + 4; // always 4 off
+			sstpos = mysst.getSSTPos( str ) + 4; // always 4 off
 
 			boolean newbucket = false;
 			// set the offset
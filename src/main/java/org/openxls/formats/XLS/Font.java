@@ -208,6 +208,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		if( buflen < 0 )
 		{
 			log.warn( "could not parse font: length reported as " + buflen );
+			changed();
 			return;
 		}
 
@@ -228,6 +229,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		{ // compressed
 			fontName = new String( namebytes );
 		}
+		changed();
 	}
 
 	/**
@@ -359,7 +361,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		byte[] b = ByteTools.shortToLEBytes( grbit );
 		System.arraycopy( b, 0, data, 2, 2 );
 		setData( data );
-
+		changed();
 	}
 
 	private int tableidx = -1;
@@ -421,6 +423,7 @@ public final class Font extends XLSRecord implements FormatConstants
 	{
 		uls = styl;
 		getData()[10] = styl;
+		changed();
 	}
 
 	public Font()
@@ -500,6 +503,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		byte[] newss = ByteTools.shortToLEBytes( (short) ss );
 		System.arraycopy( newss, 0, data, 8, 2 );
 		sss = (short) ss;
+		changed();
 	}
 
 	/**
@@ -531,6 +535,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		{
 			customColor.setColorInt( cl );
 		}
+		changed();
 	}
 
 	/**
@@ -549,6 +554,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		icv = (short) customColor.getColorInt();
 		byte[] newcl = ByteTools.shortToLEBytes( icv );
 		System.arraycopy( newcl, 0, data, 4, 2 );
+		changed();
 	}
 
 	/**
@@ -567,6 +573,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		icv = (short) customColor.getColorInt();
 		byte[] newcl = ByteTools.shortToLEBytes( icv );
 		System.arraycopy( newcl, 0, data, 4, 2 );
+		changed();
 	}
 
 	/**
@@ -581,6 +588,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		byte[] newht = ByteTools.shortToLEBytes( (short) ht );
 		System.arraycopy( newht, 0, data, 0, 2 );
 		dyHeight = (short) ht;
+		changed();
 	}
 
 	/**
@@ -715,6 +723,7 @@ public final class Font extends XLSRecord implements FormatConstants
 		byte[] newwt = ByteTools.shortToLEBytes( (short) wt );
 		System.arraycopy( newwt, 0, data, 6, 2 );
 		bls = (short) wt;
+		changed();
 	}
 
 	/**
@@ -781,6 +790,28 @@ public final class Font extends XLSRecord implements FormatConstants
 		return (fontName.equals( f.fontName ) && (dyHeight == f.dyHeight) && (bls == f.bls) && (getColor() == f.getColor()) && (sss == f.sss) && (uls == f.uls) && (grbit == f.grbit));
 	}
 
+	/**
+	 * returns a key which is equal for Fonts which match each other
+	 *
+	 * @see #matches(Font)
+	 */
+	String getMatchKey()
+	{
+		return fontName + "," + dyHeight + "," + bls + "," + getColor() + "," + sss + "," + uls + "," + grbit;
+	}
+
+	/**
+	 * re-indexes this Font in the workbook font table after an attribute used
+	 * by {@link #matches(Font)} has changed
+	 */
+	private void changed()
+	{
+		if( getWorkBook() != null )
+		{
+			getWorkBook().updateFontIndex( this );
+		}
+	}
+
 	/**
 	 * store OOXML font color
 	 *
@@ -793,6 +824,7 @@ public final class Font extends XLSRecord implements FormatConstants
 			setColor( c.getColorInt() );
 		}
 		customColor = c;
+		changed();
 	}
 
 	/**
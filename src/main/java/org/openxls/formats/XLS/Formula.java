@@ -26,7 +26,7 @@ import org.openxls.ExtenXLS.ExcelTools;
 import org.openxls.ExtenXLS.WorkBookHandle;
 import org.openxls.formats.XLS.formulas.CalculationException;
 import org.openxls.formats.XLS.formulas.CircularReferenceException;
-import org.openxls.formats.XLS.formulas.FormulaCalculator;
+import org.openxls.formats.XLS.formulas.CompiledFormula;
 import org.openxls.formats.XLS.formulas.FormulaParser;
 import org.openxls.formats.XLS.formulas.GenericPtg;
 import org.openxls.formats.XLS.formulas.Ptg;
@@ -41,6 +41,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -104,8 +105,36 @@ public final class Formula extends XLSCellRecord
 			return 0;
 		}
 	};
+	/**
+	 * The formula being calculated on this thread, which is given the
+	 * references resolved by INDIRECT and OFFSET.
+	 */
+	private static final ThreadLocal<Formula> calculating = new ThreadLocal<>();
+	/**
+	 * Collects the formulas calculated on this thread whose STRING records are
+	 * still to be updated, null to update them as they are calculated.
+	 */
+	private static final ThreadLocal<Collection<Formula>> deferredRecords = new ThreadLocal<>();
+	private static final PtgRef[] NO_REFS = new PtgRef[0];
 	private Object cachedValue;
 	private Stack expression;
+	/**
+	 * The expression prepared for calculation, rebuilt when the expression changes.
+	 */
+	private transient CompiledFormula compiled;
+	/**
+	 * The references resolved by the last calculation, null if not calculated
+	 * since it was loaded.
+	 */
+	private transient PtgRef[] resolvedRefs;
+	/**
+	 * Those of the resolved references which were added to the ReferenceTracker.
+	 */
+	private transient List<PtgRef> trackedRefs;
+	/**
+	 * The references resolved so far by the calculation in progress.
+	 */
+	private transient List<PtgRef> resolving;
 	/**
 	 * Whether the record data needs to be updated.
 	 */
@@ -486,6 +515,16 @@ public final class Formula extends XLSCellRecord
 	 * Does nothing if the expression doesn't exist yet.
 	 */
 	public void updateRecord()
+	{
+		compiled = null;
+		updateResultRecord();
+	}
+
+	/**
+	 * Marks the record for rebuilding after a calculation and updates its STRING
+	 * record, unless this thread defers that to {@link #updateStringRecord()}.
+	 */
+	private void updateResultRecord()
 	{
 		dirty = true;
 		if( data == null )
@@ -493,6 +532,22 @@ public final class Formula extends XLSCellRecord
 			setData( new byte[6] );    // happens when newly init'ing a formula
 		}
 
+		Collection<Formula> deferred = deferredRecords.get();
+		if( deferred != null )
+		{
+			deferred.add( this );
+			return;
+		}
+		updateStringRecord();
+	}
+
+	/**
+	 * Attaches, updates or removes the STRING record holding a string result.
+	 * This adds and removes records of the sheet and WorkBook, so it must not run
+	 * concurrently with other record changes.
+	 */
+	public void updateStringRecord()
+	{
 		if( (cachedValue instanceof String) && !"".equals( cachedValue ) && !isErrorValue( (String) cachedValue ) )
 		{// if it's a string and not an error string
 			if( !haveStringRec || (string == null) )
@@ -1118,7 +1173,10 @@ public final class Formula extends XLSCellRecord
 
 		try
 		{
-			log.debug( "Calculating Formula: {}", getFormulaString() );
+			if( log.isDebugEnabled() )
+			{
+				log.debug( "Calculating Formula: {}", getFormulaString() );
+			}
 			recurseCount.set( depth + 1 );
 			if( depth > WorkBookHandle.RECURSION_LEVELS_ALLOWED )
 			{
@@ -1215,6 +1273,15 @@ public final class Formula extends XLSCellRecord
 		}
 	}
 
+	/**
+	 * Returns whether this formula holds a result, ie: whether
+	 * {@link #calculate()} would return without evaluating the expression.
+	 */
+	public boolean hasCachedValue()
+	{
+		return cachedValue != null;
+	}
+
 	/**
 	 * Set the cached value of this formula,
 	 * in cases where the formula is null, set the cache to null,
@@ -1283,6 +1350,125 @@ public final class Formula extends XLSCellRecord
 		int idx = expression.indexOf( thisptg );
 		expression.remove( idx );
 		expression.insertElementAt( ptgErr, idx );
+		compiled = null;
+	}
+
+	/**
+	 * Defers the STRING record updates of the formulas calculated on this
+	 * thread, which are added to the given collection for the caller to apply
+	 * with {@link #updateStringRecord()}. Pass null to stop deferring.
+	 */
+	public static void setDeferredRecordUpdates( Collection<Formula> deferred )
+	{
+		if( deferred == null )
+		{
+			deferredRecords.remove();
+		}
+		else
+		{
+			deferredRecords.set( deferred );
+		}
+	}
+
+	/**
+	 * Records a reference resolved by a function such as INDIRECT or OFFSET
+	 * as a precedent of the formula being calculated on this thread.
+	 */
+	public static void addResolvedReference( PtgRef ref )
+	{
+		Formula f = calculating.get();
+		if( f != null )
+		{
+			if( f.resolving == null )
+			{
+				f.resolving = new ArrayList<>();
+			}
+			f.resolving.add( ref );
+		}
+	}
+
+	/**
+	 * Returns the references resolved by functions such as INDIRECT and
+	 * OFFSET in the last calculation of this formula, or null if it hasn't
+	 * been calculated since it was loaded.
+	 *
+	 * @see org.openxls.formats.XLS.formulas.DependencyGraph
+	 */
+	public PtgRef[] getResolvedReferences()
+	{
+		return resolvedRefs;
+	}
+
+	/**
+	 * Replaces the resolved references of this formula in the
+	 * ReferenceTracker, unless they are at the same locations as those of the
+	 * previous calculation.
+	 */
+	private void setResolvedReferences( List<PtgRef> refs )
+	{
+		if( refs == null )
+		{
+			if( trackedRefs == null )
+			{
+				resolvedRefs = NO_REFS;
+				return;
+			}
+			refs = Collections.emptyList();
+		}
+		if( (resolvedRefs != null) && sameLocations( resolvedRefs, refs ) )
+		{
+			return;
+		}
+		ReferenceTracker rt = getWorkBook().getRefTracker();
+		if( trackedRefs != null )
+		{
+			for( PtgRef ref : trackedRefs )
+			{
+				rt.removeResolvedReference( ref );
+			}
+			trackedRefs = null;
+		}
+		for( PtgRef ref : refs )
+		{
+			ref.setParentRec( this );
+			if( rt.addResolvedReference( ref ) )
+			{
+				if( trackedRefs == null )
+				{
+					trackedRefs = new ArrayList<>();
+				}
+				trackedRefs.add( ref );
+			}
+		}
+		resolvedRefs = refs.isEmpty() ? NO_REFS : refs.toArray( new PtgRef[refs.size()] );
+	}
+
+	private static boolean sameLocations( PtgRef[] refs, List<PtgRef> others )
+	{
+		if( refs.length != others.size() )
+		{
+			return false;
+		}
+		for( int i = 0; i < refs.length; i++ )
+		{
+			PtgRef other = others.get( i );
+			if( (refs[i].hashcode != other.hashcode) || (refs[i].getClass() != other.getClass()) )
+			{
+				return false;
+			}
+			try
+			{
+				if( !refs[i].getSheetName().equals( other.getSheetName() ) )
+				{
+					return false;
+				}
+			}
+			catch( Exception e )
+			{
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -1492,8 +1678,19 @@ public final class Formula extends XLSCellRecord
 				((PtgRef) ptg).removeFromRefTracker();
 			}
 		}
+		if( trackedRefs != null )
+		{
+			ReferenceTracker rt = getWorkBook().getRefTracker();
+			for( PtgRef ref : trackedRefs )
+			{
+				rt.removeResolvedReference( ref );
+			}
+		}
+		trackedRefs = null;
+		resolvedRefs = null;
 
 		expression = null;
+		compiled = null;
 	}
 
 	/**
@@ -1513,9 +1710,15 @@ public final class Formula extends XLSCellRecord
 
 		populateExpression();
 
+		Formula outer = calculating.get();
+		calculating.set( this );
 		try
 		{
-			cachedValue = FormulaCalculator.calculateFormula( expression );
+			if( (compiled == null) || !compiled.isCompiledFrom( expression ) )
+			{
+				compiled = CompiledFormula.compile( expression );
+			}
+			cachedValue = compiled.calculate();
 		}
 		catch( StackOverflowError e )
 		{
@@ -1523,6 +1726,13 @@ public final class Formula extends XLSCellRecord
 			cachedValue = new CalculationException( CalculationException.CIR_ERR );
 			return cachedValue;
 		}
+		finally
+		{
+			calculating.set( outer );
+			List<PtgRef> refs = resolving;
+			resolving = null;
+			setResolvedReferences( refs );
+		}
 
 		if( cachedValue == null )
 		{
@@ -1594,7 +1804,7 @@ public final class Formula extends XLSCellRecord
 			getAttatchedString().setStringVal( String.valueOf( cachedValue ) );
 		}
 
-		updateRecord();
+		updateResultRecord();
 		return cachedValue;
 	}
 
@@ -79,6 +79,7 @@ public final class Index extends XLSRecord implements XLSConstants
 	private CompatibleVector dbcells = new CompatibleVector();
 	private int indexnum;
 	private Dimensions dims;
+	private RowBlockSpill spill;
 
 	/**
 	 * create a new INDEX rec
@@ -150,7 +151,7 @@ public final class Index extends XLSRecord implements XLSConstants
 	{
 		// rebuild the record with the correct length body data to fit the new dbcells
 		getData();
-		int arrsize = 16 + (dbcells.size() * 4);
+		int arrsize = 16 + ((dbcells.size() + getNumSpilledDbcells()) * 4);
 		byte[] newBytes = new byte[arrsize];
 		Dbcell dbc = null;
 		// KSC: Changed from copying 12 bytes to copying 16 bytes to keep DIMENSIONS reference
@@ -220,6 +221,21 @@ public final class Index extends XLSRecord implements XLSConstants
 	{
 		dbnum = 0;
 		dbcells = new CompatibleVector();
+		spill = null;
+	}
+
+	/**
+	 * associate the spill holding the rows appended to disk,
+	 * whose dbcells are indexed after the in-memory ones
+	 */
+	void setRowSpill( RowBlockSpill s )
+	{
+		spill = s;
+	}
+
+	private int getNumSpilledDbcells()
+	{
+		return (spill == null) ? 0 : spill.getNumDbcells();
 	}
 
 	/** compute the location of Dbcell records using
@@ -249,14 +265,18 @@ public final class Index extends XLSRecord implements XLSConstants
 		// first, get the collection of Rows from sheet
 		Boundsheet bs = getSheet();
 		Row[] rowz = bs.getRows();
-		if( rowz.length != 0 )
+		if( (spill != null) && (spill.getFirstRow() >= 0) )
+		{
+			updateRowDimensions( (rowz.length != 0) ? rowz[0].getRowNumber() : spill.getFirstRow(), spill.getLastRow() );
+		}
+		else if( rowz.length != 0 )
 		{
 			updateRowDimensions( rowz[0].getRowNumber(), rowz[(rowz.length) - 1].getRowNumber() );
 		}
 		// create the new Dbcells if any rows exist within the sheet
 
 		// rebuild the record with the correct length body data to fit the new dbcells
-		int arrsize = 16 + (dbcells.size() * 4);
+		int arrsize = 16 + ((dbcells.size() + getNumSpilledDbcells()) * 4);
 		byte[] newBytes = new byte[arrsize];
 		Dbcell dbc = null;
 		System.arraycopy( getData(), 0, newBytes, 0, 16 );
@@ -271,6 +291,13 @@ public final class Index extends XLSRecord implements XLSConstants
 			newBytes[offset++] = b[2];
 			newBytes[offset++] = b[3];
 		}
+		// the spilled dbcells follow the in-memory ones
+		for( int i = 0; i < getNumSpilledDbcells(); i++ )
+		{
+			byte[] b = ByteTools.cLongToLEBytes( spill.getDbcellOffset( i ) );
+			System.arraycopy( b, 0, newBytes, offset, 4 );
+			offset += 4;
+		}
 		setData( newBytes );
 	}
 
@@ -59,10 +59,7 @@ public final class Label extends XLSCellRecord
 		short s;
 		short s1;
 		// get the row, col and ixfe information
-		s = ByteTools.readShort( getByteAt( 0 ), getByteAt( 1 ) );
-		rw = s;
-		s = ByteTools.readShort( getByteAt( 2 ), getByteAt( 3 ) );
-		col = s;
+		initRowCol();
 		s = ByteTools.readShort( getByteAt( 4 ), getByteAt( 5 ) );
 		ixfe = s;
 		// get the length of the string
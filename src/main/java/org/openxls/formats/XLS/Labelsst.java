@@ -157,6 +157,19 @@ public final class Labelsst extends XLSCellRecord
 		return unsharedstr;
 	}
 
+	/**
+	 * returns whether the string value starts with the given Latin-1
+	 * character, without decoding the string
+	 */
+	boolean stringStartsWith( char c )
+	{
+		if( unsharedstr != null )
+		{
+			return unsharedstr.startsWith( c );
+		}
+		return getWorkBook().getSharedStringTable().stringStartsWith( isst, c );
+	}
+
 	/**
 	 * Adds the LabelSST's string to the sst.
 	 * <p/>
@@ -186,7 +199,7 @@ public final class Labelsst extends XLSCellRecord
 		{
 			return unsharedstr.toString();
 		}
-		return getWorkBook().getSharedStringTable().getUStringAt( isst ).toCachingString();
+		return getWorkBook().getSharedStringTable().getStringAt( isst );
 	}
 
 	/**
@@ -271,13 +284,8 @@ public final class Labelsst extends XLSCellRecord
 		}
 		else
 		{
-			Unicodestring str = getSheet().getWorkBook().getSharedStringTable().getUStringAt( isst );
 			//ensure reclen and datalen are maintained correctly:
-			int origLen = str.getLength();
-			str.updateUnicodeString( v );
-			int delta = str.getLength() - origLen;
-			getSheet().getWorkBook().getSharedStringTable().adjustSstLength( delta );
-			unsharedstr = str;
+			unsharedstr = getSheet().getWorkBook().getSharedStringTable().updateUnicodestring( isst, v );
 		}
 	}
 
@@ -327,6 +327,7 @@ public final class MSODrawingGroup extends XLSRecord
 		// add MSODrawingGroup
 		streamer.addRecordAt( this, index );
 		// also need msymystery record + msoselection ...
+		getWorkBook().loadAllSheets();
 		Boundsheet[] b = getWorkBook().getWorkSheets();
 		for( Boundsheet aB : b )
 		{
@@ -1081,6 +1081,10 @@ The preceding code points ranges contain the following controls which are only v
 	 */
 	public static void refreshPassThroughFiles( WorkBookHandle wbh )
 	{
+		if( wbh.getWorkBook().getPassThroughStore() != null )
+		{
+			return;    // kept in memory since the file was read
+		}
 		try
 		{
 			// retrieve source zip
@@ -0,0 +1,617 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import org.openxls.formats.XLS.formulas.CalculationException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Read-only, event based reader for XLSX packages.
+ * <p/>
+ * Unlike {@link OOXMLReader} this reader never builds a WorkBook, Boundsheets
+ * or cell records: each worksheet part is pulled through the parser once and
+ * the cell values are decoded straight into {@link SheetRowListener}
+ * callbacks.  Apart from the shared string table, the cellXfs/numFmts tables
+ * and the sheet names, memory use is constant regardless of the size of the
+ * sheets.
+ * <p/>
+ * Parts read: workbook.xml (+rels), sharedStrings.xml, styles.xml and the
+ * sheetData of each worksheet.  Row heights are converted from points to
+ * twips to match {@link RecordEventReader}.  Formula cells are reported through their
+ * cached &lt;v&gt; value, ISO 8601 "d" cells are reported as strings, and
+ * everything outside of sheetData is skipped.
+ * <p/>
+ * Usage:
+ * <pre>
+ * ZipFile zip = new ZipFile( new File( "big.xlsx" ) );
+ * OOXMLEventReader reader = new OOXMLEventReader( zip );
+ * reader.read( listener );
+ * zip.close();
+ * </pre>
+ * The ixfe passed to the listener is the index into cellXfs, use
+ * {@link #getFormatPattern(int)} of this reader to resolve it.
+ *
+ * @see SheetRowListener
+ * @see RecordEventReader
+ */
+public class OOXMLEventReader
+{
+	private final ZipFile zip;
+
+	private String[] sst = new String[0];
+	private int[] xfFormats = new int[0];
+	private final Map<Integer, String> formats = new HashMap<>();
+	private final List<String> sheetNames = new ArrayList<>();
+	private final List<String> sheetParts = new ArrayList<>();
+	private boolean is1904 = false;
+
+	/**
+	 * Reads the given XLSX package.  The ZipFile is not closed by the reader.
+	 */
+	public OOXMLEventReader( ZipFile zip )
+	{
+		this.zip = zip;
+	}
+
+	/**
+	 * Reads the entire package, delivering every worksheet cell value to the
+	 * listener.  Worksheets are read in workbook order.
+	 */
+	public void read( SheetRowListener listener ) throws XmlPullParserException, IOException
+	{
+		String wb = "xl/workbook.xml";
+		for( String[] rel : readRels( "_rels/.rels" ) )
+		{
+			if( rel[0].equals( "document" ) )
+			{
+				wb = partName( "", rel[1] );
+				break;
+			}
+		}
+		String dir = wb.substring( 0, wb.lastIndexOf( '/' ) + 1 );
+		Map<String, String> sheetIds = new HashMap<>();
+		for( String[] rel : readRels( dir + "_rels/" + wb.substring( dir.length() ) + ".rels" ) )
+		{
+			if( rel[0].equals( "sheet" ) )
+			{
+				sheetIds.put( rel[2], partName( dir, rel[1] ) );
+			}
+			else if( rel[0].equals( "sst" ) )
+			{
+				readSst( partName( dir, rel[1] ) );
+			}
+			else if( rel[0].equals( "styles" ) )
+			{
+				readStyles( partName( dir, rel[1] ) );
+			}
+		}
+		readWorkbook( wb, sheetIds );
+
+		for( int i = 0; i < sheetParts.size(); i++ )
+		{
+			readSheet( i, sheetParts.get( i ), listener );
+		}
+	}
+
+	/**
+	 * Streams the sheetData of one worksheet part to the listener.
+	 */
+	private void readSheet( int sheet, String part, SheetRowListener listener ) throws XmlPullParserException, IOException
+	{
+		listener.startSheet( sheet, sheetNames.get( sheet ) );
+		try( InputStream in = open( part ) )
+		{
+			if( in != null )
+			{
+				XmlPullParser xpp = parser( in );
+				int row = -1;
+				int col = -1;
+				boolean rowStarted = false;
+				String type = null;
+				int ixfe = 0;
+				String value = null;
+
+				int eventType = xpp.getEventType();
+				while( eventType != XmlPullParser.END_DOCUMENT )
+				{
+					if( eventType == XmlPullParser.START_TAG )
+					{
+						String tnm = xpp.getName();
+						if( tnm.equals( "c" ) )
+						{
+							col++;
+							type = null;
+							ixfe = 0;
+							value = null;
+							for( int i = 0; i < xpp.getAttributeCount(); i++ )
+							{
+								String nm = xpp.getAttributeName( i );
+								if( nm.equals( "r" ) )
+								{
+									col = parseCol( xpp.getAttributeValue( i ) );
+								}
+								else if( nm.equals( "t" ) )
+								{
+									type = xpp.getAttributeValue( i );
+								}
+								else if( nm.equals( "s" ) )
+								{
+									ixfe = Integer.parseInt( xpp.getAttributeValue( i ) );
+								}
+							}
+						}
+						else if( tnm.equals( "v" ) )
+						{
+							value = xpp.nextText();
+						}
+						else if( tnm.equals( "is" ) )
+						{
+							value = readText( xpp, "is" );
+						}
+						else if( tnm.equals( "row" ) )
+						{
+							row++;
+							col = -1;
+							rowStarted = false;
+							String r = attribute( xpp, "r" );
+							if( r != null )
+							{
+								row = Integer.parseInt( r ) - 1;
+							}
+							String ht = attribute( xpp, "ht" );
+							String s = attribute( xpp, "s" );
+							listener.rowInfo( row,
+							                  (ht != null) ? (int) Math.round( Double.parseDouble( ht ) * 20 ) : -1,
+							                  isTrue( attribute( xpp, "hidden" ) ),
+							                  ((s != null) && isTrue( attribute( xpp, "customFormat" ) )) ? Integer.parseInt( s ) : -1 );
+						}
+					}
+					else if( eventType == XmlPullParser.END_TAG )
+					{
+						String tnm = xpp.getName();
+						if( tnm.equals( "c" ) && (value != null) )
+						{
+							if( !rowStarted )
+							{
+								listener.startRow( row );
+								rowStarted = true;
+							}
+							deliver( listener, row, col, ixfe, type, value );
+							value = null;
+						}
+						else if( tnm.equals( "row" ) && rowStarted )
+						{
+							listener.endRow( row );
+							rowStarted = false;
+						}
+						else if( tnm.equals( "sheetData" ) )
+						{
+							break;
+						}
+					}
+					eventType = xpp.next();
+				}
+			}
+		}
+		listener.endSheet( sheet );
+	}
+
+	private void deliver( SheetRowListener listener, int row, int col, int ixfe, String type, String value )
+	{
+		if( (type == null) || type.equals( "n" ) )
+		{
+			if( value.isEmpty() )
+			{
+				return;
+			}
+			listener.numberCell( row, col, ixfe, Double.parseDouble( value ) );
+		}
+		else if( type.equals( "s" ) )
+		{
+			int isst = Integer.parseInt( value );
+			listener.stringCell( row, col, ixfe, (isst < sst.length) ? sst[isst] : null );
+		}
+		else if( type.equals( "b" ) )
+		{
+			listener.booleanCell( row, col, ixfe, value.equals( "1" ) || value.equalsIgnoreCase( "true" ) );
+		}
+		else if( type.equals( "e" ) )
+		{
+			listener.errorCell( row, col, ixfe, CalculationException.getErrorCode( value ) );
+		}
+		else
+		{
+			// str, inlineStr and d
+			listener.stringCell( row, col, ixfe, value );
+		}
+	}
+
+	/**
+	 * Returns the zero-based column of a cell reference such as "AB12"
+	 * without going through ExcelTools.
+	 */
+	static int parseCol( String ref )
+	{
+		int col = 0;
+		for( int i = 0; i < ref.length(); i++ )
+		{
+			char c = ref.charAt( i );
+			if( (c >= 'A') && (c <= 'Z') )
+			{
+				col = (col * 26) + (c - 'A') + 1;
+			}
+			else if( (c >= 'a') && (c <= 'z') )
+			{
+				col = (col * 26) + (c - 'a') + 1;
+			}
+			else if( c != '$' )
+			{
+				break;
+			}
+		}
+		return col - 1;
+	}
+
+	private void readWorkbook( String part, Map<String, String> sheetIds ) throws XmlPullParserException, IOException
+	{
+		try( InputStream in = open( part ) )
+		{
+			if( in == null )
+			{
+				throw new IOException( "OOXMLEventReader: missing workbook part " + part );
+			}
+			XmlPullParser xpp = parser( in );
+			int eventType = xpp.getEventType();
+			while( eventType != XmlPullParser.END_DOCUMENT )
+			{
+				if( eventType == XmlPullParser.START_TAG )
+				{
+					String tnm = xpp.getName();
+					if( tnm.equals( "sheet" ) )
+					{
+						String name = null;
+						String rId = null;
+						for( int i = 0; i < xpp.getAttributeCount(); i++ )
+						{
+							String nm = xpp.getAttributeName( i );
+							if( nm.equals( "name" ) )
+							{
+								name = xpp.getAttributeValue( i );
+							}
+							else if( nm.equals( "id" ) )
+							{
+								rId = xpp.getAttributeValue( i );
+							}
+						}
+						String sheetPart = sheetIds.get( rId );
+						if( sheetPart != null )    // skip chart sheets and dialog sheets
+						{
+							sheetNames.add( name );
+							sheetParts.add( sheetPart );
+						}
+					}
+					else if( tnm.equals( "workbookPr" ) )
+					{
+						String date1904 = attribute( xpp, "date1904" );
+						is1904 = (date1904 != null) && (date1904.equals( "1" ) || date1904.equalsIgnoreCase( "true" ));
+					}
+				}
+				else if( (eventType == XmlPullParser.END_TAG) && xpp.getName().equals( "sheets" ) )
+				{
+					break;
+				}
+				eventType = xpp.next();
+			}
+		}
+	}
+
+	private void readSst( String part ) throws XmlPullParserException, IOException
+	{
+		try( InputStream in = open( part ) )
+		{
+			if( in == null )
+			{
+				return;
+			}
+			XmlPullParser xpp = parser( in );
+			List<String> strings = new ArrayList<>();
+			int eventType = xpp.getEventType();
+			while( eventType != XmlPullParser.END_DOCUMENT )
+			{
+				if( (eventType == XmlPullParser.START_TAG) && xpp.getName().equals( "si" ) )
+				{
+					strings.add( readText( xpp, "si" ) );
+				}
+				eventType = xpp.next();
+			}
+			sst = strings.toArray( new String[strings.size()] );
+		}
+	}
+
+	private void readStyles( String part ) throws XmlPullParserException, IOException
+	{
+		try( InputStream in = open( part ) )
+		{
+			if( in == null )
+			{
+				return;
+			}
+			XmlPullParser xpp = parser( in );
+			int xfCount = 0;
+			boolean inCellXfs = false;
+			int eventType = xpp.getEventType();
+			while( eventType != XmlPullParser.END_DOCUMENT )
+			{
+				if( eventType == XmlPullParser.START_TAG )
+				{
+					String tnm = xpp.getName();
+					if( tnm.equals( "numFmt" ) )
+					{
+						String id = attribute( xpp, "numFmtId" );
+						String code = attribute( xpp, "formatCode" );
+						if( (id != null) && (code != null) )
+						{
+							formats.put( Integer.valueOf( id ), Xf.unescapeFormatPattern( code ) );
+						}
+					}
+					else if( tnm.equals( "cellXfs" ) )
+					{
+						inCellXfs = true;
+					}
+					else if( tnm.equals( "xf" ) && inCellXfs )
+					{
+						if( xfCount == xfFormats.length )
+						{
+							int[] grown = new int[Math.max( 64, xfCount * 2 )];
+							System.arraycopy( xfFormats, 0, grown, 0, xfCount );
+							xfFormats = grown;
+						}
+						String id = attribute( xpp, "numFmtId" );
+						xfFormats[xfCount++] = (id != null) ? Integer.parseInt( id ) : 0;
+					}
+				}
+				else if( (eventType == XmlPullParser.END_TAG) && xpp.getName().equals( "cellXfs" ) )
+				{
+					break;
+				}
+				eventType = xpp.next();
+			}
+			int[] xfs = new int[xfCount];
+			System.arraycopy( xfFormats, 0, xfs, 0, xfCount );
+			xfFormats = xfs;
+		}
+	}
+
+	/**
+	 * Returns the text of the &lt;t&gt; elements up to the end of the given
+	 * element, ie: the runs of a rich string, skipping phonetic runs.
+	 */
+	private static String readText( XmlPullParser xpp, String endTag ) throws XmlPullParserException, IOException
+	{
+		StringBuilder text = null;
+		String first = "";
+		boolean inPhonetic = false;
+		int eventType = xpp.next();
+		while( eventType != XmlPullParser.END_DOCUMENT )
+		{
+			if( eventType == XmlPullParser.START_TAG )
+			{
+				String tnm = xpp.getName();
+				if( tnm.equals( "rPh" ) )
+				{
+					inPhonetic = true;
+				}
+				else if( tnm.equals( "t" ) && !inPhonetic )
+				{
+					String t = xpp.nextText();
+					if( text != null )
+					{
+						text.append( t );
+					}
+					else if( first.isEmpty() )
+					{
+						first = t;
+					}
+					else
+					{
+						text = new StringBuilder( first ).append( t );
+					}
+				}
+			}
+			else if( eventType == XmlPullParser.END_TAG )
+			{
+				String tnm = xpp.getName();
+				if( tnm.equals( "rPh" ) )
+				{
+					inPhonetic = false;
+				}
+				else if( tnm.equals( endTag ) )
+				{
+					break;
+				}
+			}
+			eventType = xpp.next();
+		}
+		return (text != null) ? text.toString() : first;
+	}
+
+	private static String attribute( XmlPullParser xpp, String name )
+	{
+		for( int i = 0; i < xpp.getAttributeCount(); i++ )
+		{
+			if( xpp.getAttributeName( i ).equals( name ) )
+			{
+				return xpp.getAttributeValue( i );
+			}
+		}
+		return null;
+	}
+
+	private static boolean isTrue( String value )
+	{
+		return (value != null) && (value.equals( "1" ) || value.equalsIgnoreCase( "true" ));
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private List<String[]> readRels( String part ) throws IOException
+	{
+		ZipEntry entry = OOXMLAdapter.getEntry( zip, part );
+		if( entry == null )
+		{
+			return new ArrayList<>();
+		}
+		try( InputStream in = zip.getInputStream( entry ) )
+		{
+			return OOXMLAdapter.parseRels( OOXMLAdapter.wrapInputStream( in ) );
+		}
+	}
+
+	/**
+	 * Opens the stream of the given part, or returns null if the package does
+	 * not contain it.  The caller closes the stream once the part is read.
+	 */
+	private InputStream open( String part ) throws IOException
+	{
+		ZipEntry entry = OOXMLAdapter.getEntry( zip, part );
+		if( entry == null )
+		{
+			return null;
+		}
+		return zip.getInputStream( entry );
+	}
+
+	/**
+	 * Returns a parser positioned at the start of the given part stream.
+	 */
+	private static XmlPullParser parser( InputStream in ) throws XmlPullParserException
+	{
+		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+		factory.setNamespaceAware( true );
+		XmlPullParser xpp = factory.newPullParser();
+		xpp.setInput( OOXMLAdapter.wrapInputStream( in ), "UTF-8" );
+		return xpp;
+	}
+
+	/**
+	 * Resolves a relationship target against the directory of its source part.
+	 */
+	private static String partName( String dir, String target )
+	{
+		if( target.startsWith( "/" ) )
+		{
+			return target.substring( 1 );
+		}
+		String path = dir + target;
+		int up;
+		while( (up = path.indexOf( "/../" )) > 0 )
+		{
+			int parent = path.lastIndexOf( '/', up - 1 );
+			path = path.substring( 0, parent + 1 ) + path.substring( up + 4 );
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the number format pattern for the given cellXfs index, or null
+	 * if the index or its number format is unknown.
+	 */
+	public String getFormatPattern( int ixfe )
+	{
+		if( (ixfe < 0) || (ixfe >= xfFormats.length) )
+		{
+			return null;
+		}
+		int ifmt = xfFormats[ixfe];
+		String pattern = formats.get( ifmt );
+		if( pattern != null )
+		{
+			return pattern;
+		}
+		String[][] fmts = FormatConstantsImpl.getBuiltinFormats();
+		for( String[] fmt : fmts )
+		{
+			if( ifmt == Integer.parseInt( fmt[1], 16 ) )
+			{
+				return fmt[0];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the given cellXfs index formats its value as a date.
+	 */
+	public boolean isDateFormat( int ixfe )
+	{
+		if( (ixfe < 0) || (ixfe >= xfFormats.length) )
+		{
+			return false;
+		}
+		int ifmt = xfFormats[ixfe];
+		for( String[] fmt : FormatConstants.DATE_FORMATS )
+		{
+			if( ifmt == Integer.parseInt( fmt[1], 16 ) )
+			{
+				return true;
+			}
+		}
+		String pattern = formats.get( ifmt );
+		return (pattern != null) && Xf.isDatePattern( pattern.toLowerCase() );
+	}
+
+	/**
+	 * Returns the names of the worksheets in workbook order.  The names are
+	 * available from the first {@link SheetRowListener#startSheet} on.
+	 */
+	public String[] getSheetNames()
+	{
+		return sheetNames.toArray( new String[sheetNames.size()] );
+	}
+
+	/**
+	 * Returns the shared string table read from the package.
+	 */
+	public String[] getSharedStrings()
+	{
+		return sst;
+	}
+
+	/**
+	 * Returns whether the workbook uses the 1904 date system.
+	 */
+	public boolean is1904()
+	{
+		return is1904;
+	}
+}
@@ -43,6 +43,7 @@ import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -54,7 +55,13 @@ import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -65,6 +72,54 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 {
 	private static final Logger log = LoggerFactory.getLogger( OOXMLReader.class );
 //	private int defaultXf= 0;	// usual for OOXML files; however, those which are converted from XLS may have default xf as 15 
+	private int readThreads = Integer.getInteger( XLSConstants.READTHREADS_PROP, 1 );
+	private transient ExecutorService readPool;
+	private HashMap<String, Future<SheetDataBuffer>> sheetParts;
+	private boolean passThroughsInMemory = Boolean.getBoolean( XLSConstants.MEMORYPASSTHROUGHS_PROP );
+
+	/**
+	 * Sets the number of threads worksheet parts are read on.
+	 * <p/>
+	 * With more than one thread, the worksheet parts are decompressed and
+	 * tokenized concurrently once the workbook, styles and shared strings
+	 * have been read, and the buffered rows are bound into their sheets in
+	 * order on the calling thread.  The buffered rows of a sheet are held in
+	 * memory until the sheet is bound.  Defaults to the value of
+	 * READTHREADS_PROP, or 1, which reads each part as it is bound.
+	 */
+	public void setReadThreads( int threads )
+	{
+		readThreads = Math.max( 1, threads );
+	}
+
+	/**
+	 * Returns the number of threads worksheet parts are read on.
+	 */
+	public int getReadThreads()
+	{
+		return readThreads;
+	}
+
+	/**
+	 * Sets whether the parts of the file which are not read into the
+	 * WorkBook, such as VBA projects, printer settings and embedded objects,
+	 * are kept in memory rather than unpacked into java.io.tmpdir.  Defaults
+	 * to the value of MEMORYPASSTHROUGHS_PROP.
+	 *
+	 * @see PassThroughStore
+	 */
+	public void setPassThroughsInMemory( boolean inMemory )
+	{
+		passThroughsInMemory = inMemory;
+	}
+
+	/**
+	 * Returns whether pass-through parts are kept in memory.
+	 */
+	public boolean isPassThroughsInMemory()
+	{
+		return passThroughsInMemory;
+	}
 
 	/*****************************************************************************************************************************************/
 	/**
@@ -104,15 +159,39 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
        /* KSC: remove Xf recs first  -- NOTE has some issues for XLS->XLSX -- must fix !! */
 		bk.getWorkBook().removeXfRecs();
 		bk.getWorkBook().setDefaultIxfe( 0 );
+		if( passThroughsInMemory )
+		{
+			bk.getWorkBook().setPassThroughStore( new PassThroughStore() );
+		}
 
 		externalDir = getTempDir( bk.getWorkBook().getFactory().getFileName() );
 		ArrayList formulas = new ArrayList();     // set in parseSheetXML, must process formulas after all sheets/cells have been added 
 		ArrayList hyperlinks = new ArrayList();   // set in parseSheetXML, links with hyperlink target info in sheetX.xml.rels            ""
 		HashMap inlineStrs = new HashMap();               // set in parseSheetXML, stores inlinestring text with addresses for entry after all sheets have been added
-		parseBookLevelElements( bk, null, zip, mainContentList, "", formulas, hyperlinks, inlineStrs, null, null );
+		if( readThreads > 1 )
+		{
+			readPool = Executors.newFixedThreadPool( readThreads );
+		}
+		try
+		{
+			parseBookLevelElements( bk, null, zip, mainContentList, "", formulas, hyperlinks, inlineStrs, null, null );
+		}
+		finally
+		{
+			if( readPool != null )
+			{
+				readPool.shutdownNow();
+				readPool = null;
+			}
+			sheetParts = null;
+			if( bk.getWorkBook().getPassThroughStore() != null )
+			{
+				bk.getWorkBook().getPassThroughStore().closeSource();
+			}
+		}
 		zip.close();
 		// if hasn't been streamed, delete temp dir
-		if( !bk.getWorkBook().getFactory().getFileName().endsWith( ".tmp" ) )
+		if( (bk.getWorkBook().getPassThroughStore() == null) && !bk.getWorkBook().getFactory().getFileName().endsWith( ".tmp" ) )
 		{
 			deleteDir( new File( externalDir ) );    // don't save temp files (pass-through's) -- can reinstate when needed
 		}
@@ -153,7 +232,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 	{
 		String p;    // target path
 		ZipEntry target;
-		ArrayList sst = new ArrayList(); // set in parseSSTXML, used in parsing sheet XML
+		List sst = new ArrayList(); // set in parseSSTXML, used in parsing sheet XML
 
 		try
 		{
@@ -206,13 +285,26 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 						// since we're adding a lot of cells, put sheet in fast add mode    // put statement here AFTER sheet is set :)
 						sheet.setFastCellAdds( true );
 
+						Future<SheetDataBuffer> part = (sheetParts == null) ? null : sheetParts.remove( target.getName() );
+						SheetDataBuffer sheetData = null;
+						InputStream in;
+						if( part != null )
+						{
+							sheetData = getSheetData( part );
+							in = new ByteArrayInputStream( sheetData.getXml() );
+						}
+						else
+						{
+							in = zip.getInputStream( target );
+						}
 						sheet.getMysheet().parseOOXML( bk,
 						                               sheet,
-						                               wrapInputStream( zip.getInputStream( target ) ),
+						                               wrapInputStream( in ),
 						                               sst,
 						                               formulas,
 						                               hyperlinks,
-						                               inlineStrs );
+						                               inlineStrs,
+						                               sheetData );
 
 						// sheet.xml.rels
 						target = getEntry( zip, p + "_rels/" + f.substring( f.lastIndexOf( "/" ) + 1 ) + ".rels" );
@@ -262,6 +354,11 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 					              p,
 					              pivotCaches );    // seets, defined names, pivotcachedefinition ...  
 
+					// styles, sst and workbook are in: the sheet parts can now be read ahead
+					if( readPool != null )
+					{
+						submitSheetParts( zip, wbContentList, p );
+					}
 					// now parse wb content - sheets and their sub-contents (charts, images, oleobjects...)
 					pivotTables = new HashMap<>();
 					parseBookLevelElements( bk, sheet, zip, wbContentList, p, formulas, hyperlinks, inlineStrs, pivotCaches, pivotTables );
@@ -343,6 +440,67 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 		}
 	}
 
+	/**
+	 * Submits a {@link SheetDataBuffer} read of each worksheet part in the
+	 * content list to the read pool.
+	 */
+	private void submitSheetParts( final ZipFile zip, ArrayList cl, String parentDir )
+	{
+		sheetParts = new HashMap<>();
+		for( Object aCl : cl )
+		{
+			String[] c = (String[]) aCl;
+			if( !c[0].equals( "sheet" ) )
+			{
+				continue;
+			}
+			// resolve the part as parseBookLevelElements does, without changing the content list
+			String p = parsePathForZip( StringTool.getPath( c[1] ), parentDir );
+			final ZipEntry target = getEntry( zip, p + StringTool.stripPath( c[1] ) );
+			if( (target == null) || sheetParts.containsKey( target.getName() ) )
+			{
+				continue;
+			}
+			sheetParts.put( target.getName(), readPool.submit( new Callable<SheetDataBuffer>()
+			{
+				@Override
+				public SheetDataBuffer call() throws XmlPullParserException, IOException
+				{
+					InputStream in = zip.getInputStream( target );
+					try
+					{
+						return SheetDataBuffer.read( in );
+					}
+					finally
+					{
+						in.close();
+					}
+				}
+			} ) );
+		}
+	}
+
+	private static SheetDataBuffer getSheetData( Future<SheetDataBuffer> part ) throws XmlPullParserException, IOException
+	{
+		try
+		{
+			return part.get();
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "OOXMLReader interrupted while reading sheets", e );
+		}
+		catch( ExecutionException e )
+		{
+			if( e.getCause() instanceof XmlPullParserException )
+			{
+				throw (XmlPullParserException) e.getCause();
+			}
+			throw new IOException( "OOXMLReader failed reading sheet: " + e.getCause(), e.getCause() );
+		}
+	}
+
 	/**
 	 * pass-through current OOXML element/file - i.e. save file to external directory on disk
 	 * because it cannot be processed into our normal BIFF8 machinery
@@ -363,7 +521,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 	protected static void handlePassThroughs( ZipFile zip, WorkBookHandle bk, String parentDir, String externalDir, String[] c ) throws
 	                                                                                                                             IOException
 	{
-		passThrough( zip, parentDir + c[1], externalDir + c[1] ); // save the original target file for later re-packaging
+		passThrough( bk, zip, parentDir + c[1], externalDir + c[1] ); // save the original target file for later re-packaging
 		ZipEntry target = getEntry( zip,
 		                            parentDir + "_rels/" + c[1].substring( c[1].lastIndexOf( "/" ) + 1 ) + ".rels" ); // is there an associated .rels file??
 		if( target == null )  // no .rels, just link to original OOXML element/file
@@ -378,7 +536,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 					externalDir + c[1],
 					c[2],
 					null,
-					Arrays.asList( storeEmbeds( zip, target, parentDir, externalDir ) )
+					Arrays.asList( storeEmbeds( bk, zip, target, parentDir, externalDir ) )
 					      .toString()/* 1.6 only Arrays.toString(storeEmbeds(zip, target, p))*/
 			} );
 		}
@@ -400,7 +558,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 	                                               String[] c,
 	                                               String attrs ) throws IOException
 	{
-		passThrough( zip, parentDir + c[1], externalDir + c[1] ); // save the original target file for later re-packaging
+		passThrough( bk, zip, parentDir + c[1], externalDir + c[1] ); // save the original target file for later re-packaging
 		ZipEntry target = getEntry( zip,
 		                            parentDir + "_rels/" + c[1].substring( c[1].lastIndexOf( "/" ) + 1 ) + ".rels" ); // is there an associated .rels file??
 		if( target == null ) // no .rels, just link to original OOXML element/file
@@ -415,12 +573,37 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 					externalDir + c[1],
 					c[2],
 					attrs,
-					Arrays.asList( storeEmbeds( zip, target, parentDir, externalDir ) )
+					Arrays.asList( storeEmbeds( bk, zip, target, parentDir, externalDir ) )
 					      .toString() /* 1.6 only Arrays.toString(storeEmbeds(zip, target, p))*/
 			} );
 		}
 	}
 
+	/**
+	 * handle OOXML files that we do not process at this time.
+	 * <br>Stores the file in question from zip file fin in the pass-through store of the workbook, if it has one,
+	 * under the name fout; otherwise writes it to file directory file fout
+	 *
+	 * @see PassThroughStore
+	 */
+	protected static void passThrough( WorkBookHandle bk, ZipFile zip, String fin, String fout ) throws IOException
+	{
+		PassThroughStore store = (bk == null) ? null : bk.getWorkBook().getPassThroughStore();
+		if( store == null )
+		{
+			passThrough( zip, fin, fout );
+			return;
+		}
+		try
+		{
+			store.put( fout, zip, fin );
+		}
+		catch( Exception e )
+		{
+			; // OK for external links for FNFE
+		}
+	}
+
 	/**
 	 * handle OOXML files that we do not process at this time.
 	 * <br>Writes the file in question from zip file fin to file directory file fout
@@ -1115,7 +1298,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 	 * @param p      path
 	 * @return String[] array of embeds
 	 */
-	protected static String[] storeEmbeds( ZipFile zip, ZipEntry target, String p, String externalDir ) throws IOException
+	protected static String[] storeEmbeds( WorkBookHandle bk, ZipFile zip, ZipEntry target, String p, String externalDir ) throws IOException
 	{
 		//if(DEBUG) Logger.logInfo("storeEmbeds about to call parseRels on: " + target.toString());
 
@@ -1141,7 +1324,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants
 			{
 				try
 				{
-					passThrough( zip, path + v[1], externalDir + v[1] );    // save the original target file for later re-packaging
+					passThrough( bk, zip, path + v[1], externalDir + v[1] );    // save the original target file for later re-packaging
 				}
 				catch( NullPointerException e )
 				{
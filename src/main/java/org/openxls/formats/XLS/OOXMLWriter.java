@@ -28,7 +28,6 @@ import org.openxls.ExtenXLS.ChartHandle;
 import org.openxls.ExtenXLS.CommentHandle;
 import org.openxls.ExtenXLS.ExcelTools;
 import org.openxls.ExtenXLS.FormatHandle;
-import org.openxls.ExtenXLS.FormulaHandle;
 import org.openxls.ExtenXLS.ImageHandle;
 import org.openxls.ExtenXLS.RowHandle;
 import org.openxls.ExtenXLS.WorkBookHandle;
@@ -55,10 +54,14 @@ import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipOutputStream;
 
 /**
@@ -67,6 +70,42 @@ import java.util.zip.ZipOutputStream;
 public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 {
 	private static final Logger log = LoggerFactory.getLogger( OOXMLWriter.class );
+	// sorted for binarySearch
+	private static final String[] ERROR_STRINGS = {
+			"#DIV/0!", "#N/A", "#NAME?", "#NULL!", "#NUM!", "#REF!", "#VALUE!"
+	};
+
+	private int writeThreads = 1;
+	private transient ExecutorService writePool;
+	private transient PassThroughStore passThroughs;
+	private transient Future<DeflatedPart> sstPart;
+	private transient List<Future<SheetRows>> sheetRowParts;
+
+	/**
+	 * Sets the number of threads used to render and compress the rows of
+	 * each worksheet and the shared string table.
+	 * <p/>
+	 * With more than one thread, worksheet rows and sharedStrings.xml are
+	 * rendered and deflated concurrently into memory while the rest of the
+	 * package is written, then spliced into their zip entries in order.
+	 * The default of 1 writes everything on the calling thread.
+	 *
+	 * @param threads the number of threads, ie:
+	 *                Runtime.getRuntime().availableProcessors()
+	 */
+	public void setWriteThreads( int threads )
+	{
+		writeThreads = Math.max( 1, threads );
+	}
+
+	/**
+	 * Returns the number of threads used to render and compress worksheets.
+	 */
+	public int getWriteThreads()
+	{
+		return writeThreads;
+	}
+
 	/**
 	 * generates OOXML for a workbook (see specification above)
 	 * Creates the ZIP file and writes all files into proper directory structure re: OPC
@@ -94,7 +133,20 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 		imgId = 0;
 
 		// create XLSX zip file from OutputStream 
-		zip = new ZipOutputStream( out );
+		passThroughs = bk.getWorkBook().getPassThroughStore();
+		if( writeThreads > 1 )
+		{   // parts rendered on the pool are spliced into their entries
+			writePool = Executors.newFixedThreadPool( writeThreads );
+			zip = new SplicingZipOutputStream( out );
+		}
+		else if( passThroughs != null )
+		{   // pass-through parts are copied in compressed
+			zip = new SplicingZipOutputStream( out );
+		}
+		else
+		{
+			zip = new ZipOutputStream( out );
+		}
 
 		// Wrap the ZipOutputStream in a Writer to handle character encoding
 		// setting encoding is important when input encoding is not utf8; writing to utf8 will convert (for example, format strings in styles.xml ...)
@@ -103,7 +155,20 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 		// retrive external directory used to store passthrough files
 		externalDir = getTempDir( bk.getWorkBook().getFactory().getFileName() );
 		// writeOOXML files to zip
-		writeOOXML( bk );
+		try
+		{
+			writeOOXML( bk );
+		}
+		finally
+		{
+			if( writePool != null )
+			{
+				writePool.shutdownNow();
+				writePool = null;
+			}
+			sstPart = null;
+			sheetRowParts = null;
+		}
 		// write main .rels file            
 		writeRels( mainContentList, "_rels/.rels" );      // TODO: if have doc properties, must add to .rels
 		// write [Content_Types].xml
@@ -123,6 +188,7 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 			deleteDir( new File( externalDir ) );
 		}
 		zip = null;
+		passThroughs = null;
 	}
 
 	/**
@@ -137,6 +203,12 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 		{
 			String k = its.next().toString();
 			String fx = (String) deferredFiles.get( k );
+			if( (passThroughs != null) && passThroughs.contains( fx ) )
+			{
+				writer.flush();
+				passThroughs.write( fx, zip, k );
+				continue;
+			}
 			writeFileToZIP( fx, k );
 			File fdel = new File( fx );
 			fdel.deleteOnExit();
@@ -284,8 +356,7 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 		String p = s[EX_PATH];
 		String f = s[EX_FNAME];
 		int rId = -1;
-		File finx = new File( f );
-		if( finx.exists() )
+		if( ((passThroughs != null) && passThroughs.contains( f )) || new File( f ).exists() )
 		{ // external object hasn't already been input into zip
 			String fname = getExOOXMLFileName( f );
 			if( s.length > EX_EMBEDINFO )
@@ -519,7 +590,15 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 	{
 		// SHAREDSTRINGS.XML
 		nextZipEntry( "xl/sharedStrings.xml" );
-		bk.getWorkBook().getSharedStringTable().writeOOXML( writer );
+		if( sstPart != null )
+		{
+			writer.flush();
+			((SplicingZipOutputStream) zip).writeDeflated( getPart( sstPart ) );
+		}
+		else
+		{
+			bk.getWorkBook().getSharedStringTable().writeOOXML( writer );
+		}
 
 		wbContentList.add( new String[]{ "/xl/sharedStrings.xml", "sst" } );
 	}
@@ -537,6 +616,10 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 	{
 		int origcalcmode = bk.getWorkBook().getCalcMode();
 		bk.getWorkBook().setCalcMode( WorkBook.CALCULATE_EXPLICIT );  // don't recalculate 
+		if( writePool != null )
+		{
+			submitParts( bk );
+		}
 		writeExternalOOXML( bk );     // all workbook-level objects we cannot handle at this point such as docProps, themes, or are pass-throughs, such as vbaprojects ...        
 		writeSSTOOXML( bk );
 		// writeStylesOOXML AFTER sheet OOXML in order to capture any dxf's  (differential xf's used in conditional formatting and others)
@@ -554,6 +637,76 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 
 	}
 
+	/**
+	 * Starts rendering the shared string table and the rows of every sheet
+	 * on the write pool.  Cell values are only read, and the calc mode must
+	 * already be explicit so that no formula is calculated.
+	 */
+	private void submitParts( WorkBookHandle bk )
+	{
+		final Sst sst = bk.getWorkBook().getSharedStringTable();
+		sstPart = writePool.submit( new Callable<DeflatedPart>()
+		{
+			@Override
+			public DeflatedPart call() throws IOException
+			{
+				DeflatedPart part = new DeflatedPart();
+				Writer out = new OutputStreamWriter( part, inputEncoding );
+				sst.writeOOXML( out );
+				out.flush();
+				part.finishPart();
+				return part;
+			}
+		} );
+		sheetRowParts = new ArrayList<>();
+		for( final WorkSheetHandle sheet : bk.getWorkSheets() )
+		{
+			final WorkBookHandle book = bk;
+			sheetRowParts.add( writePool.submit( new Callable<SheetRows>()
+			{
+				@Override
+				public SheetRows call() throws IOException
+				{
+					SheetRows rows = new SheetRows();
+					Writer out = new OutputStreamWriter( rows.part, inputEncoding );
+					SheetXmlWriter rowWriter = new SheetXmlWriter( out );
+					writeRows( sheet, book, rows.hyperlinks, rowWriter );
+					rowWriter.flush();
+					out.flush();
+					rows.part.finishPart();
+					return rows;
+				}
+			} ) );
+		}
+	}
+
+	private static <T> T getPart( Future<T> part ) throws IOException
+	{
+		try
+		{
+			return part.get();
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "OOXMLWriter interrupted while rendering parts", e );
+		}
+		catch( ExecutionException e )
+		{
+			throw new IOException( "OOXMLWriter failed rendering part: " + e.getCause(), e.getCause() );
+		}
+	}
+
+	/**
+	 * The compressed sheetData rows of a worksheet and the hyperlinks found
+	 * while rendering them.
+	 */
+	private static final class SheetRows
+	{
+		final DeflatedPart part = new DeflatedPart();
+		final ArrayList hyperlinks = new ArrayList();
+	}
+
 	/**
 	 * Creates Styles.xml with font and xf information, and writes it to the root directory of the OPC ZIP
 	 * <p/>
@@ -1323,20 +1476,18 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 		ArrayList hyperlinks = new ArrayList();
 		// SHEETxx.XML
 		writeSheetPrefix( sheet, bk, id );
-		RowHandle[] rows = sheet.getRows();
-		for( RowHandle row : rows )
+		if( (sheetRowParts != null) && (id < sheetRowParts.size()) )
+		{   // rows were rendered on the write pool
+			SheetRows rows = getPart( sheetRowParts.get( id ) );
+			hyperlinks.addAll( rows.hyperlinks );
+			writer.flush();
+			((SplicingZipOutputStream) zip).writeDeflated( rows.part );
+		}
+		else
 		{
-			try
-			{ // note: row #, col #'s are 1-based, sst and style index are 0-based
-				writeRow( row, hyperlinks );
-				//} catch (RowNotFoundException re) {
-				; // do nothing
-			}
-			catch( Exception e )
-			{
-				log.error( "OOXMLWriter.writeSheetOOXML writing rows: " + e.toString() );
-				e.printStackTrace();
-			}
+			SheetXmlWriter rowWriter = new SheetXmlWriter( writer );
+			writeRows( sheet, bk, hyperlinks, rowWriter );
+			rowWriter.flush();
 		}
 		writer.write( "</sheetData>" );
 		writer.write( "\r\n" );
@@ -1506,121 +1657,178 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants
 
 	}
 
+	/**
+	 * Writes all rows of the sheet to the row writer.  Rows are written
+	 * straight from the Row and cell records through the writer's buffer.
+	 */
+	private void writeRows( WorkSheetHandle sheet, WorkBookHandle bk, ArrayList hyperlinks, SheetXmlWriter rowWriter )
+	{
+		Row[] rows = sheet.getMysheet().getRows();
+		for( Row row : rows )
+		{
+			try
+			{ // note: row #, col #'s are 1-based, sst and style index are 0-based
+				writeRow( row, bk, hyperlinks, rowWriter );
+				//} catch (RowNotFoundException re) {
+				; // do nothing
+			}
+			catch( Exception e )
+			{
+				log.error( "OOXMLWriter.writeSheetOOXML writing rows: " + e.toString() );
+				e.printStackTrace();
+			}
+		}
+	}
+
 	/**
 	 * Writes a row and all contents to the zip output
 	 *
 	 * @param hyperlinks
 	 * @throws IOException
-	 * @throws FormulaNotFoundException
 	 */
 	public void writeRow( RowHandle row, ArrayList hyperlinks ) throws IOException
 	{
+		SheetXmlWriter rowWriter = new SheetXmlWriter( writer );
+		writeRow( row.myRow, row.getWorkSheetHandle().getWorkBook(), hyperlinks, rowWriter );
+		rowWriter.flush();
+	}
 
-		// row = sheet.getRow(x);
-		// TODO: need spans?  
+	/**
+	 * Writes a row and all contents to the row writer
+	 * <p/>
+	 * Cells are read from the cell records of the row rather than through
+	 * CellHandles, and references and values are formatted into the row
+	 * writer's buffer.
+	 *
+	 * @param hyperlinks
+	 * @throws IOException
+	 */
+	void writeRow( Row row, WorkBookHandle bk, ArrayList hyperlinks, SheetXmlWriter out ) throws IOException
+	{
+		// TODO: need spans?
 		// <row element> -- eventually will be refactored as Object
-		String h = "";
-		if( row.getHeight() != 255 )    // if it's not default
+		int rownum = row.getRowNumber();
+		out.write( "<row r=\"" ).write( (long) rownum + 1 ).write( '"' );
+		if( row.getRowHeight() != 255 )    // if it's not default
 		{
-			h = " ht=\"" + row.getHeight() / rowHtFactor + "\" customHeight=\"1\"";
+			out.write( " ht=\"" ).write( row.getRowHeight() / rowHtFactor ).write( "\" customHeight=\"1\"" );
 		}
-		writer.write( ("<row r=\"" + (row.getRowNumber() + 1) + "\"" + h) );
-		if( (row.getFormatId() > 0) && (row.getFormatId() > row.getWorkBook().getWorkBook().getDefaultIxfe()) )      // row-level formatting specified
+		int rowXf = row.getExplicitFormatSet() ? row.getIxfe() : row.getWorkBook().getDefaultIxfe();
+		if( (rowXf > 0) && (rowXf > row.getWorkBook().getDefaultIxfe()) )      // row-level formatting specified
 		{
-			writer.write( (" s=\"" + row.getFormatId() + "\" customFormat=\"1\"") );
+			out.write( " s=\"" ).write( (long) rowXf ).write( "\" customFormat=\"1\"" );
 		}
 		if( row.getHasAnyThickTopBorder() )
 		{
-			writer.write( " thickTop=\"1\"" );
+			out.write( " thickTop=\"1\"" );
 		}
 		if( row.getHasAnyBottomBorder() )
 		{
-			writer.write( " thickBot=\"1\"" );
+			out.write( " thickBot=\"1\"" );
 		}
 
 		if( row.isHidden() )
 		{
-			writer.write( " hidden=\"1\"" );
+			out.write( " hidden=\"1\"" );
 		}
 		if( row.isCollapsed() )
 		{
-			writer.write( " collapsed=\"1\"" );                // 20090513 KSC: Added collapsed, outlineLevel [BUGTRACKER 2371]
+			out.write( " collapsed=\"1\"" );                // 20090513 KSC: Added collapsed, outlineLevel [BUGTRACKER 2371]
 		}
 		if( row.getOutlineLevel() != 0 )
 		{
-			writer.write( (" outlineLevel=\"" + row.getOutlineLevel() + "\"") );
+			out.write( " outlineLevel=\"" ).write( (long) row.getOutlineLevel() ).write( '"' );
 		}
-		writer.write( ">" );
-		writer.write( "\r\n" );
+		out.write( ">\r\n" );
 		// Cell element <c
-		CellHandle[] ch = row.getCells();
-		// iterate cells and output xml
-		for( CellHandle aCh : ch )
-		{
-			int styleId = aCh.getCell().getIxfe();
-			int dataType = aCh.getCellType();
-			if( aCh.hasHyperlink() )
-			{   // save; hyperlinks go after sheetData
-				hyperlinks.add( new String[]{ aCh.getCellAddress(), aCh.getURL(), aCh.getURLDescription() } );
-			}
-			writer.write( ("<c r=\"" + aCh.getCellAddress() + "\"") );
-			if( styleId > 0 )
+		Mulblank lastMulblank = null;
+		for( BiffRec rec : row.getSheet().getCellsForOutput( rownum ) )
+		{
+			if( rec.getOpcode() == XLSConstants.MULBLANK )
 			{
-				writer.write( (" s=\"" + styleId + "\"") );
+				// a Mulblank is one record for a range of blank cells
+				if( rec == lastMulblank )
+				{
+					continue;
+				}
+				lastMulblank = (Mulblank) rec;
+				for( int c = lastMulblank.getColFirst(); c <= lastMulblank.getColLast(); c++ )
+				{
+					lastMulblank.setCurrentCell( (short) c );
+					writeCell( rec, rownum, c, bk, hyperlinks, out );
+				}
 			}
-			switch( dataType )
+			else
 			{
-				case CellHandle.TYPE_STRING:
-					String s = aCh.getStringVal();
-					boolean isErrVal = false;
-					if( (s.indexOf( "#" ) == 0) )
-					{   // 20090521 KSC: must test if it's an error string value
-						isErrVal = (Collections.binarySearch( Arrays.asList( new String[]{
-								"#DIV/0!", "#N/A", "#NAME?", "#NULL!", "#NUM!", "#REF!", "#VALUE!"
-						} ), s.trim() ) > -1);
-					}
-					if( !isErrVal )
-					{
-						writer.write( " t=\"s\">" );
-						// 20090520 KSC: can't use only string value as intra-cell formatting is possible zip.write("<v>" + ssts.indexOf(stripNonAscii(ch[j].getStringVal())) + "</v>");
-						int v = ((Labelsst) aCh.getCell()).isst; // use isst instead of a lookup -- MUCHMUCHMUCH faster!
-						writer.write( ("<v>" + v + "</v>") );
-					}
-					else
-					{// it's an error value, must have type of "e"
-						writer.write( " t=\"e\">" );
-						writer.write( ("<v>" + s + "</v>") );
-					}
-					break;
-				case CellHandle.TYPE_DOUBLE:
-				case CellHandle.TYPE_FP:
-				case CellHandle.TYPE_INT:
-					writer.write( (" t=\"n\"><v>" + aCh.getVal() + "</v>") );
-					break;
-				case CellHandle.TYPE_FORMULA:
-					FormulaHandle fh;
-					try
-					{
-						fh = aCh.getFormulaHandle();
-						writer.write( fh.getOOXML() );
-					}
-					catch( FormulaNotFoundException e )
-					{
-						log.error( "Error getting formula handle in OOXML Writer" );
-					}
-					break;
-				case CellHandle.TYPE_BOOLEAN:
-					writer.write( (" t=\"b\"><v>" + aCh.getIntVal() + "</v>") );
-					break;
-				case CellHandle.TYPE_BLANK:
-					writer.write( ">" );
-					break;
+				writeCell( rec, rownum, rec.getColNumber(), bk, hyperlinks, out );
 			}
-			writer.write( "</c>" );
-			writer.write( "\r\n" );
 		}
-		writer.write( "</row>" );
-		writer.write( "\r\n" );
+		out.write( "</row>\r\n" );
+	}
+
+	private void writeCell( BiffRec rec, int rownum, int colnum, WorkBookHandle bk, ArrayList hyperlinks, SheetXmlWriter out ) throws IOException
+	{
+		int styleId = rec.getIxfe();
+		if( rec.getHyperlink() != null )
+		{   // save; hyperlinks go after sheetData
+			hyperlinks.add( new String[]{
+					ExcelTools.formatLocation( new int[]{ rownum, colnum } ), rec.getHyperlink().getURL(), rec.getHyperlink().getDescription()
+			} );
+		}
+		out.write( "<c r=\"" ).writeCellRef( rownum, colnum ).write( '"' );
+		if( styleId > 0 )
+		{
+			out.write( " s=\"" ).write( (long) styleId ).write( '"' );
+		}
+		switch( ((XLSRecord) rec).getCellType() )
+		{
+			case XLSConstants.TYPE_STRING:
+				String err = null;
+				if( !(rec instanceof Labelsst) || ((Labelsst) rec).stringStartsWith( '#' ) )
+				{   // 20090521 KSC: must test if it's an error string value
+					String s = rec.getStringVal();
+					if( (s != null) && s.startsWith( "#" ) && (Arrays.binarySearch( ERROR_STRINGS, s.trim() ) > -1) )
+					{
+						err = s;
+					}
+				}
+				if( err != null )
+				{// it's an error value, must have type of "e"
+					out.write( " t=\"e\"><v>" ).write( err ).write( "</v>" );
+				}
+				else if( rec instanceof Labelsst )
+				{
+					// use isst instead of a lookup -- MUCHMUCHMUCH faster!
+					out.write( " t=\"s\"><v>" ).write( (long) ((Labelsst) rec).isst ).write( "</v>" );
+				}
+				else
+				{
+					out.write( " t=\"inlineStr\"><is><t>" ).write( stripNonAscii( rec.getStringVal() ).toString() ).write( "</t></is>" );
+				}
+				break;
+			case XLSConstants.TYPE_DOUBLE:
+			case XLSConstants.TYPE_FP:
+			case XLSConstants.TYPE_INT:
+				out.write( " t=\"n\"><v>" ).write( rec.getDblVal() ).write( "</v>" );
+				break;
+			case XLSConstants.TYPE_FORMULA:
+				try
+				{
+					out.write( new CellHandle( rec, bk ).getFormulaHandle().getOOXML() );
+				}
+				catch( FormulaNotFoundException e )
+				{
+					log.error( "Error getting formula handle in OOXML Writer" );
+				}
+				break;
+			case XLSConstants.TYPE_BOOLEAN:
+				out.write( " t=\"b\"><v>" ).write( rec.getBooleanVal() ? '1' : '0' ).write( "</v>" );
+				break;
+			case XLSConstants.TYPE_BLANK:
+				out.write( '>' );
+				break;
+		}
+		out.write( "</c>\r\n" );
 	}
 
 	/**
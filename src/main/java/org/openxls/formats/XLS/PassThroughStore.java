@@ -0,0 +1,292 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Holds the pass-through parts of an XLSX workbook in memory, in place of
+ * the files OOXMLReader otherwise unpacks into the temp directory.
+ * <p/>
+ * Parts are keyed by the temp file path they would have been written to, so
+ * the references kept to them by the WorkBook, its sheets and charts are the
+ * same in either case.  Each part is kept as the raw DEFLATE data of its
+ * entry in the source zip, read straight from the file without inflating
+ * it, and is copied into the output without recompression when the output is
+ * a {@link SplicingZipOutputStream}.
+ */
+final class PassThroughStore
+{
+	private static final int LOCSIG = 0x04034b50;
+	private static final int CENSIG = 0x02014b50;
+	private static final int ENDSIG = 0x06054b50;
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private final HashMap<String, Part> parts = new HashMap<>();
+
+	// the source zip, opened to read raw entries
+	private String sourceName;
+	private RandomAccessFile source;
+	private HashMap<String, Long> offsets;
+
+	/**
+	 * Stores an entry of the given zip file under the given key.
+	 */
+	void put( String key, ZipFile zip, String entryName ) throws IOException
+	{
+		ZipEntry e = zip.getEntry( entryName );
+		if( e == null )
+		{
+			throw new ZipException( "no entry " + entryName + " in " + zip.getName() );
+		}
+		Part part = null;
+		if( (e.getMethod() == ZipEntry.DEFLATED) && (e.getCompressedSize() >= 0) && (e.getCompressedSize() < Integer.MAX_VALUE) )
+		{
+			part = readRaw( zip, e );
+		}
+		if( part == null )
+		{   // stored entry or unreadable headers: compress it here
+			InputStream in = zip.getInputStream( e );
+			try
+			{
+				part = compress( in );
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		parts.put( key, part );
+	}
+
+	boolean contains( String key )
+	{
+		return parts.containsKey( key );
+	}
+
+	/**
+	 * Writes the part stored under the given key as an entry of the zip.
+	 */
+	void write( String key, ZipOutputStream zip, String entryName ) throws IOException
+	{
+		Part part = parts.get( key );
+		if( zip instanceof SplicingZipOutputStream )
+		{
+			((SplicingZipOutputStream) zip).putRawEntry( new ZipEntry( entryName ), part.data, part.crc, part.size );
+			return;
+		}
+		zip.putNextEntry( new ZipEntry( entryName ) );
+		Inflater inf = new Inflater( true );
+		try
+		{
+			inf.setInput( part.data );
+			byte[] buf = new byte[8192];
+			while( !inf.finished() )
+			{
+				int n = inf.inflate( buf );
+				if( n > 0 )
+				{
+					zip.write( buf, 0, n );
+				}
+				else if( inf.needsInput() )
+				{
+					inf.setInput( new byte[1] );    // nowrap inflaters may need a dummy byte to finish
+				}
+			}
+		}
+		catch( DataFormatException ex )
+		{
+			throw new ZipException( "corrupt pass-through part " + key + ": " + ex.getMessage() );
+		}
+		finally
+		{
+			inf.end();
+		}
+	}
+
+	/**
+	 * Releases the source zip file.  Parts already stored are kept.
+	 */
+	void closeSource()
+	{
+		if( source != null )
+		{
+			try
+			{
+				source.close();
+			}
+			catch( IOException e )
+			{
+				;
+			}
+		}
+		source = null;
+		sourceName = null;
+		offsets = null;
+	}
+
+	/**
+	 * Reads the compressed data of a DEFLATED entry from the zip file, or
+	 * returns null if its local header can't be found.
+	 */
+	private Part readRaw( ZipFile zip, ZipEntry e ) throws IOException
+	{
+		if( !zip.getName().equals( sourceName ) )
+		{
+			closeSource();
+			sourceName = zip.getName();
+			source = new RandomAccessFile( sourceName, "r" );
+			offsets = readOffsets( source );
+		}
+		Long off = offsets.get( e.getName() );
+		if( off == null )
+		{
+			return null;
+		}
+		byte[] loc = new byte[30];
+		source.seek( off );
+		source.readFully( loc );
+		if( getInt( loc, 0 ) != LOCSIG )
+		{
+			return null;
+		}
+		source.seek( off + 30 + getShort( loc, 26 ) + getShort( loc, 28 ) );
+		byte[] data = new byte[(int) e.getCompressedSize()];
+		source.readFully( data );
+		return new Part( data, e.getCrc(), e.getSize() );
+	}
+
+	/**
+	 * Returns the local header offset of each entry, from the central
+	 * directory of the zip.  Zip64 archives aren't read and give no offsets.
+	 */
+	private static HashMap<String, Long> readOffsets( RandomAccessFile f ) throws IOException
+	{
+		HashMap<String, Long> offsets = new HashMap<>();
+		int scan = (int) Math.min( f.length(), 0xffff + 22 );
+		byte[] tail = new byte[scan];
+		f.seek( f.length() - scan );
+		f.readFully( tail );
+		int end = scan - 22;
+		while( (end >= 0) && (getInt( tail, end ) != ENDSIG) )
+		{
+			end--;
+		}
+		if( end < 0 )
+		{
+			return offsets;
+		}
+		int count = getShort( tail, end + 10 );
+		long size = getInt( tail, end + 12 ) & 0xffffffffL;
+		long cen = getInt( tail, end + 16 ) & 0xffffffffL;
+		if( (cen == 0xffffffffL) || ((cen + size) > f.length()) )
+		{
+			return offsets;
+		}
+		byte[] dir = new byte[(int) size];
+		f.seek( cen );
+		f.readFully( dir );
+		int pos = 0;
+		for( int i = 0; (i < count) && ((pos + 46) <= dir.length) && (getInt( dir, pos ) == CENSIG); i++ )
+		{
+			int nameLen = getShort( dir, pos + 28 );
+			long off = getInt( dir, pos + 42 ) & 0xffffffffL;
+			offsets.put( new String( dir, pos + 46, nameLen, UTF8 ), off );
+			pos += 46 + nameLen + getShort( dir, pos + 30 ) + getShort( dir, pos + 32 );
+		}
+		return offsets;
+	}
+
+	private static Part compress( InputStream in ) throws IOException
+	{
+		Deflater def = new Deflater( Deflater.DEFAULT_COMPRESSION, true );
+		CRC32 crc = new CRC32();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		byte[] buf = new byte[8192];
+		long size = 0;
+		try
+		{
+			for( int n = in.read( b ); n != -1; n = in.read( b ) )
+			{
+				crc.update( b, 0, n );
+				size += n;
+				def.setInput( b, 0, n );
+				while( !def.needsInput() )
+				{
+					out.write( buf, 0, def.deflate( buf ) );
+				}
+			}
+			def.finish();
+			while( !def.finished() )
+			{
+				out.write( buf, 0, def.deflate( buf ) );
+			}
+		}
+		finally
+		{
+			def.end();
+		}
+		return new Part( out.toByteArray(), crc.getValue(), size );
+	}
+
+	private static int getShort( byte[] b, int off )
+	{
+		return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+	}
+
+	private static int getInt( byte[] b, int off )
+	{
+		return getShort( b, off ) | (getShort( b, off + 2 ) << 16);
+	}
+
+	/**
+	 * A complete raw DEFLATE stream with the CRC-32 and size of its data.
+	 */
+	private static final class Part
+	{
+		final byte[] data;
+		final long crc;
+		final long size;
+
+		Part( byte[] data, long crc, long size )
+		{
+			this.data = data;
+			this.crc = crc;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A record standing in for a run of complete BIFF records which are already
+ * encoded, such as rows spilled to disk or an unread sheet substream.
+ * <p/>
+ * The ByteStreamer counts getLength() bytes for it and copies its bytes to the
+ * output as they are, without a record header or CONTINUE handling.
+ *
+ * @see ByteStreamer
+ */
+interface PreencodedRecord
+{
+	/**
+	 * copy the encoded records to the output
+	 */
+	void writeTo( OutputStream out ) throws IOException;
+}
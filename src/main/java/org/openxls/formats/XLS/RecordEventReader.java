@@ -0,0 +1,622 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import org.openxls.formats.LEO.BlockByteReader;
+import org.openxls.formats.LEO.LEOFile;
+import org.openxls.toolkit.StringTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, event based reader for BIFF8 workbook streams.
+ * <p/>
+ * Unlike {@link WorkBookFactory} this reader never builds XLSRecords, a
+ * WorkBook or Boundsheets: each record is read once into a reused buffer and
+ * the cell values are decoded straight into {@link SheetRowListener}
+ * callbacks.  Apart from the shared string table, the XF/FORMAT tables and the
+ * sheet names, memory use is constant regardless of the size of the sheets.
+ * <p/>
+ * Records decoded: SST (+CONTINUE), XF, FORMAT, BOUNDSHEET, DATE1904, BOF/EOF,
+ * ROW, NUMBER, RK, MULRK, LABELSST, BOOLERR, and the cached results of FORMULA
+ * (+STRING).  All other records are skipped without reading their bodies.
+ * <p/>
+ * Usage:
+ * <pre>
+ * LEOFile leo = new LEOFile( new File( "big.xls" ) );
+ * RecordEventReader reader = new RecordEventReader( leo );
+ * reader.read( listener );
+ * </pre>
+ *
+ * @see SheetRowListener
+ */
+public class RecordEventReader implements XLSConstants
+{
+	private static final Logger log = LoggerFactory.getLogger( RecordEventReader.class );
+
+	private static final short SUBSTREAM_WORKSHEET = 0x10;
+
+	private final BlockByteReader reader;
+	private final byte[] header = new byte[4];
+	private final byte[] data = new byte[MAXRECLEN];
+	private char[] chars = new char[256];
+
+	private String[] sst = new String[0];
+	private short[] xfFormats = new short[64];
+	private int xfCount = 0;
+	private final Map<Integer, String> formats = new HashMap<>();
+	private final List<String> sheetNames = new ArrayList<>();
+	private final List<Integer> sheetOffsets = new ArrayList<>();
+	private boolean is1904 = false;
+
+	// state of the current worksheet substream
+	private int curRow = -1;
+	private boolean pendingString = false;
+	private int pendingRow;
+	private int pendingCol;
+	private int pendingXf;
+
+	/**
+	 * Reads the Workbook stream of the given LEOFile.
+	 */
+	public RecordEventReader( LEOFile leo )
+	{
+		this( leo.getXLSBlockBytes() );
+	}
+
+	/**
+	 * Reads the given Workbook stream.
+	 */
+	public RecordEventReader( BlockByteReader reader )
+	{
+		this.reader = reader;
+	}
+
+	/**
+	 * Reads the entire stream, delivering every worksheet cell value to the
+	 * listener.
+	 *
+	 * @throws InvalidRecordException if a record header is corrupt
+	 */
+	public void read( SheetRowListener listener )
+	{
+		int blen = reader.getLength();
+		int depth = 0;
+		int substreams = 0;
+		int sheet = -1;
+		boolean inWorksheet = false;
+		short lastOpcode = 0;
+
+		int i = 0;
+		while( i <= (blen - 4) )
+		{
+			reader.readBytes( i, header, 0, 4 );
+			short opcode = (short) readShort( header, 0 );
+			int reclen = readShort( header, 2 );
+			int recstart = i;
+			i += 4 + reclen;
+
+			if( ((lastOpcode == EOF) && (depth == 0) && (opcode == 0)) || (opcode == (short) 0xffff) )
+			{
+				break; // trailing junk after the last EOF
+			}
+			if( reclen > MAXRECLEN )
+			{
+				throw new InvalidRecordException( "RecordEventReader.read() BAD RECORD LENGTH: off: " + recstart + " op: " + Integer.toHexString(
+						opcode ) + " len: " + reclen );
+			}
+			lastOpcode = opcode;
+
+			switch( opcode )
+			{
+				case BOF:
+					depth++;
+					if( depth == 1 )
+					{
+						fill( recstart, 4 );
+						if( substreams++ > 0 )
+						{
+							sheet = getSheetIndex( recstart, sheet );
+							inWorksheet = readShort( data, 2 ) == SUBSTREAM_WORKSHEET;
+							if( inWorksheet )
+							{
+								curRow = -1;
+								pendingString = false;
+								listener.startSheet( sheet, (sheet < sheetNames.size()) ? sheetNames.get( sheet ) : null );
+							}
+						}
+					}
+					break;
+
+				case EOF:
+					depth--;
+					if( (depth == 0) && inWorksheet )
+					{
+						if( curRow >= 0 )
+						{
+							listener.endRow( curRow );
+						}
+						listener.endSheet( sheet );
+						inWorksheet = false;
+					}
+					break;
+
+				case SST:
+					i = readSst( recstart, reclen );
+					break;
+
+				case XF:
+					fill( recstart, 4 );
+					if( xfCount == xfFormats.length )
+					{
+						short[] grown = new short[xfCount * 2];
+						System.arraycopy( xfFormats, 0, grown, 0, xfCount );
+						xfFormats = grown;
+					}
+					xfFormats[xfCount++] = (short) readShort( data, 2 );
+					break;
+
+				case FORMAT:
+					fill( recstart, reclen );
+					readFormat( reclen );
+					break;
+
+				case BOUNDSHEET:
+					fill( recstart, reclen );
+					sheetOffsets.add( readInt( data, 0 ) );
+					sheetNames.add( readString( 8, data[6] & 0xff, data[7], reclen ) );
+					break;
+
+				case DATE1904:
+					fill( recstart, 2 );
+					is1904 = readShort( data, 0 ) == 1;
+					break;
+
+				default:
+					if( inWorksheet && (depth == 1) )
+					{
+						readCell( opcode, recstart, reclen, listener );
+					}
+			}
+		}
+	}
+
+	/**
+	 * Decodes a cell record of the current worksheet.
+	 */
+	private void readCell( short opcode, int recstart, int reclen, SheetRowListener listener )
+	{
+		int row;
+		int col;
+		int ixfe;
+		switch( opcode )
+		{
+			case ROW:
+				fill( recstart, 16 );
+				if( curRow >= 0 )
+				{
+					listener.endRow( curRow );
+					curRow = -1;
+				}
+				pendingString = false;
+				int grbit = data[12] & 0xff;
+				// the XF is only valid when fGhostDirty is set
+				ixfe = ((grbit & 0x80) != 0) ? (readShort( data, 14 ) & 0xfff) : -1;
+				listener.rowInfo( readShort( data, 0 ), readShort( data, 6 ) & 0x7fff, (grbit & 0x20) != 0, ixfe );
+				break;
+
+			case NUMBER:
+				fill( recstart, 14 );
+				row = readShort( data, 0 );
+				col = readShort( data, 2 );
+				ixfe = readShort( data, 4 );
+				pendingString = false;
+				toRow( row, listener );
+				listener.numberCell( row, col, ixfe, Double.longBitsToDouble( readLong( data, 6 ) ) );
+				break;
+
+			case RK:
+				fill( recstart, 10 );
+				row = readShort( data, 0 );
+				col = readShort( data, 2 );
+				ixfe = readShort( data, 4 );
+				pendingString = false;
+				toRow( row, listener );
+				listener.numberCell( row, col, ixfe, parseRk( readInt( data, 6 ) ) );
+				break;
+
+			case MULRK:
+				fill( recstart, reclen );
+				row = readShort( data, 0 );
+				col = readShort( data, 2 );
+				pendingString = false;
+				toRow( row, listener );
+				int n = (reclen - 6) / 6;
+				for( int t = 0, pos = 4; t < n; t++, pos += 6 )
+				{
+					listener.numberCell( row, col + t, readShort( data, pos ), parseRk( readInt( data, pos + 2 ) ) );
+				}
+				break;
+
+			case LABELSST:
+				fill( recstart, 10 );
+				row = readShort( data, 0 );
+				col = readShort( data, 2 );
+				ixfe = readShort( data, 4 );
+				int isst = readInt( data, 6 );
+				pendingString = false;
+				toRow( row, listener );
+				listener.stringCell( row, col, ixfe, ((isst >= 0) && (isst < sst.length)) ? sst[isst] : null );
+				break;
+
+			case BOOLERR:
+				fill( recstart, 8 );
+				row = readShort( data, 0 );
+				col = readShort( data, 2 );
+				ixfe = readShort( data, 4 );
+				pendingString = false;
+				toRow( row, listener );
+				if( data[7] == 0 )
+				{
+					listener.booleanCell( row, col, ixfe, data[6] != 0 );
+				}
+				else
+				{
+					listener.errorCell( row, col, ixfe, data[6] & 0xff );
+				}
+				break;
+
+			case FORMULA:
+				fill( recstart, 14 );
+				row = readShort( data, 0 );
+				col = readShort( data, 2 );
+				ixfe = readShort( data, 4 );
+				pendingString = false;
+				toRow( row, listener );
+				if( readShort( data, 12 ) != 0xffff )
+				{
+					listener.numberCell( row, col, ixfe, Double.longBitsToDouble( readLong( data, 6 ) ) );
+				}
+				else
+				{
+					switch( data[6] )
+					{
+						case 0: // the value is in the following STRING record
+							pendingString = true;
+							pendingRow = row;
+							pendingCol = col;
+							pendingXf = ixfe;
+							break;
+						case 1:
+							listener.booleanCell( row, col, ixfe, data[8] != 0 );
+							break;
+						case 2:
+							listener.errorCell( row, col, ixfe, data[8] & 0xff );
+							break;
+						default:
+							listener.stringCell( row, col, ixfe, "" );
+					}
+				}
+				break;
+
+			case STRINGREC:
+				if( pendingString )
+				{
+					fill( recstart, reclen );
+					pendingString = false;
+					listener.stringCell( pendingRow, pendingCol, pendingXf, readString( 3, readShort( data, 0 ), data[2], reclen ) );
+				}
+				break;
+		}
+	}
+
+	/**
+	 * fires the row events needed to move to the given row
+	 */
+	private void toRow( int row, SheetRowListener listener )
+	{
+		if( row != curRow )
+		{
+			if( curRow >= 0 )
+			{
+				listener.endRow( curRow );
+			}
+			curRow = row;
+			listener.startRow( row );
+		}
+	}
+
+	/**
+	 * Maps the stream offset of a substream BOF to its BOUNDSHEET
+	 */
+	private int getSheetIndex( int bofpos, int last )
+	{
+		int idx = sheetOffsets.indexOf( bofpos );
+		if( idx >= 0 )
+		{
+			return idx;
+		}
+		return last + 1;
+	}
+
+	/**
+	 * Reads the SST and all of its CONTINUE records.
+	 *
+	 * @return the stream position after the last CONTINUE
+	 */
+	private int readSst( int recstart, int reclen )
+	{
+		int blen = reader.getLength();
+		// find the extent of the CONTINUEs first so the table is read into a single array
+		List<Integer> bounds = new ArrayList<>();
+		int total = reclen;
+		int pos = recstart + 4 + reclen;
+		while( pos <= (blen - 4) )
+		{
+			reader.readBytes( pos, header, 0, 4 );
+			if( (short) readShort( header, 0 ) != CONTINUE )
+			{
+				break;
+			}
+			int clen = readShort( header, 2 );
+			bounds.add( total );
+			total += clen;
+			pos += 4 + clen;
+		}
+
+		byte[] buf = new byte[total];
+		int p = recstart;
+		int off = 0;
+		for( int b = 0; b <= bounds.size(); b++ )
+		{
+			int len = ((b < bounds.size()) ? bounds.get( b ) : total) - off;
+			reader.readBytes( p + 4, buf, off, len );
+			off += len;
+			p += 4 + len;
+		}
+
+		int[] boundary = new int[bounds.size() + 1];
+		for( int b = 0; b < bounds.size(); b++ )
+		{
+			boundary[b] = bounds.get( b );
+		}
+		boundary[bounds.size()] = Integer.MAX_VALUE;
+
+		int unique = (total >= 8) ? readInt( buf, 4 ) : 0;
+		sst = new String[Math.max( unique, 0 )];
+		int b = 0;
+		off = 8;
+		for( int t = 0; (t < sst.length) && ((off + 3) <= total); t++ )
+		{
+			// a string header never straddles a CONTINUE
+			while( boundary[b] <= off )
+			{
+				b++;
+			}
+			int cch = readShort( buf, off );
+			int grbit = buf[off + 2];
+			off += 3;
+			int runs = 0;
+			int ext = 0;
+			if( (grbit & 0x8) != 0 )
+			{
+				runs = readShort( buf, off );
+				off += 2;
+			}
+			if( (grbit & 0x4) != 0 )
+			{
+				ext = readInt( buf, off );
+				off += 4;
+			}
+			boolean high = (grbit & 0x1) != 0;
+			while( boundary[b] < off )
+			{
+				b++;
+			}
+			if( chars.length < cch )
+			{
+				chars = new char[cch];
+			}
+			int c = 0;
+			while( (c < cch) && (off < total) )
+			{
+				// character data that continues in a CONTINUE is prefixed with a new grbit
+				if( off == boundary[b] )
+				{
+					high = (buf[off++] & 0x1) != 0;
+					b++;
+					continue;
+				}
+				if( high )
+				{
+					chars[c++] = (char) readShort( buf, off );
+					off += 2;
+				}
+				else
+				{
+					chars[c++] = (char) (buf[off++] & 0xff);
+				}
+			}
+			sst[t] = new String( chars, 0, c );
+			off += (runs * 4) + ext;
+		}
+		return pos;
+	}
+
+	private void readFormat( int reclen )
+	{
+		int ifmt = readShort( data, 0 );
+		String pattern = readString( 5, readShort( data, 2 ), data[4], reclen );
+		// keep the patterns consistent with Format.init()
+		pattern = StringTool.replaceText( pattern, "\"", "", 0 );
+		pattern = StringTool.replaceText( pattern, "\\", "", 0 );
+		formats.put( ifmt, pattern );
+	}
+
+	/**
+	 * decodes an unformatted string from the data buffer
+	 */
+	private String readString( int off, int cch, byte grbit, int reclen )
+	{
+		if( chars.length < cch )
+		{
+			chars = new char[cch];
+		}
+		int c = 0;
+		if( (grbit & 0x1) != 0 )
+		{
+			for( ; (c < cch) && ((off + 1) < reclen); c++, off += 2 )
+			{
+				chars[c] = (char) readShort( data, off );
+			}
+		}
+		else
+		{
+			for( ; (c < cch) && (off < reclen); c++ )
+			{
+				chars[c] = (char) (data[off++] & 0xff);
+			}
+		}
+		return new String( chars, 0, c );
+	}
+
+	private void fill( int recstart, int len )
+	{
+		reader.readBytes( recstart + 4, data, 0, len );
+	}
+
+	/**
+	 * Returns the number format pattern for the given XF index, or null
+	 * if the XF is unknown.
+	 */
+	public String getFormatPattern( int ixfe )
+	{
+		if( (ixfe < 0) || (ixfe >= xfCount) )
+		{
+			return null;
+		}
+		int ifmt = xfFormats[ixfe];
+		String pattern = formats.get( ifmt );
+		if( pattern != null )
+		{
+			return pattern;
+		}
+		String[][] fmts = FormatConstantsImpl.getBuiltinFormats();
+		for( String[] fmt : fmts )
+		{
+			if( ifmt == Integer.parseInt( fmt[1], 16 ) )
+			{
+				return fmt[0];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the given XF index formats its value as a date.
+	 */
+	public boolean isDateFormat( int ixfe )
+	{
+		if( (ixfe < 0) || (ixfe >= xfCount) )
+		{
+			return false;
+		}
+		int ifmt = xfFormats[ixfe];
+		for( String[] fmt : FormatConstants.DATE_FORMATS )
+		{
+			if( ifmt == Integer.parseInt( fmt[1], 16 ) )
+			{
+				return true;
+			}
+		}
+		String pattern = formats.get( ifmt );
+		return (pattern != null) && Xf.isDatePattern( pattern.toLowerCase() );
+	}
+
+	/**
+	 * Returns the names of the sheets in BOUNDSHEET order.  The names are
+	 * available once {@link #read(SheetRowListener)} has passed the globals
+	 * substream, ie: from the first {@link SheetRowListener#startSheet} on.
+	 */
+	public String[] getSheetNames()
+	{
+		return sheetNames.toArray( new String[sheetNames.size()] );
+	}
+
+	/**
+	 * Returns the shared string table read from the stream.
+	 */
+	public String[] getSharedStrings()
+	{
+		return sst;
+	}
+
+	/**
+	 * Returns whether the workbook uses the 1904 date system.
+	 */
+	public boolean is1904()
+	{
+		return is1904;
+	}
+
+	/**
+	 * Parses a 4-byte RK number held in an int, see {@link Rk#parseRkNumber(byte[])}
+	 */
+	static double parseRk( int rk )
+	{
+		double d;
+		if( (rk & 0x2) != 0 )
+		{
+			d = rk >> 2;
+		}
+		else
+		{
+			d = Double.longBitsToDouble( ((long) (rk & 0xfffffffc)) << 32 );
+		}
+		if( (rk & 0x1) != 0 )
+		{
+			d /= 100;
+		}
+		return d;
+	}
+
+	private static int readShort( byte[] b, int off )
+	{
+		return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+	}
+
+	private static int readInt( byte[] b, int off )
+	{
+		return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8) | ((b[off + 2] & 0xff) << 16) | ((b[off + 3] & 0xff) << 24);
+	}
+
+	private static long readLong( byte[] b, int off )
+	{
+		return (readInt( b, off ) & 0xffffffffL) | (((long) readInt( b, off + 4 )) << 32);
+	}
+}
@@ -30,26 +30,32 @@ import org.openxls.ExtenXLS.WorkSheetHandle;
 import org.openxls.formats.XLS.charts.Ai;
 import org.openxls.formats.XLS.charts.Chart;
 import org.openxls.formats.XLS.formulas.GenericPtg;
+import org.openxls.formats.XLS.formulas.LookupIndex;
 import org.openxls.formats.XLS.formulas.Ptg;
+import org.openxls.formats.XLS.formulas.PtgArea;
 import org.openxls.formats.XLS.formulas.PtgAreaErr3d;
 import org.openxls.formats.XLS.formulas.PtgErr;
 import org.openxls.formats.XLS.formulas.PtgName;
 import org.openxls.formats.XLS.formulas.PtgRef;
 import org.openxls.formats.XLS.formulas.PtgRefErr;
 import org.openxls.formats.XLS.formulas.PtgRefErr3d;
+import org.openxls.formats.XLS.formulas.RangeValues;
 import org.openxls.formats.XLS.charts.Series;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.Vector;
 
@@ -82,19 +88,48 @@ public class ReferenceTracker
 	private Map nameRefs = new HashMap();
 
 	// Database calc caches
-	private Map criteriaDBs = new HashMap();
-	private Map CollectionDBs = new HashMap();
-	private Map vlookups = new HashMap();
+	private Map criteriaDBs = newCache();
+	private Map CollectionDBs = newCache();
+	private Map vlookups = newCache();
 	private Collection crs = new Vector();
 
 	// VLOOKUPs and other lookups need to calc col ptgs
-	private Map lookupColsCache = new HashMap();
+	private Map lookupColsCache = newCache();
+	// indexes of the lookup vectors of VLOOKUP, HLOOKUP and MATCH
+	private Map lookupIndexes = newCache();
+	// criteria and sum ranges of SUMIF, COUNTIF and the like
+	private Map rangeValues = newCache();
+	// bumped whenever a tracked reference is added, removed or moved
+	private int modCount = 0;
+	// bumped whenever a formula resolves its INDIRECT or OFFSET references to new locations
+	private int resolvedCount = 0;
 
 	public Map getLookupColCache()
 	{
 		return lookupColsCache;
 	}
 
+	/**
+	 * Returns the cached lookup indexes, keyed by sheet and vector.
+	 *
+	 * @see LookupIndex
+	 */
+	public Map getLookupIndexes()
+	{
+		return lookupIndexes;
+	}
+
+	/**
+	 * Returns the cached values of conditional aggregate ranges, keyed by
+	 * sheet and range.
+	 *
+	 * @see RangeValues
+	 */
+	public Map getRangeValues()
+	{
+		return rangeValues;
+	}
+
 	/**
 	 * @return Returns the vlookups.
 	 */
@@ -119,6 +154,15 @@ public class ReferenceTracker
 		return CollectionDBs;
 	}
 
+	/**
+	 * Creates a calculation cache.  These are shared by formulas evaluated
+	 * in parallel, see {@link org.openxls.formats.XLS.formulas.DependencyGraph}.
+	 */
+	private static Map newCache()
+	{
+		return Collections.synchronizedMap( new HashMap() );
+	}
+
 	/**
 	 * Blow out all the cacheing
 	 */
@@ -129,9 +173,99 @@ public class ReferenceTracker
 		// refPtgMap    =   new HashMap();
 
 		// Databases
-		criteriaDBs = new HashMap();
-		CollectionDBs = new HashMap();
-		vlookups = new HashMap();
+		criteriaDBs = newCache();
+		CollectionDBs = newCache();
+		vlookups = newCache();
+		lookupIndexes = newCache();
+		rangeValues = newCache();
+	}
+
+	/**
+	 * Returns a counter which changes whenever a tracked reference is added,
+	 * removed or moved, ie: whenever the structure of the formula references
+	 * in the workbook may have changed.
+	 *
+	 * @see org.openxls.formats.XLS.formulas.DependencyGraph
+	 */
+	public int getModCount()
+	{
+		return modCount;
+	}
+
+	/**
+	 * Records a change to the references of the workbook which is not made
+	 * through the tracker, ie: a formula which has been added or removed.
+	 */
+	public void referencesChanged()
+	{
+		modCount++;
+	}
+
+	/**
+	 * Returns a counter which changes whenever a formula's references
+	 * resolved at calculation time move, see
+	 * {@link #addResolvedReference(PtgRef)}.
+	 */
+	public int getResolvedCount()
+	{
+		return resolvedCount;
+	}
+
+	/**
+	 * Tracks a reference resolved while calculating its parent formula, ie:
+	 * the result of an INDIRECT or OFFSET function, so that changes to the
+	 * cells it refers to clear the formula.  Unlike {@link #addCellRange(Ptg)}
+	 * this doesn't change the mod count, as these references are only kept
+	 * until the formula is calculated again.
+	 *
+	 * @return whether the reference was added, ie: false if the parent already
+	 *         tracks a reference to the same location
+	 */
+	public synchronized boolean addResolvedReference( PtgRef ref )
+	{
+		resolvedCount++;
+		if( (ref instanceof PtgRefErr) || (ref instanceof PtgRefErr3d) || (ref instanceof PtgAreaErr3d) || (ref.hashcode == -1) || ref.getIsWholeCol() || ref.getIsWholeRow() )
+		{
+			return false;    // whole rows and columns aren't tracked, as in PtgRef.setLocation
+		}
+		String sheetname = getTrackedSheetname( ref );
+		TrackedPtgs ptgs = (TrackedPtgs) sheetMap.get( sheetname );
+		if( ptgs == null )
+		{
+			ptgs = new TrackedPtgs( new LocationComparer() );
+			sheetMap.put( sheetname, ptgs );
+		}
+		if( ptgs.contains( ref ) )
+		{
+			return false;
+		}
+		ptgs.add( ref );
+		return true;
+	}
+
+	/**
+	 * Stops tracking a reference added through {@link #addResolvedReference(PtgRef)}.
+	 */
+	public synchronized void removeResolvedReference( PtgRef ref )
+	{
+		resolvedCount++;
+		TrackedPtgs ptgs = (TrackedPtgs) sheetMap.get( getTrackedSheetname( ref ) );
+		if( ptgs != null )
+		{
+			ptgs.remove( ref );
+		}
+	}
+
+	private static String getTrackedSheetname( PtgRef ref )
+	{
+		try
+		{
+			return GenericPtg.qualifySheetname( ref.getSheetName() );
+		}
+		catch( Exception ex )
+		{
+			return "WorkBookRanges";
+		}
 	}
 
 	/**
@@ -140,13 +274,52 @@ public class ReferenceTracker
 	public void clearLookupCaches()
 	{
 		lookupColsCache.clear();
-		lookupColsCache = new HashMap();
+		lookupColsCache = newCache();
 		criteriaDBs.clear();
-		criteriaDBs = new HashMap();
+		criteriaDBs = newCache();
 		CollectionDBs.clear();
-		CollectionDBs = new HashMap();
+		CollectionDBs = newCache();
 		vlookups.clear();
-		vlookups = new HashMap();
+		vlookups = newCache();
+		lookupIndexes.clear();
+		lookupIndexes = newCache();
+		rangeValues.clear();
+		rangeValues = newCache();
+	}
+
+	/**
+	 * Drops the lookup indexes and range values which contain the changed cell.
+	 */
+	private void clearLookupIndexes( BiffRec changedRec )
+	{
+		if( !lookupIndexes.isEmpty() )
+		{
+			synchronized( lookupIndexes )
+			{
+				Iterator it = lookupIndexes.values().iterator();
+				while( it.hasNext() )
+				{
+					if( ((LookupIndex) it.next()).contains( changedRec ) )
+					{
+						it.remove();
+					}
+				}
+			}
+		}
+		if( !rangeValues.isEmpty() )
+		{
+			synchronized( rangeValues )
+			{
+				Iterator it = rangeValues.values().iterator();
+				while( it.hasNext() )
+				{
+					if( ((RangeValues) it.next()).contains( changedRec ) )
+					{
+						it.remove();
+					}
+				}
+			}
+		}
 	}
 
 	/**
@@ -242,77 +415,97 @@ public class ReferenceTracker
 			affectedCellHandles = new HashMap();
 		}
 
-		String newRecSheetName = changedRec.getSheet().getSheetName();
-		// get ref collection for the sheet
-		TrackedPtgs ptgRefs = (TrackedPtgs) sheetMap.get( GenericPtg.qualifySheetname( newRecSheetName ) );    // now tracked ptgs are stored per sheet
-		if( ptgRefs == null )
+		// walk the dependents iteratively as chains of formulas can be deeper than the call stack
+		ArrayDeque<BiffRec> pending = new ArrayDeque<>();
+		Map<Boundsheet, Set<Long>> visited = new IdentityHashMap<>();
+		pending.add( changedRec );
+		while( !pending.isEmpty() )
 		{
-			return affectedCellHandles;
-		}
-		Iterator parents = ptgRefs.getParents( changedRec );    // finds ALL parents affected by cell newRec
-		while( parents.hasNext() )
-		{
-			BiffRec br = (BiffRec) parents.next();
-			short op = br.getOpcode();
-			if( op == XLSRecord.NAME )
+			changedRec = pending.poll();
+			clearLookupIndexes( changedRec );
+			String newRecSheetName = changedRec.getSheet().getSheetName();
+			// get ref collection for the sheet
+			TrackedPtgs ptgRefs = (TrackedPtgs) sheetMap.get( GenericPtg.qualifySheetname( newRecSheetName ) );    // now tracked ptgs are stored per sheet
+			if( ptgRefs == null )
 			{
-				String theName = ((Name) br).getNameA();
-				if( nameRefs.containsKey( theName ) )
+				continue;
+			}
+			Iterator parents = ptgRefs.getParents( changedRec );    // finds ALL parents affected by cell newRec
+			while( parents.hasNext() )
+			{
+				BiffRec br = (BiffRec) parents.next();
+				short op = br.getOpcode();
+				if( op == XLSRecord.NAME )
 				{
-					// add all formulas that refer
-					ArrayList list = (ArrayList) (nameRefs.get( theName )); // gets the ptgname
-					for( Object aList : list )
+					String theName = ((Name) br).getNameA();
+					if( nameRefs.containsKey( theName ) )
 					{
-						BiffRec ptgParent = ((Ptg) aList).getParentRec();
-						if( ptgParent.getOpcode() == XLSConstants.NAME )
+						// add all formulas that refer
+						ArrayList list = (ArrayList) (nameRefs.get( theName )); // gets the ptgname
+						for( Object aList : list )
 						{
-							continue; // a Named Range referencing another named range ... will be caught later
-						}
-						String adr = ptgParent.getSheet().getSheetName() + "!" + ptgParent.getCellAddress();
-						if( affectedCellHandles.get( adr ) == null )
-						{
-							ReferenceTracker.addRec( ptgParent, affectedCellHandles );
-							affectedCellHandles = clearAffectedFormulaCells( ptgParent,
-							                                                 affectedCellHandles ); // recurse parent formula and get cells it affects
+							BiffRec ptgParent = ((Ptg) aList).getParentRec();
+							if( ptgParent.getOpcode() == XLSConstants.NAME )
+							{
+								continue; // a Named Range referencing another named range ... will be caught later
+							}
+							if( visit( ptgParent, visited ) )
+							{
+								ReferenceTracker.addRec( ptgParent, affectedCellHandles );
+								pending.add( ptgParent ); // get cells the parent formula affects
+							}
 						}
 					}
 				}
-			}
-			else if( (op == XLSConstants.CONDFMT) || (op == XLSConstants.AI) )
-			{    // ignore since these records are not themselves referenced
-			}
-			else if( op == XLSConstants.SHRFMLA )
-			{     // Shared Formula references are now reference-tracked; to find specific formula affected, use Shrfmla.getAffected
-				Shrfmla sh = (Shrfmla) br;
-				Formula f = sh.getAffected( changedRec );
-				if( f != null )
-				{
-					String adr = f.getSheet().getSheetName() + "!" + f.getCellAddress();
-					if( !affectedCellHandles.containsKey( adr ) )
+				else if( (op == XLSConstants.CONDFMT) || (op == XLSConstants.AI) )
+				{    // ignore since these records are not themselves referenced
+				}
+				else if( op == XLSConstants.SHRFMLA )
+				{     // Shared Formula references are now reference-tracked; to find specific formula affected, use Shrfmla.getAffected
+					Shrfmla sh = (Shrfmla) br;
+					Formula f = sh.getAffected( changedRec );
+					if( f != null )
 					{
-						ReferenceTracker.addRec( f, affectedCellHandles );
-						affectedCellHandles = clearAffectedFormulaCells( f,
-						                                                           affectedCellHandles );    // recurse parent formula and get cells it affects
+						if( visit( f, visited ) )
+						{
+							ReferenceTracker.addRec( f, affectedCellHandles );
+							pending.add( f );    // get cells the parent formula affects
+						}
 					}
 				}
-			}
-			else
-			{  // regular Formula
-				if( br.getSheet() != null )
-				{
-					String adr = br.getSheet().getSheetName() + "!" + br.getCellAddress();
-					if( !affectedCellHandles.containsKey( adr ) )
+				else
+				{  // regular Formula
+					if( br.getSheet() != null )
 					{
-						ReferenceTracker.addRec( br, affectedCellHandles );
-						affectedCellHandles = clearAffectedFormulaCells( br,
-						                                                           affectedCellHandles );    // recurse parent formula and get cells it affects
-					}
-				} // ignore no sheet
+						if( visit( br, visited ) )
+						{
+							ReferenceTracker.addRec( br, affectedCellHandles );
+							pending.add( br );    // get cells the parent formula affects
+						}
+					} // ignore no sheet
+				}
 			}
 		}
 		return affectedCellHandles;
 	}
 
+	/**
+	 * Marks a cell as reached by the walk of dependents, returning false if it
+	 * already was.  Cells are keyed by their location in hashcode notation,
+	 * see {@link PtgRef#getHashCode(int, int)}.
+	 */
+	private static boolean visit( BiffRec rec, Map<Boundsheet, Set<Long>> visited )
+	{
+		Boundsheet sheet = rec.getSheet();
+		Set<Long> cells = visited.get( sheet );
+		if( cells == null )
+		{
+			cells = new HashSet<>();
+			visited.put( sheet, cells );
+		}
+		return cells.add( PtgRef.getHashCode( rec.getRowNumber(), rec.getColNumber() ) );
+	}
+
 	/**
 	 * retrieve all chart-related (==Ai) references to the particular cell
 	 *
@@ -348,6 +541,7 @@ public class ReferenceTracker
 	public void addPtgNameReference( PtgName p )
 	{
 		String name = p.getTextString().toUpperCase(); // case-insensitive
+		modCount++;
 		Object refs = nameRefs.get( name );
 		if( refs == null )
 		{
@@ -444,6 +638,7 @@ public class ReferenceTracker
 			if( !ptgs.contains( ptgRef ) )                    // **no duplicates allowed** (matches on location+parent rec)
 			{
 				ptgs.add( ptgRef );
+				modCount++;
 			}
 		}
 		catch( Exception e )
@@ -462,6 +657,7 @@ public class ReferenceTracker
 	 */
 	public void clearPtgLocationCaches( String targetSheet )
 	{
+		modCount++;
 		try
 		{
 			targetSheet = GenericPtg.qualifySheetname( targetSheet );
@@ -512,6 +708,7 @@ public class ReferenceTracker
 			if( ptgs != null )
 			{
 				ptgs.remove( cr );
+				modCount++;
 			}
 		}
 		catch( Exception e )
@@ -550,6 +747,7 @@ public class ReferenceTracker
 			if( ptgs != null )
 			{
 				ptgs.update( pr, parent );
+				modCount++;
 			}
 		}
 		catch( Exception e )
@@ -612,6 +810,8 @@ public class ReferenceTracker
 
 		HashSet updated = new HashSet(); // tracks which Ptgs have been already updated
 
+		// references held by formulas of deferred sheets are only tracked once parsed
+		thissheet.getWorkBook().loadAllSheets();
 		String sheetname = GenericPtg.qualifySheetname( thissheet.getSheetName() );
 		TrackedPtgs trackedptgs = (TrackedPtgs) thissheet.getWorkBook().getRefTracker().sheetMap.get( sheetname );
 		if( (trackedptgs == null) || (trackedptgs.size() == 0) )
@@ -1055,14 +1255,18 @@ public class ReferenceTracker
 		vlookups.clear();
 		crs.clear();
 		lookupColsCache.clear();
+		lookupIndexes.clear();
+		rangeValues.clear();
 		sheetMap = new HashMap();
 		nameRefs = new HashMap();
 		// Database calc caches
-		criteriaDBs = new HashMap();
-		CollectionDBs = new HashMap();
-		vlookups = new HashMap();
+		criteriaDBs = newCache();
+		CollectionDBs = newCache();
+		vlookups = newCache();
 		crs = new Vector();
-		lookupColsCache = new HashMap();
+		lookupColsCache = newCache();
+		lookupIndexes = newCache();
+		rangeValues = newCache();
 	}
 }
 
@@ -1078,11 +1282,14 @@ public class ReferenceTracker
  * new TrackedPtgs(new LocationComparer())
  * LocationComparer will return the correct compare for a PtgRef object, based upon it's location and parent record, in other words
  * PtgRef-A == PtgRef-B when both the location and the parent records are equal.
+ * <p/>
+ * Areas are also kept in an {@link AreaIndex}, which finds the areas containing a cell.
  */
 class TrackedPtgs extends TreeMap
 {
 	private static final long serialVersionUID = 1L;
 	static final long SECONDPTGFACTOR = ((XLSRecord.MAXCOLS + ((long) XLSRecord.MAXROWS * XLSRecord.MAXCOLS)));
+	private final transient AreaIndex areas = new AreaIndex();
 
 	/**
 	 * set the custom Comparitor for tracked Ptgs
@@ -1125,6 +1332,24 @@ class TrackedPtgs extends TreeMap
 		return new long[]{ loc, ploc };
 	}
 
+	/**
+	 * override of put to index the areas
+	 */
+	@Override
+	public Object put( Object key, Object value )
+	{
+		Object old = super.put( key, value );
+		if( (old instanceof PtgArea) && (old != value) )
+		{
+			areas.remove( (PtgArea) old );
+		}
+		if( value instanceof PtgArea )
+		{
+			areas.add( (PtgArea) value );
+		}
+		return old;
+	}
+
 	/**
 	 * override of add to record ptg location hash + parent has for later lookups
 	 */
@@ -1132,7 +1357,7 @@ class TrackedPtgs extends TreeMap
 	{
 		try
 		{
-			super.put( getKey( o ), o );
+			put( getKey( o ), o );
 		}
 		catch( IllegalArgumentException e )
 		{    // SHOULD NOT HAPPEN -- happens upon RefErrs but they shouldnt be added ...
@@ -1183,6 +1408,10 @@ class TrackedPtgs extends TreeMap
 				long testkey= ((long[])keys[i])[0];*/
 				if( testkey == loc )
 				{    // longs to remove parent hashcode portion of double
+					if( get( key ) instanceof PtgArea )
+					{
+						continue;    // an area key which overflowed, found through the index below
+					}
 					parents.add( ((PtgRef) get( key )).getParentRec() );
 //					parents.add(((PtgRef)this.get(keys[i])).getParentRec());
 //System.out.print(": Found ptg" + this.get((Integer)locs.get(key)));					
@@ -1194,73 +1423,25 @@ class TrackedPtgs extends TreeMap
 			}
 		}
 		// now see if test cell falls into any areas
-
-		m = Collections.synchronizedMap( tailMap( getKey( SECONDPTGFACTOR, 0 ) ) ); // NOW GET ALL PTGAREAS ...
-		if( m != null )
+		if( areas.needsRebuild() )
 		{
-			synchronized(m.keySet())
+			ArrayList<PtgArea> tracked = new ArrayList<>();
+			for( Object o : values() )
 			{
-				Iterator ii = m.keySet().iterator();
-				while( ii.hasNext() )
+				if( o instanceof PtgArea )
 				{
-					key = ii.next();
-					long testkey = ((long[]) key)[0];
-/*			Object[] keys= m.keySet().toArray();
-			for (int i= 0; i < keys.length; i++) {
-					long testkey= ((long[])keys[i])[0];*/
-					double firstkey = testkey / SECONDPTGFACTOR;
-					double secondkey = (testkey % SECONDPTGFACTOR);
-					if( ((long) firstkey <= loc) && ((long) secondkey >= loc) )
-					{
-						int col0 = (int) firstkey % XLSRecord.MAXCOLS;
-						int col1 = (int) secondkey % XLSRecord.MAXCOLS;
-						int rw0 = ((int) (firstkey / XLSRecord.MAXCOLS)) - 1;
-						int rw1 = ((int) (secondkey / XLSRecord.MAXCOLS)) - 1;
-						if( isaffected( rc, new int[]{ rw0, col0, rw1, col1 } ) )
-						{
-							parents.add( ((PtgRef) get( key )).getParentRec() );
-//							parents.add(((PtgRef)this.get(keys[i])).getParentRec());
-						}
-					}
-					else if( firstkey > loc ) // we're done
-					{
-						break;
-					}
+					tracked.add( (PtgArea) o );
 				}
 			}
+			areas.rebuild( tracked );
 		}
-//System.out.println("");		
-//		return parents.toArray();	//iterator();
-		return parents.iterator();
-	}
-
-	/**
-	 * returns true if cell coordinates are contained within the area coordinates
-	 *
-	 * @param cellrc
-	 * @param arearc
-	 * @return
-	 */
-	private static boolean isaffected( int[] cellrc, int[] arearc )
-	{
-		if( cellrc[0] < arearc[0] )
-		{
-			return false; // row above the first ref row?
-		}
-		if( cellrc[0] > arearc[2] )
-		{
-			return false; // row after the last ref row?
-		}
-
-		if( cellrc[1] < arearc[1] )
-		{
-			return false; // col before the first ref col?
-		}
-		if( cellrc[1] > arearc[3] )
+		ArrayList<AreaIndex.Entry> found = new ArrayList<>();
+		areas.find( rc[0], rc[1], found );
+		for( AreaIndex.Entry e : found )
 		{
-			return false; // col after the last ref col?
+			parents.add( e.area.getParentRec() );
 		}
-		return true;
+		return parents.iterator();
 	}
 
 	/**
@@ -1269,7 +1450,12 @@ class TrackedPtgs extends TreeMap
 	@Override
 	synchronized public Object remove( Object o )
 	{
-		return super.remove( getKey( o ) );
+		Object old = super.remove( getKey( o ) );
+		if( old instanceof PtgArea )
+		{
+			areas.remove( (PtgArea) old );
+		}
+		return old;
 	}
 
 	/**
@@ -232,7 +232,7 @@ public final class Row extends XLSRecord
 	public List getValRecs( int outputId )
 	{
 		ArrayList v = new ArrayList();
-		Collection cx = getCells();
+		Collection cx = getSheet().getCellsForOutput( getRowNumber() );
 		Iterator it = cx.iterator();
 		while( it.hasNext() )
 		{
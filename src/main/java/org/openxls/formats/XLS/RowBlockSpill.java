@@ -0,0 +1,423 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import org.openxls.formats.LEO.LEOFile;
+import org.openxls.toolkit.ByteTools;
+import org.openxls.toolkit.TempFileManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * RowBlockSpill holds the cell table of a sheet which is written append-only,
+ * one row at a time, rather than built up as Row and cell records in memory.
+ * <p/>
+ * Rows are buffered until a block of 32 is complete, then the block is
+ * encoded as it will appear in the Workbook stream -- the ROW records, the
+ * cell records, and the closing DBCELL -- and appended to a temp file.  Only
+ * the DBCELL positions are kept in memory.
+ * <p/>
+ * On output the WorkBookAssembler places the spill after the sheet's in-memory
+ * rows, where it stands in for the whole run of records: the ByteStreamer
+ * copies the spill file into the output, and the sheet's Index adds the
+ * spilled DBCELL positions to its own once the spill offset is known.
+ * <p/>
+ * Strings of up to 255 characters are written inline as LABEL records so
+ * that nothing accumulates in the shared string table; longer strings go
+ * through the Sst as LABELSST records.
+ *
+ * @see WorkBookAssembler
+ * @see ByteStreamer
+ * @see Index
+ * @see Dbcell
+ */
+public final class RowBlockSpill extends XLSRecord implements PreencodedRecord
+{
+	private static final Logger log = LoggerFactory.getLogger( RowBlockSpill.class );
+	private static final long serialVersionUID = 2306415719478243360L;
+	private static final int ROWS_PER_BLOCK = 32;
+	private static final int ROW_LENGTH = 20;
+	private static final int MAX_LABEL = 255;
+
+	private transient File file;
+	private transient OutputStream spill;
+	private int spilled = 0;
+	private int[] dbcells = new int[64];
+	private int numDbcells = 0;
+	private int firstRow = -1;
+	private int lastRow = -1;
+	private int maxCol = 0;
+
+	// the pending block
+	private int numRows = 0;
+	private int[] rowNums = new int[ROWS_PER_BLOCK];
+	private int[] colMics = new int[ROWS_PER_BLOCK];
+	private int[] colMacs = new int[ROWS_PER_BLOCK];
+	private int[] cellLens = new int[ROWS_PER_BLOCK];
+	private ByteArrayOutputStream cells = new ByteArrayOutputStream( 8192 );
+	private byte[] rec = new byte[32];
+
+	RowBlockSpill( Boundsheet sheet )
+	{
+		setOpcode( DBCELL );    // the spill ends the cell table, as a DBCELL would
+		setData( new byte[0] );
+		setSheet( sheet );
+		setWorkBook( sheet.getWorkBook() );
+	}
+
+	/**
+	 * the first row number that may be added, which is the row after the
+	 * last one already written
+	 */
+	public int getNextRow()
+	{
+		return lastRow + 1;
+	}
+
+	/**
+	 * the first spilled row, or -1 if no rows have been added
+	 */
+	public int getFirstRow()
+	{
+		return firstRow;
+	}
+
+	/**
+	 * the last spilled row; before any rows are added this is the row
+	 * preceding the first that may be added
+	 */
+	public int getLastRow()
+	{
+		return lastRow;
+	}
+
+	/**
+	 * the highest column number holding a spilled cell
+	 */
+	public int getMaxCol()
+	{
+		return maxCol;
+	}
+
+	void setNextRow( int row )
+	{
+		lastRow = row - 1;
+	}
+
+	/**
+	 * Encode a row of values and add it to the pending block.
+	 * <p/>
+	 * Null values are skipped, Numbers and Booleans are written as NUMBER and
+	 * BOOLERR records, and anything else as a string.
+	 *
+	 * @param row     the row number, which must be after any row added before
+	 * @param values  the cell values, starting at column A
+	 * @param formats the XF index for each column, or null for the default
+	 */
+	public void addRow( int row, Object[] values, int[] formats )
+	{
+		if( row <= lastRow )
+		{
+			throw new IllegalArgumentException( "Row " + (row + 1) + " is before the last row written: " + (lastRow + 1) );
+		}
+		if( row > (MAXROWS_BIFF8 - 1) )
+		{
+			throw new IllegalArgumentException( "Row " + (row + 1) + " is past the last row of the sheet" );
+		}
+		int start = cells.size();
+		int colMic = -1;
+		int colMac = 0;
+		int defaultXf = getWorkBook().getDefaultIxfe();
+		for( int col = 0; (col < values.length) && (col < MAXCOLS_BIFF8); col++ )
+		{
+			Object val = values[col];
+			int xf = ((formats != null) && (col < formats.length) && (formats[col] >= 0)) ? formats[col] : defaultXf;
+			if( val == null )
+			{
+				if( xf == defaultXf )
+				{
+					continue;
+				}
+				writeCell( BLANK, row, col, xf, 0 );
+			}
+			else if( val instanceof Number )
+			{
+				writeCell( NUMBER, row, col, xf, 8 );
+				long bits = Double.doubleToLongBits( ((Number) val).doubleValue() );
+				for( int i = 0; i < 8; i++ )
+				{
+					rec[10 + i] = (byte) (bits >>> (i * 8));
+				}
+				cells.write( rec, 10, 8 );
+			}
+			else if( val instanceof Boolean )
+			{
+				writeCell( BOOLERR, row, col, xf, 2 );
+				cells.write( ((Boolean) val) ? 1 : 0 );
+				cells.write( 0 );
+			}
+			else
+			{
+				writeString( val.toString(), row, col, xf );
+			}
+			if( colMic < 0 )
+			{
+				colMic = col;
+			}
+			colMac = col + 1;
+		}
+		if( colMic < 0 )
+		{
+			return;    // nothing to write, leave the row out
+		}
+		if( firstRow < 0 )
+		{
+			firstRow = row;
+		}
+		lastRow = row;
+		maxCol = Math.max( maxCol, colMac - 1 );
+		rowNums[numRows] = row;
+		colMics[numRows] = colMic;
+		colMacs[numRows] = colMac;
+		cellLens[numRows] = cells.size() - start;
+		if( ++numRows == ROWS_PER_BLOCK )
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * write the header and the row, col and ixfe fields common to all cell records
+	 */
+	private void writeCell( short opcode, int row, int col, int xf, int extra )
+	{
+		putShort( 0, opcode );
+		putShort( 2, 6 + extra );
+		putShort( 4, row );
+		putShort( 6, col );
+		putShort( 8, xf );
+		cells.write( rec, 0, 10 );
+	}
+
+	private void writeString( String s, int row, int col, int xf )
+	{
+		int len = s.length();
+		if( len > MAX_LABEL )
+		{
+			int isst = getWorkBook().getSharedStringTable().insertUnicodestring( s );
+			writeCell( LABELSST, row, col, xf, 4 );
+			putShort( 10, isst );
+			putShort( 12, isst >>> 16 );
+			cells.write( rec, 10, 4 );
+			return;
+		}
+		boolean compressed = true;
+		for( int i = 0; (i < len) && compressed; i++ )
+		{
+			compressed = s.charAt( i ) < 0x100;
+		}
+		writeCell( LABEL, row, col, xf, 3 + (compressed ? len : (len * 2)) );
+		putShort( 10, len );
+		rec[12] = (byte) (compressed ? 0 : 1);
+		cells.write( rec, 10, 3 );
+		for( int i = 0; i < len; i++ )
+		{
+			char c = s.charAt( i );
+			cells.write( c );
+			if( !compressed )
+			{
+				cells.write( c >>> 8 );
+			}
+		}
+	}
+
+	private void putShort( int pos, int val )
+	{
+		rec[pos] = (byte) val;
+		rec[pos + 1] = (byte) (val >>> 8);
+	}
+
+	/**
+	 * Write out the pending block -- its ROW records, cell records and DBCELL --
+	 * to the spill file.
+	 */
+	public void flush()
+	{
+		if( numRows == 0 )
+		{
+			return;
+		}
+		try
+		{
+			if( spill == null )
+			{
+				file = TempFileManager.createTempFile( "RowBlockSpill_", ".tmp" );
+				spill = new BufferedOutputStream( new FileOutputStream( file ), 0x10000 );
+			}
+			for( int i = 0; i < numRows; i++ )
+			{
+				// same defaults as a new Row record
+				putShort( 0, ROW );
+				putShort( 2, ROW_LENGTH - 4 );
+				putShort( 4, rowNums[i] );
+				putShort( 6, colMics[i] );
+				putShort( 8, colMacs[i] );
+				putShort( 10, 0xff );
+				putShort( 12, 0 );
+				putShort( 14, 0 );
+				putShort( 16, 0x100 );
+				putShort( 18, 0xf );
+				spill.write( rec, 0, ROW_LENGTH );
+			}
+			cells.writeTo( spill );
+
+			// dbRtrw is the distance back to the first ROW, then the offset from
+			// the second ROW to the first cell, then the length of each row's cells
+			int dbcell = (numRows * ROW_LENGTH) + cells.size();
+			byte[] d = new byte[8 + (numRows * 2)];
+			System.arraycopy( ByteTools.shortToLEBytes( DBCELL ), 0, d, 0, 2 );
+			System.arraycopy( ByteTools.shortToLEBytes( (short) (d.length - 4) ), 0, d, 2, 2 );
+			System.arraycopy( ByteTools.cLongToLEBytes( dbcell ), 0, d, 4, 4 );
+			System.arraycopy( ByteTools.shortToLEBytes( (short) ((numRows - 1) * ROW_LENGTH) ), 0, d, 8, 2 );
+			for( int i = 1; i < numRows; i++ )
+			{
+				System.arraycopy( ByteTools.shortToLEBytes( (short) cellLens[i - 1] ), 0, d, 8 + (i * 2), 2 );
+			}
+			spill.write( d );
+
+			if( numDbcells == dbcells.length )
+			{
+				int[] grown = new int[numDbcells * 2];
+				System.arraycopy( dbcells, 0, grown, 0, numDbcells );
+				dbcells = grown;
+			}
+			dbcells[numDbcells++] = spilled + dbcell;
+			spilled += dbcell + d.length;
+		}
+		catch( IOException e )
+		{
+			throw new WorkBookException( "Spilling rows to disk failed for sheet " + getSheet().getSheetName() + ": " + e,
+			                             WorkBookException.WRITING_ERROR,
+			                             e );
+		}
+		numRows = 0;
+		cells.reset();
+	}
+
+	/**
+	 * the number of DBCELL records in the spill
+	 */
+	int getNumDbcells()
+	{
+		return numDbcells;
+	}
+
+	/**
+	 * the stream offset of a spilled DBCELL, valid once the ByteStreamer has
+	 * set the offset of the spill
+	 */
+	int getDbcellOffset( int n )
+	{
+		return getOffset() + dbcells[n];
+	}
+
+	/**
+	 * the number of bytes the spill contributes to the Workbook stream
+	 */
+	@Override
+	public int getLength()
+	{
+		return spilled;
+	}
+
+	/**
+	 * nothing to prepare, the records were encoded as they were spilled
+	 */
+	@Override
+	public void preStream()
+	{
+	}
+
+	/**
+	 * copy the spilled records to the output
+	 */
+	@Override
+	public void writeTo( OutputStream out ) throws IOException
+	{
+		if( spill == null )
+		{
+			return;
+		}
+		spill.flush();
+		InputStream in = new FileInputStream( file );
+		try
+		{
+			byte[] buf = new byte[0x10000];
+			int n;
+			while( (n = in.read( buf )) > 0 )
+			{
+				out.write( buf, 0, n );
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		LEOFile.actualOutput += spilled; // debugging
+	}
+
+	/**
+	 * delete the spill file
+	 */
+	@Override
+	public void close()
+	{
+		if( spill != null )
+		{
+			try
+			{
+				spill.close();
+			}
+			catch( IOException e )
+			{
+				log.warn( "Closing row spill failed: " + e );
+			}
+			spill = null;
+		}
+		if( (file != null) && !file.delete() )
+		{
+			file.deleteOnExit();
+		}
+		file = null;
+		super.close();
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import org.openxls.ExtenXLS.ExcelTools;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rows and cells of a worksheet part, read ahead of binding them into
+ * their Boundsheet.
+ * <p/>
+ * Reading the part only decompresses and tokenizes it, and does not touch the
+ * WorkBook, so the parts of several worksheets can be read concurrently.  The
+ * sheetData element is taken out of the part; the rest of it is kept as
+ * {@link #getXml()} and is parsed as before by
+ * {@link Boundsheet#parseOOXML}, which binds the buffered rows where the
+ * sheetData element was.
+ */
+final class SheetDataBuffer
+{
+	private static final byte[] START = "<sheetData".getBytes();
+	private static final byte[] END = "</sheetData>".getBytes();
+	private static final byte[] EMPTY = "<sheetData/>".getBytes();
+
+	private final ArrayList<RowData> rows = new ArrayList<>();
+	private byte[] xml;
+
+	private SheetDataBuffer()
+	{
+	}
+
+	/**
+	 * Reads a worksheet part, buffering the contents of its sheetData.  If
+	 * the part has no sheetData element to take out, the whole part is kept
+	 * as its XML and no rows are buffered.
+	 *
+	 * @param in the worksheet part, which is read to the end but not closed
+	 */
+	static SheetDataBuffer read( InputStream in ) throws XmlPullParserException, IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		for( int n = in.read( b ); n != -1; n = in.read( b ) )
+		{
+			bytes.write( b, 0, n );
+		}
+		byte[] data = bytes.toByteArray();
+
+		SheetDataBuffer buf = new SheetDataBuffer();
+		int start = indexOf( data, START, 0 );
+		int end = (start < 0) ? -1 : indexOf( data, END, start );
+		if( (end < 0) || !isTagEnd( data[start + START.length] ) )
+		{
+			buf.xml = data;    // empty or prefixed sheetData, parsed with the rest of the part
+			return buf;
+		}
+		buf.readRows( data );
+
+		end += END.length;
+		buf.xml = new byte[start + EMPTY.length + (data.length - end)];
+		System.arraycopy( data, 0, buf.xml, 0, start );
+		System.arraycopy( EMPTY, 0, buf.xml, start, EMPTY.length );
+		System.arraycopy( data, end, buf.xml, start + EMPTY.length, data.length - end );
+		return buf;
+	}
+
+	/**
+	 * Returns the worksheet part with an empty sheetData element.
+	 */
+	byte[] getXml()
+	{
+		return xml;
+	}
+
+	List<RowData> getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * Tokenizes the sheetData of the part, which is parsed whole so that the
+	 * namespaces declared on the worksheet element are in scope.
+	 */
+	private void readRows( byte[] data ) throws XmlPullParserException, IOException
+	{
+		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+		factory.setNamespaceAware( true );
+		XmlPullParser xpp = factory.newPullParser();
+		xpp.setInput( OOXMLAdapter.wrapInputStream( new ByteArrayInputStream( data ) ), null );
+
+		boolean inSheetData = false;
+		RowData row = null;
+		CellData cell = null;
+		int eventType = xpp.getEventType();
+		while( eventType != XmlPullParser.END_DOCUMENT )
+		{
+			if( eventType == XmlPullParser.START_TAG )
+			{
+				String tnm = xpp.getName();
+				if( tnm.equals( "sheetData" ) )
+				{
+					inSheetData = true;
+				}
+				else if( !inSheetData )
+				{
+					// elements before sheetData are parsed with the rest of the part
+				}
+				else if( tnm.equals( "row" ) )
+				{
+					row = new RowData( getAttributes( xpp ) );
+					rows.add( row );
+				}
+				else if( tnm.equals( "c" ) )
+				{
+					if( row == null )
+					{
+						row = new RowData( null );
+						rows.add( row );
+					}
+					cell = new CellData();
+					for( int i = 0; i < xpp.getAttributeCount(); i++ )
+					{
+						String nm = xpp.getAttributeName( i );    // r, s=style, t= type
+						String v = xpp.getAttributeValue( i );
+						if( nm.equals( "r" ) )
+						{
+							cell.addr = v;
+							cell.rc = ExcelTools.getRowColFromString( v );
+						}
+						else if( nm.equals( "s" ) )
+						{
+							cell.formatId = Integer.valueOf( v );
+						}
+						else if( nm.equals( "t" ) )
+						{
+							cell.type = v;
+						}
+					}
+					row.cells.add( cell );
+				}
+				else if( cell == null )
+				{
+					// no cell to attach to
+				}
+				else if( tnm.equals( "is" ) )
+				{
+					cell.inlineString = OOXMLReader.getInlineString( xpp );
+				}
+				else if( tnm.equals( "f" ) )
+				{
+					cell.formulaAttrs = getAttributes( xpp );
+					cell.formula = OOXMLReader.getNextText( xpp );
+				}
+				else if( tnm.equals( "v" ) )
+				{
+					cell.value = OOXMLAdapter.getNextText( xpp );
+				}
+			}
+			else if( (eventType == XmlPullParser.END_TAG) && xpp.getName().equals( "sheetData" ) )
+			{
+				break;
+			}
+			eventType = xpp.next();
+		}
+	}
+
+	/**
+	 * Returns the attributes of the current element as an array of
+	 * alternating names and values.
+	 */
+	static String[] getAttributes( XmlPullParser xpp )
+	{
+		String[] attrs = new String[xpp.getAttributeCount() * 2];
+		for( int i = 0; i < xpp.getAttributeCount(); i++ )
+		{
+			attrs[i * 2] = xpp.getAttributeName( i );
+			attrs[(i * 2) + 1] = xpp.getAttributeValue( i );
+		}
+		return attrs;
+	}
+
+	private static boolean isTagEnd( byte b )
+	{
+		return (b == '>') || (b == ' ') || (b == '\t') || (b == '\r') || (b == '\n');
+	}
+
+	private static int indexOf( byte[] data, byte[] s, int from )
+	{
+		int last = data.length - s.length;
+		outer:
+		for( int i = from; i <= last; i++ )
+		{
+			for( int j = 0; j < s.length; j++ )
+			{
+				if( data[i + j] != s[j] )
+				{
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * A row element: its attributes and its cells in document order.
+	 */
+	static final class RowData
+	{
+		final String[] attrs;    // null if the cells were outside of a row element
+		final ArrayList<CellData> cells = new ArrayList<>();
+
+		RowData( String[] attrs )
+		{
+			this.attrs = attrs;
+		}
+	}
+
+	/**
+	 * A c element.  Cells without an address are kept but not bound, as
+	 * when the part is parsed directly.
+	 */
+	static final class CellData
+	{
+		String addr;
+		int[] rc;
+		int formatId = 0;
+		String type = "n";    // default type for cells which don't specify one
+		String[] formulaAttrs;
+		String formula;
+		String inlineString;
+		String value;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+/**
+ * Receives the cell values of a workbook as they are read by a
+ * {@link RecordEventReader}.
+ * <p/>
+ * Callbacks arrive in stream order: a sheet is started, each of its rows is
+ * started, the cells of the row are delivered in column order, the row is
+ * ended, and finally the sheet is ended.  Rows without any value cells are
+ * not started.
+ * <p/>
+ * The height, visibility and default format of a row are reported through
+ * {@link #rowInfo(int, int, boolean, int)} before its cells, outside of the
+ * row's start and end.  Such rows may have no value cells at all.
+ * <p/>
+ * Formula cells are reported through the same callbacks using their cached
+ * result, so the formula type is not visible to the listener.
+ *
+ * @see RecordEventReader
+ */
+public interface SheetRowListener
+{
+	/**
+	 * Called when the reader enters a worksheet substream.
+	 *
+	 * @param sheet the zero-based index of the sheet in the BOUNDSHEET order
+	 * @param name  the name of the sheet
+	 */
+	public void startSheet( int sheet, String name );
+
+	/**
+	 * Called before the first cell of a row is delivered.
+	 *
+	 * @param row the zero-based row number
+	 */
+	public void startRow( int row );
+
+	/**
+	 * Called for each row record, ie: BIFF8 ROW or OOXML row element.
+	 *
+	 * @param row    the zero-based row number
+	 * @param height the height of the row in twips, or -1 if not specified
+	 * @param hidden whether the row is hidden
+	 * @param ixfe   the default XF index of the row, or -1 if it isn't formatted
+	 */
+	public void rowInfo( int row, int height, boolean hidden, int ixfe );
+
+	/**
+	 * Called for NUMBER, RK, MULRK cells and numeric formula results.
+	 *
+	 * @param ixfe the XF index of the cell, use
+	 *             {@link RecordEventReader#getFormatPattern(int)} to resolve it
+	 */
+	public void numberCell( int row, int col, int ixfe, double value );
+
+	/**
+	 * Called for LABELSST cells and string formula results.
+	 */
+	public void stringCell( int row, int col, int ixfe, String value );
+
+	/**
+	 * Called for boolean BOOLERR cells and boolean formula results.
+	 */
+	public void booleanCell( int row, int col, int ixfe, boolean value );
+
+	/**
+	 * Called for error BOOLERR cells and error formula results.
+	 *
+	 * @param error the BIFF8 error code, ie: 0x07 for #DIV/0!
+	 */
+	public void errorCell( int row, int col, int ixfe, int error );
+
+	/**
+	 * Called after the last cell of a row has been delivered.
+	 */
+	public void endRow( int row );
+
+	/**
+	 * Called when the reader reaches the EOF of a worksheet substream.
+	 */
+	public void endSheet( int sheet );
+}
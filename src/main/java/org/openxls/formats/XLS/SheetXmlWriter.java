@@ -0,0 +1,162 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Buffers the sheetData of a worksheet part on its way to the zip Writer.
+ * <p/>
+ * Row and column numbers, cell references and numbers are formatted straight
+ * into a reused char buffer, so writing a cell does not create any Strings.
+ * The buffer must be flushed before anything else is written to the
+ * underlying Writer.
+ */
+final class SheetXmlWriter
+{
+	private final Writer out;
+	private final char[] buf = new char[8192];
+	private int pos = 0;
+
+	SheetXmlWriter( Writer out )
+	{
+		this.out = out;
+	}
+
+	SheetXmlWriter write( String s ) throws IOException
+	{
+		int len = s.length();
+		if( len > (buf.length - pos) )
+		{
+			flush();
+			if( len > buf.length )
+			{
+				out.write( s );
+				return this;
+			}
+		}
+		s.getChars( 0, len, buf, pos );
+		pos += len;
+		return this;
+	}
+
+	SheetXmlWriter write( char c ) throws IOException
+	{
+		if( pos == buf.length )
+		{
+			flush();
+		}
+		buf[pos++] = c;
+		return this;
+	}
+
+	/**
+	 * Writes the decimal digits of the given value.
+	 */
+	SheetXmlWriter write( long l ) throws IOException
+	{
+		if( (buf.length - pos) < 20 )
+		{
+			flush();
+		}
+		if( l == Long.MIN_VALUE )
+		{
+			return write( Long.toString( l ) );
+		}
+		if( l < 0 )
+		{
+			buf[pos++] = '-';
+			l = -l;
+		}
+		int end = pos + digits( l );
+		int i = end;
+		do
+		{
+			buf[--i] = (char) ('0' + (l % 10));
+			l /= 10;
+		}
+		while( l != 0 );
+		pos = end;
+		return this;
+	}
+
+	/**
+	 * Writes a number as an xsd:double.  Whole numbers are written without a
+	 * fraction and without going through Double.toString.
+	 */
+	SheetXmlWriter write( double d ) throws IOException
+	{
+		if( (d == Math.rint( d )) && (Math.abs( d ) < 1.0E15) )
+		{
+			return write( (long) d );
+		}
+		return write( Double.toString( d ) );
+	}
+
+	/**
+	 * Writes an A1 style reference for the given zero-based row and column.
+	 */
+	SheetXmlWriter writeCellRef( int row, int col ) throws IOException
+	{
+		if( (buf.length - pos) < 4 )
+		{
+			flush();
+		}
+		int n = col + 1;
+		int len = 0;
+		for( int c = n; c > 0; c = (c - 1) / 26 )
+		{
+			len++;
+		}
+		int i = pos + len;
+		while( n > 0 )
+		{
+			n--;
+			buf[--i] = (char) ('A' + (n % 26));
+			n /= 26;
+		}
+		pos += len;
+		return write( (long) row + 1 );
+	}
+
+	void flush() throws IOException
+	{
+		if( pos > 0 )
+		{
+			out.write( buf, 0, pos );
+			pos = 0;
+		}
+	}
+
+	private static int digits( long l )
+	{
+		int n = 1;
+		while( l >= 10 )
+		{
+			l /= 10;
+			n++;
+		}
+		return n;
+	}
+}
@@ -23,6 +23,7 @@
 package org.openxls.formats.XLS;
 
 import org.openxls.ExtenXLS.ExcelTools;
+import org.openxls.formats.XLS.formulas.CompiledFormula;
 import org.openxls.formats.XLS.formulas.FormulaParser;
 import org.openxls.formats.XLS.formulas.GenericPtg;
 import org.openxls.formats.XLS.formulas.Ptg;
@@ -77,6 +78,10 @@ public final class Shrfmla extends XLSRecord
 	private Stack expression;
 	private Ptg[] ptgcache;
 	private Formula host;
+	/**
+	 * The expression compiled in its relative form, calculated for each member.
+	 */
+	private transient CompiledFormula compiled;
 
 	/**
 	 * The set of Formula records referring to this shared formula.
@@ -444,6 +449,23 @@ public final class Shrfmla extends XLSRecord
 		return convertStack( expression, parent );
 	}
 
+	/**
+	 * Calculates the value of the shared formula for a member formula.
+	 * The relative references are resolved against the member as the
+	 * expression is calculated, without instantiating it for the member.
+	 *
+	 * @param member a formula which refers to this shared formula
+	 * @return the calculated value
+	 */
+	public Object calculate( Formula member )
+	{
+		if( (compiled == null) || !compiled.isCompiledFrom( expression ) )
+		{
+			compiled = CompiledFormula.compile( expression );
+		}
+		return compiled.calculate( member );
+	}
+
 	/**
 	 * Set if the formula contains Indirect()
 	 *
@@ -553,6 +575,7 @@ public final class Shrfmla extends XLSRecord
 			}
 		}
 		ptgcache = null;
+		compiled = null;
 		host = null;
 		super.close();
 	}
@@ -0,0 +1,396 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A ZipOutputStream which can splice {@link DeflatedPart}s compressed
+ * elsewhere into the current entry.
+ * <p/>
+ * All entries are DEFLATED and written with a data descriptor, so sizes and
+ * CRC-32s are written after the data; the CRC of data written directly and
+ * of spliced parts are combined as the entry is written.  The stream
+ * implements the zip format itself and uses none of the state of the
+ * ZipOutputStream it extends, which only serves as its type.
+ * <p/>
+ * Zip64 is not supported: entries and archives must stay below 4GB.
+ */
+final class SplicingZipOutputStream extends ZipOutputStream
+{
+	private static final int LOCSIG = 0x04034b50;
+	private static final int EXTSIG = 0x08074b50;
+	private static final int CENSIG = 0x02014b50;
+	private static final int ENDSIG = 0x06054b50;
+	private static final int VERSION = 20;
+	private static final int FLAGS = 0x0808;    // data descriptor, UTF-8 names
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	private final OutputStream dest;
+	private final int dosTime;
+	private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+	private final Set<String> names = new HashSet<>();
+	private int entries = 0;
+	private long written = 0;
+
+	// state of the current entry
+	private Deflater entryDef = null;
+	private final CRC32 crc = new CRC32();
+	private final byte[] buf = new byte[64 * 1024];
+	private byte[] entryName;
+	private long entryOffset;
+	private long entryStart;
+	private long entryCrc;
+	private long entrySize;
+	private long segmentSize;
+	private boolean closed = false;
+
+	SplicingZipOutputStream( OutputStream out )
+	{
+		super( out );
+		dest = out;
+		Calendar c = Calendar.getInstance();
+		dosTime = ((c.get( Calendar.YEAR ) - 1980) << 25) |
+				((c.get( Calendar.MONTH ) + 1) << 21) |
+				(c.get( Calendar.DAY_OF_MONTH ) << 16) |
+				(c.get( Calendar.HOUR_OF_DAY ) << 11) |
+				(c.get( Calendar.MINUTE ) << 5) |
+				(c.get( Calendar.SECOND ) >> 1);
+	}
+
+	@Override
+	public void putNextEntry( ZipEntry e ) throws IOException
+	{
+		if( entryDef != null )
+		{
+			closeEntry();
+		}
+		writeLocalHeader( e );
+		entryCrc = 0;
+		entrySize = 0;
+		segmentSize = 0;
+		crc.reset();
+		entryDef = new Deflater( Deflater.DEFAULT_COMPRESSION, true );
+	}
+
+	/**
+	 * Writes an entry whose data is already compressed: a complete raw
+	 * DEFLATE stream, with the CRC-32 and size of the uncompressed data.
+	 */
+	void putRawEntry( ZipEntry e, byte[] data, long crc, long size ) throws IOException
+	{
+		if( entryDef != null )
+		{
+			closeEntry();
+		}
+		writeLocalHeader( e );
+		out( data, 0, data.length );
+		writeDescriptor( crc, size );
+	}
+
+	private void writeLocalHeader( ZipEntry e ) throws IOException
+	{
+		if( !names.add( e.getName() ) )
+		{
+			throw new ZipException( "duplicate entry: " + e.getName() );
+		}
+		entryName = e.getName().getBytes( UTF8 );
+		entryOffset = written;
+		byte[] loc = new byte[30];
+		putInt( loc, 0, LOCSIG );
+		putShort( loc, 4, VERSION );
+		putShort( loc, 6, FLAGS );
+		putShort( loc, 8, ZipEntry.DEFLATED );
+		putInt( loc, 10, dosTime );
+		putShort( loc, 26, entryName.length );
+		out( loc, 0, loc.length );
+		out( entryName, 0, entryName.length );
+		entryStart = written;
+	}
+
+	@Override
+	public void write( int b ) throws IOException
+	{
+		write( new byte[]{ (byte) b }, 0, 1 );
+	}
+
+	@Override
+	public void write( byte[] b, int off, int len ) throws IOException
+	{
+		if( entryDef == null )
+		{
+			throw new ZipException( "no current ZIP entry" );
+		}
+		crc.update( b, off, len );
+		segmentSize += len;
+		entryDef.setInput( b, off, len );
+		while( !entryDef.needsInput() )
+		{
+			deflate( Deflater.NO_FLUSH );
+		}
+	}
+
+	/**
+	 * Appends the compressed data of the given part to the current entry,
+	 * after everything written to the entry so far.
+	 */
+	void writeDeflated( DeflatedPart part ) throws IOException
+	{
+		if( entryDef == null )
+		{
+			throw new ZipException( "no current ZIP entry" );
+		}
+		part.finishPart();
+		// align the data written so far on a byte boundary
+		while( deflate( Deflater.SYNC_FLUSH ) )
+		{
+			;
+		}
+		// data written after the part must not refer back past it
+		entryDef.reset();
+		endSegment();
+		out( part.getData(), 0, part.getLength() );
+		entryCrc = crc32Combine( entryCrc, part.getCrc(), part.getSize() );
+		entrySize += part.getSize();
+	}
+
+	@Override
+	public void closeEntry() throws IOException
+	{
+		if( entryDef == null )
+		{
+			return;
+		}
+		entryDef.finish();
+		while( !entryDef.finished() )
+		{
+			deflate( Deflater.NO_FLUSH );
+		}
+		entryDef.end();
+		entryDef = null;
+		endSegment();
+		writeDescriptor( entryCrc, entrySize );
+	}
+
+	/**
+	 * Ends the current entry with its data descriptor and adds it to the
+	 * central directory.
+	 */
+	private void writeDescriptor( long entryCrc, long entrySize ) throws IOException
+	{
+		long csize = written - entryStart;
+		if( (csize > 0xffffffffL) || (entrySize > 0xffffffffL) || (written > 0xffffffffL) )
+		{
+			throw new ZipException( "entry exceeds 4GB: " + new String( entryName, UTF8 ) );
+		}
+
+		byte[] ext = new byte[16];
+		putInt( ext, 0, EXTSIG );
+		putInt( ext, 4, (int) entryCrc );
+		putInt( ext, 8, (int) csize );
+		putInt( ext, 12, (int) entrySize );
+		out( ext, 0, ext.length );
+
+		byte[] cen = new byte[46];
+		putInt( cen, 0, CENSIG );
+		putShort( cen, 4, VERSION );
+		putShort( cen, 6, VERSION );
+		putShort( cen, 8, FLAGS );
+		putShort( cen, 10, ZipEntry.DEFLATED );
+		putInt( cen, 12, dosTime );
+		putInt( cen, 16, (int) entryCrc );
+		putInt( cen, 20, (int) csize );
+		putInt( cen, 24, (int) entrySize );
+		putShort( cen, 28, entryName.length );
+		putInt( cen, 42, (int) entryOffset );
+		central.write( cen, 0, cen.length );
+		central.write( entryName, 0, entryName.length );
+		entries++;
+	}
+
+	@Override
+	public void finish() throws IOException
+	{
+		if( closed )
+		{
+			return;
+		}
+		closeEntry();
+		long cenOffset = written;
+		central.writeTo( dest );
+		written += central.size();
+		if( (written > 0xffffffffL) || (entries > 0xffff) )
+		{
+			throw new ZipException( "archive exceeds the zip format limits" );
+		}
+		byte[] end = new byte[22];
+		putInt( end, 0, ENDSIG );
+		putShort( end, 8, entries );
+		putShort( end, 10, entries );
+		putInt( end, 12, central.size() );
+		putInt( end, 16, (int) cenOffset );
+		out( end, 0, end.length );
+		closed = true;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		dest.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if( !closed )
+		{
+			finish();
+		}
+		if( entryDef != null )
+		{
+			entryDef.end();
+		}
+		def.end();    // the unused deflater of ZipOutputStream
+		dest.close();
+	}
+
+	/**
+	 * Runs the entry's deflater once and returns whether the output buffer
+	 * was filled, ie: whether more output may be pending.
+	 */
+	private boolean deflate( int flush ) throws IOException
+	{
+		int n = entryDef.deflate( buf, 0, buf.length, flush );
+		out( buf, 0, n );
+		return n == buf.length;
+	}
+
+	/**
+	 * Folds the CRC of the data written directly since the last spliced part
+	 * into the entry's CRC.
+	 */
+	private void endSegment()
+	{
+		entryCrc = crc32Combine( entryCrc, crc.getValue(), segmentSize );
+		entrySize += segmentSize;
+		crc.reset();
+		segmentSize = 0;
+	}
+
+	private void out( byte[] b, int off, int len ) throws IOException
+	{
+		dest.write( b, off, len );
+		written += len;
+	}
+
+	private static void putShort( byte[] b, int off, int v )
+	{
+		b[off] = (byte) v;
+		b[off + 1] = (byte) (v >> 8);
+	}
+
+	private static void putInt( byte[] b, int off, int v )
+	{
+		b[off] = (byte) v;
+		b[off + 1] = (byte) (v >> 8);
+		b[off + 2] = (byte) (v >> 16);
+		b[off + 3] = (byte) (v >> 24);
+	}
+
+	/**
+	 * Returns the CRC-32 of two blocks of data from the CRC-32s of each and
+	 * the length of the second, as zlib's crc32_combine.
+	 */
+	static long crc32Combine( long crc1, long crc2, long len2 )
+	{
+		if( len2 <= 0 )
+		{
+			return crc1;
+		}
+		long[] even = new long[32];
+		long[] odd = new long[32];
+		odd[0] = 0xedb88320L;    // CRC-32 polynomial
+		long row = 1;
+		for( int n = 1; n < 32; n++ )
+		{
+			odd[n] = row;
+			row <<= 1;
+		}
+		gf2MatrixSquare( even, odd );    // two zero bits
+		gf2MatrixSquare( odd, even );    // four zero bits
+		do
+		{
+			// apply len2 zeros to crc1, a bit of len2 at a time
+			gf2MatrixSquare( even, odd );
+			if( (len2 & 1) != 0 )
+			{
+				crc1 = gf2MatrixTimes( even, crc1 );
+			}
+			len2 >>= 1;
+			if( len2 == 0 )
+			{
+				break;
+			}
+			gf2MatrixSquare( odd, even );
+			if( (len2 & 1) != 0 )
+			{
+				crc1 = gf2MatrixTimes( odd, crc1 );
+			}
+			len2 >>= 1;
+		}
+		while( len2 != 0 );
+		return crc1 ^ crc2;
+	}
+
+	private static long gf2MatrixTimes( long[] mat, long vec )
+	{
+		long sum = 0;
+		for( int i = 0; vec != 0; i++, vec >>>= 1 )
+		{
+			if( (vec & 1) != 0 )
+			{
+				sum ^= mat[i];
+			}
+		}
+		return sum;
+	}
+
+	private static void gf2MatrixSquare( long[] square, long[] mat )
+	{
+		for( int n = 0; n < 32; n++ )
+		{
+			square[n] = gf2MatrixTimes( mat, mat[n] );
+		}
+	}
+}
@@ -37,9 +37,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -78,9 +78,11 @@ public final class Sst extends XLSRecord
 	private int numconts = -1;
 	private int[] boundaries = null;
 	private byte[] grbits = null;
-	private List stringvector = new SstArrayList();
-	private HashSet dupeSstEntries = new HashSet();
-	private HashSet existingSstEntries = new HashSet();
+	private SstStringStore strings = new SstStringStore();
+	// per isst: SHARING_EXISTS once a cell refers to the string, SHARING_DUPE once more than one may
+	private byte[] sharing = new byte[0];
+	private static final byte SHARING_EXISTS = 0x1;
+	private static final byte SHARING_DUPE = 0x2;
 	private Extsst myextsst = null;
 	int origsstlen = 0;
 
@@ -214,7 +216,7 @@ public final class Sst extends XLSRecord
 	{
 		sst.origsstlen = sst.getLength();
 		sst.currbound = 0;
-		sst.stringvector.clear();
+		sst.strings.clear();
 
 		// init the string cache for fast access of init vals
 
@@ -918,35 +920,45 @@ public final class Sst extends XLSRecord
 	}
 
 	/**
-	 * given unicode bytes, create a Unicodestring and add it to the string vector
+	 * given unicode bytes, add the string to the string store
 	 */
-	Unicodestring initString( byte[] newStringBytes, int strpos, boolean extrstbrk )
+	void initString( byte[] newStringBytes, int strpos, boolean extrstbrk )
 	{
+		if( newStringBytes.length == 0 )
+		{
+			log.trace( "Adding zero-length string!" );
+			return;
+		}
+		if( !extrstbrk && isPlainString( newStringBytes ) )
+		{   // already as Unicodestring.read() would write it
+			strings.setSSTPos( strings.add( newStringBytes ), strpos );
+			return;
+		}
 		// create a new Unicodestring, set its data
 		Unicodestring newString = new Unicodestring();
 		newString.setSSTPos( strpos );
 		newString.init( newStringBytes, extrstbrk );
+		log.trace( " val: " + newString.toString() );
+		strings.setSSTPos( putString( newString ), strpos );
+	}
 
-		// add the new String to the String table and return the new pointer
-			log.trace( " val: " + newString.toString() );
-		if( newString.getLen() == 0 )
-		{
-			log.trace( "Adding zero-length string!" );
-		}
-		else
+	/**
+	 * returns whether the bytes are a non-rich western string of exactly
+	 * its character data
+	 */
+	private static boolean isPlainString( byte[] b )
+	{
+		if( (b.length < 3) || ((b[2] & ~0x1) != 0) )
 		{
-			putString( newString );
+			return false;
 		}
-		return newString;
+		int cch = ByteTools.readShort( b[0], b[1] );
+		return (cch > 0) && (b.length == (3 + (((b[2] & 0x1) == 0x1) ? (cch * 2) : cch)));
 	}
 
-	int retpos = -1;
-
 	private int putString( Unicodestring newString )
 	{
-		++retpos;
-		((SstArrayList) stringvector).put( newString, retpos );
-		return retpos;
+		return strings.add( newString.read() );
 	}
 
 	/**
@@ -957,12 +969,8 @@ public final class Sst extends XLSRecord
 	{
 		cbounds.removeAllElements();
 		sstgrbits.removeAllElements();
-		stringvector.clear();
-		stringvector = new SstArrayList();
-		dupeSstEntries.clear();
-		dupeSstEntries = new HashSet();
-		existingSstEntries.clear();
-		existingSstEntries = new HashSet();
+		strings = new SstStringStore();
+		sharing = new byte[0];
 	}
 
 	/**
@@ -1006,38 +1014,27 @@ public final class Sst extends XLSRecord
 			log.warn( "Exception getting String bytes: " + e , e);
 		}
 
-		if( stringvector.size() > 0 )
+		if( strings.size() > 0 )
 		{
 			// now get the continue boundaries
 			int thispos = 8;
 			int lastpos = 0;
 			cbounds.removeAllElements();
 			sstgrbits.removeAllElements();
-			byte[] strb = null;
-			Iterator it = stringvector.iterator();
-			while( it.hasNext() )
+			for( int i = 0; i < strings.size(); i++ )
 			{
-				Object ob = it.next();
-				Unicodestring str = (Unicodestring) ob;
-
 				// from updateUnicodeStrings()
-				str.setSSTPos( thispos );
-
-				strb = str.read();
-				try
-				{
-					out.write( strb );
-				}
-				catch( IOException e )
-				{
-					log.warn( "Exception getting String bytes: " + e , e);
-				}
+				strings.setSSTPos( i, thispos );
+				strings.writeTo( i, out );
 				lastpos = thispos;
-				thispos = lastpos + strb.length;
-				checkOnBoundary( str, lastpos, thispos + 4, strb ); // add 4
-				// because 4
-				// added to
-				// boundaries
+				thispos = lastpos + strings.getLength( i );
+				if( (thispos + 4) >= thisbounds )
+				{   // only strings on a boundary are needed as Unicodestrings
+					checkOnBoundary( strings.get( i ), lastpos, thispos + 4, strings.getBytes( i ) ); // add 4
+					// because 4
+					// added to
+					// boundaries
+				}
 			}
 
 			if( leftoverlen > 0 )
@@ -1316,17 +1313,43 @@ public final class Sst extends XLSRecord
 	 */
 	void initSharingOnStrings( int isst )
 	{
-		Integer iSst = isst;
-		if( existingSstEntries.contains( iSst ) )
-		{
-			if( !dupeSstEntries.contains( iSst ) )
-			{ // really is just a switch -doesn't track # times string is shared ...
-				dupeSstEntries.add( iSst );
-			}
+		if( (isst >= 0) && ((getSharing( isst ) & SHARING_EXISTS) == SHARING_EXISTS) )
+		{ // really is just a switch -doesn't track # times string is shared ...
+			addSharing( isst, SHARING_DUPE );
 		}
 		else
 		{
-			existingSstEntries.add( iSst );
+			addSharing( isst, SHARING_EXISTS );
+		}
+	}
+
+	private byte getSharing( int isst )
+	{
+		return (isst < sharing.length) ? sharing[isst] : 0;
+	}
+
+	private void addSharing( int isst, byte flag )
+	{
+		if( isst < 0 )
+		{
+			return;
+		}
+		if( isst >= sharing.length )
+		{
+			sharing = Arrays.copyOf( sharing, Math.max( isst + 1, Math.max( strings.size(), sharing.length * 2 ) ) );
+		}
+		sharing[isst] |= flag;
+	}
+
+	/**
+	 * Marks every string currently in the table as shared, for cells which
+	 * will be read later and so can not be counted now.
+	 */
+	void shareAllStrings()
+	{
+		for( int i = 0; i < strings.size(); i++ )
+		{
+			addSharing( i, (byte) (SHARING_EXISTS | SHARING_DUPE) );
 		}
 	}
 
@@ -1340,14 +1363,15 @@ public final class Sst extends XLSRecord
 
 	/**
 	 * remove a Unicodestring from the table
+	 * <p/>
+	 * The string is kept: removing it would change the isst of every string
+	 * after it, which the Labelsst records referring to them still hold.
 	 *
-	 * @param idx
+	 * @param str
 	 */
 	void removeUnicodestring( Unicodestring str )
 	{
-		stringvector.remove( idx );
-		retpos--;
-		reclen -= str.getLen();
+		log.trace( "String kept in SST on removal, indexing would be off: " + str );
 	}
 
 	/**
@@ -1374,12 +1398,7 @@ public final class Sst extends XLSRecord
 		// but only if we're not ignoring dupes
 		if( getWorkBook().isSharedupes() )
 		{
-			retpos = ((SstArrayList) stringvector).find( us ); // indexOf will not
-			// match entire
-			// unicode
-			// string
-			// (including
-			// formatting)
+			retpos = find( us ); // indexOf will not match entire unicode string (including formatting)
 		}
 		if( retpos == -1 )
 		{ // unicode string isn't in yet
@@ -1397,7 +1416,7 @@ public final class Sst extends XLSRecord
 		else
 		{
 			// this is a duplicate string, track it!
-			dupeSstEntries.add( retpos );
+			addSharing( retpos, SHARING_DUPE );
 		}
 
 		return retpos;
@@ -1421,8 +1440,7 @@ public final class Sst extends XLSRecord
 
 		reclen += str.getLen();
 		datalen += str.getLen();
-		retpos = putString( str );
-		return retpos;
+		return putString( str );
 	}
 
 	/**
@@ -1572,16 +1590,7 @@ public final class Sst extends XLSRecord
 		// but only if we're not ignoring dupes
 		if( getWorkBook().isSharedupes() )
 		{
-			retpos = stringvector.indexOf( s );
-			if( retpos > -1 )
-			{
-				Unicodestring str = (Unicodestring) stringvector.get( retpos );
-				if( str.hasFormattingRuns() )
-				{
-					retpos = -1; // do not match if there are formatting runs
-				}
-				// embedded
-			}
+			retpos = strings.indexOf( s ); // do not match if there are formatting runs embedded
 		}
 
 		if( retpos == -1 )
@@ -1593,7 +1602,7 @@ public final class Sst extends XLSRecord
 		{
 			cstTotal++;
 			// this is a duplicate string, track it!
-			dupeSstEntries.add( retpos );
+			addSharing( retpos, SHARING_DUPE );
 		}
 
 		return retpos;
@@ -1604,19 +1613,61 @@ public final class Sst extends XLSRecord
 	 */
 	boolean isSharedString( int sstLoc )
 	{
-		if( dupeSstEntries.contains( Integer.valueOf( sstLoc ) ) )
-		{
-			return true;
-		}
-		return false;
+		return (getSharing( sstLoc ) & SHARING_DUPE) == SHARING_DUPE;
 	}
 
 	/**
 	 * Return the Unicodestring at the corresponding index
+	 * <p/>
+	 * The Unicodestring is created from the string table bytes on each call;
+	 * changes to it must be stored with {@link #updateUnicodestring}.
 	 */
 	Unicodestring getUStringAt( int i )
 	{
-		return (Unicodestring) stringvector.get( i );
+		return strings.get( i );
+	}
+
+	/**
+	 * Return the String value of the Unicodestring at the corresponding
+	 * index, without creating the Unicodestring
+	 */
+	String getStringAt( int i )
+	{
+		return strings.getString( i );
+	}
+
+	/**
+	 * returns whether the string at the index starts with the given Latin-1
+	 * character, without decoding the string
+	 */
+	boolean stringStartsWith( int i, char c )
+	{
+		return strings.startsWith( i, c );
+	}
+
+	/**
+	 * Return the position of the string at the index in the Sst data, as of
+	 * the last update of the Sst bytes
+	 */
+	int getSSTPos( int i )
+	{
+		return strings.getSSTPos( i );
+	}
+
+	/**
+	 * Changes the value of the unshared string at the index and updates the
+	 * record length
+	 *
+	 * @return the updated Unicodestring
+	 */
+	Unicodestring updateUnicodestring( int i, String s )
+	{
+		Unicodestring str = strings.get( i );
+		int origLen = str.getLength();
+		str.updateUnicodeString( s );
+		strings.set( i, str.read() );
+		adjustSstLength( str.getLength() - origLen );
+		return str;
 	}
 
 	/**
@@ -1627,15 +1678,37 @@ public final class Sst extends XLSRecord
 	 */
 	int find( Unicodestring us )
 	{
-		return ((SstArrayList) stringvector).find( us );
+		return strings.find( us.read() );
 	}
 
 	/**
-	 * Returns the String vector
+	 * Returns the String vector, a read-only list of the Unicodestrings in
+	 * the table which are created as they are read
 	 */
 	public List getStringVector()
 	{
-		return stringvector;
+		return new AbstractList()
+		{
+			@Override
+			public Object get( int index )
+			{
+				return strings.get( index );
+			}
+
+			@Override
+			public int size()
+			{
+				return strings.size();
+			}
+		};
+	}
+
+	/**
+	 * return the number of strings held in the SST
+	 */
+	int getNumStrings()
+	{
+		return strings.size();
 	}
 
 	/**
@@ -1682,62 +1755,13 @@ public final class Sst extends XLSRecord
 	{
 		StringBuffer sb = new StringBuffer();
 		sb.append( "cstTotal:" + cstTotal + " cstUnique:" + cstUnique + " numConts:" + numconts );
-		for( Object aStringvector : stringvector )
+		for( int i = 0; i < strings.size(); i++ )
 		{
-			sb.append( "\n " + aStringvector );
+			sb.append( "\n " + strings.getString( i ) );
 		}
 		return sb.toString();
 	}
 
-	/**
-	 * Override ArrayList to allow matching based on .toString. Required because
-	 * we call ArrayList.indexOf(String) when ArrayList contains UnicodeStrings.
-	 */
-	private class SstArrayList extends ArrayList
-	{
-		/**
-		 * serialVersionUID
-		 */
-		private static final long serialVersionUID = 7904551471519095640L;
-		private HashMap container = new HashMap();
-
-		public boolean put( Object o, Integer isst )
-		{
-			container.put( ((Unicodestring) o).toCachingString(), isst );
-			return super.add( o );
-		}
-
-		@Override
-		public int indexOf( Object o )
-		{
-			Object oo = container.get( o.toString() );
-			if( oo == null )
-			{
-				return -1;
-			}
-			return (Integer) oo;
-		}
-
-		@Override
-		public boolean remove( Object o )
-		{
-			log.warn( "String being removed from SST array, Indexing may be off" );
-			container.remove( ((Unicodestring) o).toCachingString() );
-			return super.remove( o );
-		}
-
-		/**
-		 * find this particular unicode string, including formatting
-		 *
-		 * @param us
-		 * @return
-		 */
-		public int find( Unicodestring us )
-		{
-			return (super.indexOf( us ));
-		}
-	}
-
 	/**
 	 * generate the OOXML necessary to describe this string table, also fill
 	 * sststrings list with unique sststrings
@@ -1754,11 +1778,10 @@ public final class Sst extends XLSRecord
 		zip.write( "\r\n" );
 		zip.write( ("<sst xmlns=\"" + OOXMLConstants.xmlns + "\" count=\"" + cstTotal + "\" uniqueCount=\"" + cstUnique + "\">") );
 		zip.write( "\r\n" );
-		for( int i = 0; i < getStringVector().size(); i++ )
+		for( int i = 0; i < strings.size(); i++ )
 		{
-			Unicodestring us = ((Unicodestring) getStringVector().get( i ));
-			ArrayList frs = us.getFormattingRuns();
-			String s = us.getStringVal();
+			ArrayList frs = strings.getFormattingRuns( i );
+			String s = strings.getString( i );
 			s = OOXMLAdapter.stripNonAscii( s ).toString();
 			// sststrings.add(OOXMLAdapter.stripNonAscii(s));// zip.write(s); //
 			// used as an index for cell values in parsing sheet ooxml
@@ -1834,10 +1857,10 @@ public final class Sst extends XLSRecord
 	 *
 	 * @param bk WorkBookHandle
 	 * @param ii InputStream
-	 * @return String ArrayList return list of shared strings
+	 * @return String List return list of shared strings
 	 * @see parseSheetOOXML
 	 */
-	public static ArrayList parseOOXML( WorkBookHandle bk, InputStream ii )
+	public static List parseOOXML( WorkBookHandle bk, InputStream ii )
 	{
 		// NOTE:
 		// apparently can have dup entries in sharedstring.xml
@@ -1952,7 +1975,7 @@ public final class Sst extends XLSRecord
 			bk.getWorkBook().setSharedupes( true );
 		}
 
-		return (ArrayList) bk.getWorkBook().getSharedStringTable().getStringVector();
+		return bk.getWorkBook().getSharedStringTable().getStringVector();
 	}
 
 	/**
@@ -1965,10 +1988,10 @@ public final class Sst extends XLSRecord
 	 */
 	public ArrayList getAllStrings()
 	{
-		ArrayList al = new ArrayList( stringvector.size() );
-		for( Object aStringvector : stringvector )
+		ArrayList al = new ArrayList( strings.size() );
+		for( int i = 0; i < strings.size(); i++ )
 		{
-			al.add( aStringvector.toString() );
+			al.add( strings.getString( i ) );
 		}
 		return al;
 	}
@@ -0,0 +1,494 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS;
+
+import org.openxls.toolkit.ByteTools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The strings of the shared string table, kept as their encoded
+ * Unicodestring bytes in a single byte array.
+ * <p/>
+ * Each entry is the bytes {@link Unicodestring#read()} would return for it:
+ * the character count, the option flags, the run and phonetic headers, the
+ * character data and the formatting runs and phonetic data.  Entries are
+ * indexed by a hash of their text in an open-addressing table of entry
+ * numbers, so a string is found without decoding any entry or creating a
+ * key object for it.  Unicodestrings and Strings are only created when
+ * asked for, and are not kept.
+ * <p/>
+ * Reading an entry does not change the store, so it can be read from
+ * several threads as long as none is adding or replacing entries.
+ */
+final class SstStringStore implements Serializable
+{
+	private static final long serialVersionUID = 3381236742938861284L;
+
+	private byte[] data = new byte[4096];
+	private int dataLen = 0;
+	private int garbage = 0;    // bytes of replaced entries still in data
+
+	private int count = 0;
+	private int[] offsets = new int[64];
+	private int[] lengths = new int[64];
+	private int[] hashes = new int[64];
+	private int[] sstPos = new int[64];
+
+	// entry number + 1 for each used slot, 0 for a free one
+	private int[] table = new int[128];
+
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Adds an encoded Unicodestring and returns its index.
+	 */
+	int add( byte[] ustr, int off, int len )
+	{
+		if( count == offsets.length )
+		{
+			int n = count * 2;
+			offsets = Arrays.copyOf( offsets, n );
+			lengths = Arrays.copyOf( lengths, n );
+			hashes = Arrays.copyOf( hashes, n );
+			sstPos = Arrays.copyOf( sstPos, n );
+		}
+		int i = count++;
+		offsets[i] = append( ustr, off, len );
+		lengths[i] = len;
+		hashes[i] = textHash( data, offsets[i], len );
+		sstPos[i] = -1;
+		index( i );
+		return i;
+	}
+
+	int add( byte[] ustr )
+	{
+		return add( ustr, 0, ustr.length );
+	}
+
+	/**
+	 * Replaces the encoded Unicodestring at the given index.
+	 */
+	void set( int i, byte[] ustr )
+	{
+		check( i );
+		unindex( i );
+		if( ustr.length <= lengths[i] )
+		{
+			System.arraycopy( ustr, 0, data, offsets[i], ustr.length );
+			garbage += lengths[i] - ustr.length;
+		}
+		else
+		{
+			garbage += lengths[i];
+			offsets[i] = append( ustr, 0, ustr.length );
+		}
+		lengths[i] = ustr.length;
+		hashes[i] = textHash( data, offsets[i], ustr.length );
+		index( i );
+		if( (garbage > 65536) && (garbage > (dataLen / 2)) )
+		{
+			compact();
+		}
+	}
+
+	void clear()
+	{
+		data = new byte[4096];
+		dataLen = 0;
+		garbage = 0;
+		count = 0;
+		offsets = new int[64];
+		lengths = new int[64];
+		hashes = new int[64];
+		sstPos = new int[64];
+		table = new int[128];
+	}
+
+	/**
+	 * Returns a new Unicodestring for the entry at the given index.
+	 */
+	Unicodestring get( int i )
+	{
+		Unicodestring us = new Unicodestring();
+		us.setSSTPos( getSSTPos( i ) );
+		us.init( getBytes( i ), false );
+		return us;
+	}
+
+	byte[] getBytes( int i )
+	{
+		check( i );
+		return Arrays.copyOfRange( data, offsets[i], offsets[i] + lengths[i] );
+	}
+
+	int getLength( int i )
+	{
+		check( i );
+		return lengths[i];
+	}
+
+	void writeTo( int i, ByteArrayOutputStream out )
+	{
+		check( i );
+		out.write( data, offsets[i], lengths[i] );
+	}
+
+	/**
+	 * Returns the text of the entry at the given index, decoded as
+	 * {@link Unicodestring#toString()} does.
+	 */
+	String getString( int i )
+	{
+		check( i );
+		int off = offsets[i];
+		int len = lengths[i];
+		if( len < 3 )
+		{
+			return "";
+		}
+		int start = off + charStart( data, off );
+		int n = charLength( data, off, len );
+		try
+		{
+			if( isHighByte( data, off ) )
+			{
+				return new String( data, start, n, XLSConstants.UNICODEENCODING );
+			}
+			return new String( data, start, n, XLSConstants.DEFAULTENCODING );
+		}
+		catch( UnsupportedEncodingException e )
+		{
+			return new String( data, start, n );
+		}
+	}
+
+	/**
+	 * Returns whether the text of the entry starts with the given Latin-1
+	 * character.
+	 */
+	boolean startsWith( int i, char c )
+	{
+		check( i );
+		int off = offsets[i];
+		if( (lengths[i] < 3) || (charLength( data, off, lengths[i] ) == 0) )
+		{
+			return false;
+		}
+		int start = off + charStart( data, off );
+		if( isHighByte( data, off ) )
+		{
+			return (charLength( data, off, lengths[i] ) > 1) && ((data[start] & 0xff) == c) && (data[start + 1] == 0);
+		}
+		return (data[start] & 0xff) == c;
+	}
+
+	/**
+	 * Returns whether the entry has formatting runs.
+	 */
+	boolean hasFormattingRuns( int i )
+	{
+		check( i );
+		return runCount( data, offsets[i], lengths[i] ) > 0;
+	}
+
+	/**
+	 * Returns the formatting runs of the entry as short[] {char index, font
+	 * index} pairs, or null if it has none.
+	 */
+	ArrayList getFormattingRuns( int i )
+	{
+		check( i );
+		int off = offsets[i];
+		int runs = runCount( data, off, lengths[i] );
+		if( runs == 0 )
+		{
+			return null;
+		}
+		int pos = off + charStart( data, off ) + charLength( data, off, lengths[i] );
+		ArrayList formattingruns = new ArrayList( runs );
+		for( int r = 0; (r < runs) && ((pos + 4) <= (off + lengths[i])); r++, pos += 4 )
+		{
+			short charIndex = ByteTools.readShort( data[pos], data[pos + 1] );
+			short fontIndex = ByteTools.readShort( data[pos + 2], data[pos + 3] );
+			formattingruns.add( new short[]{ charIndex, fontIndex } );
+		}
+		return formattingruns;
+	}
+
+	int getSSTPos( int i )
+	{
+		check( i );
+		return sstPos[i];
+	}
+
+	void setSSTPos( int i, int pos )
+	{
+		check( i );
+		sstPos[i] = pos;
+	}
+
+	/**
+	 * Returns the index of the entry with exactly the given encoded bytes,
+	 * formatting included, or -1.
+	 */
+	int find( byte[] ustr )
+	{
+		int mask = table.length - 1;
+		for( int slot = slot( textHash( ustr, 0, ustr.length ) ); table[slot] != 0; slot = (slot + 1) & mask )
+		{
+			int i = table[slot] - 1;
+			if( (lengths[i] == ustr.length) && equalBytes( ustr, offsets[i] ) )
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of an entry without formatting runs whose text is
+	 * the given string, or -1.
+	 */
+	int indexOf( String s )
+	{
+		int mask = table.length - 1;
+		for( int slot = slot( s.hashCode() ); table[slot] != 0; slot = (slot + 1) & mask )
+		{
+			int i = table[slot] - 1;
+			if( (hashes[i] == s.hashCode()) && (runCount( data, offsets[i], lengths[i] ) == 0) && equalText( i, s ) )
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void check( int i )
+	{
+		if( (i < 0) || (i >= count) )
+		{
+			throw new IndexOutOfBoundsException( "Index: " + i + ", Size: " + count );
+		}
+	}
+
+	private int append( byte[] b, int off, int len )
+	{
+		if( (dataLen + len) > data.length )
+		{
+			long n = Math.max( (long) data.length * 2, (long) dataLen + len );
+			data = Arrays.copyOf( data, (int) Math.min( n, Integer.MAX_VALUE - 8 ) );
+		}
+		System.arraycopy( b, off, data, dataLen, len );
+		int at = dataLen;
+		dataLen += len;
+		return at;
+	}
+
+	/**
+	 * Copies the live entries to a new array, dropping replaced ones.
+	 */
+	private void compact()
+	{
+		byte[] old = data;
+		data = new byte[Math.max( 4096, dataLen - garbage )];
+		dataLen = 0;
+		for( int i = 0; i < count; i++ )
+		{
+			offsets[i] = append( old, offsets[i], lengths[i] );
+		}
+		garbage = 0;
+	}
+
+	private int slot( int hash )
+	{
+		int h = hash * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (table.length - 1);
+	}
+
+	private void index( int i )
+	{
+		if( (count * 2) > table.length )
+		{
+			table = new int[table.length * 2];
+			for( int e = 0; e < count; e++ )
+			{
+				if( e != i )
+				{
+					put( e );
+				}
+			}
+		}
+		put( i );
+	}
+
+	private void put( int i )
+	{
+		int mask = table.length - 1;
+		int slot = slot( hashes[i] );
+		while( table[slot] != 0 )
+		{
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = i + 1;
+	}
+
+	/**
+	 * Removes the entry from the table, moving back any entries of the same
+	 * probe run so that they can still be found.
+	 */
+	private void unindex( int i )
+	{
+		int mask = table.length - 1;
+		int hole = slot( hashes[i] );
+		while( table[hole] != (i + 1) )
+		{
+			if( table[hole] == 0 )
+			{
+				return;
+			}
+			hole = (hole + 1) & mask;
+		}
+		for( int j = (hole + 1) & mask; table[j] != 0; j = (j + 1) & mask )
+		{
+			int home = slot( hashes[table[j] - 1] );
+			// move the entry back unless its home lies after the hole
+			boolean stays = (hole <= j) ? ((home > hole) && (home <= j)) : ((home > hole) || (home <= j));
+			if( !stays )
+			{
+				table[hole] = table[j];
+				hole = j;
+			}
+		}
+		table[hole] = 0;
+	}
+
+	private boolean equalBytes( byte[] b, int off )
+	{
+		for( int k = 0; k < b.length; k++ )
+		{
+			if( b[k] != data[off + k] )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean equalText( int i, String s )
+	{
+		int off = offsets[i];
+		if( lengths[i] < 3 )
+		{
+			return s.isEmpty();
+		}
+		int start = off + charStart( data, off );
+		int n = charLength( data, off, lengths[i] );
+		boolean hb = isHighByte( data, off );
+		if( (hb ? (n / 2) : n) != s.length() )
+		{
+			return false;
+		}
+		for( int k = 0; k < s.length(); k++ )
+		{
+			int c = hb ? ((data[start + (k * 2)] & 0xff) | ((data[start + (k * 2) + 1] & 0xff) << 8)) : (data[start + k] & 0xff);
+			if( c != s.charAt( k ) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hashes the characters of an encoded Unicodestring as String.hashCode
+	 * hashes the String it decodes to.
+	 */
+	static int textHash( byte[] b, int off, int len )
+	{
+		if( len < 3 )
+		{
+			return 0;
+		}
+		int start = off + charStart( b, off );
+		int n = charLength( b, off, len );
+		int h = 0;
+		if( isHighByte( b, off ) )
+		{
+			for( int k = 0; (k + 1) < n; k += 2 )
+			{
+				h = (31 * h) + ((b[start + k] & 0xff) | ((b[start + k + 1] & 0xff) << 8));
+			}
+		}
+		else
+		{
+			for( int k = 0; k < n; k++ )
+			{
+				h = (31 * h) + (b[start + k] & 0xff);
+			}
+		}
+		return h;
+	}
+
+	private static boolean isHighByte( byte[] b, int off )
+	{
+		return (b[off + 2] & 0x1) == 0x1;
+	}
+
+	/**
+	 * The offset of the character data: after the count and flags, the
+	 * run count of a rich string and the phonetic size of an eastern one.
+	 */
+	private static int charStart( byte[] b, int off )
+	{
+		int grbit = b[off + 2];
+		return 3 + (((grbit & 0x8) == 0x8) ? 2 : 0) + (((grbit & 0x4) == 0x4) ? 4 : 0);
+	}
+
+	private static int charLength( byte[] b, int off, int len )
+	{
+		int n = ByteTools.readShort( b[off], b[off + 1] ) & 0xffff;
+		if( isHighByte( b, off ) )
+		{
+			n *= 2;
+		}
+		return Math.max( Math.min( n, len - charStart( b, off ) ), 0 );
+	}
+
+	private static int runCount( byte[] b, int off, int len )
+	{
+		if( (len < 5) || ((b[off + 2] & 0x8) != 0x8) )
+		{
+			return 0;
+		}
+		return ByteTools.readShort( b[off + 3], b[off + 4] ) & 0xffff;
+	}
+}
@@ -702,6 +702,23 @@ public final class Unicodestring implements XLSConstants, Serializable
 		return toString();
 	}
 
+	/**
+	 * returns whether the string starts with the given Latin-1 character,
+	 * without decoding the string
+	 */
+	boolean startsWith( char c )
+	{
+		if( (stringarray == null) || (stringarray.length == 0) )
+		{
+			return false;
+		}
+		if( fHighByte )
+		{
+			return (stringarray.length > 1) && ((stringarray[0] & 0xff) == c) && (stringarray[1] == 0);
+		}
+		return (stringarray[0] & 0xff) == c;
+	}
+
 	/**
 	 * Return true if the string contains formatting runs embedded within it
 	 *
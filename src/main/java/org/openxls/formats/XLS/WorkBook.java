@@ -27,10 +27,13 @@ import org.openxls.ExtenXLS.FormatHandle;
 import org.openxls.ExtenXLS.ImageHandle;
 import org.openxls.ExtenXLS.WorkBookHandle;
 import org.openxls.formats.OOXML.Theme;
+import org.openxls.formats.cellformat.CellFormat;
+import org.openxls.formats.cellformat.CellFormatFactory;
 import org.openxls.formats.XLS.charts.Ai;
 import org.openxls.formats.XLS.charts.Chart;
 import org.openxls.formats.XLS.charts.Fontx;
 import org.openxls.formats.XLS.charts.GenericChartObject;
+import org.openxls.formats.XLS.formulas.DependencyGraph;
 import org.openxls.formats.XLS.formulas.IlblListener;
 import org.openxls.formats.XLS.formulas.Ptg;
 import org.openxls.formats.XLS.formulas.PtgArea3d;
@@ -52,14 +55,17 @@ import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <pre>
@@ -85,6 +91,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	public static int SHAREDUPES = 1;
 	public Color[] colorTable;
 	public HashMap formatCache = new HashMap();
+	private transient IdentityHashMap<Xf, String> formatCacheKeys;    // the formatCache key of each cached Xf
 	public List msodgMerge = new ArrayList();
 	public MSODrawingGroup msodg = null;
 	public int lastSPID = 1024;    // 20071030 last or next SPID (= shape ID or image ID); incremented upon new images ... appropriate to store at book level (?)
@@ -105,12 +112,20 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	private int defaultLanguage = 0;    // default language code for the current workbook
 	private boolean copying = false;
 	private boolean sharedupes = false;
+	private boolean compactCells = false;
+	private boolean lazySheets = false;
+	private boolean sharedForDeferredSheets = false;
+	private Boundsheet loadingSheet = null;
+	private List<Boundsheet> pendingSheets = new ArrayList<>();
+	private List<Boundsheet> loadedSheets = new ArrayList<>();
 	private List xfrecs = new ArrayList();
 	private List indexes = new ArrayList();
 	private List names = new ArrayList(); // ALL of the names (including worksheet scoped, etc)
 	private List orphanedPtgNames = new ArrayList();
 	private List externalnames = new ArrayList();
 	private List fonts = new ArrayList();
+	private transient HashMap<String, List<Integer>> fontIndex;    // font table positions by Font.getMatchKey
+	private transient IdentityHashMap<Font, String> fontKeys;    // the fontIndex key of each font in the table
 	/**
 	 * The list of Format records indexed by format ID.
 	 */
@@ -120,12 +135,15 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	 * OOXML-specific
 	 */
 	private List ooxmlObjects = new ArrayList();    // stores OOXML objects external to workbook e.g. oleObjects,
+	private transient PassThroughStore passThroughStore;    // OOXML pass-through parts kept in memory, if any
+	private transient ConcurrentHashMap<String, CellFormat> cellFormats;    // compiled number formats by pattern
 	private String ooxmlcodename = null;            // stores OOXML codename
 	private List dxfs = null;            // 20090622 KSC: stores dxf's (incremental style info) per workbook
 	private int firstSheet = 0;                // specifies first sheet (ooxml)
 	private Theme theme = null;
 	// Reference Tracking
 	private ReferenceTracker refTracker = new ReferenceTracker();
+	private transient DependencyGraph dependencyGraph;
 	// various
 	private List<Boundsheet> boundsheets = new ArrayList<>();  //TODO:  remove this variable?  its duplicated in workSheets
 	private List hlinklookup = new ArrayList( 20 );
@@ -195,6 +213,14 @@ public class WorkBook implements Serializable, XLSConstants, Book
 				setDupeStringMode( WorkBook.SHAREDUPES );
 			}
 		}
+		if( System.getProperties().get( WorkBook.COMPACTCELLS_PROP ) != null )
+		{
+			compactCells = System.getProperties().get( WorkBook.COMPACTCELLS_PROP ).equals( "true" );
+		}
+		if( System.getProperties().get( WorkBook.LAZYSHEETS_PROP ) != null )
+		{
+			lazySheets = System.getProperties().get( WorkBook.LAZYSHEETS_PROP ).equals( "true" );
+		}
 		initBuiltinFormats();
 		// re-init color table: initial state of color table if Pallete record exists, changes may occur
 		colorTable = new java.awt.Color[FormatHandle.COLORTABLE.length];
@@ -856,6 +882,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		formulashash.remove( fmla.getCellAddressWithSheet() );
 		formulas.remove( fmla );
 		fmla.destroy();
+		refTracker.referencesChanged();
 	}
 
 	/**
@@ -1030,17 +1057,94 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	public int getFontIdx( Font f )
 	{
 		// 20070819 KSC: Try this to see if better! Matches 6 key attributes (size, name, color, etc.)
-		for( int i = fonts.size() - 1; i >= 0; i-- )
-		{    // start from the back so don't initially match defaults...
-			if( f.matches( (Font) fonts.get( i ) ) )
-			{
-				return i > 3 ? i + 1 : i;
+		List<Integer> positions = getFontIndex().get( f.getMatchKey() );
+		if( positions != null )
+		{
+			for( int j = positions.size() - 1; j >= 0; j-- )
+			{    // start from the back so don't initially match defaults...
+				int i = positions.get( j );
+				if( f.matches( (Font) fonts.get( i ) ) )
+				{
+					return i > 3 ? i + 1 : i;
+				}
 			}
 		}
 		// return  fonts.indexOf(f);
 		return -1;
 	}
 
+	/**
+	 * returns the positions of the fonts in the font table by their match key,
+	 * building the index on first use
+	 */
+	private HashMap<String, List<Integer>> getFontIndex()
+	{
+		if( fontIndex == null )
+		{
+			fontIndex = new HashMap<>();
+			fontKeys = new IdentityHashMap<>();
+			for( int i = 0; i < fonts.size(); i++ )
+			{
+				indexFont( (Font) fonts.get( i ), i );
+			}
+		}
+		return fontIndex;
+	}
+
+	private void indexFont( Font f, int pos )
+	{
+		String key = f.getMatchKey();
+		List<Integer> positions = fontIndex.get( key );
+		if( positions == null )
+		{
+			positions = new ArrayList<>( 1 );
+			fontIndex.put( key, positions );
+		}
+		int at = Collections.binarySearch( positions, pos );
+		if( at < 0 )
+		{
+			positions.add( -at - 1, pos );
+		}
+		fontKeys.put( f, key );
+	}
+
+	/**
+	 * moves a font of the font table to its new match key after one of its
+	 * matched attributes has changed
+	 *
+	 * @see Font#matches(Font)
+	 */
+	void updateFontIndex( Font f )
+	{
+		if( fontKeys == null )
+		{
+			return;
+		}
+		String old = fontKeys.get( f );
+		if( (old == null) || old.equals( f.getMatchKey() ) )
+		{
+			return;
+		}
+		fontKeys.remove( f );
+		List<Integer> positions = fontIndex.get( old );
+		List<Integer> moved = new ArrayList<>( 1 );
+		for( int j = positions.size() - 1; j >= 0; j-- )
+		{
+			if( fonts.get( positions.get( j ) ) == f )
+			{
+				moved.add( positions.remove( j ) );
+			}
+		}
+		if( positions.isEmpty() )
+		{
+			fontIndex.remove( old );
+		}
+		for( Integer pos : moved )
+		{
+			indexFont( f, pos );
+		}
+	}
+
 	/**
 	 * Get's the index for this font, based on matching through
 	 * xml strings.  If the font doesn't exist in the book it returns -1;
@@ -1072,7 +1176,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		getStreamer().addRecordAt( x, insertIdx + 1 );
 		x.setIdx( -1 ); // flag to add into font array
 		addRecord( x, false );    // also adds to font array so no need for additional addFont below
-		return fonts.indexOf( x );
+		return fonts.lastIndexOf( x );
 	}
 
 	/**
@@ -1081,6 +1185,10 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	public int addFont( Font f )
 	{
 		fonts.add( f );
+		if( fontIndex != null )
+		{
+			indexFont( f, fonts.size() - 1 );
+		}
 		if( fonts.size() > 4 )    // fake the evil 4!
 		{
 			return fonts.size();
@@ -1232,6 +1340,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	 */
 	public void setDefaultColWidth( int t )
 	{
+		loadAllSheets();
 		Boundsheet[] b = getWorkSheets();
 		for( Boundsheet aB : b )
 		{
@@ -1252,6 +1361,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	 */
 	public void setSelectedSheet( Boundsheet bs )
 	{
+		loadAllSheets();    // the selection is held in each sheet's WINDOW2
 		Boundsheet[] bsx = getWorkSheets();
 		for( Boundsheet aBsx : bsx )
 		{
@@ -1946,6 +2056,8 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	{
 		if( names.contains( n ) )
 		{
+			loadAllSheets();    // formulas in unparsed sheets refer to names by index
+
 			names.remove( n );
 			if( n.getItab() != 0 )
 			{
@@ -2016,6 +2128,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	 */
 	public void removeWorkSheet( Boundsheet sheet )
 	{
+		loadAllSheets();
 
 		int sheetNum = sheet.getSheetNum();
 		// remove the sheet
@@ -2105,6 +2218,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	 */
 	public Boundsheet getWorkSheetByName( String bstr ) throws WorkSheetNotFoundException
 	{
+		Boundsheet found = null;
 		try
 		{
 			if( bstr.startsWith( "'" ) || bstr.startsWith( "\"" ) )
@@ -2119,7 +2233,8 @@ public class WorkBook implements Serializable, XLSConstants, Book
 				// TODO: check if we can have dupe names different case
 				if( bsin.equalsIgnoreCase( bstr ) )
 				{
-					return bsi;
+					found = bsi;
+					break;
 				}
 			}
 		}
@@ -2127,6 +2242,11 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		{
 			log.warn( "WorkBook.getWorkSheetByName failed: " + ex.toString() );
 		}
+		if( found != null )
+		{
+			loadSheet( found );
+			return found;
+		}
 		throw new WorkSheetNotFoundException( "Worksheet " + bstr + " not found in " + toString() );
 	}
 
@@ -2142,6 +2262,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		{
 			if( b.getSheetHash().equalsIgnoreCase( s ) )
 			{
+				loadSheet( b );
 				return b;
 			}
 		}
@@ -2160,6 +2281,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 			throw new WorkSheetNotFoundException( i + " not found" );
 		}
 		Boundsheet bs = boundsheets.get( i );
+		loadSheet( bs );
 		return bs;
 	}
 
@@ -2254,25 +2376,18 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	{
 		if( xf.tableidx != -1 )
 		{    // if this xf has been already added to the workbook
-			if( formatCache.containsValue( xf ) )
+			Map<Xf, String> keys = getFormatCacheKeys();
+			String old = keys.remove( xf );
+			if( (old != null) && (formatCache.get( old ) == xf) )
 			{    // xf signature has changed/it's been updated
-				Iterator ii = formatCache.keySet().iterator();    // remove and update below
-				while( ii.hasNext() )
-				{
-					String key = (String) ii.next();
-					Xf x = (Xf) formatCache.get( key );
-					if( x.equals( xf ) )
-					{
-						formatCache.remove( key );
-						break;
-					}
-				}
+				formatCache.remove( old );
 			}
 			String formatStr = xf.toString();
 
 			if( !formatCache.containsKey( formatStr ) )
 			{
 				formatCache.put( formatStr, xf );
+				keys.put( xf, formatStr );
 			}
 		}
 	}
@@ -2289,6 +2404,25 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		return formatCache;
 	}
 
+	/**
+	 * returns the key each Xf is cached under in the format cache, rebuilt
+	 * from the cache after deserialization
+	 */
+	private Map<Xf, String> getFormatCacheKeys()
+	{
+		if( formatCacheKeys == null )
+		{
+			formatCacheKeys = new IdentityHashMap<>();
+			Iterator ii = formatCache.entrySet().iterator();
+			while( ii.hasNext() )
+			{
+				Map.Entry e = (Map.Entry) ii.next();
+				formatCacheKeys.put( (Xf) e.getValue(), (String) e.getKey() );
+			}
+		}
+		return formatCacheKeys;
+	}
+
 	public void setSubStream( ByteStreamer s )
 	{
 		streamer = s;
@@ -2532,6 +2666,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	 */
 	public void changeWorkSheetOrder( Boundsheet bs, int idx )
 	{
+		loadAllSheets();
 		// reorder the sheet vector
 		if( (idx >= 0) && (idx < boundsheets.size()) )
 		{
@@ -3040,7 +3175,8 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	}
 
 	/**
-	 * Initialize the indirect functions in this workbook by calculating the formulas
+	 * Initialize the indirect functions in this workbook by calculating the formulas,
+	 * which tracks the references they resolve, see {@link Formula#getResolvedReferences()}
 	 */
 	public void initializeIndirectFormulas()
 	{
@@ -3191,6 +3327,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		formulas.add( rec );
 		String shn = rec.getSheet().getSheetName() + "!" + rec.getCellAddress();
 		formulashash.put( shn, rec );
+		refTracker.referencesChanged();
 	}
 
 	public boolean isSharedupes()
@@ -3203,6 +3340,200 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		this.sharedupes = sharedupes;
 	}
 
+	/**
+	 * Returns whether simple value cells read from the file are held in the
+	 * compact column store of their sheet instead of as individual records.
+	 *
+	 * @see CompactCellStore
+	 */
+	public boolean isCompactCells()
+	{
+		return compactCells;
+	}
+
+	/**
+	 * Sets whether simple value cells read from the file are held in compact
+	 * form.  Only affects sheets which are parsed after the call.
+	 */
+	public void setCompactCells( boolean compactCells )
+	{
+		this.compactCells = compactCells;
+	}
+
+	/**
+	 * Returns the store which holds the OOXML pass-through parts of this
+	 * WorkBook in memory, or null if they are unpacked into the temp
+	 * directory.
+	 */
+	PassThroughStore getPassThroughStore()
+	{
+		return passThroughStore;
+	}
+
+	void setPassThroughStore( PassThroughStore store )
+	{
+		passThroughStore = store;
+	}
+
+	/**
+	 * Returns the compiled CellFormat for a number format pattern.
+	 * <p/>
+	 * Patterns are compiled once per WorkBook and the CellFormat is shared
+	 * by every cell which uses the pattern, so it must not be modified.
+	 *
+	 * @param pattern the format pattern, null or "" for General
+	 */
+	public CellFormat getCellFormat( String pattern )
+	{
+		if( pattern == null )
+		{
+			pattern = "";
+		}
+		ConcurrentHashMap<String, CellFormat> cache = cellFormats;
+		if( cache == null )
+		{
+			synchronized( this )
+			{
+				if( cellFormats == null )
+				{
+					cellFormats = new ConcurrentHashMap<>();
+				}
+				cache = cellFormats;
+			}
+		}
+		CellFormat fmt = cache.get( pattern );
+		if( fmt == null )
+		{
+			fmt = CellFormatFactory.fromPatternString( pattern );
+			CellFormat prev = cache.putIfAbsent( pattern, fmt );
+			if( prev != null )
+			{
+				fmt = prev;
+			}
+		}
+		return fmt;
+	}
+
+	/**
+	 * Returns whether worksheets are parsed the first time they are accessed
+	 * rather than when the file is read.  Set from LAZYSHEETS_PROP when the
+	 * WorkBook is created.
+	 *
+	 * @see DeferredSheetStream
+	 */
+	public boolean isLazySheets()
+	{
+		return lazySheets;
+	}
+
+	/**
+	 * Returns whether a worksheet may be left unparsed.  The calculation
+	 * settings of the WorkBook are read from its worksheets, so a worksheet
+	 * is always parsed until they have been found.
+	 */
+	boolean canDeferSheet()
+	{
+		return calcmoderec != null;
+	}
+
+	/**
+	 * Leaves the substream of a sheet unparsed until the sheet is accessed.
+	 * <p/>
+	 * The sheet's cells may share formats and strings with cells which are
+	 * parsed now, so when the first sheet is deferred every format and string
+	 * is counted as in use, which keeps them from being changed in place.
+	 */
+	void deferSheet( Boundsheet sheet, DeferredSheetStream stream )
+	{
+		if( !sharedForDeferredSheets )
+		{
+			for( Object xf : xfrecs )
+			{
+				((Xf) xf).incUseCount();
+			}
+			if( stringTable != null )
+			{
+				stringTable.shareAllStrings();
+			}
+			sharedForDeferredSheets = true;
+		}
+		sheet.setDeferredStream( stream );
+	}
+
+	/**
+	 * Parses the records of a deferred sheet.
+	 * <p/>
+	 * Sheets accessed while the WorkBook is still being read, or while another
+	 * sheet is being parsed, are parsed once that is finished.
+	 */
+	void loadSheet( Boundsheet sheet )
+	{
+		if( !sheet.isDeferred() || (factory == null) || !factory.iscompleted() )
+		{
+			return;
+		}
+		if( !pendingSheets.contains( sheet ) )
+		{
+			pendingSheets.add( sheet );
+		}
+		if( loadingSheet != null )
+		{
+			return;
+		}
+		while( !pendingSheets.isEmpty() )
+		{
+			Boundsheet bs = pendingSheets.remove( 0 );
+			DeferredSheetStream stream = bs.getDeferredStream();
+			if( stream == null )
+			{
+				continue;
+			}
+			bs.setDeferredStream( null );
+			loadingSheet = bs;
+			lastFormula = null;
+			try
+			{
+				factory.loadSheet( this, stream );
+			}
+			catch( InvalidRecordException e )
+			{
+				throw new WorkBookException( "Reading sheet " + bs.getSheetName() + " failed: " + e.toString(),
+				                             WorkBookException.RUNTIME_ERROR,
+				                             e );
+			}
+			finally
+			{
+				loadingSheet = null;
+			}
+			stream.close();
+			loadedSheets.add( bs );
+		}
+		initializeIndirectFormulas();
+	}
+
+	/**
+	 * Parses every deferred sheet; used before changes which would leave the
+	 * records of an unparsed sheet out of step with the rest of the WorkBook.
+	 */
+	public void loadAllSheets()
+	{
+		for( Boundsheet bs : getWorkSheets() )
+		{
+			loadSheet( bs );
+		}
+	}
+
+	/**
+	 * Returns the deferred sheets parsed since the last call, so that the
+	 * WorkBookHandle can finish setting them up.
+	 */
+	public List<Boundsheet> takeLoadedSheets()
+	{
+		List<Boundsheet> ret = loadedSheets;
+		loadedSheets = new ArrayList<>();
+		return ret;
+	}
+
 	/**
 	 * Returns whether this book uses the 1904 date format.
 	 *
@@ -3226,6 +3557,19 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		return refTracker;
 	}
 
+	/**
+	 * Returns the dependency graph of the formulas in this WorkBook, building
+	 * it again if formulas or references have changed since it was built.
+	 */
+	public DependencyGraph getDependencyGraph()
+	{
+		if( (dependencyGraph == null) || !dependencyGraph.isCurrent() )
+		{
+			dependencyGraph = new DependencyGraph( this, dependencyGraph );
+		}
+		return dependencyGraph;
+	}
+
 	/**
 	 * returns truth of "Excel 2007" format
 	 */
@@ -3547,6 +3891,8 @@ public class WorkBook implements Serializable, XLSConstants, Book
 			{
 			}
 		}
+		passThroughStore = null;
+		cellFormats = null;
 		contHandler.close();
 		contHandler = new ContinueHandler( this );
 
@@ -3565,9 +3911,12 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		}
 		xfrecs.clear();
 		formatCache.clear();
+		formatCacheKeys = null;
 		formatlookup.clear();
 		formats.clear();
 		fonts.clear();
+		fontIndex = null;
+		fontKeys = null;
 		if( dxfs != null )
 		{
 			dxfs.clear();
@@ -3883,6 +4232,10 @@ public class WorkBook implements Serializable, XLSConstants, Book
 		{
 			bs = rec.getSheet();
 		}
+		else if( loadingSheet != null )
+		{
+			bs = loadingSheet;
+		}
 		else if( lbplypos != null )
 		{
 			bs = getWorkSheet( lbplypos );
@@ -3992,7 +4345,7 @@ public class WorkBook implements Serializable, XLSConstants, Book
 	 *
 	 * @param Long lbplypos of Boundsheet
 	 */
-	private Boundsheet getWorkSheet( Long lbplypos )
+	Boundsheet getWorkSheet( Long lbplypos )
 	{
 		return (Boundsheet) workSheets.get( lbplypos );
 	}
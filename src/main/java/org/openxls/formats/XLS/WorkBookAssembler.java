@@ -53,6 +53,11 @@ public class WorkBookAssembler implements XLSConstants
 	public static List assembleSheetRecs( Boundsheet thissheet )
 	{
 		List addVec = new ArrayList();
+		if( thissheet.isDeferred() )
+		{ // never parsed, copy the original substream
+			addVec.add( thissheet.getDeferredStream() );
+			return addVec;
+		}
 		WorkBookAssembler.preProcessSheet( thissheet );
 		addVec.addAll( thissheet.getSheetRecs() );
 		if( !thissheet.isChartOnlySheet() )
@@ -184,6 +189,22 @@ public class WorkBookAssembler implements XLSConstants
 				thissheet.getSheetIDX().addDBCell( d );
 			}
 		}
+		// rows appended to disk follow the in-memory rows; the spill stands in for all of their records
+		RowBlockSpill spill = thissheet.getRowSpill();
+		if( spill != null )
+		{
+			spill.flush();
+			addVec.add( insertValidx++, spill );
+			if( thissheet.getSheetIDX() != null )
+			{
+				thissheet.getSheetIDX().setRowSpill( spill );
+			}
+			if( spill.getFirstRow() >= 0 )
+			{
+				maxRow = Math.max( spill.getLastRow(), maxRow );
+				maxCol = Math.max( spill.getMaxCol(), maxCol );
+			}
+		}
 		thissheet.updateDimensions( maxRow, maxCol/* 20100225 KSC: incrementing does not match Excel results: take out +1*/ );
 		return addVec;
 	}
@@ -49,6 +49,9 @@ public class WorkBookFactory implements ProgressNotifier, XLSConstants, Serializ
 	private static final Logger log = LoggerFactory.getLogger( WorkBookFactory.class );
 	private String fname;
 
+	// number of stream bytes parsed between progress notifications
+	private static final int PROGRESS_INTERVAL = 0x10000;
+
 	// Methods from ProgressNotifier
 	private ProgressListener progresslistener;
 	private int progress = 0;
@@ -67,10 +70,7 @@ public class WorkBookFactory implements ProgressNotifier, XLSConstants, Serializ
 			return rec.getOpcode();
 		}
 
-		byte[] b1 = parsedata.getHeaderBytes( i );
-
-		short opcode = ByteTools.readShort( b1[0], b1[1] );
-		return opcode;
+		return (short) parsedata.getHeader( i );
 	}
 
 	/**
@@ -1097,14 +1097,21 @@ public class WorkBookFactory implements ProgressNotifier, XLSConstants, Serializ
 		log.debug( "XLS File Size: " + blen );
 
 		boolean formulasNeedRecalc = false;
+		int nextProgress = 0;
+		boolean lazySheets = !bPerformRecordLevelValidation && (book instanceof WorkBook) && ((WorkBook) book).isLazySheets();
 
 		for( int i = 0; i <= (blen - 4); )
 		{
-
-			fireProgressChanged(); // ""
-			byte[] headerbytes = parsedata.getHeaderBytes( i );
-			opcode = ByteTools.readShort( headerbytes[0], headerbytes[1] );
-			reclen = ByteTools.readShort( headerbytes[2], headerbytes[3] );
+			// report progress every PROGRESS_INTERVAL bytes rather than for every record
+			boolean reportProgress = i >= nextProgress;
+			if( reportProgress )
+			{
+				fireProgressChanged(); // ""
+				nextProgress = i + PROGRESS_INTERVAL;
+			}
+			int header = parsedata.getHeader( i );
+			opcode = (short) header;
+			reclen = (short) (header >>> 16);
 
 			if( ((lastOpcode == EOF) && (opcode == 0)) || (opcode == 0xffffffff) )
 			{
@@ -1142,6 +1149,18 @@ public class WorkBookFactory implements ProgressNotifier, XLSConstants, Serializ
 					// reached, start
 					infile = true;
 
+					// leave plain worksheets to be parsed when they are first accessed
+					if( lazySheets && (opcode == BOF) && !isWBBOF && (BofCount == 0) )
+					{
+						int end = deferSheet( (WorkBook) book, blockByteReader, i, blen );
+						if( end > 0 )
+						{
+							i = end;
+							lastOpcode = EOF;
+							continue;
+						}
+					}
+
 					// Init Record'
 					rec = parse( book, opcode, i, reclen, blockByteReader );
 					if( rec instanceof Formula )
@@ -1153,7 +1172,7 @@ public class WorkBookFactory implements ProgressNotifier, XLSConstants, Serializ
 						}
 					}
 
-					if( progresslistener != null )
+					if( reportProgress && (progresslistener != null) )
 					{
 						progresslistener.setValue( i );
 					}
@@ -1267,6 +1286,76 @@ public class WorkBookFactory implements ProgressNotifier, XLSConstants, Serializ
 		return book;
 	}
 
+	/**
+	 * Scans the record headers of the substream starting with the BOF at start
+	 * and, if it is a plain worksheet, defers parsing it.
+	 * <p/>
+	 * Sheets holding drawings, notes, charts, pivot tables or custom views tie
+	 * their records to workbook-level records as they are parsed, so those are
+	 * always parsed with the workbook.
+	 *
+	 * @return the position after the sheet's EOF, or -1 if the sheet must be parsed now
+	 */
+	private static int deferSheet( WorkBook book, BlockByteReader parsedata, int start, int blen )
+	{
+		// a BIFF8 BOF with a dt of worksheet
+		if( !book.canDeferSheet() || ((parsedata.getHeader( start ) >>> 16) != 16) || ((parsedata.getHeader( start + 4 ) >>> 16) != 0x0010) )
+		{
+			return -1;
+		}
+		Boundsheet sheet = book.getWorkSheet( (long) start );
+		if( sheet == null )
+		{
+			return -1;
+		}
+		int[] indexes = new int[0];
+		for( int i = start + 20; i <= (blen - 4); )
+		{
+			int header = parsedata.getHeader( i );
+			short opcode = (short) header;
+			switch( opcode )
+			{
+				case BOF:
+				case MSODRAWING:
+				case MSODRAWINGSELECTION:
+				case OBJ:
+				case NOTE:
+				case TXO:
+				case SXVIEW:
+				case USERSVIEWBEGIN:
+					return -1;
+
+				case INDEX:
+					indexes = java.util.Arrays.copyOf( indexes, indexes.length + 1 );
+					indexes[indexes.length - 1] = i;
+					break;
+			}
+			i += (header >>> 16) + 4;
+			if( opcode == EOF )
+			{
+				book.deferSheet( sheet, new DeferredSheetStream( sheet, parsedata, start, i, indexes ) );
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses the records of a sheet which was deferred when the workbook was read.
+	 */
+	void loadSheet( WorkBook book, DeferredSheetStream stream ) throws InvalidRecordException
+	{
+		BlockByteReader parsedata = stream.getReader();
+		int end = stream.getEnd();
+		for( int i = stream.getStart(); i <= (end - 4); )
+		{
+			int header = parsedata.getHeader( i );
+			int reclen = header >>> 16;
+			parse( book, (short) header, i, reclen, parsedata );
+			i += reclen + 4;
+		}
+	}
+
 	/**
 	 * create the individual records based on type
 	 */
@@ -57,6 +57,11 @@ public interface XLSConstants
 	public static String REFTRACK_PROP = "org.openxls.extenxls.trackreferences";
 	public static String USETEMPFILE_PROP = "org.openxls.formats.LEO.usetempfile";
 	public static String VALIDATEWORKBOOK = "org.openxls.formats.LEO.validateworkbook";
+	public static String COMPACTCELLS_PROP = "org.openxls.formats.XLS.compactcells";
+	public static String CONTIGUOUSSTREAM_PROP = "org.openxls.formats.LEO.contiguousstream";
+	public static String LAZYSHEETS_PROP = "org.openxls.formats.XLS.lazysheets";
+	public static String READTHREADS_PROP = "org.openxls.formats.XLS.readthreads";
+	public static String MEMORYPASSTHROUGHS_PROP = "org.openxls.formats.XLS.memorypassthroughs";
 
 	// String table handling
 	public static int STRING_ENCODING_AUTO = 0;
@@ -33,6 +33,7 @@ import org.openxls.formats.OOXML.TxPr;
 import org.openxls.formats.XLS.BiffRec;
 import org.openxls.formats.XLS.Font;
 import org.openxls.formats.XLS.XLSRecord;
+import org.openxls.formats.cellformat.CellFormat;
 import org.openxls.formats.cellformat.CellFormatFactory;
 import org.openxls.toolkit.ByteTools;
 import org.openxls.toolkit.StringTool;
@@ -487,6 +488,18 @@ public class Axis extends GenericChartObject implements ChartObject
 		return getWorkBook().getFont( idx );
 	}
 
+	/**
+	 * returns the compiled number format for axis labels, cached on the workbook
+	 */
+	private CellFormat getCellFormat( String pattern )
+	{
+		if( getWorkBook() == null )
+		{
+			return CellFormatFactory.fromPatternString( pattern );
+		}
+		return getWorkBook().getCellFormat( pattern );
+	}
+
 	/**
 	 * return the Font object used for Axis labels
 	 *
@@ -2426,16 +2439,12 @@ public class Axis extends GenericChartObject implements ChartObject
 				if( !xAxisReversed )
 				{
 					svg.append( "<text id='yaxislabels" + (k++) + "' x='" + (x0 - YLABELSSPACER_X) + "' y='" + (y1 + YLABELSPACER_Y) +
-							            "' style='text-anchor: end;' direction='rtl' alignment-baseline='text-after-edge' " + labelfontSVG + ">" + CellFormatFactory
-							.fromPatternString( yPattern )
-							.format( bd ) + "</text>\r\n" );
+							            "' style='text-anchor: end;' direction='rtl' alignment-baseline='text-after-edge' " + labelfontSVG + ">" + getCellFormat( yPattern ).format( bd ) + "</text>\r\n" );
 				}
 				else
 				{
 					svg.append( "<text id='yaxislabels" + (k++) + "' x='" + (x0 + YLABELSSPACER_X) + "' y='" + (y1 + YLABELSPACER_Y) +
-							            "' style='text-anchor: start;' alignment-baseline='text-after-edge' " + labelfontSVG + ">" + CellFormatFactory
-							.fromPatternString( yPattern )
-							.format( bd ) + "</text>\r\n" );
+							            "' style='text-anchor: start;' alignment-baseline='text-after-edge' " + labelfontSVG + ">" + getCellFormat( yPattern ).format( bd ) + "</text>\r\n" );
 				}
 				y0 -= inc * rfY;
 			}
@@ -2554,14 +2563,12 @@ public class Axis extends GenericChartObject implements ChartObject
 				{
 					java.math.BigDecimal bd = new java.math.BigDecimal( i ).setScale( scale, java.math.BigDecimal.ROUND_HALF_UP );
 					svg.append( "<text id='xaxislabels" + (k++) + "' x='" + x0 + "' y='" + y0 +											/* TODO: should really trap xyPattern */
-							            "' style='text-anchor: middle;' " + labelfontSVG + ">" + CellFormatFactory.fromPatternString(
-							yPattern ).format( bd ) + "</text>\r\n" );
+							            "' style='text-anchor: middle;' " + labelfontSVG + ">" + getCellFormat( yPattern ).format( bd ) + "</text>\r\n" );
 				}
 				else
 				{
 					svg.append( "<text id='xaxislabels" + (k++) + "' x='" + x0 + "' y='" + y0 +
-							            "' style='text-anchor: middle;' " + labelfontSVG + ">" + CellFormatFactory.fromPatternString(
-							yPattern ).format( i ) + "</text>\r\n" );
+							            "' style='text-anchor: middle;' " + labelfontSVG + ">" + getCellFormat( yPattern ).format( i ) + "</text>\r\n" );
 				}
 				x0 += inc;
 			}
@@ -2678,15 +2685,11 @@ public class Axis extends GenericChartObject implements ChartObject
 						java.math.BigDecimal bd = new java.math.BigDecimal( i ).setScale( scale, java.math.BigDecimal.ROUND_HALF_UP );
 						if( !xAxisReversed )
 						{
-							svg.append( "<text id='xaxislabels" + (k++) + "' x='" + (x0 + (!yAxisReversed ? 0 : w)) + "' y='" + (y0 + XAXISLABELOFFSET) + "' style='text-anchor: end;' alignment-baseline='middle' " + labelFontSVG + ">" + CellFormatFactory
-									.fromPatternString( yPattern )
-									.format( bd ) + "</text>\r\n" );
+							svg.append( "<text id='xaxislabels" + (k++) + "' x='" + (x0 + (!yAxisReversed ? 0 : w)) + "' y='" + (y0 + XAXISLABELOFFSET) + "' style='text-anchor: end;' alignment-baseline='middle' " + labelFontSVG + ">" + getCellFormat( yPattern ).format( bd ) + "</text>\r\n" );
 						}
 						else
 						{
-							svg.append( "<text id='xaxislabels" + (k++) + "' x='" + (x0) + "' y='" + (y0 - 4) + "' style='text-anchor: end;' " + labelFontSVG + ">" + CellFormatFactory
-									.fromPatternString( yPattern )
-									.format( bd ) + "</text>\r\n" );
+							svg.append( "<text id='xaxislabels" + (k++) + "' x='" + (x0) + "' y='" + (y0 - 4) + "' style='text-anchor: end;' " + labelFontSVG + ">" + getCellFormat( yPattern ).format( bd ) + "</text>\r\n" );
 						}
 						x0 += inc * rfY;
 					}
@@ -2873,6 +2876,7 @@ public class Axis extends GenericChartObject implements ChartObject
 		                                                        labelfontSVG.indexOf( "pt" ) ) );    // approximate height of a line of labels
 		y0 = y + (!yAxisReversed ? (h + (XAXISLABELOFFSET / 3)) : -XAXISLABELOFFSET);    // draw on bottom edge of axis unless Y axis is reversed
 		int m = 0;    // axis label index
+		CellFormat general = CellFormatFactory.fromPatternString( null );
 		for( int i = 0; i < categories.length; i++ )
 		{
 			if( !xAxisReversed )
@@ -2886,7 +2890,7 @@ public class Axis extends GenericChartObject implements ChartObject
 			if( labelRot != 0 )
 			{
 				double len = StringTool.getApproximateStringWidthLB( f,
-				                                                     CellFormatFactory.fromPatternString( null ).format( categories[i] ) );
+				                                                     general.format( categories[i] ) );
 				if( labelRot == 45 )
 				{
 					len = (int) Math.ceil( len * (Math.cos( Math.toRadians( labelRot ) )) );
@@ -0,0 +1,200 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS.formulas;
+
+import org.openxls.formats.XLS.BiffRec;
+import org.openxls.formats.XLS.Boundsheet;
+import org.openxls.formats.XLS.CellRangeVisitor;
+import org.openxls.formats.XLS.Formula;
+import org.openxls.formats.XLS.XLSConstants;
+import org.openxls.formats.XLS.XLSRecord;
+
+/**
+ * Reads the values of a range operand straight from the cell storage of its
+ * sheet.
+ * <p/>
+ * PtgArea.getComponents() creates a PtgRef for every cell of the range by
+ * formatting and re-parsing its address, which is what makes aggregates over
+ * large ranges slow.  Subclasses of AreaValues receive the same values the
+ * PtgRef's getValue() would return, at the same column-major index, but only
+ * for the cells which exist.  Missing cells are counted and can be handled in
+ * bulk through {@link #getMissingCount()} and {@link #getMissingValue()}.
+ * <p/>
+ * Ranges which cannot be resolved to a single sheet are rejected by
+ * {@link #walk(Ptg)} and must be handled through getComponents() as before.
+ */
+abstract class AreaValues implements CellRangeVisitor
+{
+	private int firstRow;
+	private int firstCol;
+	private int nrows;
+	private int total;
+	private int visited;
+	private Object missingValue;
+
+	/**
+	 * Walks the cells of the given operand if it is a range on a single sheet.
+	 *
+	 * @return false if the operand must be handled through getComponents()
+	 */
+	boolean walk( Ptg operand )
+	{
+		if( !(operand instanceof PtgArea) )
+		{
+			return false;
+		}
+		PtgArea area = (PtgArea) operand;
+		int[] bounds = area.getComponentBounds();
+		if( bounds == null )
+		{
+			return false;
+		}
+		Boundsheet sheet = area.getComponentSheet();
+		if( sheet == null )
+		{
+			return false;
+		}
+		walk( sheet, bounds, area.getParentRec() );
+		return true;
+	}
+
+	/**
+	 * Walks the cells of the given sheet within bounds {first row, first col,
+	 * last row, last col}, with the missing value of a range operand of the
+	 * given formula record.
+	 */
+	void walk( Boundsheet sheet, int[] bounds, XLSRecord parent )
+	{
+		firstRow = bounds[0];
+		firstCol = bounds[1];
+		nrows = Math.max( bounds[2] - bounds[0] + 1, 0 );
+		int ncols = Math.max( bounds[3] - bounds[1] + 1, 0 );
+		total = nrows * ncols;
+		visited = 0;
+		missingValue = getMissingValue( parent );
+
+		start( total );
+		sheet.visitCells( bounds[0], bounds[1], bounds[2], bounds[3], this );
+	}
+
+	/**
+	 * Returns the value a PtgRef in the given formula record returns for a
+	 * missing cell: zero, or null if the sheet hides zero values.
+	 */
+	static Object getMissingValue( XLSRecord parent )
+	{
+		try
+		{
+			// as PtgRef.getValue()
+			if( !parent.getSheet().getWindow2().getShowZeroValues() )
+			{
+				return null;
+			}
+		}
+		catch( NullPointerException e )
+		{
+			// assume zero, which the vast majority of cases are
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the number of cell positions of the last walked range.
+	 */
+	int getTotal()
+	{
+		return total;
+	}
+
+	/**
+	 * Returns the number of positions of the last walked range without a cell.
+	 */
+	int getMissingCount()
+	{
+		return total - visited;
+	}
+
+	/**
+	 * Returns the value a PtgRef returns for a missing cell: zero, or null if
+	 * the sheet hides zero values.
+	 */
+	Object getMissingValue()
+	{
+		return missingValue;
+	}
+
+	@Override
+	public void visitNumber( int row, int col, double value )
+	{
+		visited++;
+		number( index( row, col ), value );
+	}
+
+	@Override
+	public void visitCell( int row, int col, BiffRec cell )
+	{
+		visited++;
+		int index = index( row, col );
+		Formula f = cell.getFormulaRec();
+		if( f != null )
+		{
+			value( index, f.calculateFormula(), false );
+		}
+		else if( (cell.getOpcode() == XLSConstants.NUMBER) || (cell.getOpcode() == XLSConstants.RK) )
+		{
+			number( index, cell.getDblVal() );
+		}
+		else
+		{
+			value( index, cell.getInternalVal(), ((XLSRecord) cell).isBlank );
+		}
+	}
+
+	private int index( int row, int col )
+	{
+		return ((col - firstCol) * nrows) + (row - firstRow);
+	}
+
+	/**
+	 * Called before the cells of a range are visited.
+	 *
+	 * @param total the number of cell positions in the range
+	 */
+	void start( int total )
+	{
+	}
+
+	/**
+	 * Called for a cell with a numeric value.
+	 *
+	 * @param index the column-major position of the cell within the range
+	 */
+	abstract void number( int index, double value );
+
+	/**
+	 * Called for any other cell, with the value PtgRef.getValue() returns for it.
+	 *
+	 * @param blank whether PtgRef.isBlank() is true for the cell
+	 */
+	abstract void value( int index, Object value, boolean blank );
+}
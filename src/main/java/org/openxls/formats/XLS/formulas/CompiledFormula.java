@@ -0,0 +1,338 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS.formulas;
+
+import org.openxls.formats.XLS.FunctionNotSupportedException;
+import org.openxls.formats.XLS.XLSRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A formula expression prepared for repeated calculation.
+ * <p/>
+ * The Ptgs of the expression are classified once into a flat postfix
+ * program, with parens dropped and the number of operands of each operator
+ * resolved, so that calculating it is a single loop over arrays with an
+ * operand stack of known depth.  Parens are just for display purposes.  The Ptgs
+ * themselves are shared with the expression, so references which are moved
+ * in place are seen by the program; an expression whose Ptgs are added,
+ * removed or replaced must be compiled again, see {@link #isCompiledFrom}.
+ * <p/>
+ * The template of a shared formula is compiled in its relative form and
+ * calculated for each member with {@link #calculate(XLSRecord)}, which
+ * converts the PtgRefNs and PtgAreaNs to the member's location and gives
+ * the member its own copy of each Ptg that depends on the formula it is in,
+ * as {@link org.openxls.formats.XLS.Shrfmla#convertStack} does.  Constants
+ * and arithmetic operators are shared by all members.
+ *
+ * @see org.openxls.formats.XLS.Formula
+ */
+public final class CompiledFormula
+{
+	private static final Logger log = LoggerFactory.getLogger( CompiledFormula.class );
+	private static final Ptg[] NO_OPERANDS = new Ptg[0];
+
+	// instruction kinds
+	private static final byte OPERAND = 0;
+	private static final byte OPERATOR = 1;
+	private static final byte SKIP = 2;    // parens and PtgAtr spaces
+	private static final byte UNSUPPORTED = 3;
+
+	// how an instruction is bound to a shared formula member
+	private static final byte SHARED = 0;
+	private static final byte COPY = 1;
+	private static final byte REF_N = 2;
+	private static final byte AREA_N = 3;
+
+	private final List source;
+	private final Ptg[] code;
+	private final byte[] kinds;
+	private final int[] operands;
+	private final byte[] binds;
+	private final int depth;
+	// operand stack reused between calculations; taken while in use so re-entrant calls get their own
+	private final AtomicReference<Ptg[]> spare = new AtomicReference<>();
+
+	private CompiledFormula( List expression )
+	{
+		int n = expression.size();
+		source = expression;
+		code = new Ptg[n];
+		kinds = new byte[n];
+		operands = new int[n];
+		binds = new byte[n];
+		int sp = 0;
+		int max = 1;
+		for( int i = 0; i < n; i++ )
+		{
+			Ptg p = (Ptg) expression.get( i );
+			code[i] = p;
+			binds[i] = getBind( p );
+			if( p.getIsOperator() || p.getIsControl() || p.getIsFunction() )
+			{
+				if( p.getIsControl() && (sp > 0) && (p.getOpcode() == 0x15) )
+				{
+					kinds[i] = SKIP;    // parens are just for display
+					continue;
+				}
+				int t = getNumOperands( p );
+				kinds[i] = OPERATOR;
+				operands[i] = t;
+				sp = Math.max( sp - t, 0 ) + 1;
+			}
+			else if( p.getIsOperand() )
+			{
+				kinds[i] = OPERAND;
+				sp++;
+			}
+			else if( p instanceof PtgAtr )
+			{
+				kinds[i] = SKIP;
+			}
+			else
+			{
+				kinds[i] = UNSUPPORTED;
+			}
+			max = Math.max( max, sp );
+		}
+		depth = max;
+	}
+
+	/**
+	 * Compiles a formula expression, in the order it is stored in a Formula.
+	 */
+	public static CompiledFormula compile( List expression )
+	{
+		return new CompiledFormula( expression );
+	}
+
+	/**
+	 * Returns whether this was compiled from the given expression and the
+	 * expression still holds the same Ptgs.
+	 */
+	public boolean isCompiledFrom( List expression )
+	{
+		if( (expression != source) || (expression.size() != code.length) )
+		{
+			return false;
+		}
+		for( int i = 0; i < code.length; i++ )
+		{
+			if( expression.get( i ) != code[i] )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Calculates the value of the expression.
+	 */
+	public Object calculate() throws FunctionNotSupportedException
+	{
+		return calculatePtg( null ).getValue();
+	}
+
+	/**
+	 * Calculates the expression, returning the final Ptg.
+	 */
+	public Ptg calculatePtg() throws FunctionNotSupportedException
+	{
+		return calculatePtg( null );
+	}
+
+	/**
+	 * Calculates the value of a shared formula template for one of its
+	 * members.
+	 *
+	 * @param member the formula the relative references are relative to
+	 */
+	public Object calculate( XLSRecord member ) throws FunctionNotSupportedException
+	{
+		return calculatePtg( member ).getValue();
+	}
+
+	/**
+	 * Calculates the expression, binding it to the given shared formula
+	 * member if it isn't null.
+	 */
+	public Ptg calculatePtg( XLSRecord member ) throws FunctionNotSupportedException
+	{
+		Ptg[] vals = spare.getAndSet( null );
+		if( vals == null )
+		{
+			vals = new Ptg[depth];
+		}
+		try
+		{
+			int sp = 0;
+			for( int i = 0; i < code.length; i++ )
+			{
+				Ptg p = code[i];
+				if( (member != null) && (binds[i] != SHARED) )
+				{
+					p = bind( i, member );
+				}
+				switch( kinds[i] )
+				{
+					case OPERAND:
+						vals[sp++] = p;
+						break;
+					case OPERATOR:
+						int t = operands[i];
+						if( t > sp )
+						{
+							throw new EmptyStackException();
+						}
+						Ptg[] vx = NO_OPERANDS;
+						if( t > 0 )
+						{
+							sp -= t;
+							vx = new Ptg[t];
+							System.arraycopy( vals, sp, vx, 0, t );
+						}
+						vals[sp++] = calculateOperator( p, vx );
+						break;
+					case SKIP:
+						break;
+					default:
+						throw new FunctionNotSupportedException( "WARNING: Calculating Formula failed: Unsupported/Incorrect Ptg Type: 0x" + p.getOpcode() + " " + p
+								.getString() );
+				}
+			}
+			if( sp == 0 )
+			{
+				throw new EmptyStackException();
+			}
+			Ptg result = vals[sp - 1];
+			for( int i = 0; i < sp; i++ )
+			{
+				vals[i] = null;
+			}
+			return result;
+		}
+		finally
+		{
+			spare.set( vals );
+		}
+	}
+
+	private Ptg bind( int i, XLSRecord member )
+	{
+		switch( binds[i] )
+		{
+			case REF_N:
+				return ((PtgRefN) code[i]).convertToPtgRef( member );
+			case AREA_N:
+				return ((PtgAreaN) code[i]).convertToPtgArea( member );
+			default:
+				Ptg p = (Ptg) code[i].clone();
+				p.setParentRec( member );
+				return p;
+		}
+	}
+
+	/**
+	 * Returns how a Ptg of a shared formula template is bound to a member.
+	 * Functions, references and the reference operators may use the formula
+	 * they're in, so only constants and arithmetic operators are shared.
+	 */
+	private static byte getBind( Ptg p )
+	{
+		if( p instanceof PtgRefN )
+		{
+			return REF_N;
+		}
+		if( p instanceof PtgAreaN )
+		{
+			return AREA_N;
+		}
+		if( (p instanceof PtgInt) || (p instanceof PtgNumber) || (p instanceof PtgStr) || (p instanceof PtgBool) || (p instanceof PtgErr) || (p instanceof PtgMissArg) || (p instanceof PtgAtr) || (p instanceof PtgParen) || (p instanceof PtgAdd) || (p instanceof PtgSub) || (p instanceof PtgMlt) || (p instanceof PtgDiv) || (p instanceof PtgPower) || (p instanceof PtgConcat) || (p instanceof PtgLT) || (p instanceof PtgLE) || (p instanceof PtgEQ) || (p instanceof PtgGE) || (p instanceof PtgGT) || (p instanceof PtgNE) || (p instanceof PtgUPlus) || (p instanceof PtgUMinus) || (p instanceof PtgPercent) )
+		{
+			return SHARED;
+		}
+		return COPY;
+	}
+
+	private static Ptg calculateOperator( Ptg p, Ptg[] vx )
+	{
+		Ptg result;
+		try
+		{
+			// FIXME: We need to know if we are inside a SUMPRPODUCT here (and possibly other funky functions) where primitive operations
+			// FIXME: have different results - case in point: SUMPRODUCT( 0+ (A1:A10>0) )  - this is a coercion function within Excel.
+			result = p.calculatePtg( vx );
+		}
+		catch( CalculationException e )
+		{
+			result = new PtgErr( e.getErrorCode() );
+			if( e.getName().equals( "#CIR_ERR!" ) )
+			{
+				((PtgErr) result).setCircularError( true );
+			}
+		}
+		if( log.isTraceEnabled() )
+		{
+			String adr = "";
+			XLSRecord parentRec = result.getParentRec();
+			if( parentRec != null )
+			{
+				adr = "addr: " + parentRec.getCellAddress();
+			}
+			log.trace( "{} val: {}", adr, result.toString() );
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of operands an operator, control or function Ptg
+	 * takes from the stack.
+	 */
+	private static int getNumOperands( Ptg p )
+	{
+		int t = 0;
+		if( p.getIsBinaryOperator() )
+		{
+			t = 2;
+		}
+		if( p.getIsUnaryOperator() )
+		{
+			t = 1;
+		}
+		if( p.getIsStandAloneOperator() )
+		{
+			t = 0;
+		}
+		int op = p.getOpcode();
+		if( (op == 0x22) || (op == 0x42) || (op == 0x62) || (op == 0x21) || (op == 0x41) || (op == 0x61) )
+		{
+			t = p.getNumParams();
+		}
+		return t;
+	}
+}
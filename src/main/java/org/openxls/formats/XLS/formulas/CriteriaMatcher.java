@@ -0,0 +1,244 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS.formulas;
+
+import org.openxls.ExtenXLS.DateConverter;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The criteria of SUMIF, COUNTIF, SUMIFS, COUNTIFS and AVERAGEIFS, parsed
+ * once into an operator and a typed operand.
+ * <p/>
+ * {@link #matches(Object)} gives the same result as
+ * {@link Calculator#compareCellValue(Object, String, String)} with the
+ * translated criteria, but the criteria is only converted to a number, a
+ * date or a wildcard pattern once rather than for every cell compared.  The
+ * operator is one of =, &lt;&gt;, &lt;, &lt;=, &gt; and &gt;=, so that
+ * criteria such as "-5" or "&gt;-5" compare with a negative number.  Unlike
+ * compareCellValue, a numeric criteria with a relational operator only
+ * matches numbers, not text or booleans.
+ */
+final class CriteriaMatcher
+{
+	private static final int EQ = 0;
+	private static final int NE = 1;
+	private static final int LT = 2;
+	private static final int LE = 3;
+	private static final int GT = 4;
+	private static final int GE = 5;
+
+	private final int op;
+	private final String text;    // translated, upper case
+	private final String booleanText;
+	private final Double number;    // the criteria as a number or date, if it is one
+	private final boolean wildcard;
+	private final Pattern pattern;    // null if the wildcard criteria isn't a valid pattern
+
+	private CriteriaMatcher( String criteria )
+	{
+		int i = 0;
+		if( criteria.startsWith( "<=" ) || criteria.startsWith( ">=" ) || criteria.startsWith( "<>" ) )
+		{
+			i = 2;
+		}
+		else if( criteria.startsWith( "<" ) || criteria.startsWith( ">" ) || criteria.startsWith( "=" ) )
+		{
+			i = 1;
+		}
+		op = getOperator( criteria.substring( 0, i ) );
+		text = Calculator.translateWildcardsInCriteria( criteria.substring( i ) );
+		booleanText = Boolean.valueOf( text ).toString();
+		number = parseNumber( text );
+		wildcard = (text.indexOf( '?' ) != -1) || (text.indexOf( '*' ) != -1);
+		Pattern p = null;
+		if( wildcard )
+		{
+			try
+			{
+				p = Pattern.compile( text );
+			}
+			catch( PatternSyntaxException e )
+			{
+				// compared as a String, as compareCellValue does when matches() fails
+			}
+		}
+		pattern = p;
+	}
+
+	/**
+	 * Parses a criteria string such as "&gt;32", "apples" or "a*".  A
+	 * criteria without an operator is a test for equality.
+	 */
+	static CriteriaMatcher compile( String criteria )
+	{
+		return new CriteriaMatcher( criteria );
+	}
+
+	/**
+	 * Parses the criteria operand of a function.  A reference to a cell
+	 * gives the value of the cell as the criteria, and a number its value
+	 * rather than its display string.
+	 */
+	static CriteriaMatcher compile( Ptg operand )
+	{
+		return new CriteriaMatcher( getText( operand ) );
+	}
+
+	private static String getText( Ptg operand )
+	{
+		if( ((operand instanceof PtgRef) && !(operand instanceof PtgArea)) || (operand instanceof PtgName) || (operand instanceof PtgNumber) )
+		{
+			Object o = operand.getValue();
+			return (o == null) ? "" : o.toString();
+		}
+		return operand.toString();
+	}
+
+	private static int getOperator( String op )
+	{
+		switch( op )
+		{
+			case "<>":
+				return NE;
+			case "<":
+				return LT;
+			case "<=":
+				return LE;
+			case ">":
+				return GT;
+			case ">=":
+				return GE;
+			default:
+				return EQ;
+		}
+	}
+
+	/**
+	 * Returns the criteria as a number, or as the serial number of a date,
+	 * or null if it is neither.
+	 */
+	@SuppressWarnings( "deprecation" )
+	private static Double parseNumber( String text )
+	{
+		try
+		{
+			return Double.valueOf( text );
+		}
+		catch( NumberFormatException e )
+		{
+			// try a date
+		}
+		try
+		{
+			return DateConverter.getXLSDateVal( new java.util.Date( text ) );
+		}
+		catch( Exception e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether a cell value, as PtgRef.getValue() returns it, meets
+	 * the criteria.
+	 */
+	boolean matches( Object val )
+	{
+		if( (number != null) && (op >= LT) && !(val instanceof Number) )
+		{
+			return false;    // as in Excel, text and booleans are never less or greater than a number
+		}
+		int compare;
+		if( val instanceof Boolean )
+		{
+			compare = booleanText.compareTo( val.toString() );
+		}
+		else if( val instanceof String )
+		{
+			if( !wildcard )
+			{
+				compare = text.compareTo( ((String) val).toUpperCase() );
+			}
+			else if( pattern != null )
+			{
+				compare = pattern.matcher( ((String) val).toUpperCase() ).matches() ? 0 : -1;
+			}
+			else
+			{
+				compare = text.compareTo( (String) val );
+			}
+		}
+		else if( val instanceof Number )
+		{
+			if( number != null )
+			{
+				compare = number.compareTo( ((Number) val).doubleValue() );
+			}
+			else
+			{
+				compare = text.compareTo( val.toString() );
+			}
+		}
+		else
+		{
+			return false;
+		}
+		return test( compare );
+	}
+
+	/**
+	 * Returns whether a numeric cell value meets the criteria.
+	 */
+	boolean matches( double d )
+	{
+		if( number != null )
+		{
+			return test( Double.compare( number, d ) );
+		}
+		return test( text.compareTo( Double.toString( d ) ) );
+	}
+
+	/**
+	 * Applies the operator to the comparison of the criteria with a value.
+	 */
+	private boolean test( int compare )
+	{
+		switch( op )
+		{
+			case EQ:
+				return compare == 0;
+			case NE:
+				return compare != 0;
+			case LT:
+				return compare > 0;
+			case LE:
+				return compare >= 0;
+			case GT:
+				return compare < 0;
+			default:    // GE
+				return compare <= 0;
+		}
+	}
+}
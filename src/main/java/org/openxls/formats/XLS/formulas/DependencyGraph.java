@@ -0,0 +1,888 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ *
+ * This file is part of OpenXLS.
+ *
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS.formulas;
+
+import org.openxls.formats.XLS.Boundsheet;
+import org.openxls.formats.XLS.Formula;
+import org.openxls.formats.XLS.FunctionNotSupportedException;
+import org.openxls.formats.XLS.Name;
+import org.openxls.formats.XLS.WorkBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The precedent/dependent graph of the formulas in a WorkBook.
+ * <p/>
+ * The graph has a node for every formula, for every distinct range operand
+ * and for every Name used by a formula.  Edges run from a precedent to its
+ * dependents:
+ * <ul>
+ * <li>formula -> formula, for single cell references</li>
+ * <li>formula -> range -> formula, for the formulas within a range operand</li>
+ * <li>reference or range -> name -> formula, for Names</li>
+ * </ul>
+ * Range nodes keep the number of edges proportional to the number of
+ * formulas rather than to the size of the ranges they reference.
+ * <p/>
+ * The nodes are ordered so that every precedent comes before its dependents.
+ * Formulas on a circular chain are found while ordering and are given a
+ * circular reference error by {@link #recalc(boolean)} instead of being
+ * evaluated until the recursion limit is hit.
+ * <p/>
+ * References which are only known when the formula is evaluated (INDIRECT,
+ * OFFSET) are taken from the last evaluation of the formula, see
+ * {@link Formula#getResolvedReferences()}.  Formulas which haven't been
+ * evaluated yet, like those using volatile functions, are evaluated on every
+ * recalc.  When an evaluation resolves such references to new locations the
+ * formula is evaluated again through a new graph, see
+ * {@link #hasRelocatedReferences()}.
+ * <p/>
+ * A graph reflects the references at the time it was built; use
+ * {@link WorkBook#getDependencyGraph()} to get an up to date one.
+ */
+public final class DependencyGraph
+{
+	private static final Logger log = LoggerFactory.getLogger( DependencyGraph.class );
+	// smallest number of formulas evaluated as one task in a parallel recalc
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	private final WorkBook book;
+	private final int modCount;
+	private final int resolvedCount;
+	private final Formula[] formulas;
+	private final Map<Formula, Integer> formulaNodes;
+	private final boolean[] volatiles;
+	// formulas using INDIRECT or OFFSET
+	private final boolean[] dynamics;
+
+	// per sheet: column -> row -> formula node
+	private final Map<Boundsheet, TreeMap<Integer, TreeMap<Integer, Integer>>> formulaIndex = new IdentityHashMap<>();
+	private final Map<String, Integer> rangeNodes = new HashMap<>();
+	private final Map<Name, Integer> nameNodes = new IdentityHashMap<>();
+	private int nodeCount;
+
+	private int[] edgeFrom = new int[64];
+	private int[] edgeTo = new int[64];
+	private int edgeCount = 0;
+
+	// dependents of node n are edges[offsets[n]] .. edges[offsets[n+1]-1]
+	private int[] offsets;
+	private int[] edges;
+	private int[] order;
+	private boolean[] circular;
+	private int[] component;
+	private boolean calculated = false;
+	// formulas whose resolved references moved in the last recalc
+	private final List<Formula> relocated = new ArrayList<>();
+
+	// nodes grouped by level, built on the first parallel recalc
+	private int[] levelStart;
+	private int[] byLevel;
+
+	/**
+	 * Builds the graph of the formulas in the given WorkBook.
+	 */
+	public DependencyGraph( WorkBook book )
+	{
+		this( book, null );
+	}
+
+	/**
+	 * Builds the graph of the formulas in the given WorkBook, replacing the
+	 * given graph.  If only resolved references have changed since the
+	 * previous graph was built, the first recalc through the new graph
+	 * doesn't evaluate every formula.
+	 *
+	 * @param previous the graph being replaced, may be null
+	 */
+	public DependencyGraph( WorkBook book, DependencyGraph previous )
+	{
+		this.book = book;
+		modCount = book.getRefTracker().getModCount();
+		resolvedCount = book.getRefTracker().getResolvedCount();
+		formulas = book.getFormulas();
+		nodeCount = formulas.length;
+		formulaNodes = new IdentityHashMap<>( formulas.length * 2 );
+		volatiles = new boolean[formulas.length];
+		dynamics = new boolean[formulas.length];
+		calculated = (previous != null) && previous.calculated && (previous.modCount == modCount);
+
+		for( int i = 0; i < formulas.length; i++ )
+		{
+			Formula f = formulas[i];
+			formulaNodes.put( f, i );
+			Boundsheet sheet = f.getSheet();
+			if( sheet != null )
+			{
+				TreeMap<Integer, TreeMap<Integer, Integer>> cols = formulaIndex.get( sheet );
+				if( cols == null )
+				{
+					cols = new TreeMap<>();
+					formulaIndex.put( sheet, cols );
+				}
+				int col = f.getColNumber();
+				TreeMap<Integer, Integer> rows = cols.get( col );
+				if( rows == null )
+				{
+					rows = new TreeMap<>();
+					cols.put( col, rows );
+				}
+				rows.put( f.getRowNumber(), i );
+			}
+		}
+
+		for( int i = 0; i < formulas.length; i++ )
+		{
+			try
+			{
+				addPrecedents( i, formulas[i].getExpression(), true );
+				if( dynamics[i] )
+				{
+					// Excel sets the always calculate flag for these functions too
+					PtgRef[] resolved = formulas[i].getResolvedReferences();
+					if( resolved == null )
+					{
+						volatiles[i] = true;
+					}
+					else
+					{
+						addPrecedents( i, Arrays.asList( resolved ), false );
+					}
+				}
+				else if( formulas[i].getCalcAlways() )
+				{
+					volatiles[i] = true;
+				}
+			}
+			catch( Exception e )
+			{
+				// an unparseable expression has no known precedents, evaluate it every time
+				log.debug( "DependencyGraph: unable to read references of " + formulas[i].getCellAddressWithSheet(), e );
+				volatiles[i] = true;
+			}
+		}
+
+		buildEdges();
+		sort();
+	}
+
+	/**
+	 * Returns whether the graph still reflects the references of its WorkBook.
+	 */
+	public boolean isCurrent()
+	{
+		return (modCount == book.getRefTracker().getModCount()) && (resolvedCount == book.getRefTracker().getResolvedCount());
+	}
+
+	/**
+	 * Returns whether formulas evaluated by the last recalc resolved their
+	 * INDIRECT or OFFSET references to new locations, which this graph
+	 * didn't order them after.  Their cached values are cleared at the end
+	 * of the recalc, so a recalc through the new graph returned by
+	 * {@link WorkBook#getDependencyGraph()} evaluates them and their
+	 * dependents again.
+	 */
+	public boolean hasRelocatedReferences()
+	{
+		return !relocated.isEmpty();
+	}
+
+	/**
+	 * Returns the formulas in calculation order: every formula comes after
+	 * the formulas it references.
+	 */
+	public Formula[] getCalculationOrder()
+	{
+		List<Formula> ret = new ArrayList<>( formulas.length );
+		for( int n : order )
+		{
+			if( n < formulas.length )
+			{
+				ret.add( formulas[n] );
+			}
+		}
+		return ret.toArray( new Formula[ret.size()] );
+	}
+
+	/**
+	 * Returns whether the given formula is part of a circular reference.
+	 */
+	public boolean isCircular( Formula f )
+	{
+		Integer n = formulaNodes.get( f );
+		return (n != null) && circular[n];
+	}
+
+	/**
+	 * Returns whether the given formula is evaluated on every recalc because
+	 * it uses a volatile function or a reference computed at calculation time
+	 * which it hasn't resolved yet.
+	 */
+	public boolean isVolatile( Formula f )
+	{
+		Integer n = formulaNodes.get( f );
+		return (n != null) && volatiles[n];
+	}
+
+	/**
+	 * Evaluates the formulas of the WorkBook in calculation order.
+	 * <p/>
+	 * The first recalc through a graph evaluates every formula.  After that
+	 * only dirty formulas are evaluated: those without a cached value (ie:
+	 * cleared when a cell they depend on was changed), volatile ones and the
+	 * dependents of any formula evaluated in the same pass.
+	 *
+	 * @param all whether to evaluate every formula regardless of its state
+	 */
+	public void recalc( boolean all )
+	{
+		all |= !calculated;
+		relocated.clear();
+		boolean[] dirty = new boolean[nodeCount];
+		for( int n : order )
+		{
+			if( n < formulas.length )
+			{
+				if( !isDirty( n, all, dirty ) )
+				{
+					continue;
+				}
+				calculate( n );
+			}
+			else if( !dirty[n] )
+			{
+				continue;
+			}
+			markDependents( n, dirty );
+		}
+		finishRecalc();
+	}
+
+	/**
+	 * Evaluates the formulas of the WorkBook level by level, evaluating the
+	 * formulas of a level on the given pool.
+	 * <p/>
+	 * The level of a formula is the length of the longest chain of
+	 * precedents leading to it, so the formulas of a level never depend on
+	 * each other and only depend on formulas of lower levels.  Formulas are
+	 * selected for evaluation as in {@link #recalc(boolean)}.
+	 * <p/>
+	 * Volatile, circular and INDIRECT or OFFSET formulas are evaluated on the
+	 * calling thread before the rest of their level, as references computed
+	 * at calculation time may pull other formulas into the evaluation.  Workbooks holding
+	 * compact cells are evaluated sequentially, as reading such a cell
+	 * through a reference moves it into the sheet's cell map.  The STRING
+	 * records of formulas evaluated on the pool are updated on the calling
+	 * thread once their level is done, as that adds and removes records.
+	 *
+	 * @param all  whether to evaluate every formula regardless of its state
+	 * @param pool the pool to evaluate on, null to evaluate sequentially
+	 */
+	public void recalc( boolean all, ForkJoinPool pool )
+	{
+		if( (pool == null) || hasCompactCells() )
+		{
+			recalc( all );
+			return;
+		}
+		if( levelStart == null )
+		{
+			buildLevels();
+		}
+		all |= !calculated;
+		relocated.clear();
+		boolean[] dirty = new boolean[nodeCount];
+		int[] batch = new int[formulas.length];
+		Queue<Formula> records = new ConcurrentLinkedQueue<>();
+		for( int l = 0; l < (levelStart.length - 1); l++ )
+		{
+			int count = 0;
+			for( int i = levelStart[l]; i < levelStart[l + 1]; i++ )
+			{
+				int n = byLevel[i];
+				if( (n < formulas.length) && isDirty( n, all, dirty ) )
+				{
+					if( volatiles[n] || dynamics[n] || circular[n] )
+					{
+						calculate( n );
+					}
+					else
+					{
+						batch[count++] = n;
+					}
+					markDependents( n, dirty );
+				}
+				else if( (n >= formulas.length) && dirty[n] )
+				{
+					markDependents( n, dirty );
+				}
+			}
+			if( count >= PARALLEL_THRESHOLD )
+			{
+				pool.invoke( new CalculateTask( batch, 0, count, records ) );
+				for( Formula f = records.poll(); f != null; f = records.poll() )
+				{
+					f.updateStringRecord();
+				}
+			}
+			else
+			{
+				for( int i = 0; i < count; i++ )
+				{
+					calculate( batch[i] );
+				}
+			}
+		}
+		finishRecalc();
+	}
+
+	private void finishRecalc()
+	{
+		for( Formula f : relocated )
+		{
+			f.clearCachedValue();
+		}
+		calculated = true;
+	}
+
+	/**
+	 * Returns the number of levels the formulas are evaluated in by
+	 * {@link #recalc(boolean, ForkJoinPool)}.
+	 */
+	public int getLevelCount()
+	{
+		if( levelStart == null )
+		{
+			buildLevels();
+		}
+		return levelStart.length - 1;
+	}
+
+	private boolean isDirty( int n, boolean all, boolean[] dirty )
+	{
+		return all || dirty[n] || volatiles[n] || !formulas[n].hasCachedValue();
+	}
+
+	private void markDependents( int n, boolean[] dirty )
+	{
+		for( int e = offsets[n]; e < offsets[n + 1]; e++ )
+		{
+			dirty[edges[e]] = true;
+		}
+	}
+
+	/**
+	 * Evaluates formula node n, or sets it to a circular reference error.
+	 */
+	private void calculate( int n )
+	{
+		Formula f = formulas[n];
+		if( circular[n] )
+		{
+			f.setCachedValue( new CalculationException( CalculationException.CIR_ERR ) );
+			return;
+		}
+		if( log.isDebugEnabled() )
+		{
+			log.debug( "Recalculating formula ({}) : {}", f.getCellAddressWithSheet(), f.getFormulaString() );
+		}
+		PtgRef[] resolved = f.getResolvedReferences();
+		try
+		{
+			f.clearCachedValue();
+			f.calculate();
+		}
+		catch( FunctionNotSupportedException fe )
+		{
+			log.error( "DependencyGraph.recalc:  Error calculating Formula " + fe.toString(), fe );
+		}
+		if( dynamics[n] && (f.getResolvedReferences() != resolved) )
+		{
+			relocated.add( f );
+		}
+	}
+
+	private boolean hasCompactCells()
+	{
+		for( int i = 0; i < book.getNumWorkSheets(); i++ )
+		{
+			try
+			{
+				if( book.getWorkSheetByNumber( i ).getCompactCellCount() > 0 )
+				{
+					return true;
+				}
+			}
+			catch( Exception e )
+			{
+				// no such sheet
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Groups the nodes by the length of the longest chain of precedents
+	 * leading to them.  Edges within a circular reference are ignored.
+	 */
+	private void buildLevels()
+	{
+		int[] level = new int[nodeCount];
+		int maxLevel = 0;
+		for( int n : order )
+		{
+			for( int e = offsets[n]; e < offsets[n + 1]; e++ )
+			{
+				int d = edges[e];
+				if( (component[d] != component[n]) && (level[d] <= level[n]) )
+				{
+					level[d] = level[n] + 1;
+					maxLevel = Math.max( maxLevel, level[d] );
+				}
+			}
+		}
+		int[] start = new int[maxLevel + 2];
+		for( int n = 0; n < nodeCount; n++ )
+		{
+			start[level[n] + 1]++;
+		}
+		for( int l = 0; l <= maxLevel; l++ )
+		{
+			start[l + 1] += start[l];
+		}
+		int[] pos = Arrays.copyOf( start, maxLevel + 1 );
+		int[] nodes = new int[nodeCount];
+		for( int n : order )
+		{
+			nodes[pos[level[n]]++] = n;
+		}
+		byLevel = nodes;
+		levelStart = start;
+	}
+
+	/**
+	 * Evaluates a slice of the formulas of one level, splitting it until
+	 * the slices are small enough to be worth a task.
+	 */
+	private final class CalculateTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final int[] nodes;
+		private final int from;
+		private final int to;
+		private final Queue<Formula> records;
+
+		CalculateTask( int[] nodes, int from, int to, Queue<Formula> records )
+		{
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.records = records;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if( (to - from) <= PARALLEL_THRESHOLD )
+			{
+				Formula.setDeferredRecordUpdates( records );
+				try
+				{
+					for( int i = from; i < to; i++ )
+					{
+						calculate( nodes[i] );
+					}
+				}
+				finally
+				{
+					Formula.setDeferredRecordUpdates( null );
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll( new CalculateTask( nodes, from, mid, records ), new CalculateTask( nodes, mid, to, records ) );
+		}
+	}
+
+	/**
+	 * Adds the references in the given expression as precedents of node n.
+	 */
+	private void addPrecedents( int n, List expression, boolean topLevel )
+	{
+		for( Object o : expression )
+		{
+			if( !(o instanceof Ptg) )
+			{
+				continue;
+			}
+			Ptg part = (Ptg) o;
+			if( (part instanceof PtgRefErr) || (part instanceof PtgRefErr3d) || (part instanceof PtgAreaErr3d) || (part instanceof PtgMemErr) )
+			{
+				continue;
+			}
+			if( part instanceof PtgExp )
+			{
+				if( topLevel )
+				{
+					addSharedPrecedents( n, (PtgExp) part );
+				}
+			}
+			else if( part instanceof PtgNameX )
+			{
+				// external names can't change
+			}
+			else if( part instanceof PtgName )
+			{
+				Name name = ((PtgName) part).getName();
+				if( name != null )
+				{
+					addEdge( getNameNode( name ), n );
+				}
+			}
+			else if( part instanceof PtgArea )
+			{
+				addAreaPrecedents( n, (PtgArea) part );
+			}
+			else if( part instanceof PtgRef )
+			{
+				PtgRef ref = (PtgRef) part;
+				int[] loc = ref.getRealIntLocation();
+				addCellPrecedents( n, ref.getReferencedSheet(), loc[0], loc[1], loc[0], loc[1] );
+			}
+			else if( part instanceof PtgMemFunc )
+			{
+				Stack sub = ((PtgMemFunc) part).getSubExpression();
+				if( sub != null )
+				{
+					addPrecedents( n, sub, false );
+				}
+			}
+			else if( part instanceof PtgMemArea )
+			{
+				Ptg[] comps = part.getComponents();
+				if( comps != null )
+				{
+					addPrecedents( n, Arrays.asList( comps ), false );
+				}
+			}
+			else if( (n < formulas.length) && ((part instanceof PtgFunc) || (part instanceof PtgFuncVar)) )
+			{
+				int id = (part instanceof PtgFunc) ? ((PtgFunc) part).getVal() : ((PtgFuncVar) part).getVal();
+				if( isVolatileFunction( id ) )
+				{
+					volatiles[n] = true;
+				}
+				else if( isReferenceFunction( id ) )
+				{
+					dynamics[n] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shared formula members and array formula cells refer to the expression
+	 * of their parent through a PtgExp.
+	 */
+	private void addSharedPrecedents( int n, PtgExp exp )
+	{
+		try
+		{
+			addPrecedents( n, Arrays.asList( exp.getConvertedExpression() ), false );
+		}
+		catch( Exception e )
+		{
+			// a member of an array formula: depends on the cell holding the array
+			Boundsheet sheet = exp.getParentRec().getSheet();
+			addCellPrecedents( n, sheet, exp.getRwFirst(), exp.getColFirst(), exp.getRwFirst(), exp.getColFirst() );
+		}
+	}
+
+	private void addAreaPrecedents( int n, PtgArea area )
+	{
+		Boundsheet sheet = area.getComponentSheet();
+		int[] bounds = area.getComponentBounds();
+		if( (sheet != null) && (bounds == null) )
+		{
+			int[] loc = area.getIntLocation();
+			if( loc.length == 4 )
+			{
+				bounds = loc;
+			}
+		}
+		if( (sheet == null) || (bounds == null) )
+		{
+			// spans several sheets
+			Ptg[] comps = area.getComponents();
+			if( comps != null )
+			{
+				for( Ptg comp : comps )
+				{
+					if( comp instanceof PtgRef )
+					{
+						PtgRef ref = (PtgRef) comp;
+						int[] loc = ref.getRealIntLocation();
+						addCellPrecedents( n, ref.getReferencedSheet(), loc[0], loc[1], loc[0], loc[1] );
+					}
+				}
+			}
+			return;
+		}
+		if( (bounds[0] == bounds[2]) && (bounds[1] == bounds[3]) )
+		{
+			addCellPrecedents( n, sheet, bounds[0], bounds[1], bounds[2], bounds[3] );
+			return;
+		}
+		String key = System.identityHashCode( sheet ) + "!" + bounds[0] + "," + bounds[1] + ":" + bounds[2] + "," + bounds[3];
+		Integer range = rangeNodes.get( key );
+		if( range == null )
+		{
+			range = nodeCount++;
+			rangeNodes.put( key, range );
+			addCellPrecedents( range, sheet, bounds[0], bounds[1], bounds[2], bounds[3] );
+		}
+		addEdge( range, n );
+	}
+
+	/**
+	 * Adds an edge to n from every formula within the given bounds.
+	 */
+	private void addCellPrecedents( int n, Boundsheet sheet, int firstRow, int firstCol, int lastRow, int lastCol )
+	{
+		TreeMap<Integer, TreeMap<Integer, Integer>> cols = (sheet == null) ? null : formulaIndex.get( sheet );
+		if( (cols == null) || (firstCol > lastCol) || (firstRow > lastRow) )
+		{
+			return;
+		}
+		for( TreeMap<Integer, Integer> rows : cols.subMap( firstCol, true, lastCol, true ).values() )
+		{
+			NavigableMap<Integer, Integer> hits = rows.subMap( firstRow, true, lastRow, true );
+			for( Integer f : hits.values() )
+			{
+				addEdge( f, n );
+			}
+		}
+	}
+
+	private int getNameNode( Name name )
+	{
+		Integer node = nameNodes.get( name );
+		if( node == null )
+		{
+			node = nodeCount++;
+			nameNodes.put( name, node );
+			try
+			{
+				Stack expression = name.getExpression();
+				if( expression != null )
+				{
+					addPrecedents( node, expression, false );
+				}
+			}
+			catch( Exception e )
+			{
+				log.debug( "DependencyGraph: unable to read references of Name " + name.getName(), e );
+			}
+		}
+		return node;
+	}
+
+	private void addEdge( int from, int to )
+	{
+		if( edgeCount == edgeFrom.length )
+		{
+			edgeFrom = Arrays.copyOf( edgeFrom, edgeCount * 2 );
+			edgeTo = Arrays.copyOf( edgeTo, edgeCount * 2 );
+		}
+		edgeFrom[edgeCount] = from;
+		edgeTo[edgeCount] = to;
+		edgeCount++;
+	}
+
+	/**
+	 * Converts the edge list into per-node dependent lists.
+	 */
+	private void buildEdges()
+	{
+		offsets = new int[nodeCount + 1];
+		for( int e = 0; e < edgeCount; e++ )
+		{
+			offsets[edgeFrom[e] + 1]++;
+		}
+		for( int i = 0; i < nodeCount; i++ )
+		{
+			offsets[i + 1] += offsets[i];
+		}
+		edges = new int[edgeCount];
+		int[] pos = Arrays.copyOf( offsets, nodeCount );
+		for( int e = 0; e < edgeCount; e++ )
+		{
+			edges[pos[edgeFrom[e]]++] = edgeTo[e];
+		}
+		edgeFrom = null;
+		edgeTo = null;
+	}
+
+	/**
+	 * Orders the nodes with Tarjan's strongly connected components algorithm
+	 * and marks the nodes of every component which is a cycle as circular.
+	 * <p/>
+	 * Components are completed dependents first, so the reverse of the
+	 * completion order is the calculation order.  The search is iterative as
+	 * chains of formulas can be far deeper than the call stack.
+	 */
+	private void sort()
+	{
+		order = new int[nodeCount];
+		circular = new boolean[nodeCount];
+		component = new int[nodeCount];
+		int[] index = new int[nodeCount];
+		int[] lowlink = new int[nodeCount];
+		boolean[] onStack = new boolean[nodeCount];
+		int[] stack = new int[nodeCount];
+		int[] callStack = new int[nodeCount];
+		int[] nextEdge = new int[nodeCount];
+		Arrays.fill( index, -1 );
+		int counter = 0;
+		int sp = 0;
+		int filled = nodeCount;
+
+		for( int root = 0; root < nodeCount; root++ )
+		{
+			if( index[root] >= 0 )
+			{
+				continue;
+			}
+			int csp = 0;
+			callStack[csp++] = root;
+			index[root] = lowlink[root] = counter++;
+			nextEdge[root] = offsets[root];
+			stack[sp++] = root;
+			onStack[root] = true;
+
+			while( csp > 0 )
+			{
+				int v = callStack[csp - 1];
+				if( nextEdge[v] < offsets[v + 1] )
+				{
+					int w = edges[nextEdge[v]++];
+					if( index[w] < 0 )
+					{
+						index[w] = lowlink[w] = counter++;
+						nextEdge[w] = offsets[w];
+						stack[sp++] = w;
+						onStack[w] = true;
+						callStack[csp++] = w;
+					}
+					else if( onStack[w] )
+					{
+						lowlink[v] = Math.min( lowlink[v], index[w] );
+					}
+					continue;
+				}
+				csp--;
+				if( csp > 0 )
+				{
+					int parent = callStack[csp - 1];
+					lowlink[parent] = Math.min( lowlink[parent], lowlink[v] );
+				}
+				if( lowlink[v] == index[v] )
+				{
+					int size = 0;
+					int w;
+					do
+					{
+						w = stack[--sp];
+						onStack[w] = false;
+						component[w] = v;
+						order[--filled] = w;
+						size++;
+					}
+					while( w != v );
+					boolean cycle = (size > 1) || selfReferencing( v );
+					if( cycle )
+					{
+						for( int i = filled; i < (filled + size); i++ )
+						{
+							circular[order[i]] = true;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private boolean selfReferencing( int v )
+	{
+		for( int e = offsets[v]; e < offsets[v + 1]; e++ )
+		{
+			if( edges[e] == v )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the function with the given id has to be evaluated on
+	 * every recalc.
+	 */
+	static boolean isVolatileFunction( int id )
+	{
+		switch( id )
+		{
+			case FunctionConstants.xlfRand:
+			case FunctionConstants.xlfNow:
+			case FunctionConstants.xlfCell:
+			case FunctionConstants.xlfToday:
+			case FunctionConstants.xlfInfo:
+			case FunctionConstants.xlfRANDBETWEEN:
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the function with the given id returns a reference
+	 * which is only known when it is evaluated.
+	 */
+	static boolean isReferenceFunction( int id )
+	{
+		return (id == FunctionConstants.xlfOffset) || (id == FunctionConstants.XLF_INDIRECT);
+	}
+}
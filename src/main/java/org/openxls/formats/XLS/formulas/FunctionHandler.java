@@ -22,6 +22,7 @@
  */
 package org.openxls.formats.XLS.formulas;
 
+import org.openxls.formats.XLS.Formula;
 import org.openxls.formats.XLS.FunctionNotSupportedException;
 import org.openxls.formats.XLS.XLSRecord;
 
@@ -812,6 +813,10 @@ public class FunctionHandler
 
 			case FunctionConstants.XLF_INDIRECT:
 				resultPtg = LookupReferenceCalculator.calcIndirect( operands );
+				if( resultPtg instanceof PtgRef )
+				{
+					Formula.addResolvedReference( (PtgRef) resultPtg );
+				}
 				break;
 
 			case FunctionConstants.XLF_ROW:
@@ -853,6 +858,10 @@ public class FunctionHandler
 
 			case FunctionConstants.xlfOffset:
 				resultPtg = LookupReferenceCalculator.calcOffset( operands );
+				if( resultPtg instanceof PtgRef )
+				{
+					Formula.addResolvedReference( (PtgRef) resultPtg );
+				}
 				break;
 
 			/********************************************
@@ -0,0 +1,486 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS.formulas;
+
+import org.openxls.ExtenXLS.ExcelTools;
+import org.openxls.formats.XLS.BiffRec;
+import org.openxls.formats.XLS.Boundsheet;
+import org.openxls.formats.XLS.ReferenceTracker;
+import org.openxls.formats.XLS.XLSRecord;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An index over a lookup vector: the first column of a VLOOKUP table, the
+ * first row of an HLOOKUP table or the lookup array of MATCH.
+ * <p/>
+ * The values of the vector are read once, through {@link AreaValues}.  Exact
+ * matches are then found through hash tables of the numeric and text values,
+ * and approximate matches through a binary search of the numeric values when
+ * they are in ascending order.
+ * <p/>
+ * Indexes are cached by the ReferenceTracker per sheet and vector.  A cached
+ * index is dropped when a cell within its vector changes, when the tracked
+ * references of the workbook move, and at the end of every recalc.
+ *
+ * @see ReferenceTracker#getLookupIndexes()
+ */
+public final class LookupIndex extends AreaValues
+{
+	/**
+	 * Returned by {@link #match(Object, int)} when the match must be done by
+	 * comparing the values one by one.
+	 */
+	static final int UNINDEXED = -2;
+
+	private final Boundsheet sheet;
+	private final int[] bounds;
+	private final boolean byColumn;
+	private final int modCount;
+
+	// value of each position as PtgRef.getValue() returns it; null for numeric cells and missing cells
+	private Object[] values;
+	// numeric value of each position, as parsed from its String representation; NaN if there is none
+	private double[] numbers;
+	// whether the position holds a numeric value rather than a String which parses as one
+	private boolean[] numeric;
+
+	// the numeric positions in order, for approximate matches
+	private int[] keyPositions;
+	private double[] keys;
+	private int nkeys;
+	private boolean ascending = true;
+	private boolean allNumbers = true;
+
+	// first position of each numeric value and of each non-numeric value in lower case
+	private final Map<Double, Integer> numberIndex = new HashMap<>();
+	private final Map<String, Integer> textIndex = new HashMap<>();
+
+	private LookupIndex( Boundsheet sheet, int[] bounds, boolean byColumn, int modCount )
+	{
+		this.sheet = sheet;
+		this.bounds = bounds;
+		this.byColumn = byColumn;
+		this.modCount = modCount;
+	}
+
+	/**
+	 * Returns the index of the first column of a table, or null if the table
+	 * cannot be resolved to a single sheet.
+	 */
+	static LookupIndex getColumn( PtgArea table )
+	{
+		int[] b = table.getComponentBounds();
+		if( b == null )
+		{
+			return null;
+		}
+		return get( table, new int[]{ b[0], b[1], b[2], b[1] }, true );
+	}
+
+	/**
+	 * Returns the index of the first row of a table, or null if the table
+	 * cannot be resolved to a single sheet.
+	 */
+	static LookupIndex getRow( PtgArea table )
+	{
+		int[] b = table.getComponentBounds();
+		if( b == null )
+		{
+			return null;
+		}
+		return get( table, new int[]{ b[0], b[1], b[0], b[3] }, false );
+	}
+
+	/**
+	 * Returns the index of a range of a single row or column, or null if the
+	 * range is larger or cannot be resolved to a single sheet.
+	 */
+	static LookupIndex getVector( PtgArea range )
+	{
+		int[] b = range.getComponentBounds();
+		if( (b == null) || ((b[0] != b[2]) && (b[1] != b[3])) )
+		{
+			return null;
+		}
+		return get( range, b, b[1] == b[3] );
+	}
+
+	private static LookupIndex get( PtgArea area, int[] bounds, boolean byColumn )
+	{
+		if( (bounds[2] < bounds[0]) || (bounds[3] < bounds[1]) )
+		{
+			return null;
+		}
+		Boundsheet sheet = area.getComponentSheet();
+		if( sheet == null )
+		{
+			return null;
+		}
+		ReferenceTracker rt = sheet.getWorkBook().getRefTracker();
+		String key = sheet.getSheetName() + "!" + (byColumn ? "C" : "R") + bounds[0] + ":" + bounds[1] + ":" + bounds[2] + ":" + bounds[3];
+		Map indexes = rt.getLookupIndexes();
+		LookupIndex index = (LookupIndex) indexes.get( key );
+		if( (index == null) || (index.modCount != rt.getModCount()) )
+		{
+			index = new LookupIndex( sheet, bounds, byColumn, rt.getModCount() );
+			index.walk( sheet, bounds, area.getParentRec() );
+			index.build();
+			indexes.put( key, index );
+		}
+		return index;
+	}
+
+	@Override
+	void start( int total )
+	{
+		values = new Object[total];
+		numbers = new double[total];
+		numeric = new boolean[total];
+		Arrays.fill( numbers, Double.NaN );
+	}
+
+	@Override
+	void number( int index, double value )
+	{
+		numbers[index] = value;
+		numeric[index] = true;
+	}
+
+	@Override
+	void value( int index, Object value, boolean blank )
+	{
+		values[index] = value;
+		if( (value == null) || blank )
+		{
+			return;
+		}
+		if( value instanceof Number )
+		{
+			numbers[index] = ((Number) value).doubleValue();
+			numeric[index] = true;
+			return;
+		}
+		try
+		{
+			numbers[index] = Double.parseDouble( value.toString() );
+		}
+		catch( NumberFormatException e )
+		{
+			// not a number
+		}
+	}
+
+	/**
+	 * Builds the hash tables and the sorted keys from the walked values.
+	 */
+	private void build()
+	{
+		int size = values.length;
+		keyPositions = new int[size];
+		keys = new double[size];
+		for( int i = 0; i < size; i++ )
+		{
+			double d = numbers[i];
+			if( Double.isNaN( d ) )
+			{
+				allNumbers = false;
+				Object o = values[i];
+				if( o != null )
+				{
+					String s = textKey( o.toString() );
+					if( !textIndex.containsKey( s ) )
+					{
+						textIndex.put( s, i );
+					}
+				}
+				continue;
+			}
+			if( !numeric[i] )
+			{
+				allNumbers = false;
+			}
+			if( (nkeys > 0) && (keys[nkeys - 1] > d) )
+			{
+				ascending = false;
+			}
+			keyPositions[nkeys] = i;
+			keys[nkeys++] = d;
+			Double k = numberKey( d );
+			if( !numberIndex.containsKey( k ) )
+			{
+				numberIndex.put( k, i );
+			}
+		}
+	}
+
+	private static Double numberKey( double d )
+	{
+		return (d == 0) ? 0.0 : d;    // -0.0 == 0.0
+	}
+
+	private static String textKey( String s )
+	{
+		return s.toLowerCase( Locale.ENGLISH );
+	}
+
+	/**
+	 * Returns whether the given cell lies within the vector of this index.
+	 */
+	public boolean contains( BiffRec cell )
+	{
+		if( cell.getSheet() != sheet )
+		{
+			return false;
+		}
+		int row = cell.getRowNumber();
+		int col = cell.getColNumber();
+		return (row >= bounds[0]) && (row <= bounds[2]) && (col >= bounds[1]) && (col <= bounds[3]);
+	}
+
+	/**
+	 * Returns the number of positions of the vector.
+	 */
+	int size()
+	{
+		return values.length;
+	}
+
+	/**
+	 * Returns the value at a position as PtgRef.getValue() returns it.
+	 */
+	Object getValue( int pos )
+	{
+		if( values[pos] != null )
+		{
+			return values[pos];
+		}
+		if( numeric[pos] )
+		{
+			return numbers[pos];
+		}
+		return getMissingValue();
+	}
+
+	/**
+	 * Returns the first position whose value is the given number, as VLOOKUP
+	 * with range_lookup FALSE matches it, or -1 if there is none.
+	 */
+	int exact( double d )
+	{
+		Integer pos = numberIndex.get( numberKey( d ) );
+		return (pos == null) ? -1 : pos;
+	}
+
+	/**
+	 * Returns the first position whose non-numeric value equals the given
+	 * String ignoring case, or -1 if there is none.
+	 */
+	int exact( String s )
+	{
+		Integer pos = textIndex.get( textKey( s ) );
+		return (pos == null) ? -1 : pos;
+	}
+
+	/**
+	 * Finds a number as VLOOKUP with range_lookup TRUE does: returns the
+	 * position of the first value equal to d, else the position before the
+	 * first value greater than d, else the last position.  Positions without
+	 * a number are skipped.
+	 *
+	 * @return the position, or -1 if the first position is greater than d
+	 */
+	int approximate( double d )
+	{
+		int k;
+		if( ascending )
+		{
+			int lo = 0;
+			int hi = nkeys;
+			while( lo < hi )
+			{
+				int mid = (lo + hi) >>> 1;
+				if( keys[mid] < d )
+				{
+					lo = mid + 1;
+				}
+				else
+				{
+					hi = mid;
+				}
+			}
+			k = lo;
+		}
+		else
+		{
+			k = 0;
+			while( (k < nkeys) && (keys[k] < d) )
+			{
+				k++;
+			}
+		}
+		if( k == nkeys )
+		{
+			return values.length - 1;
+		}
+		int pos = keyPositions[k];
+		if( keys[k] == d )
+		{
+			return pos;
+		}
+		return pos - 1;
+	}
+
+	/**
+	 * Finds a String as VLOOKUP with range_lookup TRUE does, comparing the
+	 * values one by one.
+	 *
+	 * @return the position, or -1 if there is no match
+	 */
+	int approximate( String match )
+	{
+		int len = match.length();
+		int last = values.length - 1;
+		for( int i = 0; i <= last; i++ )
+		{
+			Object o = getValue( i );
+			if( o == null )
+			{
+				continue;
+			}
+			String val = o.toString();
+			if( val.equalsIgnoreCase( match ) )
+			{
+				return i;
+			}
+			if( (val.length() >= len) && val.substring( 0, len ).equalsIgnoreCase( match ) )
+			{ // matches up to length, but not all, return previous
+				if( i > 0 )
+				{
+					return i - 1;
+				}
+				continue;
+			}
+			if( (val.length() > 0) && (len > 0) && (ExcelTools.getIntVal( val.substring( 0, 1 ) ) > ExcelTools.getIntVal( match.substring( 0, 1 ) )) )
+			{
+				if( i > 0 )
+				{
+					return i - 1;
+				}
+				continue;
+			}
+			if( i == last )
+			{ // we reached the last one so use this
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds a value as MATCH does with the given match_type.
+	 *
+	 * @return the position, -1 if there is no match, or {@link #UNINDEXED}
+	 *         if the values must be compared one by one
+	 */
+	int match( Object lookupValue, int matchType )
+	{
+		if( matchType == 0 )
+		{
+			int pos;
+			if( lookupValue instanceof Number )
+			{
+				pos = exact( ((Number) lookupValue).doubleValue() );
+				if( (pos >= 0) && !numeric[pos] )
+				{
+					return UNINDEXED;    // a String which parses as a number
+				}
+				return pos;
+			}
+			if( lookupValue instanceof String )
+			{
+				try
+				{
+					Double.parseDouble( (String) lookupValue );
+					return UNINDEXED;    // not in the text index
+				}
+				catch( NumberFormatException e )
+				{
+					// look it up
+				}
+				pos = exact( (String) lookupValue );
+				if( (pos >= 0) && !(values[pos] instanceof String) )
+				{
+					return UNINDEXED;
+				}
+				return pos;
+			}
+			return UNINDEXED;
+		}
+		if( (matchType == 1) && (lookupValue instanceof Number) && allNumbers && ascending )
+		{
+			// the last value not greater than the lookup value
+			double d = ((Number) lookupValue).doubleValue();
+			int lo = 0;
+			int hi = nkeys;
+			while( lo < hi )
+			{
+				int mid = (lo + hi) >>> 1;
+				if( keys[mid] <= d )
+				{
+					lo = mid + 1;
+				}
+				else
+				{
+					hi = mid;
+				}
+			}
+			return (lo == 0) ? -1 : keyPositions[lo - 1];
+		}
+		return UNINDEXED;
+	}
+
+	/**
+	 * Returns the value of the cell the given number of columns (for an index
+	 * of a column) or rows (for an index of a row) away from a position.
+	 *
+	 * @param parent the formula record of the lookup
+	 */
+	Ptg getPtgVal( int pos, int offset, XLSRecord parent )
+	{
+		int[] rc;
+		if( byColumn )
+		{
+			rc = new int[]{ bounds[0] + pos, bounds[1] + offset };
+		}
+		else
+		{
+			rc = new int[]{ bounds[0] + offset, bounds[1] + pos };
+		}
+		String loc = GenericPtg.qualifySheetname( sheet.getSheetName() ) + "!" + ExcelTools.formatLocation( rc );
+		return new PtgRef( loc, parent, false ).getPtgVal();
+	}
+}
@@ -28,6 +28,7 @@ import org.openxls.formats.XLS.Boundsheet;
 import org.openxls.formats.XLS.FunctionNotSupportedException;
 import org.openxls.formats.XLS.Name;
 import org.openxls.formats.XLS.WorkBook;
+import org.openxls.formats.XLS.XLSRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -370,6 +371,14 @@ public class LookupReferenceCalculator
 				}
 			}
 		}
+		if( table_array instanceof PtgArea )
+		{
+			LookupIndex index = LookupIndex.getRow( (PtgArea) table_array );
+			if( index != null )
+			{
+				return indexedLookup( index, lookup_value, rowNum, sorted, table_array.getParentRec() );
+			}
+		}
 		int[] retarea = { 0, 0 };
 		Boundsheet bs = lookup_value.getParentRec().getSheet();
 		WorkBook bk = table_array.getParentRec().getWorkBook();
@@ -753,7 +762,7 @@ public class LookupReferenceCalculator
 				}
 				PtgArea3d refp = new PtgArea3d( false );
 				refp.setParentRec( ps.getParentRec() );
-				refp.setUseReferenceTracker( true );    // very important!!! :)
+				refp.setUseReferenceTracker( false );    // tracked by its formula, see Formula.addResolvedReference
 				refp.setLocation( locx );
 				return refp;
 
@@ -969,6 +978,19 @@ public class LookupReferenceCalculator
 			if( lookupArray instanceof PtgArea )
 			{
 				PtgArea pa = (PtgArea) lookupArray;
+				LookupIndex index = LookupIndex.getVector( pa );
+				if( index != null )
+				{
+					int pos = index.match( lookupValue, matchType );
+					if( pos >= 0 )
+					{
+						return new PtgInt( pos + 1 );    // 1-based
+					}
+					if( pos == -1 )
+					{
+						return new PtgErr( PtgErr.ERROR_NA );
+					}
+				}
 				values = pa.getComponents();
 			}
 			else if( lookupArray instanceof PtgMemFunc )
@@ -1442,6 +1464,42 @@ public class LookupReferenceCalculator
 		return new PtgErr( PtgErr.ERROR_VALUE );
 	}
 
+	/**
+	 * Looks up a value in the first column (VLOOKUP) or first row (HLOOKUP)
+	 * of a table through the index of that vector, and returns the value of
+	 * the cell offset columns (or rows) away from the match.
+	 *
+	 * @param parent the formula record of the lookup
+	 */
+	private static Ptg indexedLookup( LookupIndex index, Ptg lookup_value, int offset, boolean rangeLookup, XLSRecord parent )
+	{
+		Object o = lookup_value.getValue();
+		if( o == null )
+		{
+			return new PtgErr( PtgErr.ERROR_NULL );
+		}
+		String match_str = o.toString();
+		if( match_str.length() == 0 )
+		{
+			return new PtgErr( PtgErr.ERROR_NA );
+		}
+		int pos;
+		try
+		{
+			double match_num = Double.parseDouble( match_str );
+			pos = rangeLookup ? index.approximate( match_num ) : index.exact( match_num );
+		}
+		catch( NumberFormatException e )
+		{
+			pos = rangeLookup ? index.approximate( match_str ) : index.exact( match_str );
+		}
+		if( pos < 0 )
+		{
+			return new PtgErr( PtgErr.ERROR_NA );
+		}
+		return index.getPtgVal( pos, offset, parent );
+	}
+
 	/**
 	 * VLOOKUP
 	 * Looks in the first column of an array and moves across the row to return the value of a cell
@@ -1562,6 +1620,15 @@ public class LookupReferenceCalculator
 			}
 			if( table_array instanceof PtgArea )
 			{
+				LookupIndex index = LookupIndex.getColumn( (PtgArea) table_array );
+				if( index != null )
+				{
+					if( colNum < 0 )
+					{
+						return new PtgErr( PtgErr.ERROR_NA );
+					}
+					return indexedLookup( index, lookup_value, colNum, rangeLookup, table_array.getParentRec() );
+				}
 				try
 				{
 					PtgArea pa = (PtgArea) table_array;
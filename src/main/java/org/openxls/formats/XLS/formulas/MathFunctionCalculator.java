@@ -1583,16 +1583,16 @@ Returns a subtotal in a list or database
 				// more info: You can use the wildcard characters — the question mark (?) and asterisk (*) — as the criteria argument. 
 				// A question mark matches any single character; an asterisk matches any sequence of characters. 
 				// If you want to find an actual question mark or asterisk, type a tilde (~) preceding the character. 
-				String op = "=";    // operator, default is =
-				String sCriteria = criteria.getString();    // criteria in string form
-				// strip operator, if any, and parse criteria
-				int j = Calculator.splitOperator( sCriteria );
-				if( j > 0 )
+				CriteriaMatcher c = CriteriaMatcher.compile( criteria );
+
+				// scan the range values as arrays when the ranges are on one sheet
+				RangeValues values = RangeValues.get( range );
+				RangeValues sums = (sum_range == null) ? values : RangeValues.get( sum_range );
+				if( (values != null) && (sums != null) && (sums.size() >= values.size()) )
 				{
-					op = sCriteria.substring( 0, j );    // extract operator, if any
+					boolean[] matched = RangeValues.match( values.size(), new PtgArea[]{ range }, new CriteriaMatcher[]{ c } );
+					return new PtgNumber( sums.sum( matched ) );
 				}
-				sCriteria = sCriteria.substring( j );
-				sCriteria = Calculator.translateWildcardsInCriteria( sCriteria );
 
 				// stores the cells that pass the criteria expression and therefore will be summed up
 				ArrayList passesList = new ArrayList();
@@ -1611,7 +1611,7 @@ Returns a subtotal in a list or database
 					try
 					{
 						Object v = cells[i].getValue();
-						passes = Calculator.compareCellValue( v, sCriteria, op );
+						passes = c.matches( v );
 					}
 					catch( Exception e )
 					{    // don't report error
@@ -1678,33 +1678,33 @@ Returns a subtotal in a list or database
 		try
 		{
 			PtgArea sum_range = Calculator.getRange( operands[0] );
+			CriteriaMatcher[] criteria = new CriteriaMatcher[(operands.length - 1) / 2];
+			PtgArea[] criteria_ranges = new PtgArea[criteria.length];
+			for( int i = 1, j = 0; (i + 1) < operands.length; i += 2, j++ )
+			{
+				criteria_ranges[j] = Calculator.getRange( operands[i] );
+				criteria[j] = CriteriaMatcher.compile( operands[i + 1] );
+			}
+
+			// scan the range values as arrays when the ranges are on one sheet
+			RangeValues sums = RangeValues.get( sum_range );
+			boolean[] matched = (sums == null) ? null : RangeValues.match( sums.size(), criteria_ranges, criteria );
+			if( matched != null )
+			{
+				return new PtgNumber( sums.sum( matched ) );
+			}
+
 			Ptg[] sumrangecells = sum_range.getComponents();
-			String[] ops = new String[(operands.length - 1) / 2];
-			String[] criteria = new String[(operands.length - 1) / 2];
-			Ptg[][] criteria_cells = new Ptg[(operands.length - 1) / 2][];
-			int j = 0;
-			for( int i = 1; (i + 1) < operands.length; i += 2 )
+			Ptg[][] criteria_cells = new Ptg[criteria.length][];
+			for( int j = 0; j < criteria.length; j++ )
 			{
 				//criteria range - parse and get comprising cells
-				PtgArea cr = Calculator.getRange( operands[i] );
-				criteria_cells[j] = cr.getComponents();
+				criteria_cells[j] = criteria_ranges[j].getComponents();
 				// each criteria_range must contain the same number of rows and columns as the sum_range 
 				if( criteria_cells[j].length != sumrangecells.length )
 				{
 					return new PtgErr( PtgErr.ERROR_VALUE );
 				}
-				// criteria for comparison, including operator
-				criteria[j] = operands[i + 1].toString();
-				// strip operator, if any, and parse criteria
-				ops[j] = "=";    // operator, default is =
-				int k = Calculator.splitOperator( criteria[j] );
-				if( k > 0 )
-				{
-					ops[j] = criteria[j].substring( 0, k );    // extract operator, if any
-				}
-				criteria[j] = criteria[j].substring( k );
-				criteria[j] = Calculator.translateWildcardsInCriteria( criteria[j] );
-				j++;
 			}
 
 			// test criteria for all cells in range, storing those corresponding sum_range cells 
@@ -1721,7 +1721,7 @@ Returns a subtotal in a list or database
 					try
 					{
 						Object v = criteria_cells[k][i].getValue();
-						passes = Calculator.compareCellValue( v, criteria[k], ops[k] ) && passes;
+						passes = criteria[k].matches( v ) && passes;
 						if( !passes )
 						{
 							break;    // no need to continue
@@ -832,6 +832,54 @@ public class PtgArea extends PtgRef implements Ptg
 		return pref;
 	}
 
+	/**
+	 * Returns the bounds of the cells getComponents() returns as
+	 * {firstRow, firstCol, lastRow, lastCol}, or null if they can't be
+	 * determined without building the components.
+	 *
+	 * @see AreaValues
+	 */
+	int[] getComponentBounds()
+	{
+		if( (firstPtg == null) || (lastPtg == null) || wholeRow || wholeCol )
+		{
+			return null;
+		}
+		int[] startloc = firstPtg.getRealIntLocation();
+		int[] endloc = lastPtg.getRealIntLocation();
+		return new int[]{ startloc[0], startloc[1], endloc[0], endloc[1] };
+	}
+
+	/**
+	 * Returns the sheet holding the cells getComponents() returns, or null if
+	 * it can't be resolved.
+	 *
+	 * @see AreaValues
+	 */
+	Boundsheet getComponentSheet()
+	{
+		if( parent_rec == null )
+		{
+			return null;
+		}
+		Boundsheet sh = parent_rec.getSheet();
+		if( (sh == null) || ((sheetname != null) && !sheetname.equals( sh.getSheetName() )) )
+		{
+			if( (sh == null) || !GenericPtg.qualifySheetname( sheetname ).equals( GenericPtg.qualifySheetname( sh.getSheetName() ) ) )
+			{
+				try
+				{
+					return parent_rec.getWorkBook().getWorkSheetByName( sheetname );
+				}
+				catch( Exception e )
+				{
+					return null;
+				}
+			}
+		}
+		return sh;
+	}
+
 	/**
 	 * returns whether this CellRange Contains a Cell
 	 *
@@ -98,7 +98,7 @@ public class PtgArea3d extends PtgArea implements Ptg, IxtiListener
 	boolean quoted = false;
 	public short ixti;
 	private boolean isExternalRef = false;    // true if this ptg area is a reference in another workbook
-	private Ptg[] comps = null;
+	private volatile Ptg[] comps = null;
 
 	/**
 	 * return the human-readable String representation of
@@ -875,6 +875,54 @@ public class PtgArea3d extends PtgArea implements Ptg, IxtiListener
 		return comps;
 	}
 
+	@Override
+	int[] getComponentBounds()
+	{
+		if( (firstPtg == null) || (lastPtg == null) )
+		{
+			return null;
+		}
+		if( wholeRow )
+		{
+			Boundsheet sheet = getSheet();
+			return (sheet == null) ? null : new int[]{ firstPtg.rw, 0, firstPtg.rw, sheet.getMaxCol() };
+		}
+		if( wholeCol )
+		{
+			Boundsheet sheet = getSheet();
+			return (sheet == null) ? null : new int[]{ 0, firstPtg.col, sheet.getMaxRow(), firstPtg.col };
+		}
+		int[] startloc = firstPtg.getRealIntLocation();
+		int[] endloc = lastPtg.getRealIntLocation();
+		return new int[]{ startloc[0], startloc[1], endloc[0], endloc[1] };
+	}
+
+	/**
+	 * Returns the first sheet of this reference, or null if it spans several
+	 * sheets and so has to be handled through getComponents().
+	 */
+	@Override
+	Boundsheet getComponentSheet()
+	{
+		if( (parent_rec == null) || (parent_rec.getWorkBook() == null) )
+		{
+			return null;
+		}
+		try
+		{
+			Boundsheet[] sheets = getSheets( parent_rec.getWorkBook() );
+			if( (sheets != null) && (sheets.length > 1) )
+			{
+				return null;
+			}
+		}
+		catch( Exception e )
+		{
+			// no externsheet -- resolve by name below
+		}
+		return getSheet();
+	}
+
 	/**
 	 * sets the column to be relative (relative is true) or absolute (relative is false)
 	 * <br>absolute references do not shift upon column inserts or deletes
@@ -131,4 +131,13 @@ public class PtgAreaErr3d extends PtgArea3d implements Ptg
 	{
 		return new int[]{ -1, -1 };
 	}
-}
\ No newline at end of file
+
+	/**
+	 * An area error has no cells to walk.
+	 */
+	@Override
+	int[] getComponentBounds()
+	{
+		return null;
+	}
+}
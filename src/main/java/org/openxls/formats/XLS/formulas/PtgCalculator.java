@@ -23,13 +23,11 @@
 package org.openxls.formats.XLS.formulas;
 
 import org.openxls.ExtenXLS.ExcelTools;
-import org.openxls.toolkit.CompatibleVector;
 import org.openxls.toolkit.FastAddVector;
 import org.openxls.formats.XLS.WorkBook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Enumeration;
 
 /**
  * PtgCalculator handles some of the standard calls that all of the
@@ -116,83 +114,143 @@ public class PtgCalculator
 	 */
 	protected static double[] getDoubleValueArray( Ptg[] operands ) throws CalculationException
 	{
-
-		Double d = null;
-		// we don't know the size ahead of time, so use a vector for now.
-		CompatibleVector cv = new CompatibleVector();
-
-		for( Ptg operand : operands )
+		// we don't know the size ahead of time, so collect the values of each operand first
+		double[][] parts = new double[operands.length][];
+		int size = 0;
+		for( int t = 0; t < operands.length; t++ )
 		{
-			// is it multidimensional?
-			Ptg[] pthings = operand.getComponents(); // optimized -- do it once!  -jm
-			if( pthings != null )
+			Ptg operand = operands[t];
+			DoubleArrayValues area = new DoubleArrayValues();
+			if( area.walk( operand ) )
 			{
-				for( Ptg pthing : pthings )
+				// ranges are read from the sheet without creating a PtgRef per cell
+				if( area.circular )
+				{
+					throw new CircularReferenceException( CalculationException.VALUE );
+				}
+				if( area.na )
 				{
-					cv.add( pthing );
+					return null;
 				}
+				parts[t] = area.values;
 			}
 			else
 			{
-				cv.add( operand );
+				// is it multidimensional?
+				Ptg[] pthings = operand.getComponents(); // optimized -- do it once!  -jm
+				if( pthings == null )
+				{
+					pthings = new Ptg[]{ operand };
+				}
+				double[] darr = new double[pthings.length];
+				for( int i = 0; i < pthings.length; i++ )
+				{
+					int res = getDoubleValue( pthings[i].getValue(), darr, i );
+					if( res == DOUBLE_CIRCULAR )
+					{
+						throw new CircularReferenceException( CalculationException.VALUE );
+					}
+					if( res == DOUBLE_NA )
+					{
+						return null;
+					}
+				}
+				parts[t] = darr;
 			}
+			size += parts[t].length;
 		}
 
-		double[] darr = new double[cv.size()];
+		double[] darr = new double[size];
 		int i = 0;
-		Enumeration en = cv.elements();
-		while( en.hasMoreElements() )
+		for( double[] part : parts )
 		{
-			d = null;//new Double(0.0);		// 20081229 KSC: reset
-			Ptg pthing = (Ptg) en.nextElement();
-			Object ob = pthing.getValue();
-			if( (ob == null) || ob.toString().trim().equals( "" ) )
-			{    // 20060802 KSC: added trim
-				darr[i] = 0;
-			}
-			else if( ob.toString().equals( "#CIR_ERR!" ) )
+			System.arraycopy( part, 0, darr, i, part.length );
+			i += part.length;
+		}
+		return darr;
+	}
+
+	private static final int DOUBLE_OK = 0;
+	private static final int DOUBLE_CIRCULAR = 1;
+	private static final int DOUBLE_NA = 2;
+
+	/**
+	 * Converts a cell value as getDoubleValueArray does: empty values and
+	 * non-numeric strings become 0, circular references and #N/A are
+	 * reported to the caller.
+	 */
+	private static int getDoubleValue( Object ob, double[] darr, int i )
+	{
+		if( (ob == null) || ob.toString().trim().equals( "" ) )
+		{    // 20060802 KSC: added trim
+			darr[i] = 0;
+			return DOUBLE_OK;
+		}
+		if( ob.toString().equals( "#CIR_ERR!" ) )
+		{
+			return DOUBLE_CIRCULAR;
+		}
+		Double d = null;
+		try
+		{
+			if( ob instanceof Double )
 			{
-				throw new CircularReferenceException( CalculationException.VALUE );
+				d = (Double) ob;
 			}
 			else
 			{
+				String s = ob.toString();
+				d = new Double( s );
+			}
+		}
+		catch( NumberFormatException e )
+		{
+			if( ob.toString().equals( "#N/A" ) )
+			{    // 20090130 KSC: if error value, propagate error (ala Excel) -- null caught in calling method propagates "#N/A"
+				return DOUBLE_NA;
+			}
+		}
+		if( d != null )
+		{
+			darr[i] = d;
+		}
+		return DOUBLE_OK;
+	}
 
-				try
-				{
-					if( ob instanceof Double )
-					{
-						d = (Double) ob;
-					}
-					else
-					{
-						String s = ob.toString();
-						d = new Double( s );
-					}
-				}
-				catch( NumberFormatException e )
-				{
-					try
-					{
-						String s = ob.toString();
-						if( s.equals( "#N/A" ) )
-						{    // 20090130 KSC: if error value, propagate error (ala Excel) -- null caught in calling method propagates "#N/A"
-							return null;
-						}
-					}
-					catch( Exception ee )
-					{
-						log.warn( "PtgCalculator getting Double value array failed: " + ee );
-						d = Double.NaN;
-					}
-				}
-				if( d != null )
-				{
-					darr[i] = d;
-				}
+	/**
+	 * Collects the values of a range into a column-major array for getDoubleValueArray.
+	 */
+	private static final class DoubleArrayValues extends AreaValues
+	{
+		double[] values;
+		boolean circular;
+		boolean na;
+		private int firstError = Integer.MAX_VALUE;
+
+		@Override
+		void start( int total )
+		{
+			values = new double[total];
+		}
+
+		@Override
+		void number( int index, double value )
+		{
+			values[index] = value;
+		}
+
+		@Override
+		void value( int index, Object value, boolean blank )
+		{
+			int res = getDoubleValue( value, values, index );
+			// the first error in range order wins, as when walking the components
+			if( (res != DOUBLE_OK) && (index < firstError) )
+			{
+				firstError = index;
+				circular = (res == DOUBLE_CIRCULAR);
+				na = (res == DOUBLE_NA);
 			}
-			i++;
 		}
-		return darr;
 	}
 
 	protected static double[] getDoubleValueArray( Ptg operands ) throws CalculationException
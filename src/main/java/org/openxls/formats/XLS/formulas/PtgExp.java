@@ -166,7 +166,7 @@ public class PtgExp extends GenericPtg implements Ptg
 		Formula f = (Formula) getParentRec();
 		if( f.isSharedFormula() )
 		{
-			o = FormulaCalculator.calculateFormula( f.shared.instantiate( f ) );
+			o = f.shared.calculate( f );
 //			throw new UnsupportedOperationException (
 //					"Shared formulas must be instantiated for calculation");
 		}
@@ -202,7 +202,7 @@ public class PtgExp extends GenericPtg implements Ptg
 		Formula f = ((Formula) getParentRec());
 		if( f.isSharedFormula() )
 		{
-			o = FormulaCalculator.calculateFormula( f.shared.instantiate( f ) );
+			o = f.shared.calculate( f );
 		}
 		else
 		{
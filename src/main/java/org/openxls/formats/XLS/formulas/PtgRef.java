@@ -31,7 +31,6 @@ import org.openxls.formats.XLS.Name;
 import org.openxls.formats.XLS.WorkBook;
 import org.openxls.formats.XLS.WorkSheetNotFoundException;
 import org.openxls.formats.XLS.XLSRecord;
-import org.openxls.formats.cellformat.CellFormatFactory;
 import org.openxls.toolkit.ByteTools;
 import org.openxls.toolkit.StringTool;
 import org.slf4j.Logger;
@@ -1004,8 +1003,8 @@ public class PtgRef extends GenericPtg
 	@Override
 	public boolean isBlank()
 	{
-		getRefCells();
-		return ((refCell[0] == null) || ((XLSRecord) refCell[0]).isBlank);//getOpcode()==BLANK);
+		BiffRec cell = getRefCells()[0];
+		return ((cell == null) || ((XLSRecord) cell).isBlank);//getOpcode()==BLANK);
 	}
 
 	/**
@@ -1014,22 +1013,22 @@ public class PtgRef extends GenericPtg
 	@Override
 	public Object getValue()
 	{
-		getRefCells();
+		BiffRec cell = getRefCells()[0];
 		Object retValue = null;
-		if( refCell[0] != null )
+		if( cell != null )
 		{
-			if( refCell[0].getFormulaRec() != null )
+			if( cell.getFormulaRec() != null )
 			{
-				Formula f = refCell[0].getFormulaRec();
+				Formula f = cell.getFormulaRec();
 				retValue = f.calculateFormula();
 				return retValue;
 			}
-			if( refCell[0].getDataType().equals( "Float" ) )
+			if( cell.getDataType().equals( "Float" ) )
 			{
-				retValue = refCell[0].getDblVal();
+				retValue = cell.getDblVal();
 				return retValue;
 			}
-			retValue = refCell[0].getInternalVal();
+			retValue = cell.getInternalVal();
 			return retValue;
 		}
 		try
@@ -1054,9 +1053,8 @@ public class PtgRef extends GenericPtg
 	 */
 	public String getFormattedValue()
 	{
-		getRefCells();
 		Object retValue = null;
-		BiffRec cell = refCell[0];
+		BiffRec cell = getRefCells()[0];
 
 		if( cell != null )
 		{
@@ -1076,7 +1074,7 @@ public class PtgRef extends GenericPtg
 					retValue = cell.getInternalVal();
 				}
 			}
-			return CellFormatFactory.fromPatternString( cell.getXfRec().getFormatPattern() ).format( retValue );
+			return cell.getWorkBook().getCellFormat( cell.getXfRec().getFormatPattern() ).format( retValue );
 		}
 		try
 		{
@@ -1097,7 +1095,8 @@ public class PtgRef extends GenericPtg
 	 */
 	public BiffRec[] getRefCells()
 	{
-		refCell = new BiffRec[1];
+		// fill a new array so formulas evaluated in parallel never see a partial one
+		BiffRec[] cells = new BiffRec[1];
 		try
 		{
 			Boundsheet bs = null;
@@ -1109,13 +1108,38 @@ public class PtgRef extends GenericPtg
 			{
 				bs = parent_rec.getSheet();
 			}
-			refCell[0] = bs.getCell( rw, col );
+			cells[0] = bs.getCell( rw, col );
 		}
 		catch( Exception ex )
 		{
 			;
 		}
-		return refCell;
+		refCell = cells;
+		return cells;
+	}
+
+	/**
+	 * Returns the sheet the referenced cell is on, resolved the same way as
+	 * {@link #getRefCells()}, or null if it can't be found.
+	 */
+	Boundsheet getReferencedSheet()
+	{
+		if( parent_rec == null )
+		{
+			return null;
+		}
+		if( sheetname == null )
+		{
+			return parent_rec.getSheet();
+		}
+		try
+		{
+			return parent_rec.getWorkBook().getWorkSheetByName( sheetname );
+		}
+		catch( Exception e )
+		{
+			return null;
+		}
 	}
 
 	public boolean changeLocation( String newLoc, Formula f )
@@ -1391,14 +1415,14 @@ public class PtgRef extends GenericPtg
 	{
 		if( rw >= 0 )
 		{
-			return col + ((rw + 1) * MAXCOLS);
+			return col + ((rw + 1) * (long) MAXCOLS);
 		}
-		return col + (((MAXROWS - rw) + 1) * MAXCOLS);
+		return col + (((MAXROWS - rw) + 1) * (long) MAXCOLS);
 	}
 
 	public static long getHashCode( int row, int col )
 	{
-		return col + ((row + 1) * MAXCOLS);
+		return col + ((row + 1) * (long) MAXCOLS);
 	}
 
 	/**
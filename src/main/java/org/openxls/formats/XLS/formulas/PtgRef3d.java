@@ -563,8 +563,17 @@ public class PtgRef3d extends PtgRef implements Ptg, IxtiListener
 		{
 			sheetname = getSheetName();
 		}
-		refCell = super.getRefCells();
-		return refCell;
+		return super.getRefCells();
+	}
+
+	@Override
+	Boundsheet getReferencedSheet()
+	{
+		if( sheetname == null )
+		{
+			sheetname = getSheetName();
+		}
+		return super.getReferencedSheet();
 	}
 
 	/**
@@ -0,0 +1,279 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package org.openxls.formats.XLS.formulas;
+
+import org.openxls.formats.XLS.BiffRec;
+import org.openxls.formats.XLS.Boundsheet;
+import org.openxls.formats.XLS.ReferenceTracker;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The values of a criteria range or sum range of the conditional
+ * aggregates SUMIF, COUNTIF, SUMIFS, COUNTIFS and AVERAGEIFS.
+ * <p/>
+ * The values are read once, through {@link AreaValues}, into an array of
+ * numbers and an array of the other values, which a compiled
+ * {@link CriteriaMatcher} then scans in one pass.  The criteria of a multi-criteria
+ * function are applied in turn to the same array of matches, skipping the
+ * positions an earlier criteria has already ruled out.
+ * <p/>
+ * Like {@link LookupIndex}es these are cached by the ReferenceTracker per
+ * sheet and range, and shared by all the criteria applied to the range.  A
+ * cached range is dropped when a cell within it changes, when the tracked
+ * references of the workbook move, and at the end of every recalc.
+ *
+ * @see ReferenceTracker#getRangeValues()
+ */
+public final class RangeValues extends AreaValues
+{
+	private static final byte MISSING = 0;
+	private static final byte NUMBER = 1;
+	private static final byte VALUE = 2;
+
+	private final Boundsheet sheet;
+	private final int[] bounds;
+	private final int modCount;
+
+	private byte[] kinds;
+	private double[] numbers;
+	// value of each VALUE position, allocated on the first one
+	private Object[] values;
+
+	private RangeValues( Boundsheet sheet, int[] bounds, int modCount )
+	{
+		this.sheet = sheet;
+		this.bounds = bounds;
+		this.modCount = modCount;
+	}
+
+	/**
+	 * Returns the values of a range, or null if the range cannot be resolved
+	 * to a single sheet.
+	 */
+	static RangeValues get( PtgArea range )
+	{
+		if( range == null )
+		{
+			return null;
+		}
+		int[] bounds = range.getComponentBounds();
+		if( (bounds == null) || (bounds[2] < bounds[0]) || (bounds[3] < bounds[1]) )
+		{
+			return null;
+		}
+		Boundsheet sheet = range.getComponentSheet();
+		if( sheet == null )
+		{
+			return null;
+		}
+		ReferenceTracker rt = sheet.getWorkBook().getRefTracker();
+		boolean hideZeros = getMissingValue( range.getParentRec() ) == null;
+		String key = sheet.getSheetName() + "!" + bounds[0] + ":" + bounds[1] + ":" + bounds[2] + ":" + bounds[3] + (hideZeros ? ":z" : "");
+		Map cache = rt.getRangeValues();
+		RangeValues values = (RangeValues) cache.get( key );
+		if( (values == null) || (values.modCount != rt.getModCount()) )
+		{
+			values = new RangeValues( sheet, bounds, rt.getModCount() );
+			values.walk( sheet, bounds, range.getParentRec() );
+			cache.put( key, values );
+		}
+		return values;
+	}
+
+	@Override
+	void start( int total )
+	{
+		kinds = new byte[total];
+		numbers = new double[total];
+	}
+
+	@Override
+	void number( int index, double value )
+	{
+		kinds[index] = NUMBER;
+		numbers[index] = value;
+	}
+
+	@Override
+	void value( int index, Object value, boolean blank )
+	{
+		if( values == null )
+		{
+			values = new Object[kinds.length];
+		}
+		kinds[index] = VALUE;
+		values[index] = value;
+	}
+
+	/**
+	 * Returns whether the given cell lies within this range.
+	 */
+	public boolean contains( BiffRec cell )
+	{
+		if( cell.getSheet() != sheet )
+		{
+			return false;
+		}
+		int row = cell.getRowNumber();
+		int col = cell.getColNumber();
+		return (row >= bounds[0]) && (row <= bounds[2]) && (col >= bounds[1]) && (col <= bounds[3]);
+	}
+
+	/**
+	 * Returns the number of positions of the range.
+	 */
+	int size()
+	{
+		return kinds.length;
+	}
+
+	/**
+	 * Clears the positions of passes whose value doesn't meet the criteria.
+	 */
+	void match( CriteriaMatcher criteria, boolean[] passes )
+	{
+		Object missing = getMissingValue();
+		boolean missingPasses = criteria.matches( missing );
+		for( int i = 0; i < passes.length; i++ )
+		{
+			if( !passes[i] )
+			{
+				continue;
+			}
+			switch( kinds[i] )
+			{
+				case NUMBER:
+					passes[i] = criteria.matches( numbers[i] );
+					break;
+				case VALUE:
+					passes[i] = criteria.matches( values[i] );
+					break;
+				default:
+					passes[i] = missingPasses;
+			}
+		}
+	}
+
+	/**
+	 * Applies each criteria to the values of its range, as the implicit AND
+	 * of SUMIFS, COUNTIFS and AVERAGEIFS.
+	 *
+	 * @param size the number of positions each range must have
+	 * @return the positions which meet every criteria, or null if a range
+	 *         cannot be resolved to a single sheet or has another size
+	 */
+	static boolean[] match( int size, PtgArea[] ranges, CriteriaMatcher[] criteria )
+	{
+		RangeValues[] values = new RangeValues[ranges.length];
+		for( int i = 0; i < ranges.length; i++ )
+		{
+			values[i] = get( ranges[i] );
+			if( (values[i] == null) || (values[i].size() != size) )
+			{
+				return null;
+			}
+		}
+		boolean[] passes = new boolean[size];
+		Arrays.fill( passes, true );
+		for( int i = 0; i < values.length; i++ )
+		{
+			values[i].match( criteria[i], passes );
+		}
+		return passes;
+	}
+
+	/**
+	 * Returns the number of set positions.
+	 */
+	static int count( boolean[] passes )
+	{
+		int n = 0;
+		for( boolean pass : passes )
+		{
+			if( pass )
+			{
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Sums the values of the set positions as Ptg.getDoubleVal() converts
+	 * them.  The range may have more positions than passes.
+	 */
+	double sum( boolean[] passes )
+	{
+		double missing = getDoubleVal( getMissingValue() );
+		double ret = 0.0;
+		for( int i = 0; i < passes.length; i++ )
+		{
+			if( !passes[i] )
+			{
+				continue;
+			}
+			switch( kinds[i] )
+			{
+				case NUMBER:
+					ret += numbers[i];
+					break;
+				case VALUE:
+					ret += getDoubleVal( values[i] );
+					break;
+				default:
+					ret += missing;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Converts a cell value to a double as GenericPtg.getDoubleVal() does.
+	 */
+	private static double getDoubleVal( Object o )
+	{
+		if( o == null )
+		{
+			return Double.NaN;
+		}
+		if( (o instanceof Double) || (o instanceof Float) || (o instanceof Integer) )
+		{
+			return ((Number) o).doubleValue();
+		}
+		String s = o.toString();
+		if( s.equals( "" ) )
+		{
+			return 0;
+		}
+		try
+		{
+			return Double.parseDouble( s );
+		}
+		catch( NumberFormatException e )
+		{
+			return Double.NaN;
+		}
+	}
+}
@@ -55,9 +55,19 @@ public class StatisticalCalculator
 	protected static Ptg calcAverage( Ptg[] operands )
 	{
 		Vector vect = new Vector();
+		int count = 0;
+		BigDecimal bd = new BigDecimal( 0 );
 
 		for( Ptg operand : operands )
 		{
+			AverageValues area = new AverageValues();
+			if( area.walk( operand ) )
+			{
+				// missing cells are blank, so only the visited ones count
+				bd = bd.add( area.total );
+				count += area.count;
+				continue;
+			}
 			Ptg[] pthings = operand.getComponents(); // optimized -- do it once!! -jm
 			if( pthings != null )
 			{
@@ -72,9 +82,7 @@ public class StatisticalCalculator
 				vect.add( p );
 			}
 		}
-		int count = 0;
 //        double total = 0;
-		BigDecimal bd = new BigDecimal( 0 );
 		for( int i = 0; i < vect.size(); i++ )
 		{
 			Ptg p = (Ptg) vect.elementAt( i );
@@ -230,37 +238,42 @@ public class StatisticalCalculator
 		try
 		{
 			PtgArea average_range = Calculator.getRange( operands[0] );
+			CriteriaMatcher[] criteria = new CriteriaMatcher[(operands.length - 1) / 2];
+			PtgArea[] criteria_ranges = new PtgArea[criteria.length];
+			for( int i = 1, j = 0; (i + 1) < operands.length; i += 2, j++ )
+			{
+				criteria_ranges[j] = Calculator.getRange( operands[i] );
+				criteria[j] = CriteriaMatcher.compile( operands[i + 1] );
+			}
+
+			// scan the range values as arrays when the ranges are on one sheet
+			RangeValues averages = RangeValues.get( average_range );
+			boolean[] matched = (averages == null) ? null : RangeValues.match( averages.size(), criteria_ranges, criteria );
+			if( matched != null )
+			{
+				int n = RangeValues.count( matched );
+				if( n == 0 )
+				{
+					return new PtgErr( PtgErr.ERROR_DIV_ZERO );
+				}
+				return new PtgNumber( averages.sum( matched ) / n );
+			}
+
 			Ptg[] averagerangecells = average_range.getComponents();
 			if( averagerangecells.length == 0 )
 			{
 				return new PtgErr( PtgErr.ERROR_DIV_ZERO );
 			}
-			String[] ops = new String[(operands.length - 1) / 2];
-			String[] criteria = new String[(operands.length - 1) / 2];
-			Ptg[][] criteria_cells = new Ptg[(operands.length - 1) / 2][];
-			int j = 0;
-			for( int i = 1; (i + 1) < operands.length; i += 2 )
+			Ptg[][] criteria_cells = new Ptg[criteria.length][];
+			for( int j = 0; j < criteria.length; j++ )
 			{
 				//criteria range - parse and get comprising cells
-				PtgArea cr = Calculator.getRange( operands[i] );
-				criteria_cells[j] = cr.getComponents();
+				criteria_cells[j] = criteria_ranges[j].getComponents();
 				// each criteria_range must contain the same number of rows and columns as the sum_range 
 				if( criteria_cells[j].length != averagerangecells.length )
 				{
 					return new PtgErr( PtgErr.ERROR_VALUE );
 				}
-				// criteria for comparison, including operator
-				criteria[j] = operands[i + 1].toString();
-				// strip operator, if any, and parse criteria
-				ops[j] = "=";    // operator, default is =
-				int k = Calculator.splitOperator( criteria[j] );
-				if( k > 0 )
-				{
-					ops[j] = criteria[j].substring( 0, k );    // extract operator, if any
-				}
-				criteria[j] = criteria[j].substring( k );
-				criteria[j] = Calculator.translateWildcardsInCriteria( criteria[j] );
-				j++;
 			}
 
 			// test criteria for all cells in range, storing those corresponding average_range cells 
@@ -278,7 +291,7 @@ public class StatisticalCalculator
 					{
 						Object v = criteria_cells[k][i].getValue();
 						// If cells in average_range cannot be translated into numbers, AVERAGEIFS returns the #DIV0! error value. 
-						passes = Calculator.compareCellValue( v, criteria[k], ops[k] ) && passes;
+						passes = criteria[k].matches( v ) && passes;
 						if( !passes )
 						{
 							break;    // no need to continue
@@ -521,6 +534,16 @@ CONFIDENCE
 		int count = 0;
 		for( Ptg operand : operands )
 		{
+			CountValues area = new CountValues();
+			if( area.walk( operand ) )
+			{
+				count += area.count;
+				if( area.getMissingValue() != null )
+				{
+					count += area.getMissingCount();    // a missing cell has a value of 0
+				}
+				continue;
+			}
 			Ptg[] pref = operand.getComponents(); // optimized -- do it once!! -jm
 			if( pref != null )
 			{ // it is some sort of range
@@ -613,87 +636,28 @@ CONFIDENCE
 		{
 			return PtgCalculator.getError();
 		}
-		String matchStr = String.valueOf( operands[1].getValue() );
-		boolean donumber = true;
-		double matchDub = 0;
-		try
-		{    // this method matches strings or numbers, here is where we differentiate
-			Double d = new Double( matchStr );
-			matchDub = d;
-		}
-		catch( Exception e )
-		{
-			donumber = false;
-		}
-		double count = 0;
-		Ptg[] pref = operands[0].getComponents(); // optimize by doing it one time!!! this thing gets slow....-jm
-		if( pref != null )
-		{ // it is some sort of range  
-			for( Ptg aPref : pref )
+		CriteriaMatcher criteria = CriteriaMatcher.compile( operands[1] );
+		if( operands[0] instanceof PtgArea )
+		{    // scan the range values as an array when the range is on one sheet
+			PtgArea range = (PtgArea) operands[0];
+			RangeValues values = RangeValues.get( range );
+			if( values != null )
 			{
-				Object o = aPref.getValue();
-				if( o != null )
-				{
-					String match2 = o.toString();
-					if( donumber )
-					{
-						try
-						{
-							Double d = new Double( match2 );
-							double matchDub2 = d;
-							if( matchDub == matchDub2 )
-							{
-								count++;
-							}
-						}
-						catch( NumberFormatException e )
-						{
-						}
-						;
-					}
-					else
-					{
-						if( matchStr.equalsIgnoreCase( match2 ) )
-						{
-							count++;
-						}
-					}
-				}
+				boolean[] matched = RangeValues.match( values.size(), new PtgArea[]{ range }, new CriteriaMatcher[]{ criteria } );
+				return new PtgNumber( RangeValues.count( matched ) );
 			}
 		}
-		else
+		double count = 0;
+		Ptg[] pref = operands[0].getComponents(); // optimize by doing it one time!!! this thing gets slow....-jm
+		if( pref == null )
 		{  // it's a single ptgref
-			Object o = operands[0].getValue();
-			if( o != null )
+			pref = new Ptg[]{ operands[0] };
+		}
+		for( Ptg aPref : pref )
+		{
+			if( criteria.matches( aPref.getValue() ) )
 			{
-				if( o != null )
-				{
-					String match2 = o.toString();
-					if( donumber )
-					{
-						try
-						{
-							Double d = new Double( match2 );
-							double matchDub2 = d;
-							if( matchDub == matchDub2 )
-							{
-								count++;
-							}
-						}
-						catch( NumberFormatException e )
-						{
-						}
-						;
-					}
-					else
-					{
-						if( matchStr.equalsIgnoreCase( match2 ) )
-						{
-							count++;
-						}
-					}
-				}
-
+				count++;
 			}
 		}
 		PtgNumber pnum = new PtgNumber( count );
@@ -713,30 +677,32 @@ CONFIDENCE
 	{
 		try
 		{
-			String[] ops = new String[operands.length / 2];
-			String[] criteria = new String[operands.length / 2];
-			Ptg[][] criteria_cells = new Ptg[operands.length / 2][];
+			CriteriaMatcher[] criteria = new CriteriaMatcher[operands.length / 2];
+			PtgArea[] criteria_ranges = new PtgArea[criteria.length];
 			for( int i = 0; (i + 1) < operands.length; i += 2 )
+			{
+				criteria_ranges[i / 2] = Calculator.getRange( operands[i] );
+				criteria[i / 2] = CriteriaMatcher.compile( operands[i + 1] );
+			}
+
+			// scan the range values as arrays when the ranges are on one sheet
+			RangeValues first = (criteria.length == 0) ? null : RangeValues.get( criteria_ranges[0] );
+			boolean[] matched = (first == null) ? null : RangeValues.match( first.size(), criteria_ranges, criteria );
+			if( matched != null )
+			{
+				return new PtgNumber( RangeValues.count( matched ) );
+			}
+
+			Ptg[][] criteria_cells = new Ptg[criteria.length][];
+			for( int j = 0; j < criteria.length; j++ )
 			{
 				//criteria range - parse and get comprising cells
-				PtgArea cr = Calculator.getRange( operands[i] );
-				criteria_cells[i / 2] = cr.getComponents();
+				criteria_cells[j] = criteria_ranges[j].getComponents();
 				// each criteria_range must contain the same number of rows and columns as the criteriarange 
-				if( (i > 0) && (criteria_cells[i / 2].length != criteria_cells[0].length) )
+				if( (j > 0) && (criteria_cells[j].length != criteria_cells[0].length) )
 				{
 					return new PtgErr( PtgErr.ERROR_VALUE );
 				}
-				// criteria for comparison, including operator
-				criteria[i / 2] = operands[i + 1].toString();
-				// strip operator, if any, and parse criteria
-				ops[i / 2] = "=";    // operator, default is =
-				int k = Calculator.splitOperator( criteria[i / 2] );
-				if( k > 0 )
-				{
-					ops[i / 2] = criteria[i / 2].substring( 0, k );    // extract operator, if any
-				}
-				criteria[i / 2] = criteria[i / 2].substring( k );
-				criteria[i / 2] = Calculator.translateWildcardsInCriteria( criteria[i / 2] );
 			}
 
 			// test criteria for all cells in range, counting each cell that passes 
@@ -751,7 +717,7 @@ CONFIDENCE
 					{
 						Object v = criteria_cells[k][i].getValue();
 						//  the criteria argument is a reference to an empty cell, the COUNTIFS function treats the empty cell as a 0 value.
-						passes = Calculator.compareCellValue( v, criteria[k], ops[k] ) && passes;
+						passes = criteria[k].matches( v ) && passes;
 						if( !passes )
 						{
 							break;    // no need to continue
@@ -1266,6 +1232,16 @@ LOGNORMDIST
 		Double d = null;
 		for( Ptg operand : operands )
 		{
+			MaxValues area = new MaxValues();
+			if( area.walk( operand ) )
+			{
+				d = area.getMax();
+				if( d > result )
+				{
+					result = d;
+				}
+				continue;
+			}
 			Ptg[] pthings = operand.getComponents(); // optimized -- do it once!! -jm
 			if( pthings != null )
 			{
@@ -1432,6 +1408,20 @@ LOGNORMDIST
 		Double d = null;
 		for( Ptg operand : operands )
 		{
+			MinValues area = new MinValues();
+			if( area.walk( operand ) )
+			{
+				if( area.na )
+				{
+					return new PtgErr( PtgErr.ERROR_NA );
+				}
+				d = area.getMin();
+				if( d < result )
+				{
+					result = d;
+				}
+				continue;
+			}
 			Ptg[] pthings = operand.getComponents(); // optimized -- do it once!! -jm
 			if( pthings != null )
 			{
@@ -2698,4 +2688,157 @@ ZTEST
  
 */
 
-}
\ No newline at end of file
+	/**
+	 * Sums the values of a range for AVERAGE, skipping blank cells.
+	 */
+	private static final class AverageValues extends AreaValues
+	{
+		BigDecimal total = new BigDecimal( 0 );
+		int count = 0;
+
+		@Override
+		void number( int index, double value )
+		{
+			total = total.add( new BigDecimal( value ) );
+			count++;
+		}
+
+		@Override
+		void value( int index, Object value, boolean blank )
+		{
+			if( blank || (value == null) )
+			{
+				return;
+			}
+			try
+			{
+				total = total.add( new BigDecimal( Double.parseDouble( String.valueOf( value ) ) ) );
+				count++;
+			}
+			catch( NumberFormatException e )
+			{
+			}
+		}
+	}
+
+	/**
+	 * Counts the numeric values of a range for COUNT.
+	 */
+	private static final class CountValues extends AreaValues
+	{
+		int count = 0;
+
+		@Override
+		void number( int index, double value )
+		{
+			count++;
+		}
+
+		@Override
+		void value( int index, Object value, boolean blank )
+		{
+			if( value == null )
+			{
+				return;
+			}
+			try
+			{
+				Double.parseDouble( String.valueOf( value ) );
+				count++;
+			}
+			catch( NumberFormatException e )
+			{
+			}
+		}
+	}
+
+	/**
+	 * Finds the largest value of a range as calcMax does for the components of a range.
+	 */
+	private static final class MaxValues extends AreaValues
+	{
+		private double max = java.lang.Double.MIN_VALUE;
+
+		@Override
+		void number( int index, double value )
+		{
+			if( value > max )
+			{
+				max = value;
+			}
+		}
+
+		@Override
+		void value( int index, Object value, boolean blank )
+		{
+			if( value == null )
+			{
+				return;
+			}
+			try
+			{
+				number( index, Double.parseDouble( String.valueOf( value ) ) );
+			}
+			catch( NumberFormatException e )
+			{
+			}
+		}
+
+		double getMax()
+		{
+			if( (getMissingCount() > 0) && (getMissingValue() != null) )
+			{
+				number( -1, 0 );
+			}
+			return (max == java.lang.Double.MIN_VALUE) ? 0 : max;
+		}
+	}
+
+	/**
+	 * Finds the smallest value of a range as calcMin does for the components of a range.
+	 */
+	private static final class MinValues extends AreaValues
+	{
+		private double min = java.lang.Double.MAX_VALUE;
+		boolean na = false;
+
+		@Override
+		void number( int index, double value )
+		{
+			if( value < min )
+			{
+				min = value;
+			}
+		}
+
+		@Override
+		void value( int index, Object value, boolean blank )
+		{
+			if( value == null )
+			{
+				return;
+			}
+			if( value.toString().equals( new PtgErr( PtgErr.ERROR_NA ).toString() ) )
+			{
+				na = true;
+				return;
+			}
+			try
+			{
+				number( index, Double.parseDouble( String.valueOf( value ) ) );
+			}
+			catch( NumberFormatException e )
+			{
+			}
+		}
+
+		double getMin()
+		{
+			if( (getMissingCount() > 0) && (getMissingValue() != null) )
+			{
+				number( -1, 0 );
+			}
+			return (min == java.lang.Double.MAX_VALUE) ? 0 : min;
+		}
+	}
+}
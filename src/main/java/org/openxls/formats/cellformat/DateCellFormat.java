@@ -26,8 +26,10 @@ import org.openxls.ExtenXLS.Cell;
 import org.openxls.ExtenXLS.CellHandle;
 import org.openxls.ExtenXLS.DateConverter;
 
+import java.text.FieldPosition;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Date;
 
 public class DateCellFormat extends SimpleDateFormat implements CellFormat
 {
@@ -59,4 +61,14 @@ public class DateCellFormat extends SimpleDateFormat implements CellFormat
 		Calendar date = DateConverter.getCalendarFromCell( cell );
 		return format( date.getTime() );
 	}
+
+	/**
+	 * SimpleDateFormat formats through a shared Calendar, so calls are
+	 * serialized to allow one instance to be cached and shared per pattern.
+	 */
+	@Override
+	public synchronized StringBuffer format( Date date, StringBuffer toAppendTo, FieldPosition pos )
+	{
+		return super.format( date, toAppendTo, pos );
+	}
 }
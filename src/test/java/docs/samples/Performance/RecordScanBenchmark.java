@@ -0,0 +1,195 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package docs.samples.Performance;
+
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+import org.openxls.formats.LEO.BlockByteReader;
+import org.openxls.formats.LEO.LEOFile;
+import org.openxls.toolkit.ByteTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+/**
+ * Measures how many records per second the record header scan of
+ * WorkBookFactory.initWorkBook gets through.
+ * <p/>
+ * The header scan is timed both the old way, with a 4 byte array from
+ * BlockByteReader.getHeaderBytes() per record, and through
+ * BlockByteReader.getHeader(), which reads the header without allocating.
+ * The time to open the whole WorkBook is reported as well.
+ * <p/>
+ * Pass the path of a large .xls file, or nothing to generate one, ie:
+ * <p/>
+ * java -Xmx1024M docs.samples.Performance.RecordScanBenchmark big.xls
+ */
+public class RecordScanBenchmark
+{
+	private static final Logger log = LoggerFactory.getLogger( RecordScanBenchmark.class );
+	private static final int ROWS = 50000;
+	private static final int COLS = 10;
+	private static final int RUNS = 5;
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			byte[] xls;
+			if( args.length > 0 )
+			{
+				xls = readFile( new File( args[0] ) );
+			}
+			else
+			{
+				xls = generate();
+			}
+
+			BlockByteReader reader = new LEOFile( new ByteArrayInputStream( xls ) ).getXLSBlockBytes();
+			int records = 0;
+			for( int run = 0; run < RUNS; run++ )
+			{
+				long t = System.nanoTime();
+				records = scanHeaderBytes( reader );
+				long before = System.nanoTime() - t;
+
+				t = System.nanoTime();
+				scanHeaders( reader );
+				long after = System.nanoTime() - t;
+
+				log.info( "run " + run + ": " + records + " records, getHeaderBytes: " + perSecond( records, before ) + " records/sec, " +
+						          "getHeader: " + perSecond( records, after ) + " records/sec" );
+			}
+
+			for( int run = 0; run < RUNS; run++ )
+			{
+				long t = System.nanoTime();
+				WorkBookHandle book = new WorkBookHandle( new ByteArrayInputStream( xls ) );
+				long open = System.nanoTime() - t;
+				log.info( "run " + run + ": opened WorkBook at " + perSecond( records, open ) + " records/sec" );
+				book.close();
+			}
+		}
+		catch( Exception e )
+		{
+			log.error( "RecordScanBenchmark failed.", e );
+		}
+	}
+
+	/**
+	 * Walks the record headers the way initWorkBook did before getHeader().
+	 */
+	private static int scanHeaderBytes( BlockByteReader reader )
+	{
+		int blen = reader.getLength();
+		int records = 0;
+		int check = 0;
+		for( int i = 0; i <= (blen - 4); )
+		{
+			byte[] headerbytes = reader.getHeaderBytes( i );
+			short opcode = ByteTools.readShort( headerbytes[0], headerbytes[1] );
+			short reclen = ByteTools.readShort( headerbytes[2], headerbytes[3] );
+			if( (opcode == 0) || (reclen < 0) )
+			{
+				break;
+			}
+			check += opcode;
+			records++;
+			i += reclen + 4;
+		}
+		return (check == 0) ? -1 : records;
+	}
+
+	/**
+	 * Walks the record headers the way initWorkBook does now.
+	 */
+	private static int scanHeaders( BlockByteReader reader )
+	{
+		int blen = reader.getLength();
+		int records = 0;
+		int check = 0;
+		for( int i = 0; i <= (blen - 4); )
+		{
+			int header = reader.getHeader( i );
+			short opcode = (short) header;
+			short reclen = (short) (header >>> 16);
+			if( (opcode == 0) || (reclen < 0) )
+			{
+				break;
+			}
+			check += opcode;
+			records++;
+			i += reclen + 4;
+		}
+		return (check == 0) ? -1 : records;
+	}
+
+	private static long perSecond( int records, long nanos )
+	{
+		return (records * 1000000000L) / Math.max( nanos, 1 );
+	}
+
+	private static byte[] generate() throws Exception
+	{
+		log.info( "Generating a WorkBook of " + (ROWS * COLS) + " cells..." );
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.setFastCellAdds( true );
+		for( int r = 0; r < ROWS; r++ )
+		{
+			for( int c = 0; c < COLS; c++ )
+			{
+				sheet.add( (r * COLS) + c + 0.5, r, c );
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out );
+		book.close();
+		return out.toByteArray();
+	}
+
+	private static byte[] readFile( File f ) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream( f );
+		try
+		{
+			byte[] buf = new byte[8192];
+			int n;
+			while( (n = in.read( buf )) > 0 )
+			{
+				out.write( buf, 0, n );
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return out.toByteArray();
+	}
+}
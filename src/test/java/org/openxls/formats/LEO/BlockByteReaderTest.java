@@ -0,0 +1,57 @@
+package org.openxls.formats.LEO;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockByteReaderTest
+{
+	@Test
+	public void testStreamViewReadsSameBytes() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int r = 0; r < 2000; r++ )
+		{
+			sheet.add( r + 0.25, r, 0 );
+			sheet.add( "text " + r, r, 1 );
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out );
+		byte[] xls = out.toByteArray();
+
+		Storage workbook = new LEOFile( new ByteArrayInputStream( xls ) ).getStorageByName( "Workbook" );
+		BlockByteReader blocks = workbook.getBlockReader();
+		BlockByteReader view = workbook.getBlockReader();
+		view.initStreamView();
+		assertTrue( view.hasStreamView() );
+
+		int len = blocks.getLength();
+		byte[] expected = new byte[len];
+		byte[] actual = new byte[len];
+		assertEquals( len, blocks.readBytes( 0, expected, 0, len ) );
+		assertEquals( len, view.readBytes( 0, actual, 0, len ) );
+		assertArrayEquals( expected, actual );
+
+		int records = 0;
+		for( int i = 0; i <= (len - 4); records++ )
+		{
+			int header = view.getHeader( i );
+			assertEquals( blocks.getHeader( i ), header );
+			assertArrayEquals( blocks.getHeaderBytes( i ), view.getHeaderBytes( i ) );
+			if( (short) header == 0 )
+			{
+				break;
+			}
+			i += (header >>> 16) + 4;
+		}
+		assertTrue( records > 2000 );
+	}
+}
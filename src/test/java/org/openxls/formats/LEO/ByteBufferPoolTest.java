@@ -0,0 +1,80 @@
+package org.openxls.formats.LEO;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ByteBufferPoolTest
+{
+	@Test
+	public void testReadGrowsPastTheFirstBuffer() throws Exception
+	{
+		byte[] data = new byte[200000];
+		for( int i = 0; i < data.length; i++ )
+		{
+			data[i] = (byte) (i * 7);
+		}
+		// no available() hint, so the buffer has to grow
+		InputStream in = new ByteArrayInputStream( data )
+		{
+			@Override
+			public synchronized int available()
+			{
+				return 0;
+			}
+		};
+		ByteBuffer buf = ByteBufferPool.readStream( in );
+		assertEquals( data.length, buf.limit() );
+		assertEquals( data.length, buf.capacity() );
+		byte[] read = new byte[data.length];
+		buf.get( read );
+		assertArrayEquals( data, read );
+	}
+
+	@Test
+	public void testWorkBookBufferIsReused() throws Exception
+	{
+		byte[] xls = new WorkBookHandle().getBytes();
+		ByteBufferPool pool = new ByteBufferPool( 2, true );
+
+		WorkBookHandle book = new WorkBookHandle( new ByteArrayInputStream( xls ), pool );
+		assertEquals( 3, book.getNumWorkSheets() );
+		assertEquals( "Sheet1", book.getWorkSheet( 0 ).getSheetName() );
+		book.getWorkSheet( 0 ).add( "pooled", "A1" );
+		assertEquals( 0, pool.size() );
+		book.close();
+		assertEquals( 1, pool.size() );
+
+		ByteBuffer kept = pool.take( xls.length );
+		assertTrue( kept.isDirect() );
+		pool.release( kept );
+		pool.release( kept );
+		assertEquals( 1, pool.size() );
+
+		book = new WorkBookHandle( new ByteArrayInputStream( xls ), pool );
+		assertEquals( 0, pool.size() );
+		assertEquals( "Sheet3", book.getWorkSheet( 2 ).getSheetName() );
+		book.close();
+		assertSame( kept, pool.take( xls.length ) );
+	}
+
+	@Test
+	public void testStreamWorkBookMatchesBytes() throws Exception
+	{
+		WorkBookHandle src = new WorkBookHandle();
+		src.getWorkSheet( 1 ).add( 42.5, "C3" );
+		byte[] xls = src.getBytes();
+
+		WorkBookHandle book = new WorkBookHandle( new ByteArrayInputStream( xls ) );
+		assertEquals( "42.5", book.getWorkSheet( 1 ).getCell( "C3" ).getStringVal() );
+		assertArrayEquals( new WorkBookHandle( xls ).getBytes(), book.getBytes() );
+	}
+}
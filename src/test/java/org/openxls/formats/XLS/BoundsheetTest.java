@@ -1,7 +1,9 @@
 package org.openxls.formats.XLS;
 
 import org.openxls.ExtenXLS.CellHandle;
+import org.openxls.ExtenXLS.CellRange;
 import org.openxls.ExtenXLS.ColHandle;
+import org.openxls.ExtenXLS.FormatHandle;
 import org.openxls.ExtenXLS.WorkBookHandle;
 import org.openxls.ExtenXLS.WorkSheetHandle;
 import org.junit.Before;
@@ -13,10 +15,13 @@ import org.openxls.formats.XLS.CellRec;
 import org.openxls.formats.XLS.Labelsst;
 import org.openxls.formats.XLS.Mulblank;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 /**
  * User: npratt
@@ -111,6 +116,152 @@ public class BoundsheetTest
 		}
 	}
 
+	@Test
+	public void testCompactCellsAreMaterializedOnDemand() throws Exception
+	{
+		System.getProperties().put( XLSConstants.COMPACTCELLS_PROP, "true" );
+		try( InputStream inp = getClass().getResourceAsStream( "/Mulblank2.xls" ) )
+		{
+			WorkBookHandle wbh = new WorkBookHandle( inp );
+			WorkSheetHandle worksheetHandle = wbh.getWorkSheet( 0 );
+			Boundsheet sheet = worksheetHandle.getMysheet();
+			int compact = sheet.getCompactCellCount();
+			assertEquals( true, compact > 0 );
+
+			CellHandle cellHandle = worksheetHandle.getCell( "D4" );
+			assertEquals( compact - 1, sheet.getCompactCellCount() );
+			assertEquals( "D4", cellHandle.getStringVal() );
+
+			CellHandle[] cells = worksheetHandle.getCol( 0 ).getCells();
+			assertEquals( 6, cells.length );
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wbh.write( out );
+			WorkBookHandle reread = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+			assertEquals( wbh.getWorkSheet( 0 ).getCells().length, reread.getWorkSheet( 0 ).getCells().length );
+			assertEquals( 0, sheet.getCompactCellCount() );
+		}
+		finally
+		{
+			System.getProperties().remove( XLSConstants.COMPACTCELLS_PROP );
+		}
+	}
+
+	@Test
+	public void testApplyIxfeFormatsBlockRowsAndColumns() throws Exception
+	{
+		WorkBookHandle wbh = new WorkBookHandle();
+		WorkSheetHandle sheet = wbh.getWorkSheet( 0 );
+		for( int r = 0; r < 10; r++ )
+		{
+			sheet.add( r * 1.5, r, 0 );
+			sheet.add( "text " + r, r, 1 );
+			sheet.add( r, r, 2 );
+		}
+		FormatHandle fmt = new FormatHandle( wbh );
+		fmt.setFormatPattern( "0.00" );
+		int id = fmt.getFormatId();
+
+		sheet.setFormatId( 0, 0, 9, 1, id, false );
+		for( int r = 0; r < 10; r++ )
+		{
+			assertEquals( id, sheet.getCell( r, 0 ).getFormatId() );
+			assertEquals( id, sheet.getCell( r, 1 ).getFormatId() );
+			assertNotEquals( id, sheet.getCell( r, 2 ).getFormatId() );
+		}
+
+		sheet.setFormatId( 0, 3, 2, 3, id, true );
+		assertEquals( id, sheet.getCell( 2, 3 ).getFormatId() );
+
+		sheet.setFormatId( 20, 0, 21, 255, id, false );
+		assertEquals( id, sheet.getRow( 20 ).getFormatId() );
+		assertEquals( id, sheet.getRow( 21 ).getFormatId() );
+
+		sheet.setFormatId( 0, 5, 65535, 6, id, false );
+		Boundsheet bs = sheet.getMysheet();
+		assertEquals( id, bs.getColInfo( 5 ).getIxfe() );
+		assertEquals( id, bs.getColInfo( 6 ).getIxfe() );
+		assertEquals( null, bs.getColInfo( 7 ) );
+
+		bs.createColinfo( 8, 12, 3000, 0, 0 );
+		sheet.setFormatId( 0, 10, 65535, 10, id, false );
+		assertEquals( id, bs.getColInfo( 10 ).getIxfe() );
+		assertEquals( 10, bs.getColInfo( 10 ).getColFirst() );
+		assertEquals( 10, bs.getColInfo( 10 ).getColLast() );
+		assertEquals( 0, bs.getColInfo( 9 ).getIxfe() );
+		assertEquals( 3000, bs.getColInfo( 9 ).getColWidth() );
+		assertEquals( 0, bs.getColInfo( 11 ).getIxfe() );
+		assertEquals( 12, bs.getColInfo( 11 ).getColLast() );
+	}
+
+	@Test
+	public void testApplyIxfeFormatsWholeColumnsAndRows() throws Exception
+	{
+		WorkBookHandle wbh = new WorkBookHandle();
+		WorkSheetHandle sheet = wbh.getWorkSheet( 0 );
+		for( int r = 0; r < 10; r++ )
+		{
+			sheet.add( r, r, 0 );
+			sheet.add( r, r, 1 );
+			sheet.add( r, r, 2 );
+		}
+		FormatHandle fmt = new FormatHandle( wbh );
+		fmt.setFormatPattern( "0.00" );
+		int id = fmt.getFormatId();
+		Boundsheet bs = sheet.getMysheet();
+
+		sheet.setFormatId( "A:A", id );
+		assertEquals( id, bs.getColInfo( 0 ).getIxfe() );
+		for( int r = 0; r < 10; r++ )
+		{
+			assertEquals( id, sheet.getCell( r, 0 ).getFormatId() );
+			assertNotEquals( id, sheet.getCell( r, 1 ).getFormatId() );
+		}
+
+		sheet.setFormatId( "1:2", id );
+		assertEquals( id, sheet.getRow( 0 ).getFormatId() );
+		assertEquals( id, sheet.getRow( 1 ).getFormatId() );
+		assertEquals( id, sheet.getCell( 1, 2 ).getFormatId() );
+		assertNotEquals( id, sheet.getCell( 2, 2 ).getFormatId() );
+
+		new CellRange( sheet.getSheetName() + "!C:C", wbh, false ).setFormatID( id );
+		assertEquals( id, bs.getColInfo( 2 ).getIxfe() );
+		assertEquals( id, sheet.getCell( 9, 2 ).getFormatId() );
+		assertNotEquals( id, sheet.getCell( 9, 1 ).getFormatId() );
+	}
+
+	@Test
+	public void testApplyIxfeFormatsCompactCellsAndMulblanks() throws Exception
+	{
+		System.getProperties().put( XLSConstants.COMPACTCELLS_PROP, "true" );
+		try( InputStream inp = getClass().getResourceAsStream( "/Mulblank2.xls" ) )
+		{
+			WorkBookHandle wbh = new WorkBookHandle( inp );
+			WorkSheetHandle sheet = wbh.getWorkSheet( 0 );
+			FormatHandle fmt = new FormatHandle( wbh );
+			fmt.setFormatPattern( "0.00" );
+			int id = fmt.getFormatId();
+			int compact = sheet.getMysheet().getCompactCellCount();
+
+			sheet.setFormatId( "A1:Z100", id );
+			assertEquals( compact, sheet.getMysheet().getCompactCellCount() );
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wbh.write( out );
+			WorkBookHandle reread = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+			CellHandle[] cells = reread.getWorkSheet( 0 ).getCells();
+			assertEquals( true, cells.length > 0 );
+			for( CellHandle cell : cells )
+			{
+				assertEquals( cell.getCellAddress(), "0.00", cell.getFormatPattern() );
+			}
+		}
+		finally
+		{
+			System.getProperties().remove( XLSConstants.COMPACTCELLS_PROP );
+		}
+	}
+
 	static Blank createBlank( int row, int col )
 	{
 		Blank blank = new Blank( );
@@ -0,0 +1,102 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.CellHandle;
+import org.openxls.ExtenXLS.FormatHandle;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FormatIndexTest
+{
+	@Test
+	public void testFontIndexMatchesLinearScan() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkBook wb = book.getWorkBook();
+		for( int i = 0; i < 50; i++ )
+		{
+			Font f = new Font( "Font" + (i % 10), (i % 2) == 0 ? 400 : 700, 200 + (i * 20) );
+			if( wb.getFontIdx( f ) == -1 )
+			{
+				wb.insertFont( f );
+			}
+		}
+		for( int i = 0; i < 50; i++ )
+		{
+			Font f = new Font( "Font" + (i % 10), (i % 2) == 0 ? 400 : 700, 200 + (i * 20) );
+			assertEquals( scan( wb, f ), wb.getFontIdx( f ) );
+		}
+		assertEquals( -1, wb.getFontIdx( new Font( "Missing", 400, 200 ) ) );
+		book.close();
+	}
+
+	@Test
+	public void testFontIndexFollowsMutation() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkBook wb = book.getWorkBook();
+		Font f = new Font( "Indexed", 400, 220 );
+		int idx = wb.insertFont( f ) + 1;
+		assertEquals( idx, wb.getFontIdx( new Font( "Indexed", 400, 220 ) ) );
+
+		wb.getFont( idx ).setFontHeight( 300 );
+		wb.getFont( idx ).setBold( true );
+		assertEquals( -1, wb.getFontIdx( new Font( "Indexed", 400, 220 ) ) );
+		Font bold = new Font( "Indexed", 400, 300 );
+		bold.setBold( true );
+		assertEquals( idx, wb.getFontIdx( bold ) );
+		assertEquals( scan( wb, bold ), wb.getFontIdx( bold ) );
+		book.close();
+	}
+
+	@Test
+	public void testFormatCacheFollowsXfUpdates() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int i = 0; i < 20; i++ )
+		{
+			sheet.add( i, "A" + (i + 1) );
+			CellHandle cell = sheet.getCell( "A" + (i + 1) );
+			cell.setFormatPattern( (i % 2) == 0 ? "0.00" : "0%" );
+			cell.setFontColor( FormatHandle.COLOR_RED );
+		}
+		WorkBook wb = book.getWorkBook();
+		List xfs = wb.getXfrecs();
+		for( Object o : wb.getFormatCache().keySet() )
+		{
+			Xf xf = (Xf) wb.getFormatCache().get( o );
+			assertEquals( o, xf.toString() );
+			assertTrue( xfs.contains( xf ) );
+		}
+
+		Xf xf = (Xf) xfs.get( xfs.size() - 1 );
+		String before = xf.toString();
+		assertSame( xf, wb.getFormatCache().get( before ) );
+		xf.setFormatPattern( "0.000" );
+		wb.updateFormatCache( xf );
+		assertFalse( wb.getFormatCache().containsKey( before ) );
+		assertSame( xf, wb.getFormatCache().get( xf.toString() ) );
+		book.close();
+	}
+
+	private static int scan( WorkBook wb, Font f )
+	{
+		List fonts = wb.getFontRecs();
+		for( int i = fonts.size() - 1; i >= 0; i-- )
+		{
+			if( f.matches( (Font) fonts.get( i ) ) )
+			{
+				return i > 3 ? i + 1 : i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,131 @@
+package org.openxls.formats.XLS;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openxls.ExtenXLS.CellRange;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class LazySheetsTest
+{
+	@After
+	public void tearDown()
+	{
+		System.getProperties().remove( WorkBookHandle.LAZYSHEETS_PROP );
+	}
+
+	private static byte[] createBook() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		for( int s = 0; s < 3; s++ )
+		{
+			WorkSheetHandle sheet = book.getWorkSheet( s );
+			for( int r = 0; r < 100; r++ )
+			{
+				sheet.add( "shared", "A" + (r + 1) );
+				sheet.add( (s * 1000) + r, "B" + (r + 1) );
+			}
+		}
+		new CellRange( "Sheet2!C1:D2", book, true ).mergeCells( false );
+		book.getWorkSheet( 1 ).add( "=Sheet3!B2*2", "E1" );
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out, WorkBookHandle.FORMAT_XLS );
+		book.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testSheetsAreParsedOnFirstAccess() throws Exception
+	{
+		byte[] file = createBook();
+		System.getProperties().put( WorkBookHandle.LAZYSHEETS_PROP, "true" );
+		WorkBookHandle book = new WorkBookHandle( new ByteArrayInputStream( file ) );
+		WorkBook wb = book.getWorkBook();
+		assertTrue( wb.isLazySheets() );
+		assertTrue( ((Boundsheet) wb.getSheetVect().get( 1 )).isDeferred() );
+		assertTrue( ((Boundsheet) wb.getSheetVect().get( 2 )).isDeferred() );
+
+		WorkSheetHandle sheet = book.getWorkSheet( "Sheet2" );
+		assertFalse( sheet.getMysheet().isDeferred() );
+		assertEquals( 1099, sheet.getCell( "B100" ).getIntVal() );
+		assertEquals( "shared", sheet.getCell( "A50" ).getStringVal() );
+		assertNotNull( sheet.getCell( "C1" ).getMergedCellRange() );
+		// the formula refers to Sheet3, which is parsed along with Sheet2
+		assertFalse( ((Boundsheet) wb.getSheetVect().get( 2 )).isDeferred() );
+		assertEquals( 4002, sheet.getCell( "E1" ).getIntVal() );
+		book.close();
+	}
+
+	@Test
+	public void testUnparsedSheetsAreCopiedOnWrite() throws Exception
+	{
+		byte[] file = createBook();
+		System.getProperties().put( WorkBookHandle.LAZYSHEETS_PROP, "true" );
+		WorkBookHandle book = new WorkBookHandle( new ByteArrayInputStream( file ) );
+		WorkSheetHandle sheet = book.getWorkSheet( "Sheet1" );
+		sheet.getCell( "A1" ).setVal( "changed" );
+		sheet.getCell( "A2" ).setBold( true );
+		sheet.add( "new", "F200" );
+		assertTrue( ((Boundsheet) book.getWorkBook().getSheetVect().get( 1 )).isDeferred() );
+		assertTrue( ((Boundsheet) book.getWorkBook().getSheetVect().get( 2 )).isDeferred() );
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out, WorkBookHandle.FORMAT_XLS );
+		book.close();
+		System.getProperties().remove( WorkBookHandle.LAZYSHEETS_PROP );
+
+		WorkBookHandle read = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+		WorkSheetHandle s1 = read.getWorkSheet( "Sheet1" );
+		assertEquals( "changed", s1.getCell( "A1" ).getStringVal() );
+		assertEquals( "new", s1.getCell( "F200" ).getStringVal() );
+		for( int s = 1; s < 3; s++ )
+		{
+			WorkSheetHandle sheet2 = read.getWorkSheet( s );
+			assertEquals( "shared", sheet2.getCell( "A1" ).getStringVal() );
+			assertFalse( sheet2.getCell( "A2" ).getFont().getIsBold() );
+			assertEquals( (s * 1000) + 99, sheet2.getCell( "B100" ).getIntVal() );
+		}
+		read.close();
+	}
+
+	@Test
+	public void testStructuralEditsShiftReferencesOfUnparsedSheets() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		for( int r = 1; r <= 10; r++ )
+		{
+			book.getWorkSheet( 0 ).add( r, "A" + r );
+			book.getWorkSheet( 2 ).add( r, "B" + r );
+		}
+		book.getWorkSheet( 1 ).add( "=SUM(Sheet1!A1:A10)", "A2" );
+		book.getWorkSheet( 1 ).add( "=Sheet3!B2*2", "E1" );
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out, WorkBookHandle.FORMAT_XLS );
+		book.close();
+
+		System.getProperties().put( WorkBookHandle.LAZYSHEETS_PROP, "true" );
+		book = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+		book.getWorkSheet( "Sheet1" ).insertRow( 0 );
+		assertFalse( ((Boundsheet) book.getWorkBook().getSheetVect().get( 1 )).isDeferred() );
+		book.getWorkSheet( "Sheet3" ).insertCol( "A" );
+		out = new ByteArrayOutputStream();
+		book.write( out, WorkBookHandle.FORMAT_XLS );
+		book.close();
+		System.getProperties().remove( WorkBookHandle.LAZYSHEETS_PROP );
+
+		WorkBookHandle read = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+		WorkSheetHandle sheet2 = read.getWorkSheet( "Sheet2" );
+		assertEquals( "=SUM(Sheet1!A1:A11)", sheet2.getCell( "A2" ).getFormulaHandle().getFormulaString() );
+		assertEquals( "=Sheet3!C2*2", sheet2.getCell( "E1" ).getFormulaHandle().getFormulaString() );
+		read.close();
+	}
+}
@@ -0,0 +1,247 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OOXMLEventReaderTest
+{
+	private static final String[][] PARTS = {
+			{ "_rels/.rels",
+			  "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+					  "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>" +
+					  "</Relationships>" },
+			{ "xl/_rels/workbook.xml.rels",
+			  "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+					  "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet2.xml\"/>" +
+					  "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"/xl/worksheets/sheet1.xml\"/>" +
+					  "<Relationship Id=\"rId3\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\" Target=\"sharedStrings.xml\"/>" +
+					  "<Relationship Id=\"rId4\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>" +
+					  "</Relationships>" },
+			{ "xl/workbook.xml",
+			  "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">" +
+					  "<workbookPr date1904=\"1\"/><sheets>" +
+					  "<sheet name=\"Data\" sheetId=\"1\" r:id=\"rId1\"/><sheet name=\"Other\" sheetId=\"2\" r:id=\"rId2\"/>" +
+					  "</sheets></workbook>" },
+			{ "xl/sharedStrings.xml",
+			  "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"2\" uniqueCount=\"2\">" +
+					  "<si><t>Name</t></si><si><r><t>ri</t></r><r><rPr><b/></rPr><t>ch</t></r><rPh><t>x</t></rPh></si>" +
+					  "</sst>" },
+			{ "xl/styles.xml",
+			  "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" +
+					  "<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"0.000\"/></numFmts>" +
+					  "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\"/></cellStyleXfs>" +
+					  "<cellXfs count=\"3\"><xf numFmtId=\"0\"/><xf numFmtId=\"14\"/><xf numFmtId=\"164\"/></cellXfs>" +
+					  "</styleSheet>" },
+			{ "xl/worksheets/sheet1.xml",
+			  "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>" +
+					  "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"C1\" t=\"s\"><v>1</v></c></row>" +
+					  "<row r=\"2\" ht=\"30\" hidden=\"1\" s=\"2\" customFormat=\"1\"><c r=\"A2\"/></row>" +
+					  "<row r=\"4\"><c r=\"B4\" s=\"1\"><v>40000</v></c><c t=\"b\"><v>1</v></c>" +
+					  "<c r=\"AA4\" t=\"e\"><f>1/0</f><v>#DIV/0!</v></c><c r=\"AB4\" t=\"inlineStr\"><is><t>inline</t></is></c>" +
+					  "<c r=\"AC4\" s=\"2\"><f>1+1</f><v>2</v></c></row>" +
+					  "</sheetData></worksheet>" },
+			{ "xl/worksheets/sheet2.xml",
+			  "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>" +
+					  "<row><c t=\"str\"><v>first</v></c></row><row><c><v>-1.5</v></c></row>" +
+					  "</sheetData></worksheet>" }
+	};
+
+	@Test
+	public void testReadsCellsInRowOrder() throws Exception
+	{
+		File file = writePackage();
+		final List<String> events = new ArrayList<>();
+		try( ZipFile zip = new ZipFile( file ) )
+		{
+			OOXMLEventReader reader = new OOXMLEventReader( zip );
+			reader.read( new SheetRowListener()
+			{
+				@Override
+				public void startSheet( int sheet, String name )
+				{
+					events.add( "sheet " + name );
+				}
+
+				@Override
+				public void startRow( int row )
+				{
+					events.add( "row " + row );
+				}
+
+				@Override
+				public void rowInfo( int row, int height, boolean hidden, int ixfe )
+				{
+					if( (height != -1) || hidden || (ixfe != -1) )
+					{
+						events.add( "info " + row + " " + height + " " + hidden + " " + ixfe );
+					}
+				}
+
+				@Override
+				public void numberCell( int row, int col, int ixfe, double value )
+				{
+					events.add( col + "=" + value + "/" + ixfe );
+				}
+
+				@Override
+				public void stringCell( int row, int col, int ixfe, String value )
+				{
+					events.add( col + "=" + value );
+				}
+
+				@Override
+				public void booleanCell( int row, int col, int ixfe, boolean value )
+				{
+					events.add( col + "=" + value );
+				}
+
+				@Override
+				public void errorCell( int row, int col, int ixfe, int error )
+				{
+					events.add( col + "=#" + error );
+				}
+
+				@Override
+				public void endRow( int row )
+				{
+				}
+
+				@Override
+				public void endSheet( int sheet )
+				{
+					events.add( "end " + sheet );
+				}
+			} );
+
+			assertEquals( 2, reader.getSheetNames().length );
+			assertTrue( reader.is1904() );
+			assertTrue( reader.isDateFormat( 1 ) );
+			assertFalse( reader.isDateFormat( 2 ) );
+			assertEquals( "0.000", reader.getFormatPattern( 2 ) );
+		}
+
+		assertEquals( "[sheet Data, row 0, 0=Name, 2=rich, info 1 600 true 2, row 3, 1=40000.0/1, 2=true, 26=#7, 27=inline, 28=2.0/2, end 0, " +
+				              "sheet Other, row 0, 0=first, row 1, 0=-1.5/0, end 1]", events.toString() );
+	}
+
+	@Test
+	public void testClosesPartStreams() throws Exception
+	{
+		final int[] open = { 0, 0 };
+		try( ZipFile zip = new ZipFile( writePackage() )
+		{
+			@Override
+			public InputStream getInputStream( ZipEntry entry ) throws IOException
+			{
+				open[0]++;
+				open[1]++;
+				return new FilterInputStream( super.getInputStream( entry ) )
+				{
+					private boolean closed;
+
+					@Override
+					public void close() throws IOException
+					{
+						if( !closed )
+						{
+							open[0]--;
+							closed = true;
+						}
+						super.close();
+					}
+				};
+			}
+		} )
+		{
+			new OOXMLEventReader( zip ).read( new SheetRowListener()
+			{
+				@Override
+				public void startSheet( int sheet, String name )
+				{
+				}
+
+				@Override
+				public void startRow( int row )
+				{
+				}
+
+				@Override
+				public void rowInfo( int row, int height, boolean hidden, int ixfe )
+				{
+				}
+
+				@Override
+				public void numberCell( int row, int col, int ixfe, double value )
+				{
+				}
+
+				@Override
+				public void stringCell( int row, int col, int ixfe, String value )
+				{
+				}
+
+				@Override
+				public void booleanCell( int row, int col, int ixfe, boolean value )
+				{
+				}
+
+				@Override
+				public void errorCell( int row, int col, int ixfe, int error )
+				{
+				}
+
+				@Override
+				public void endRow( int row )
+				{
+				}
+
+				@Override
+				public void endSheet( int sheet )
+				{
+				}
+			} );
+		}
+		// rels, sharedStrings, styles, workbook and both sheets
+		assertEquals( 7, open[1] );
+		assertEquals( 0, open[0] );
+	}
+
+	@Test
+	public void testParseCol() throws Exception
+	{
+		assertEquals( 0, OOXMLEventReader.parseCol( "A1" ) );
+		assertEquals( 25, OOXMLEventReader.parseCol( "Z99" ) );
+		assertEquals( 26, OOXMLEventReader.parseCol( "AA1" ) );
+		assertEquals( 16383, OOXMLEventReader.parseCol( "XFD1048576" ) );
+	}
+
+	private static File writePackage() throws IOException
+	{
+		File file = File.createTempFile( "OOXMLEventReaderTest", ".xlsx" );
+		file.deleteOnExit();
+		try( ZipOutputStream out = new ZipOutputStream( new FileOutputStream( file ) ) )
+		{
+			for( String[] part : PARTS )
+			{
+				out.putNextEntry( new ZipEntry( part[0] ) );
+				out.write( part[1].getBytes( "UTF-8" ) );
+				out.closeEntry();
+			}
+		}
+		return file;
+	}
+}
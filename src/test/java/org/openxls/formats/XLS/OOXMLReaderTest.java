@@ -0,0 +1,158 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.CellHandle;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OOXMLReaderTest
+{
+	@Test
+	public void testSheetDataIsBufferedApart() throws Exception
+	{
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+				"<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" +
+				"<cols><col min=\"1\" max=\"1\" width=\"12\"/></cols>" +
+				"<sheetData>" +
+				"<row r=\"1\" ht=\"20\" customHeight=\"1\">" +
+				"<c r=\"A1\" t=\"s\"><v>3</v></c>" +
+				"<c r=\"B1\" s=\"2\"/>" +
+				"<c r=\"C1\" t=\"inlineStr\"><is><t>inline</t></is></c>" +
+				"</row>" +
+				"<row r=\"3\">" +
+				"<c r=\"A3\"><f t=\"shared\" ref=\"A3:A4\" si=\"0\">B3*2</f><v>4</v></c>" +
+				"</row>" +
+				"</sheetData>" +
+				"<mergeCells count=\"1\"><mergeCell ref=\"A1:B1\"/></mergeCells>" +
+				"</worksheet>";
+		SheetDataBuffer buf = SheetDataBuffer.read( new ByteArrayInputStream( xml.getBytes( "UTF-8" ) ) );
+
+		String rest = new String( buf.getXml(), "UTF-8" );
+		assertTrue( rest, rest.contains( "</cols><sheetData/><mergeCells" ) );
+		assertTrue( rest, !rest.contains( "<row" ) );
+
+		List<SheetDataBuffer.RowData> rows = buf.getRows();
+		assertEquals( 2, rows.size() );
+		assertEquals( "r=1 ht=20 customHeight=1 ", attrs( rows.get( 0 ).attrs ) );
+		assertEquals( 3, rows.get( 0 ).cells.size() );
+
+		SheetDataBuffer.CellData c = rows.get( 0 ).cells.get( 0 );
+		assertEquals( "s", c.type );
+		assertEquals( "3", c.value );
+		c = rows.get( 0 ).cells.get( 1 );
+		assertEquals( 0, c.rc[0] );
+		assertEquals( 1, c.rc[1] );
+		assertEquals( 2, c.formatId );
+		assertNull( c.value );
+		assertEquals( "inline", rows.get( 0 ).cells.get( 2 ).inlineString );
+
+		c = rows.get( 1 ).cells.get( 0 );
+		assertEquals( "A3", c.addr );
+		assertEquals( "n", c.type );
+		assertEquals( "B3*2", c.formula );
+		assertEquals( "t=shared ref=A3:A4 si=0 ", attrs( c.formulaAttrs ) );
+		assertEquals( "4", c.value );
+	}
+
+	@Test
+	public void testWholePartIsKeptWithoutSheetData() throws Exception
+	{
+		String xml = "<worksheet><sheetData/></worksheet>";
+		SheetDataBuffer buf = SheetDataBuffer.read( new ByteArrayInputStream( xml.getBytes( "UTF-8" ) ) );
+		assertEquals( xml, new String( buf.getXml(), "UTF-8" ) );
+		assertEquals( 0, buf.getRows().size() );
+	}
+
+	@Test
+	public void testBufferedRowsBindAsParsedRows() throws Exception
+	{
+		StringBuilder xml = new StringBuilder( "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>" );
+		for( int r = 1; r <= 200; r++ )
+		{
+			xml.append( "<row r=\"" ).append( r ).append( (r % 7) == 0 ? "\" hidden=\"1\">" : "\">" );
+			xml.append( "<c r=\"A" ).append( r ).append( "\"><v>" ).append( r * 1.5 ).append( "</v></c>" );
+			xml.append( "<c r=\"B" ).append( r ).append( "\" t=\"str\"><v>text " ).append( r ).append( "</v></c>" );
+			xml.append( "<c r=\"C" ).append( r ).append( "\" t=\"b\"><v>" ).append( r % 2 ).append( "</v></c>" );
+			xml.append( "<c r=\"D" ).append( r ).append( "\" s=\"2\"/>" );
+			xml.append( "<c r=\"E" ).append( r ).append( "\" t=\"inlineStr\"><is><t>inline " ).append( r ).append( "</t></is></c>" );
+			xml.append( "<c r=\"F" ).append( r ).append( "\"><f>A" ).append( r ).append( "*2</f><v>" ).append( r * 3.0 ).append( "</v></c></row>" );
+		}
+		xml.append( "</sheetData></worksheet>" );
+		byte[] part = xml.toString().getBytes( "UTF-8" );
+
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle parsed = book.getWorkSheet( 0 );
+		ArrayList parsedFormulas = new ArrayList();
+		HashMap parsedStrings = new HashMap();
+		parsed.getMysheet().parseOOXML( book,
+		                                parsed,
+		                                new ByteArrayInputStream( part ),
+		                                new ArrayList(),
+		                                parsedFormulas,
+		                                new ArrayList(),
+		                                parsedStrings,
+		                                null );
+
+		WorkSheetHandle bound = book.getWorkSheet( 1 );
+		ArrayList boundFormulas = new ArrayList();
+		HashMap boundStrings = new HashMap();
+		SheetDataBuffer buf = SheetDataBuffer.read( new ByteArrayInputStream( part ) );
+		bound.getMysheet().parseOOXML( book,
+		                               bound,
+		                               new ByteArrayInputStream( buf.getXml() ),
+		                               new ArrayList(),
+		                               boundFormulas,
+		                               new ArrayList(),
+		                               boundStrings,
+		                               buf );
+
+		List<String> expected = cells( parsed );
+		assertEquals( 200 * 5, expected.size() );
+		assertEquals( expected, cells( bound ) );
+		assertEquals( 200, parsedFormulas.size() );
+		assertEquals( parsedFormulas.size(), boundFormulas.size() );
+		for( int i = 0; i < parsedFormulas.size(); i++ )
+		{
+			String[] f = ((String[]) parsedFormulas.get( i )).clone();
+			f[0] = parsed.getSheetName();
+			String[] g = ((String[]) boundFormulas.get( i )).clone();
+			g[0] = parsed.getSheetName();
+			assertEquals( Arrays.asList( f ), Arrays.asList( g ) );
+		}
+		assertEquals( 200, boundStrings.size() );
+		assertEquals( "inline 7", boundStrings.get( bound.getSheetName() + "!E7" ) );
+		assertEquals( parsedStrings.get( parsed.getSheetName() + "!E7" ), boundStrings.get( bound.getSheetName() + "!E7" ) );
+		book.close();
+	}
+
+	private static List<String> cells( WorkSheetHandle sheet ) throws Exception
+	{
+		List<String> cells = new ArrayList<>();
+		for( CellHandle cell : sheet.getCells() )
+		{
+			cells.add( cell.getCellAddress() + "=" + cell.getStringVal() + ":" + cell.getFormatId() +
+					           (cell.getRow().isHidden() ? ":hidden" : "") );
+		}
+		return cells;
+	}
+
+	private static String attrs( String[] attrs )
+	{
+		StringBuilder sb = new StringBuilder();
+		for( int i = 0; i < attrs.length; i += 2 )
+		{
+			sb.append( attrs[i] ).append( '=' ).append( attrs[i + 1] ).append( ' ' );
+		}
+		return sb.toString();
+	}
+}
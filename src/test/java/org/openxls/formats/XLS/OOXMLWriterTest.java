@@ -0,0 +1,186 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class OOXMLWriterTest
+{
+	@Test
+	public void testSheetXmlWriterFormatsWithoutStrings() throws Exception
+	{
+		StringWriter out = new StringWriter();
+		SheetXmlWriter xml = new SheetXmlWriter( out );
+		xml.writeCellRef( 0, 0 ).write( ' ' ).writeCellRef( 9, 25 ).write( ' ' ).writeCellRef( 1048575, 16383 ).write( ' ' );
+		xml.write( 0.0 ).write( ' ' ).write( -42.0 ).write( ' ' ).write( 1.5 ).write( ' ' ).write( 1.0E20 ).write( ' ' ).write( (long) Integer.MIN_VALUE );
+		xml.flush();
+		assertEquals( "A1 Z10 XFD1048576 0 -42 1.5 1.0E20 -2147483648", out.toString() );
+	}
+
+	@Test
+	public void testRowsAreWrittenFromCellRecords() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( "Name", "A1" );
+		sheet.add( "#N/A", "B1" );
+		sheet.add( 12, "A2" );
+		sheet.add( 2.25, "B2" );
+		sheet.add( Boolean.TRUE, "AA2" );
+
+		File file = File.createTempFile( "OOXMLWriterTest", ".xlsx" );
+		file.deleteOnExit();
+		try( FileOutputStream out = new FileOutputStream( file ) )
+		{
+			book.write( out, WorkBookHandle.FORMAT_XLSX );
+		}
+		book.close();
+
+		final List<String> events = new ArrayList<>();
+		try( ZipFile zip = new ZipFile( file ) )
+		{
+			new OOXMLEventReader( zip ).read( new SheetRowListener()
+			{
+				@Override
+				public void startSheet( int sheet, String name )
+				{
+				}
+
+				@Override
+				public void startRow( int row )
+				{
+				}
+
+				@Override
+				public void rowInfo( int row, int height, boolean hidden, int ixfe )
+				{
+				}
+
+				@Override
+				public void numberCell( int row, int col, int ixfe, double value )
+				{
+					events.add( row + "," + col + "=" + value );
+				}
+
+				@Override
+				public void stringCell( int row, int col, int ixfe, String value )
+				{
+					events.add( row + "," + col + "=" + value );
+				}
+
+				@Override
+				public void booleanCell( int row, int col, int ixfe, boolean value )
+				{
+					events.add( row + "," + col + "=" + value );
+				}
+
+				@Override
+				public void errorCell( int row, int col, int ixfe, int error )
+				{
+					events.add( row + "," + col + "=#" + error );
+				}
+
+				@Override
+				public void endRow( int row )
+				{
+				}
+
+				@Override
+				public void endSheet( int sheet )
+				{
+				}
+			} );
+		}
+		assertEquals( "[0,0=Name, 0,1=#42, 1,0=12.0, 1,1=2.25, 1,26=true]", events.toString() );
+	}
+
+	@Test
+	public void testCrc32Combine() throws Exception
+	{
+		byte[] a = "<row r=\"1\">".getBytes( "UTF-8" );
+		byte[] b = "<c r=\"A1\" t=\"s\"><v>0</v></c></row>".getBytes( "UTF-8" );
+		CRC32 crc = new CRC32();
+		crc.update( a );
+		long crcA = crc.getValue();
+		crc.reset();
+		crc.update( b );
+		long crcB = crc.getValue();
+		crc.reset();
+		crc.update( a );
+		crc.update( b );
+		assertEquals( crc.getValue(), SplicingZipOutputStream.crc32Combine( crcA, crcB, b.length ) );
+		assertEquals( crcA, SplicingZipOutputStream.crc32Combine( crcA, 0, 0 ) );
+	}
+
+	@Test
+	public void testParallelWriteMatchesSerialWrite() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		for( int s = 0; s < 3; s++ )
+		{
+			WorkSheetHandle sheet = book.getWorkSheet( s );
+			for( int r = 0; r < 2000; r++ )
+			{
+				sheet.add( "text " + (r % 50), r, 0 );
+				sheet.add( (s * 10000) + (r * 0.5), r, 1 );
+			}
+		}
+
+		ByteArrayOutputStream serial = new ByteArrayOutputStream();
+		book.write( serial, WorkBookHandle.FORMAT_XLSX );
+		book.setWriteThreads( 4 );
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		book.write( parallel, WorkBookHandle.FORMAT_XLSX );
+		book.close();
+
+		Map<String, byte[]> expected = readEntries( serial.toByteArray() );
+		Map<String, byte[]> actual = readEntries( parallel.toByteArray() );
+		assertEquals( expected.keySet().toString(), actual.keySet().toString() );
+		for( String name : expected.keySet() )
+		{
+			assertArrayEquals( name, expected.get( name ), actual.get( name ) );
+		}
+	}
+
+	/**
+	 * Reads every entry through ZipInputStream, which checks the sizes and
+	 * CRC-32 of each entry against its data descriptor.
+	 */
+	private static Map<String, byte[]> readEntries( byte[] zip ) throws Exception
+	{
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		try( ZipInputStream in = new ZipInputStream( new ByteArrayInputStream( zip ) ) )
+		{
+			byte[] buf = new byte[4096];
+			ZipEntry e;
+			while( (e = in.getNextEntry()) != null )
+			{
+				ByteArrayOutputStream data = new ByteArrayOutputStream();
+				int n;
+				while( (n = in.read( buf )) > 0 )
+				{
+					data.write( buf, 0, n );
+				}
+				entries.put( e.getName(), data.toByteArray() );
+			}
+		}
+		return entries;
+	}
+}
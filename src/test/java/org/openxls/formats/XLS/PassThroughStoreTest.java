@@ -0,0 +1,132 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PassThroughStoreTest
+{
+	@Test
+	public void testPartsAreCopiedFromTheSourceZip() throws Exception
+	{
+		byte[] vba = new byte[20000];
+		for( int i = 0; i < vba.length; i++ )
+		{
+			vba[i] = (byte) ((i * 31) % 17);
+		}
+		byte[] settings = "printer settings".getBytes( "UTF-8" );
+
+		File f = File.createTempFile( "PassThroughStoreTest", ".xlsx" );
+		try
+		{
+			ZipOutputStream out = new ZipOutputStream( new FileOutputStream( f ) );
+			out.putNextEntry( new ZipEntry( "xl/vbaProject.bin" ) );
+			out.write( vba );
+			ZipEntry stored = new ZipEntry( "xl/printerSettings/printerSettings1.bin" );
+			stored.setMethod( ZipEntry.STORED );
+			stored.setSize( settings.length );
+			CRC32 crc = new CRC32();
+			crc.update( settings );
+			stored.setCrc( crc.getValue() );
+			out.putNextEntry( stored );
+			out.write( settings );
+			out.close();
+
+			PassThroughStore store = new PassThroughStore();
+			ZipFile zip = new ZipFile( f );
+			long compressed = zip.getEntry( "xl/vbaProject.bin" ).getCompressedSize();
+			store.put( "/tmp/extentech/book/vbaProject.bin", zip, "xl/vbaProject.bin" );
+			store.put( "/tmp/extentech/book/printerSettings1.bin", zip, "xl/printerSettings/printerSettings1.bin" );
+			store.closeSource();
+			zip.close();
+			assertTrue( store.contains( "/tmp/extentech/book/vbaProject.bin" ) );
+			assertFalse( store.contains( "/tmp/extentech/book/other.bin" ) );
+
+			// raw copy, and inflated into a plain ZipOutputStream
+			ByteArrayOutputStream spliced = new ByteArrayOutputStream();
+			SplicingZipOutputStream sz = new SplicingZipOutputStream( spliced );
+			store.write( "/tmp/extentech/book/vbaProject.bin", sz, "xl/vbaProject.bin" );
+			store.write( "/tmp/extentech/book/printerSettings1.bin", sz, "xl/printerSettings/printerSettings1.bin" );
+			sz.close();
+			ByteArrayOutputStream plain = new ByteArrayOutputStream();
+			ZipOutputStream pz = new ZipOutputStream( plain );
+			store.write( "/tmp/extentech/book/vbaProject.bin", pz, "xl/vbaProject.bin" );
+			store.write( "/tmp/extentech/book/printerSettings1.bin", pz, "xl/printerSettings/printerSettings1.bin" );
+			pz.close();
+
+			byte[] splicedBytes = spliced.toByteArray();
+			for( byte[] written : new byte[][]{ splicedBytes, plain.toByteArray() } )
+			{
+				ZipInputStream in = new ZipInputStream( new ByteArrayInputStream( written ) );
+				ZipEntry e = in.getNextEntry();
+				assertEquals( "xl/vbaProject.bin", e.getName() );
+				assertArrayEquals( vba, readEntry( in ) );
+				if( written == splicedBytes )
+				{   // the compressed data of the source entry
+					assertEquals( compressed, e.getCompressedSize() );
+				}
+				assertEquals( "xl/printerSettings/printerSettings1.bin", in.getNextEntry().getName() );
+				assertArrayEquals( settings, readEntry( in ) );
+				in.close();
+			}
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testPassThroughUsesTheWorkBookStore() throws Exception
+	{
+		File f = File.createTempFile( "PassThroughStoreTest", ".xlsx" );
+		File out = new File( System.getProperty( "java.io.tmpdir" ), "PassThroughStoreTest/custom.xml" );
+		try
+		{
+			ZipOutputStream zout = new ZipOutputStream( new FileOutputStream( f ) );
+			zout.putNextEntry( new ZipEntry( "docProps/custom.xml" ) );
+			zout.write( "<Properties/>".getBytes( "UTF-8" ) );
+			zout.close();
+
+			WorkBookHandle book = new WorkBookHandle();
+			book.getWorkBook().setPassThroughStore( new PassThroughStore() );
+			ZipFile zip = new ZipFile( f );
+			OOXMLReader.passThrough( book, zip, "docProps/custom.xml", out.getPath() );
+			zip.close();
+
+			assertTrue( book.getWorkBook().getPassThroughStore().contains( out.getPath() ) );
+			assertFalse( out.exists() );
+			book.close();
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	private static byte[] readEntry( ZipInputStream in ) throws Exception
+	{
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while( (n = in.read( buf )) > 0 )
+		{
+			data.write( buf, 0, n );
+		}
+		return data.toByteArray();
+	}
+}
@@ -0,0 +1,172 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.FormatHandle;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+import org.openxls.formats.LEO.LEOFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecordEventReaderTest
+{
+	@Test
+	public void testReadsLabelsInRowOrder() throws Exception
+	{
+		final List<String> events = new ArrayList<>();
+		try( InputStream inp = getClass().getResourceAsStream( "/Test.xls" ) )
+		{
+			RecordEventReader reader = new RecordEventReader( new LEOFile( inp ) );
+			reader.read( new SheetRowListener()
+			{
+				@Override
+				public void startSheet( int sheet, String name )
+				{
+					events.add( "sheet " + name );
+				}
+
+				@Override
+				public void startRow( int row )
+				{
+					events.add( "row " + row );
+				}
+
+				@Override
+				public void rowInfo( int row, int height, boolean hidden, int ixfe )
+				{
+				}
+
+				@Override
+				public void numberCell( int row, int col, int ixfe, double value )
+				{
+					events.add( col + "=" + value );
+				}
+
+				@Override
+				public void stringCell( int row, int col, int ixfe, String value )
+				{
+					events.add( col + "=" + value );
+				}
+
+				@Override
+				public void booleanCell( int row, int col, int ixfe, boolean value )
+				{
+					events.add( col + "=" + value );
+				}
+
+				@Override
+				public void errorCell( int row, int col, int ixfe, int error )
+				{
+					events.add( col + "=#" + error );
+				}
+
+				@Override
+				public void endRow( int row )
+				{
+				}
+
+				@Override
+				public void endSheet( int sheet )
+				{
+					events.add( "end " + sheet );
+				}
+			} );
+			assertEquals( 1, reader.getSheetNames().length );
+		}
+
+		assertEquals( "[sheet Test, row 0, 0=A, row 1, 0=B, row 2, 0=C, 3=G, row 3, 0=D, 3=H, row 4, 0=E, 3=I, row 5, 0=F, 3=J, end 0]",
+		              events.toString() );
+	}
+
+	@Test
+	public void testReadsRowRecords() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int r = 0; r < 3; r++ )
+		{
+			sheet.add( r, r, 0 );
+		}
+		FormatHandle fmt = new FormatHandle( book );
+		fmt.setFormatPattern( "0.00" );
+		sheet.getRow( 0 ).setFormatId( fmt.getFormatId() );
+		sheet.getRow( 1 ).setHeight( 600 );
+		sheet.getRow( 2 ).setHidden( true );
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out );
+
+		final List<String> events = new ArrayList<>();
+		RecordEventReader reader = new RecordEventReader( new LEOFile( new ByteArrayInputStream( out.toByteArray() ) ) );
+		reader.read( new SheetRowListener()
+		{
+			@Override
+			public void startSheet( int sheet, String name )
+			{
+			}
+
+			@Override
+			public void startRow( int row )
+			{
+				events.add( "row " + row );
+			}
+
+			@Override
+			public void rowInfo( int row, int height, boolean hidden, int ixfe )
+			{
+				events.add( "info " + row + " " + height + " " + hidden + " " + ixfe );
+			}
+
+			@Override
+			public void numberCell( int row, int col, int ixfe, double value )
+			{
+			}
+
+			@Override
+			public void stringCell( int row, int col, int ixfe, String value )
+			{
+			}
+
+			@Override
+			public void booleanCell( int row, int col, int ixfe, boolean value )
+			{
+			}
+
+			@Override
+			public void errorCell( int row, int col, int ixfe, int error )
+			{
+			}
+
+			@Override
+			public void endRow( int row )
+			{
+				events.add( "end " + row );
+			}
+
+			@Override
+			public void endSheet( int sheet )
+			{
+			}
+		} );
+
+		assertEquals( "[info 0 255 false " + fmt.getFormatId() + ", info 1 600 false -1, info 2 255 true -1, " +
+				              "row 0, end 0, row 1, end 1, row 2, end 2]", events.toString() );
+	}
+
+	@Test
+	public void testParseRk() throws Exception
+	{
+		double[] values = { 0, 1, -1, 123456, 1.5, 0.01, -12.34 };
+		for( double d : values )
+		{
+			byte[] rk = Rk.getRkBytes( d );
+			int packed = (rk[0] & 0xff) | ((rk[1] & 0xff) << 8) | ((rk[2] & 0xff) << 16) | ((rk[3] & 0xff) << 24);
+			assertEquals( Rk.parseRkNumber( rk ), RecordEventReader.parseRk( packed ), 0 );
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReferenceTrackerTest
+{
+	@Test
+	public void testAreasContainingACellAreFound() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int row = 0; row < 520; row += 3 )
+		{
+			for( int col = 0; col < 4; col++ )
+			{
+				sheet.add( row, (char) ('A' + col) + String.valueOf( row + 1 ) );
+			}
+		}
+		int[][] ranges = new int[300][];
+		for( int i = 0; i < ranges.length; i++ )
+		{
+			// first row, first col, last row, last col
+			ranges[i] = new int[]{ (i * 7) % 200, i % 3, ((i * 7) % 200) + (i % 40), (i % 3) + (i % 2) };
+			sheet.add( "=SUM(" + range( ranges[i] ) + ")", "F" + (i + 1) );
+		}
+		ReferenceTracker rt = book.getWorkBook().getRefTracker();
+		assertDependents( sheet, rt, ranges );
+
+		// moved and removed areas
+		for( int i = 0; i < ranges.length; i += 2 )
+		{
+			ranges[i] = new int[]{ ranges[i][0] + 300, ranges[i][1], ranges[i][2] + 300, ranges[i][3] };
+			sheet.getCell( "F" + (i + 1) ).getFormulaHandle().setFormula( "=SUM(" + range( ranges[i] ) + ")" );
+		}
+		for( int i = 1; i < ranges.length; i += 6 )
+		{
+			ranges[i] = null;
+			sheet.getCell( "F" + (i + 1) ).setVal( i );
+		}
+		assertDependents( sheet, rt, ranges );
+		book.close();
+	}
+
+	@Test
+	public void testAreasBeyondRow32768AreFound() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( 1, "A40005" );
+		sheet.add( "=SUM(A40000:B40010)", "D1" );
+		sheet.add( "=D1*2", "D2" );
+		Map affected = book.getWorkBook().getRefTracker().clearAffectedFormulaCells( sheet.getCell( "A40005" ) );
+		String name = sheet.getSheetName();
+		assertEquals( new TreeSet<>( Arrays.asList( name + "!D1", name + "!D2" ) ), new TreeSet<>( affected.keySet() ) );
+		book.close();
+	}
+
+	private static void assertDependents( WorkSheetHandle sheet, ReferenceTracker rt, int[][] ranges ) throws Exception
+	{
+		String name = sheet.getSheetName();
+		for( int row = 0; row < 520; row += 3 )
+		{
+			for( int col = 0; col < 4; col++ )
+			{
+				TreeSet<String> expected = new TreeSet<>();
+				for( int i = 0; i < ranges.length; i++ )
+				{
+					int[] r = ranges[i];
+					if( (r != null) && (row >= r[0]) && (row <= r[2]) && (col >= r[1]) && (col <= r[3]) )
+					{
+						expected.add( name + "!F" + (i + 1) );
+					}
+				}
+				String address = (char) ('A' + col) + String.valueOf( row + 1 );
+				Map affected = rt.clearAffectedFormulaCells( sheet.getCell( address ) );
+				assertEquals( address, expected, new TreeSet<>( affected.keySet() ) );
+			}
+		}
+	}
+
+	private static String range( int[] r )
+	{
+		return (char) ('A' + r[1]) + String.valueOf( r[0] + 1 ) + ":" + (char) ('A' + r[3]) + (r[2] + 1);
+	}
+}
@@ -0,0 +1,52 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.SheetRowWriter;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class RowBlockSpillTest
+{
+	private static final String LONG = new String( new char[300] ).replace( '\0', 'x' );
+
+	@Test
+	public void testSpilledRowsFollowInMemoryRows() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( "Name", "A1" );
+		sheet.add( "Value", "B1" );
+
+		SheetRowWriter rows = new SheetRowWriter( sheet );
+		assertEquals( 1, rows.getNextRow() );
+		for( int i = 0; i < 1000; i++ )
+		{
+			rows.addRow( new Object[]{ "row" + i, i * 1.5, (i % 2) == 0, (i == 7) ? LONG : "ü中" } );
+		}
+		rows.addRow( 1010, new Object[]{ null, 42 }, null );
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out, WorkBookHandle.FORMAT_XLS );
+		book.close();
+
+		WorkBookHandle read = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+		WorkSheetHandle rsheet = read.getWorkSheet( 0 );
+		assertEquals( "Name", rsheet.getCell( "A1" ).getStringVal() );
+		assertEquals( "row0", rsheet.getCell( "A2" ).getStringVal() );
+		assertEquals( 0.0, rsheet.getCell( "B2" ).getDoubleVal(), 0 );
+		assertEquals( "row999", rsheet.getCell( "A1001" ).getStringVal() );
+		assertEquals( 999 * 1.5, rsheet.getCell( "B1001" ).getDoubleVal(), 0 );
+		assertEquals( "true", rsheet.getCell( "C502" ).getStringVal().toLowerCase() );
+		assertEquals( LONG, rsheet.getCell( "D9" ).getStringVal() );
+		assertEquals( "ü中", rsheet.getCell( "D10" ).getStringVal() );
+		assertEquals( 42.0, rsheet.getCell( "B1011" ).getDoubleVal(), 0 );
+		assertEquals( 1010, rsheet.getLastRow() );
+		assertEquals( 16 + (33 * 4), rsheet.getMysheet().getSheetIDX().getData().length );
+		read.close();
+	}
+}
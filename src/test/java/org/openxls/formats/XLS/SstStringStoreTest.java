@@ -0,0 +1,113 @@
+package org.openxls.formats.XLS;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SstStringStoreTest
+{
+	@Test
+	public void testEntriesDecodeAsUnicodestrings() throws Exception
+	{
+		ArrayList runs = new ArrayList();
+		runs.add( new short[]{ 0, 5 } );
+		runs.add( new short[]{ 3, 6 } );
+		Unicodestring[] strs = {
+				Sst.createUnicodeString( "plain", null, WorkBook.STRING_ENCODING_COMPRESSED ),
+				Sst.createUnicodeString( "plain", null, WorkBook.STRING_ENCODING_UNICODE ),
+				Sst.createUnicodeString( "日本語", null, WorkBook.STRING_ENCODING_AUTO ),
+				Sst.createUnicodeString( "rich text", runs, WorkBook.STRING_ENCODING_AUTO ),
+		};
+		SstStringStore store = new SstStringStore();
+		for( Unicodestring us : strs )
+		{
+			store.add( us.read() );
+		}
+		assertEquals( strs.length, store.size() );
+		for( int i = 0; i < strs.length; i++ )
+		{
+			assertEquals( strs[i].toString(), store.getString( i ) );
+			assertArrayEquals( strs[i].read(), store.getBytes( i ) );
+			assertEquals( strs[i], store.get( i ) );
+			assertEquals( strs[i].hasFormattingRuns(), store.hasFormattingRuns( i ) );
+			assertEquals( i, store.find( strs[i].read() ) );
+		}
+		assertNull( store.getFormattingRuns( 0 ) );
+		ArrayList read = store.getFormattingRuns( 3 );
+		assertEquals( 2, read.size() );
+		assertArrayEquals( new short[]{ 3, 6 }, (short[]) read.get( 1 ) );
+
+		// text lookups match either encoding, but not rich strings
+		assertEquals( 0, store.indexOf( "plain" ) );
+		assertEquals( 2, store.indexOf( "日本語" ) );
+		assertEquals( -1, store.indexOf( "rich text" ) );
+		assertEquals( -1, store.indexOf( "plai" ) );
+		assertTrue( store.startsWith( 1, 'p' ) );
+		assertFalse( store.startsWith( 2, 'p' ) );
+	}
+
+	@Test
+	public void testReplacedEntriesAreReindexed() throws Exception
+	{
+		SstStringStore store = new SstStringStore();
+		for( int i = 0; i < 5000; i++ )
+		{
+			store.add( Sst.createUnicodeString( "s" + i, null, WorkBook.STRING_ENCODING_COMPRESSED ).read() );
+		}
+		for( int i = 0; i < 5000; i += 2 )
+		{
+			String v = (i % 4 == 0) ? ("t" + i) : ("a much longer replacement value " + i);
+			store.set( i, Sst.createUnicodeString( v, null, WorkBook.STRING_ENCODING_AUTO ).read() );
+		}
+		for( int i = 0; i < 5000; i++ )
+		{
+			if( (i % 2) == 0 )
+			{
+				String v = (i % 4 == 0) ? ("t" + i) : ("a much longer replacement value " + i);
+				assertEquals( v, store.getString( i ) );
+				assertEquals( i, store.indexOf( v ) );
+				assertEquals( -1, store.indexOf( "s" + i ) );
+			}
+			else
+			{
+				assertEquals( i, store.indexOf( "s" + i ) );
+			}
+		}
+	}
+
+	@Test
+	public void testSharedAndUnsharedLabels() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		book.getWorkBook().setSharedupes( true );
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( "one", "A1" );
+		sheet.add( "two", "A2" );
+		sheet.add( "one", "A3" );
+		Sst sst = book.getWorkBook().getSharedStringTable();
+		int strings = sst.getNumStrings();
+
+		// A1 shares its string with A3, so it gets a new one
+		sheet.getCell( "A1" ).setVal( "three" );
+		assertEquals( strings + 1, sst.getNumStrings() );
+		assertEquals( "one", sheet.getCell( "A3" ).getStringVal() );
+		// A2 has its own string, which is changed in place
+		sheet.getCell( "A2" ).setVal( "changed" );
+		assertEquals( strings + 1, sst.getNumStrings() );
+		assertEquals( "changed", sheet.getCell( "A2" ).getStringVal() );
+
+		WorkBookHandle read = new WorkBookHandle( book.getBytes() );
+		WorkSheetHandle readSheet = read.getWorkSheet( 0 );
+		assertEquals( "three", readSheet.getCell( "A1" ).getStringVal() );
+		assertEquals( "changed", readSheet.getCell( "A2" ).getStringVal() );
+		assertEquals( "one", readSheet.getCell( "A3" ).getStringVal() );
+	}
+}
@@ -0,0 +1,99 @@
+package org.openxls.formats.XLS.formulas;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+import org.openxls.formats.XLS.XLSConstants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AggregateFunctionTest
+{
+	private static final String[] FUNCTIONS = { "SUM", "COUNT", "AVERAGE", "MIN", "MAX", "PRODUCT", "STDEV" };
+
+	@After
+	public void tearDown()
+	{
+		System.getProperties().remove( XLSConstants.COMPACTCELLS_PROP );
+	}
+
+	/**
+	 * Writes a range of mixed cells, a range holding an error, and the
+	 * aggregates over both.
+	 */
+	private static byte[] createBook() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( 1, "A1" );
+		sheet.add( "x", "B1" );
+		sheet.add( 2.5, "C1" );
+		sheet.add( "4", "A2" );
+		sheet.add( Boolean.TRUE, "B2" );
+		sheet.add( -3, "C2" );
+		sheet.add( "=2*3", "A3" );
+		sheet.add( "=\"s\"", "B3" );
+		sheet.add( 10, "C3" );
+		// adjacent blanks are written as a MULBLANK
+		sheet.add( 7, "A4" );
+		sheet.getCell( "A4" ).setVal( null );
+		sheet.add( 7, "B4" );
+		sheet.getCell( "B4" ).setVal( null );
+		sheet.add( 1, "E1" );
+		sheet.add( "=1/0", "E2" );
+		for( int f = 0; f < FUNCTIONS.length; f++ )
+		{
+			sheet.add( "=" + FUNCTIONS[f] + "(A1:C5)", "G" + (f + 1) );
+			sheet.add( "=" + FUNCTIONS[f] + "(E1:E3)", "H" + (f + 1) );
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out, WorkBookHandle.FORMAT_XLS );
+		book.close();
+		return out.toByteArray();
+	}
+
+	private static void checkAggregates( byte[] file ) throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle( new ByteArrayInputStream( file ) );
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		book.recalc();
+		// the values the functions gave when evaluating each PtgRef of the range,
+		// ie: numeric text is summed and missing cells count as zero
+		double[] mixed = { 20.5, 10, 20.5 / 6, -3, 10, -0.0, 3.810425860464318 };
+		double[] error = { 1, 2, 1, 0, 1, 0, 1 };
+		for( int f = 0; f < FUNCTIONS.length; f++ )
+		{
+			assertEquals( FUNCTIONS[f], mixed[f], sheet.getCell( "G" + (f + 1) ).getDoubleVal(), 1e-9 );
+			assertEquals( FUNCTIONS[f], error[f], sheet.getCell( "H" + (f + 1) ).getDoubleVal(), 1e-9 );
+		}
+
+		// a changed cell within the range is seen by the next calculation
+		sheet.getCell( "C3" ).setVal( 20 );
+		book.recalc();
+		assertEquals( 30.5, sheet.getCell( "G1" ).getDoubleVal(), 1e-9 );
+		assertEquals( 20, sheet.getCell( "G5" ).getIntVal() );
+		book.close();
+	}
+
+	@Test
+	public void testAggregatesOverMixedRange() throws Exception
+	{
+		checkAggregates( createBook() );
+	}
+
+	@Test
+	public void testAggregatesOverCompactCells() throws Exception
+	{
+		byte[] file = createBook();
+		System.getProperties().put( XLSConstants.COMPACTCELLS_PROP, "true" );
+		WorkBookHandle book = new WorkBookHandle( new ByteArrayInputStream( file ) );
+		assertTrue( book.getWorkSheet( 0 ).getMysheet().getCompactCellCount() > 0 );
+		book.close();
+		checkAggregates( file );
+	}
+}
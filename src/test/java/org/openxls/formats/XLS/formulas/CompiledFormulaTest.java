@@ -0,0 +1,110 @@
+package org.openxls.formats.XLS.formulas;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.CellHandle;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+import org.openxls.formats.XLS.Formula;
+
+import java.io.InputStream;
+import java.util.Stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledFormulaTest
+{
+	@Test
+	public void testCompiledExpressionRecalculates() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int r = 1; r <= 10; r++ )
+		{
+			sheet.add( r, "A" + r );
+		}
+		sheet.add( "=(A1+A2)*-(A3-SUM(A1:A10,A4))/2", "B1" );
+		sheet.add( "=IF(A1>0,MAX(A1:A10)&\"x\",\"no\")", "B2" );
+		sheet.add( "=ROUND(AVERAGE(A1:A5)*(1+A2)^2,1)", "B3" );
+		book.recalc();
+		assertEquals( 84.0, sheet.getCell( "B1" ).getDoubleVal(), 0 );
+		assertEquals( "10x", sheet.getCell( "B2" ).getStringVal() );
+		assertEquals( 27.0, sheet.getCell( "B3" ).getDoubleVal(), 0 );
+
+		Stack expression = sheet.getCell( "B1" ).getFormulaHandle().getFormulaRec().getExpression();
+		CompiledFormula compiled = CompiledFormula.compile( expression );
+		assertTrue( compiled.isCompiledFrom( expression ) );
+		assertEquals( 84.0, ((Number) compiled.calculate()).doubleValue(), 0 );
+		assertEquals( 84.0, ((Number) compiled.calculate()).doubleValue(), 0 );
+
+		sheet.getCell( "A1" ).setVal( -1 );
+		book.recalc();
+		assertEquals( 27.0, sheet.getCell( "B1" ).getDoubleVal(), 0 );
+		assertEquals( "no", sheet.getCell( "B2" ).getStringVal() );
+		assertEquals( 27.0, ((Number) compiled.calculate()).doubleValue(), 0 );
+		book.close();
+	}
+
+	@Test
+	public void testRecompiledWhenExpressionChanges() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( 2, "A1" );
+		sheet.add( 3, "A2" );
+		CellHandle cell = sheet.add( "=A1*A2", "B1" );
+		assertEquals( 6, cell.getIntVal() );
+
+		Formula f = cell.getFormulaHandle().getFormulaRec();
+		Stack old = f.getExpression();
+		CompiledFormula compiled = CompiledFormula.compile( old );
+		cell.getFormulaHandle().setFormula( "=A1+A2" );
+		assertFalse( compiled.isCompiledFrom( f.getExpression() ) );
+		assertEquals( 5, cell.getIntVal() );
+
+		Stack expression = f.getExpression();
+		compiled = CompiledFormula.compile( expression );
+		expression.set( 0, expression.get( 1 ) );
+		assertFalse( compiled.isCompiledFrom( expression ) );
+		book.close();
+	}
+
+	@Test
+	public void testSharedFormulaCalculatedForEachMember() throws Exception
+	{
+		WorkBookHandle book;
+		try( InputStream inp = getClass().getResourceAsStream( "/SharedFormula.xls" ) )
+		{
+			book = new WorkBookHandle( inp );
+		}
+		WorkSheetHandle sheet = book.getWorkSheet( "Sheet2" );
+		int members = 0;
+		for( int r = 5; r <= 12; r++ )
+		{
+			Formula f = sheet.getCell( "F" + r ).getFormulaHandle().getFormulaRec();
+			assertTrue( f.isSharedFormula() );
+			assertEquals( 1, f.getExpression().size() );
+			double expected = sheet.getCell( "C" + r ).getDoubleVal() + sheet.getCell( "D" + r ).getDoubleVal();
+			assertEquals( expected, ((Number) f.shared.calculate( f )).doubleValue(), 0 );
+			assertEquals( FormulaCalculator.calculateFormula( f.shared.instantiate( f ) ), f.shared.calculate( f ) );
+			members++;
+		}
+		assertEquals( 8, members );
+
+		sheet.getCell( "C7" ).setVal( 1000 );
+		book.recalc();
+		assertEquals( 1000 + sheet.getCell( "D7" ).getDoubleVal(), sheet.getCell( "F7" ).getDoubleVal(), 0 );
+
+		// an edited member gets its own expression
+		CellHandle edited = sheet.getCell( "F8" );
+		edited.getFormulaHandle().setFormula( "=C8*2" );
+		assertFalse( edited.getFormulaHandle().getFormulaRec().isSharedFormula() );
+		book.recalc();
+		assertEquals( sheet.getCell( "C8" ).getDoubleVal() * 2, edited.getDoubleVal(), 0 );
+		Formula f = sheet.getCell( "F9" ).getFormulaHandle().getFormulaRec();
+		assertTrue( f.isSharedFormula() );
+		assertEquals( sheet.getCell( "C9" ).getDoubleVal() + sheet.getCell( "D9" ).getDoubleVal(), sheet.getCell( "F9" ).getDoubleVal(), 0 );
+		book.close();
+	}
+}
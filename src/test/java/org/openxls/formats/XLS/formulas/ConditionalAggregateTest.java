@@ -0,0 +1,154 @@
+package org.openxls.formats.XLS.formulas;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConditionalAggregateTest
+{
+	@Test
+	public void testCriteriaMatchLikeCompareCellValue() throws Exception
+	{
+		String[] criteria = { "5", ">5", "<=5", "<>5", "apple", "<>apple", "AP*", "a?ple", ">b", "true", "", "1/1/2000" };
+		Object[] values = { 5.0, 4, 6.5, "5", "Apple", "apples", "banana", Boolean.TRUE, Boolean.FALSE, "", 36526.0, null };
+		for( String c : criteria )
+		{
+			int j = 0;
+			String op = "=";
+			while( (j < c.length()) && "<>=".indexOf( c.charAt( j ) ) != -1 )
+			{
+				j++;
+			}
+			if( j > 0 )
+			{
+				op = c.substring( 0, j );
+			}
+			String translated = Calculator.translateWildcardsInCriteria( c.substring( j ) );
+			// a number compared with < or > only matches numbers
+			boolean numericRelational = !op.equals( "=" ) && !op.equals( "<>" ) && translated.matches( "-?[0-9.]+" );
+			CriteriaMatcher matcher = CriteriaMatcher.compile( c );
+			for( Object v : values )
+			{
+				boolean expected = (v != null) && (!numericRelational || (v instanceof Number)) &&
+						Calculator.compareCellValue( v, translated, op );
+				assertEquals( c + " " + v, expected, matcher.matches( v ) );
+				if( v instanceof Double )
+				{
+					assertEquals( c + " " + v, expected, matcher.matches( ((Double) v).doubleValue() ) );
+				}
+			}
+		}
+		assertEquals( true, CriteriaMatcher.compile( ">-5" ).matches( -1.0 ) );
+		assertEquals( true, CriteriaMatcher.compile( "-5" ).matches( -5.0 ) );
+	}
+
+	@Test
+	public void testNumericCriteriaOverMixedRange() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		Object[] values = { 1, 2, "x", 5, Boolean.TRUE, "7", 3, 9, 2.5, -3, "abc" };
+		sheet.add( "Header", "A1" );
+		for( int r = 0; r < values.length; r++ )
+		{
+			sheet.add( values[r], "A" + (r + 2) );
+		}
+		sheet.add( "=COUNTIF(A1:A12,\">2\")", "B1" );
+		sheet.add( "=COUNTIF(A1:A12,\"<5\")", "B2" );
+		sheet.add( "=COUNTIF(A1:A12,\">0\")", "B3" );
+		sheet.add( "=SUMIF(A1:A12,\">=2\")", "B4" );
+		sheet.add( "=COUNTIF(A1:A12,\"<>2\")", "B5" );
+		sheet.add( "=COUNTIF(A1:A12,\"7\")", "B6" );
+		book.recalc();
+
+		assertEquals( 4, sheet.getCell( "B1" ).getIntVal() );
+		assertEquals( 5, sheet.getCell( "B2" ).getIntVal() );
+		assertEquals( 6, sheet.getCell( "B3" ).getIntVal() );
+		assertEquals( 21.5, sheet.getCell( "B4" ).getDoubleVal(), 0 );
+		// text and booleans still differ from a number
+		assertEquals( 11, sheet.getCell( "B5" ).getIntVal() );
+		assertEquals( 1, sheet.getCell( "B6" ).getIntVal() );
+		book.close();
+	}
+
+	@Test
+	public void testConditionalAggregates() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		String[] fruit = { "apple", "pear", "Apple", "plum", "apricot" };
+		for( int r = 1; r <= 100; r++ )
+		{
+			sheet.add( fruit[r % fruit.length], "A" + r );
+			sheet.add( r, "B" + r );
+			sheet.add( (r % 2) == 0 ? "even" : "odd", "C" + r );
+		}
+		sheet.add( "pear", "E1" );
+		sheet.add( "=SUMIF(A1:A100,\"apple\",B1:B100)", "F1" );
+		sheet.add( "=SUMIF(B1:B100,\">90\")", "F2" );
+		sheet.add( "=SUMIF(A1:A100,\"ap*\",B1:B100)", "F3" );
+		sheet.add( "=SUMIF(A1:A100,E1,B1:B100)", "F4" );
+		sheet.add( "=COUNTIF(A1:A100,\"apple\")", "F5" );
+		sheet.add( "=COUNTIF(B1:B100,\"<=10\")", "F6" );
+		sheet.add( "=SUMIFS(B1:B100,A1:A100,\"apple\",C1:C100,\"even\")", "F7" );
+		sheet.add( "=COUNTIFS(A1:A100,\"p*\",B1:B100,\">50\")", "F8" );
+		sheet.add( "=AVERAGEIFS(B1:B100,C1:C100,\"odd\",B1:B100,\"<10\")", "F9" );
+		sheet.add( "=COUNTIF(B1:B10,5)", "F10" );
+		sheet.add( "=SUMIFS(B1:B100,A1:A100,\"none\")", "F11" );
+		sheet.add( "=AVERAGEIFS(B1:B100,A1:A100,\"none\")", "F12" );
+		book.recalc();
+
+		double apple = 0;
+		double apricot = 0;
+		double pear = 0;
+		double plum = 0;
+		double appleEven = 0;
+		for( int r = 1; r <= 100; r++ )
+		{
+			String f = fruit[r % fruit.length];
+			if( f.equalsIgnoreCase( "apple" ) )
+			{
+				apple += r;
+				if( (r % 2) == 0 )
+				{
+					appleEven += r;
+				}
+			}
+			if( f.equals( "apricot" ) )
+			{
+				apricot += r;
+			}
+			if( f.equals( "pear" ) )
+			{
+				pear += r;
+			}
+			if( f.equals( "plum" ) )
+			{
+				plum += r;
+			}
+		}
+		assertEquals( apple, sheet.getCell( "F1" ).getDoubleVal(), 0 );
+		assertEquals( 955.0, sheet.getCell( "F2" ).getDoubleVal(), 0 );
+		assertEquals( apple + apricot, sheet.getCell( "F3" ).getDoubleVal(), 0 );
+		assertEquals( pear, sheet.getCell( "F4" ).getDoubleVal(), 0 );
+		assertEquals( 40, sheet.getCell( "F5" ).getIntVal() );
+		assertEquals( 10, sheet.getCell( "F6" ).getIntVal() );
+		assertEquals( appleEven, sheet.getCell( "F7" ).getDoubleVal(), 0 );
+		assertEquals( 20, sheet.getCell( "F8" ).getIntVal() );
+		assertEquals( 5.0, sheet.getCell( "F9" ).getDoubleVal(), 0 );
+		assertEquals( 1, sheet.getCell( "F10" ).getIntVal() );
+		assertEquals( 0.0, sheet.getCell( "F11" ).getDoubleVal(), 0 );
+		assertEquals( "#DIV/0!", sheet.getCell( "F12" ).getStringVal() );
+
+		// cached range values are dropped when a cell within the range changes
+		sheet.getCell( "A1" ).setVal( "apple" );
+		sheet.getCell( "B1" ).setVal( 1000 );
+		assertEquals( apple + 1000, sheet.getCell( "F1" ).getDoubleVal(), 0 );
+		assertEquals( 41, sheet.getCell( "F5" ).getIntVal() );
+		sheet.getCell( "E1" ).setVal( "plum" );
+		assertEquals( plum, sheet.getCell( "F4" ).getDoubleVal(), 0 );
+		book.close();
+	}
+}
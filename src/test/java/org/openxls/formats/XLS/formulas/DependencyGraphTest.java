@@ -0,0 +1,280 @@
+package org.openxls.formats.XLS.formulas;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+import org.openxls.formats.XLS.Formula;
+import org.openxls.formats.XLS.StringRec;
+import org.openxls.formats.XLS.WorkBook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyGraphTest
+{
+	@Test
+	public void testRecalcInDependencyOrder() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( 1, "A1" );
+		sheet.add( "=B3*2", "B4" );
+		sheet.add( "=SUM(B1:B2)", "B3" );
+		sheet.add( "=A1+1", "B1" );
+		sheet.add( "=B1+A1", "B2" );
+		sheet.add( "=C2+1", "C1" );
+		sheet.add( "=C1+1", "C2" );
+		sheet.add( 10, "D1" );
+		sheet.add( "=D1*3", "D2" );
+
+		// formulas read from a file are tracked by the WorkBook
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out );
+		book = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+		sheet = book.getWorkSheet( 0 );
+		book.recalc();
+
+		WorkBook wb = book.getWorkBook();
+		DependencyGraph graph = wb.getDependencyGraph();
+		List<Formula> order = Arrays.asList( graph.getCalculationOrder() );
+		assertTrue( order.indexOf( formula( sheet, "B1" ) ) < order.indexOf( formula( sheet, "B2" ) ) );
+		assertTrue( order.indexOf( formula( sheet, "B2" ) ) < order.indexOf( formula( sheet, "B3" ) ) );
+		assertTrue( order.indexOf( formula( sheet, "B3" ) ) < order.indexOf( formula( sheet, "B4" ) ) );
+		assertTrue( graph.isCircular( formula( sheet, "C1" ) ) );
+		assertFalse( graph.isCircular( formula( sheet, "B4" ) ) );
+		assertEquals( "#CIR_ERR!", sheet.getCell( "C2" ).getVal().toString() );
+		assertEquals( 10.0, sheet.getCell( "B4" ).getDoubleVal(), 0 );
+
+		sheet.getCell( "A1" ).setVal( 2 );
+		sheet.getCell( "D1" ).setVal( 20 );
+		book.recalc();
+		assertSame( graph, wb.getDependencyGraph() );
+		assertEquals( 16.0, sheet.getCell( "B4" ).getDoubleVal(), 0 );
+		assertEquals( 60.0, sheet.getCell( "D2" ).getDoubleVal(), 0 );
+	}
+
+	@Test
+	public void testRecalcWithoutReferenceTracking() throws Exception
+	{
+		System.setProperty( WorkBookHandle.REFTRACK_PROP, "false" );
+		try
+		{
+			WorkBookHandle book = new WorkBookHandle();
+			WorkSheetHandle sheet = book.getWorkSheet( 0 );
+			sheet.add( 1, "A1" );
+			sheet.add( 2, "A2" );
+			sheet.add( "=A1*2", "B1" );
+			sheet.add( "=SUM(A1:A2)", "B2" );
+			book = reload( book );
+			sheet = book.getWorkSheet( 0 );
+			book.recalc();
+			assertEquals( 2.0, sheet.getCell( "B1" ).getDoubleVal(), 0 );
+
+			// nothing clears the dependents of A1, so every formula is evaluated
+			sheet.getCell( "A1" ).setVal( 5 );
+			book.recalc();
+			assertEquals( 10.0, sheet.getCell( "B1" ).getDoubleVal(), 0 );
+			assertEquals( 7.0, sheet.getCell( "B2" ).getDoubleVal(), 0 );
+			book.close();
+		}
+		finally
+		{
+			System.clearProperty( WorkBookHandle.REFTRACK_PROP );
+		}
+	}
+
+	@Test
+	public void testRecalcInExplicitMode() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( 1, "A1" );
+		sheet.add( "=A1*2", "B1" );
+		sheet.add( "=B1+1", "C1" );
+		sheet.add( "=SUM(A1:A3)", "D1" );
+		book = reload( book );
+		sheet = book.getWorkSheet( 0 );
+		book.setFormulaCalculationMode( WorkBookHandle.CALCULATE_EXPLICIT );
+		book.recalc();
+		assertEquals( 3.0, sheet.getCell( "C1" ).getDoubleVal(), 0 );
+
+		// explicit mode doesn't clear the dependents of changed cells
+		sheet.getCell( "A1" ).setVal( 5 );
+		sheet.add( 4, "A2" );
+		book.recalc();
+		assertEquals( 10.0, sheet.getCell( "B1" ).getDoubleVal(), 0 );
+		assertEquals( 11.0, sheet.getCell( "C1" ).getDoubleVal(), 0 );
+		assertEquals( 9.0, sheet.getCell( "D1" ).getDoubleVal(), 0 );
+		book.close();
+	}
+
+	@Test
+	public void testRecalcAfterRemovingACell() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		sheet.add( 1, "A1" );
+		sheet.add( 3, "A2" );
+		sheet.add( "=A1*2", "B1" );
+		sheet.add( "=SUM(A1:A2)", "B2" );
+		sheet.add( "=A2+1", "B3" );
+		book = reload( book );
+		sheet = book.getWorkSheet( 0 );
+		book.recalc();
+		assertEquals( 2.0, sheet.getCell( "B1" ).getDoubleVal(), 0 );
+
+		sheet.getCell( "A1" ).remove( true );
+		sheet.removeCell( "A2" );
+		book.recalc();
+		assertEquals( 0.0, sheet.getCell( "B1" ).getDoubleVal(), 0 );
+		assertEquals( 0.0, sheet.getCell( "B2" ).getDoubleVal(), 0 );
+		assertEquals( 1.0, sheet.getCell( "B3" ).getDoubleVal(), 0 );
+		book.close();
+	}
+
+	@Test
+	public void testParallelRecalcMatchesSequential() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int r = 1; r <= 300; r++ )
+		{
+			sheet.add( r * 1.5, "A" + r );
+			sheet.add( "=A" + r + "*2", "B" + r );
+			sheet.add( "=SUM(A" + r + ":B" + r + ")", "C" + r );
+		}
+		sheet.add( "=SUM(C1:C300)", "D1" );
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out );
+
+		book = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+		book.setCalculationThreads( 4 );
+		assertEquals( 4, book.getCalculationThreads() );
+		sheet = book.getWorkSheet( 0 );
+		book.calculateFormulas();
+		assertEquals( 203175.0, sheet.getCell( "D1" ).getDoubleVal(), 0 );
+
+		sheet.getCell( "A10" ).setVal( 100 );
+		book.recalc();
+		assertEquals( 203175.0 + ((100 - 15) * 3), sheet.getCell( "D1" ).getDoubleVal(), 0 );
+		book.close();
+	}
+
+	@Test
+	public void testParallelRecalcAttachesStringRecords() throws Exception
+	{
+		int rows = 3000;
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int r = 1; r <= rows; r++ )
+		{
+			sheet.add( 0, "A" + r );
+			sheet.add( "=IF(A" + r + "=0,0,\"v\"&A" + r + ")", "B" + r );
+		}
+		book = reload( book );
+		book.setCalculationThreads( 8 );
+		sheet = book.getWorkSheet( 0 );
+		book.calculateFormulas();
+
+		// every formula now returns a string, so each needs a new STRING record
+		for( int r = 1; r <= rows; r++ )
+		{
+			sheet.getCell( "A" + r ).setVal( r );
+		}
+		book.recalc();
+		for( int r = 1; r <= rows; r++ )
+		{
+			Formula f = formula( sheet, "B" + r );
+			StringRec string = f.getAttatchedString();
+			assertEquals( "v" + r, string.getStringVal() );
+			assertEquals( f.getRowNumber(), string.getRowNumber() );
+			assertEquals( f.getColNumber(), string.getColNumber() );
+			assertEquals( Arrays.asList( string ), f.getInternalRecords() );
+		}
+
+		book = reload( book );
+		sheet = book.getWorkSheet( 0 );
+		for( int r = 1; r <= rows; r++ )
+		{
+			assertEquals( "v" + r, formula( sheet, "B" + r ).getAttatchedString().getStringVal() );
+		}
+		book.close();
+	}
+
+	@Test
+	public void testResolvedReferencesReplaceVolatility() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int r = 1; r <= 10; r++ )
+		{
+			sheet.add( r, "A" + r );
+		}
+		sheet.add( 3, "B1" );
+		sheet.add( "=SUM(OFFSET(A1,B1,0,3,1))", "C1" );
+		sheet.add( "=C1*2", "D1" );
+		sheet.add( "=INDIRECT(\"A\"&B1)", "E1" );
+		sheet.add( "=NOW()", "F1" );
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out );
+
+		book = new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+		sheet = book.getWorkSheet( 0 );
+		book.recalc();
+		WorkBook wb = book.getWorkBook();
+		Formula c1 = formula( sheet, "C1" );
+		assertEquals( 15.0, sheet.getCell( "C1" ).getDoubleVal(), 0 );
+		assertEquals( 3.0, sheet.getCell( "E1" ).getDoubleVal(), 0 );
+		assertEquals( 1, c1.getResolvedReferences().length );
+		DependencyGraph graph = wb.getDependencyGraph();
+		assertFalse( graph.isVolatile( c1 ) );
+		assertFalse( graph.isVolatile( formula( sheet, "E1" ) ) );
+		assertTrue( graph.isVolatile( formula( sheet, "F1" ) ) );
+
+		// a change outside of the window leaves it alone
+		sheet.getCell( "A9" ).setVal( 90 );
+		assertTrue( c1.hasCachedValue() );
+		book.recalc();
+		assertSame( graph, wb.getDependencyGraph() );
+		assertEquals( 15.0, sheet.getCell( "C1" ).getDoubleVal(), 0 );
+
+		sheet.getCell( "A5" ).setVal( 50 );
+		book.recalc();
+		assertEquals( 60.0, sheet.getCell( "C1" ).getDoubleVal(), 0 );
+		assertEquals( 120.0, sheet.getCell( "D1" ).getDoubleVal(), 0 );
+
+		// moving the window tracks its new cells
+		sheet.getCell( "B1" ).setVal( 6 );
+		book.recalc();
+		assertEquals( 7.0 + 8 + 90, sheet.getCell( "C1" ).getDoubleVal(), 0 );
+		assertEquals( 6.0, sheet.getCell( "E1" ).getDoubleVal(), 0 );
+		sheet.getCell( "A8" ).setVal( 80 );
+		sheet.getCell( "A6" ).setVal( 60 );
+		book.recalc();
+		assertEquals( 7.0 + 80 + 90, sheet.getCell( "C1" ).getDoubleVal(), 0 );
+		assertEquals( 60.0, sheet.getCell( "E1" ).getDoubleVal(), 0 );
+		sheet.getCell( "A5" ).setVal( 5 );
+		assertTrue( c1.hasCachedValue() );
+		book.close();
+	}
+
+	private static WorkBookHandle reload( WorkBookHandle book ) throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write( out );
+		book.close();
+		return new WorkBookHandle( new ByteArrayInputStream( out.toByteArray() ) );
+	}
+
+	private static Formula formula( WorkSheetHandle sheet, String address ) throws Exception
+	{
+		return sheet.getCell( address ).getFormulaHandle().getFormulaRec();
+	}
+}
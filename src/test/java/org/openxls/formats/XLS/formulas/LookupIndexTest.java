@@ -0,0 +1,69 @@
+package org.openxls.formats.XLS.formulas;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LookupIndexTest
+{
+	@Test
+	public void testVlookupThroughIndex() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		for( int r = 1; r <= 200; r++ )
+		{
+			sheet.add( r * 10, "A" + r );
+			sheet.add( "item" + r, "B" + r );
+		}
+		sheet.add( "=VLOOKUP(500,A1:B200,2,FALSE)", "D1" );
+		sheet.add( "=VLOOKUP(505,A1:B200,2,TRUE)", "D2" );
+		sheet.add( "=VLOOKUP(5,A1:B200,2,TRUE)", "D3" );
+		sheet.add( "=VLOOKUP(505,A1:B200,2,FALSE)", "D4" );
+		sheet.add( "=VLOOKUP(\"ITEM7\",B1:B200,1,FALSE)", "D5" );
+		sheet.add( "=VLOOKUP(99999,A1:B200,2,TRUE)", "D6" );
+		sheet.add( "=MATCH(730,A1:A200,0)", "E1" );
+		sheet.add( "=MATCH(735,A1:A200,1)", "E2" );
+		sheet.add( "=MATCH(\"item9\",B1:B200,0)", "E3" );
+		sheet.add( "=HLOOKUP(20,A1:A200,3,FALSE)", "E4" );
+		book.recalc();
+
+		assertEquals( "item50", sheet.getCell( "D1" ).getStringVal() );
+		assertEquals( "item50", sheet.getCell( "D2" ).getStringVal() );
+		assertEquals( "#N/A", sheet.getCell( "D3" ).getStringVal() );
+		assertEquals( "#N/A", sheet.getCell( "D4" ).getStringVal() );
+		assertEquals( "item7", sheet.getCell( "D5" ).getStringVal() );
+		assertEquals( "item200", sheet.getCell( "D6" ).getStringVal() );
+		assertEquals( 73, sheet.getCell( "E1" ).getIntVal() );
+		assertEquals( 73, sheet.getCell( "E2" ).getIntVal() );
+		assertEquals( 9, sheet.getCell( "E3" ).getIntVal() );
+		assertEquals( "#N/A", sheet.getCell( "E4" ).getStringVal() );
+	}
+
+	@Test
+	public void testIndexDroppedWhenCellChanges() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		WorkSheetHandle other = book.getWorkSheet( 1 );
+		for( int r = 1; r <= 50; r++ )
+		{
+			other.add( "key" + r, "A" + r );
+			other.add( r, "B" + r );
+		}
+		String table = other.getSheetName() + "!A1:B50";
+		sheet.add( "=VLOOKUP(\"key20\"," + table + ",2,FALSE)", "A1" );
+		sheet.add( "=VLOOKUP(\"key21\"," + table + ",2,FALSE)", "A2" );
+		assertEquals( 20, sheet.getCell( "A1" ).getIntVal() );
+		assertTrue( !book.getWorkBook().getRefTracker().getLookupIndexes().isEmpty() );
+
+		// the cached index must not survive a change to its column
+		other.getCell( "A5" ).setVal( "key21" );
+		assertTrue( book.getWorkBook().getRefTracker().getLookupIndexes().isEmpty() );
+		book.recalc();
+		assertEquals( 5, sheet.getCell( "A2" ).getIntVal() );
+	}
+}
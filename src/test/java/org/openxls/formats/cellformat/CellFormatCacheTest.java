@@ -0,0 +1,47 @@
+package org.openxls.formats.cellformat;
+
+import org.junit.Test;
+import org.openxls.ExtenXLS.CellHandle;
+import org.openxls.ExtenXLS.WorkBookHandle;
+import org.openxls.ExtenXLS.WorkSheetHandle;
+import org.openxls.formats.XLS.WorkBook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CellFormatCacheTest
+{
+	@Test
+	public void testPatternsAreCompiledOncePerWorkBook() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkBook wb = book.getWorkBook();
+		assertSame( wb.getCellFormat( "0.00" ), wb.getCellFormat( "0.00" ) );
+		assertSame( wb.getCellFormat( null ), wb.getCellFormat( "" ) );
+		assertNotSame( wb.getCellFormat( "0.00" ), wb.getCellFormat( "0.000" ) );
+
+		WorkBookHandle other = new WorkBookHandle();
+		assertNotSame( wb.getCellFormat( "0.00" ), other.getWorkBook().getCellFormat( "0.00" ) );
+		other.close();
+		book.close();
+	}
+
+	@Test
+	public void testCachedFormatsMatchCompiledFormats() throws Exception
+	{
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet( 0 );
+		String[] patterns = { "General", "0.00", "#,##0", "0%", "m/d/yy", "$#,##0.00;($#,##0.00)" };
+		for( int i = 0; i < patterns.length; i++ )
+		{
+			sheet.add( 1234.5678, "A" + (i + 1) );
+			CellHandle cell = sheet.getCell( "A" + (i + 1) );
+			cell.setFormatPattern( patterns[i] );
+			String expected = CellFormatFactory.fromPatternString( cell.getFormatPattern() ).format( cell );
+			assertEquals( patterns[i], expected, cell.getFormattedStringVal() );
+			assertEquals( patterns[i], expected, cell.getFormattedStringVal() );
+		}
+		book.close();
+	}
+}